@@ -0,0 +1,262 @@
+/**
+ * JMH benchmarks for the layers of the acoustic model.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.geometry.ComponentInterface;
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.calculation.DefaultHoleCalculator;
+import com.wwidesigner.geometry.calculation.Tube;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.DefaultInstrumentCalculator;
+import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.modelling.PlayingRange;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Benchmarks for each layer of the acoustic model, from single component
+ * transfer matrices up to the tuning error of a complete instrument, on
+ * the sample NAF and whistle.  Run with "gradle jmh"; the gc profiler
+ * reports the allocation rate of each benchmark alongside its throughput.
+ *
+ * @author Burton Patkau
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ModelBenchmarks
+{
+	/**
+	 * A sample instrument and tuning, with a private calculator.
+	 */
+	@State(Scope.Thread)
+	public static class Model
+	{
+		@Param({ "NAF", "whistle" })
+		public String sample;
+
+		protected Instrument instrument;
+		protected PhysicalParameters params;
+		protected DefaultInstrumentCalculator calculator;
+		protected List<Fingering> fingerings;
+		// Wave number at the target frequency of the first note.
+		protected double waveNumber;
+
+		@Setup
+		public void setup() throws Exception
+		{
+			InstrumentTuner tuner;
+			if ("NAF".equals(sample))
+			{
+				tuner = SampleInstruments.loadNaf();
+			}
+			else
+			{
+				tuner = SampleInstruments.loadWhistle();
+			}
+			instrument = tuner.getInstrument();
+			calculator = (DefaultInstrumentCalculator) tuner.getCalculator()
+					.copy();
+			params = calculator.getPhysicalParameters();
+			fingerings = tuner.getTuning().getFingering();
+			waveNumber = params.calcWaveNumber(SampleInstruments
+					.targetFrequency(fingerings.get(0)));
+		}
+	}
+
+	/**
+	 * Impedance calculation, with or without reuse of unchanged component
+	 * matrices.
+	 */
+	@State(Scope.Thread)
+	public static class Impedance
+	{
+		@Param({ "false", "true" })
+		public boolean incremental;
+
+		protected DefaultInstrumentCalculator calculator;
+
+		@Setup
+		public void setup(Model model)
+		{
+			calculator = (DefaultInstrumentCalculator) model.calculator.copy();
+			calculator.setIncrementalCalculation(incremental);
+		}
+	}
+
+	/**
+	 * Impedance spectrum of the first fingering, at 2000 frequencies.
+	 */
+	@State(Scope.Thread)
+	public static class Spectrum
+	{
+		public static final int NR_FREQS = 2000;
+
+		protected final double[] freqs = new double[NR_FREQS];
+		protected final double[] zRe = new double[NR_FREQS];
+		protected final double[] zIm = new double[NR_FREQS];
+
+		@Setup
+		public void setup(Model model)
+		{
+			double target = SampleInstruments.targetFrequency(model.fingerings
+					.get(0));
+			double freqStart = 0.5 * target;
+			double freqStep = 3.0 * target / NR_FREQS;
+			for (int i = 0; i < NR_FREQS; ++i)
+			{
+				freqs[i] = freqStart + i * freqStep;
+			}
+		}
+	}
+
+	/**
+	 * Playing ranges of every fingering.
+	 */
+	@State(Scope.Thread)
+	public static class Ranges
+	{
+		protected List<PlayingRange> ranges;
+
+		@Setup
+		public void setup(Model model)
+		{
+			ranges = new ArrayList<PlayingRange>();
+			for (Fingering fingering : model.fingerings)
+			{
+				ranges.add(new PlayingRange(model.calculator, fingering));
+			}
+		}
+	}
+
+	/**
+	 * Transfer matrices of all bore sections of an instrument.
+	 */
+	@Benchmark
+	public void coneMatrix(Model model, Blackhole bh)
+	{
+		TransferMatrix tm = new TransferMatrix();
+		for (ComponentInterface component : model.instrument.getComponents())
+		{
+			if (component instanceof BoreSection)
+			{
+				BoreSection section = (BoreSection) component;
+				Tube.calcConeMatrix(model.waveNumber, section.getLength(),
+						section.getLeftRadius(), section.getRightRadius(),
+						model.params, tm);
+				bh.consume(tm.getPP());
+			}
+		}
+	}
+
+	/**
+	 * Transfer matrices of all holes of an instrument, open and closed.
+	 */
+	@Benchmark
+	public void holeMatrix(Model model, Blackhole bh)
+	{
+		DefaultHoleCalculator holeCalculator = new DefaultHoleCalculator();
+		TransferMatrix tm = new TransferMatrix();
+		for (Hole hole : model.instrument.getHole())
+		{
+			holeCalculator.calcTransferMatrix(hole, true, model.waveNumber,
+					model.params, tm);
+			bh.consume(tm.getPU());
+			holeCalculator.calcTransferMatrix(hole, false, model.waveNumber,
+					model.params, tm);
+			bh.consume(tm.getPU());
+		}
+	}
+
+	/**
+	 * Impedance of every fingering at its target frequency.
+	 */
+	@Benchmark
+	public void calcZ(Model model, Impedance impedance, Blackhole bh)
+	{
+		for (Fingering fingering : model.fingerings)
+		{
+			bh.consume(impedance.calculator.calcZ(
+					SampleInstruments.targetFrequency(fingering), fingering));
+		}
+	}
+
+	@Benchmark
+	public void calcZSpectrum(Model model, Spectrum spectrum, Blackhole bh)
+	{
+		model.calculator.calcZ(spectrum.freqs, model.fingerings.get(0),
+				spectrum.zRe, spectrum.zIm);
+		bh.consume(spectrum.zIm);
+	}
+
+	/**
+	 * Playing frequency of every fingering, starting from its target
+	 * frequency.
+	 */
+	@Benchmark
+	public void findXZero(Model model, Ranges ranges, Blackhole bh)
+	{
+		for (int i = 0; i < ranges.ranges.size(); ++i)
+		{
+			try
+			{
+				bh.consume(ranges.ranges.get(i).findXZero(
+						SampleInstruments.targetFrequency(model.fingerings
+								.get(i))));
+			}
+			catch (PlayingRange.NoPlayingRange e)
+			{
+				bh.consume(e);
+			}
+		}
+	}
+
+	/**
+	 * Cent deviation of every fingering in the tuning.
+	 */
+	@Benchmark
+	public double[] calculateErrorVector(Model model)
+	{
+		CentDeviationEvaluator evaluator = new CentDeviationEvaluator(
+				model.calculator);
+		return evaluator.calculateErrorVector(model.fingerings);
+	}
+}
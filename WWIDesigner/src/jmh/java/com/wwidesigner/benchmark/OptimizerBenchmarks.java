@@ -0,0 +1,112 @@
+/**
+ * JMH benchmark for a complete optimization.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.optimization.BaseObjectiveFunction;
+import com.wwidesigner.optimization.HoleSizeObjectiveFunction;
+import com.wwidesigner.optimization.ObjectiveFunctionOptimizer;
+
+/**
+ * Benchmark for a complete hole-size optimization of a 6-hole NAF,
+ * starting each time from the original geometry.  Each operation takes
+ * long enough that fewer, longer iterations are used than for the model
+ * benchmarks.
+ *
+ * @author Burton Patkau
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OptimizerBenchmarks
+{
+	@State(Scope.Thread)
+	public static class Optimization
+	{
+		protected static final double[] LOWER_BOUND = new double[] { 0.004,
+				0.004, 0.004, 0.004, 0.004, 0.004 };
+		protected static final double[] UPPER_BOUND = new double[] { 0.012,
+				0.012, 0.012, 0.012, 0.012, 0.012 };
+
+		protected InstrumentTuner tuner;
+		protected PrintStream out;
+
+		@Setup
+		public void setup() throws Exception
+		{
+			tuner = SampleInstruments.loadOptimizationNaf();
+			// Suppress the optimizer's progress output.
+			out = System.out;
+			System.setOut(new PrintStream(new OutputStream()
+			{
+				@Override
+				public void write(int b)
+				{
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+				{
+				}
+			}));
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			System.setOut(out);
+		}
+	}
+
+	@Benchmark
+	public double optimizeObjectiveFunction(Optimization optimization)
+	{
+		InstrumentCalculator calculator = optimization.tuner.getCalculator()
+				.copy();
+		CentDeviationEvaluator evaluator = new CentDeviationEvaluator(
+				calculator);
+		BaseObjectiveFunction objective = new HoleSizeObjectiveFunction(
+				calculator, optimization.tuner.getTuning(), evaluator);
+		objective.setLowerBounds(Optimization.LOWER_BOUND);
+		objective.setUpperBounds(Optimization.UPPER_BOUND);
+		ObjectiveFunctionOptimizer.optimizeObjectiveFunction(objective,
+				objective.getOptimizerType());
+		return ObjectiveFunctionOptimizer.getFinalNorm();
+	}
+}
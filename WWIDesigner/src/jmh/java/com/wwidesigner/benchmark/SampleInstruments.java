@@ -0,0 +1,93 @@
+/**
+ * Sample instruments and tunings used by the benchmarks.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.benchmark;
+
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.modelling.WhistleCalculator;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Loads the sample NAF and whistle instruments and tunings from the test
+ * examples, for use in benchmark state.
+ *
+ * @author Burton Patkau
+ */
+public final class SampleInstruments
+{
+	public static final String NAF_INSTRUMENT = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	public static final String NAF_TUNING = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+	public static final String WHISTLE_INSTRUMENT = "com/wwidesigner/optimization/example/BP7.xml";
+	public static final String WHISTLE_TUNING = "com/wwidesigner/optimization/example/BP7-tuning.xml";
+	public static final String OPTIMIZATION_INSTRUMENT = "com/wwidesigner/optimization/example/6HoleNAF1.xml";
+	public static final String OPTIMIZATION_TUNING = "com/wwidesigner/optimization/example/6HoleNAF1Tuning.xml";
+
+	private SampleInstruments()
+	{
+	}
+
+	public static InstrumentTuner loadTuner(String instrumentXML,
+			String tuningXML, InstrumentCalculator calculator,
+			PhysicalParameters params) throws Exception
+	{
+		InstrumentTuner tuner = new SimpleInstrumentTuner();
+		tuner.setInstrument(instrumentXML, true);
+		tuner.setTuning(tuningXML, true);
+		tuner.setParams(params);
+		tuner.setCalculator(calculator);
+		return tuner;
+	}
+
+	public static InstrumentTuner loadNaf() throws Exception
+	{
+		return loadTuner(NAF_INSTRUMENT, NAF_TUNING, new NAFCalculator(),
+				new PhysicalParameters(72.0, TemperatureType.F));
+	}
+
+	public static InstrumentTuner loadWhistle() throws Exception
+	{
+		return loadTuner(WHISTLE_INSTRUMENT, WHISTLE_TUNING,
+				new WhistleCalculator(), new PhysicalParameters(27.0,
+						TemperatureType.C, 98.4, 100, 0.04));
+	}
+
+	public static InstrumentTuner loadOptimizationNaf() throws Exception
+	{
+		return loadTuner(OPTIMIZATION_INSTRUMENT, OPTIMIZATION_TUNING,
+				new NAFCalculator(), new PhysicalParameters(22.22,
+						TemperatureType.C));
+	}
+
+	/**
+	 * @return nominal frequency of a fingering's note, or its maximum
+	 *         frequency if the tuning gives no nominal frequency.
+	 */
+	public static double targetFrequency(Fingering fingering)
+	{
+		if (fingering.getNote().getFrequency() != null)
+		{
+			return fingering.getNote().getFrequency();
+		}
+		return fingering.getNote().getFrequencyMax();
+	}
+}
@@ -6,7 +6,7 @@ package com.wwidesigner.geometry;
 import java.util.List;
 
 import com.wwidesigner.util.InvalidFieldHandler;
-import com.wwidesigner.util.SortedPositionList;
+import com.wwidesigner.util.PositionIndex;
 
 /**
  * @author kort
@@ -29,6 +29,16 @@ public class BorePoint implements BorePointInterface
 		this.boreDiameter = diameter;
 	}
 
+	/**
+	 * Create a copy of an existing bore point.
+	 */
+	public BorePoint(BorePoint point)
+	{
+		this.name = point.name;
+		this.borePosition = point.borePosition;
+		this.boreDiameter = point.boreDiameter;
+	}
+
 	/**
 	 * @return the borePosition
 	 */
@@ -105,7 +115,7 @@ public class BorePoint implements BorePointInterface
 	public static double getInterpolatedExtrapolatedBoreDiameter(
 			List<BorePoint> borePoints, double position)
 	{
-		SortedPositionList<BorePoint> sortedPoints = new SortedPositionList<BorePoint>(
+		PositionIndex<BorePoint> sortedPoints = new PositionIndex<BorePoint>(
 				borePoints);
 		BorePoint beforePoint = null;
 		BorePoint afterPoint = null;
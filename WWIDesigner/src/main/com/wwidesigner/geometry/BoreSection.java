@@ -1,5 +1,6 @@
 package com.wwidesigner.geometry;
 
+import com.wwidesigner.geometry.calculation.TubeCoefficients;
 
 public class BoreSection implements ComponentInterface
 {
@@ -8,6 +9,12 @@ public class BoreSection implements ComponentInterface
 	private double mRightRadius;
 	private double rightBorePosition;
 
+	// Frequency-independent transfer matrix coefficients, from left to right
+	// and from right to left, created when first needed and discarded
+	// whenever the section geometry changes.
+	private TubeCoefficients coefficients;
+	private TubeCoefficients reverseCoefficients;
+
 	public BoreSection()
 	{
 
@@ -21,6 +28,19 @@ public class BoreSection implements ComponentInterface
 		rightBorePosition = 0.;
 	}
 
+	/**
+	 * Create a copy of an existing bore section.
+	 */
+	public BoreSection(BoreSection section)
+	{
+		mLength = section.mLength;
+		mLeftRadius = section.mLeftRadius;
+		mRightRadius = section.mRightRadius;
+		rightBorePosition = section.rightBorePosition;
+		coefficients = section.coefficients;
+		reverseCoefficients = section.reverseCoefficients;
+	}
+
 	public double getLength()
 	{
 		return mLength;
@@ -39,6 +59,7 @@ public class BoreSection implements ComponentInterface
 	public void setLength(double length)
 	{
 		mLength = length;
+		clearCoefficients();
 	}
 
 	/**
@@ -48,6 +69,7 @@ public class BoreSection implements ComponentInterface
 	public void setLeftRadius(double leftRadius)
 	{
 		mLeftRadius = leftRadius;
+		clearCoefficients();
 	}
 
 	/**
@@ -57,6 +79,7 @@ public class BoreSection implements ComponentInterface
 	public void setRightRadius(double rightRadius)
 	{
 		mRightRadius = rightRadius;
+		clearCoefficients();
 	}
 
 	/**
@@ -76,4 +99,40 @@ public class BoreSection implements ComponentInterface
 		this.rightBorePosition = aRightBorePosition;
 	}
 
+	/**
+	 * @return frequency-independent coefficients for the transfer matrix of
+	 *         this section, with the left end as source.
+	 */
+	public TubeCoefficients getCoefficients()
+	{
+		TubeCoefficients tube = coefficients;
+		if (tube == null)
+		{
+			tube = new TubeCoefficients(mLength, mLeftRadius, mRightRadius);
+			coefficients = tube;
+		}
+		return tube;
+	}
+
+	/**
+	 * @return frequency-independent coefficients for the transfer matrix of
+	 *         this section, with the right end as source.
+	 */
+	public TubeCoefficients getReverseCoefficients()
+	{
+		TubeCoefficients tube = reverseCoefficients;
+		if (tube == null)
+		{
+			tube = new TubeCoefficients(mLength, mRightRadius, mLeftRadius);
+			reverseCoefficients = tube;
+		}
+		return tube;
+	}
+
+	protected void clearCoefficients()
+	{
+		coefficients = null;
+		reverseCoefficients = null;
+	}
+
 }
\ No newline at end of file
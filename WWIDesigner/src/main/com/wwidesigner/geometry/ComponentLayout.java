@@ -0,0 +1,452 @@
+/**
+ * Record of how Instrument.updateComponents() built the components.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wwidesigner.geometry.calculation.Tube;
+
+/**
+ * The sequence of steps a full rebuild of the instrument components took:
+ * which bore points bound each bore section, and which points were used to
+ * set the bore diameter at the mouthpiece and at each hole.
+ *
+ * During optimization, most geometry changes move holes or bore points
+ * without changing their order.  The same steps then give the same
+ * components, with new dimensions, so update() replays the steps on the
+ * existing BoreSection objects rather than building new ones.  Each
+ * comparison of positions that the rebuild made is checked again during
+ * the replay; if any comes out differently, update() returns false, and
+ * the caller must rebuild the components.
+ *
+ * Points are identified by index: indexes below the number of bore points
+ * refer to the instrument's bore points, in list order; higher indexes
+ * refer to the points the rebuild created at the mouthpiece and holes.
+ *
+ * @author Burton Patkau
+ */
+final class ComponentLayout
+{
+	private static final int STEP_POSITION = 0;
+	private static final int STEP_SECTION = 1;
+	private static final int STEP_SIZE = 5;
+
+	// Geometry the layout was recorded for.
+	private final BorePoint[] borePoints;
+	private final Hole[] holes;
+	private final Mouthpiece mouthpiece;
+	private final Termination termination;
+	// Bore point indexes, and holes, in order of increasing position.
+	private int[] sortedPoints;
+	private Hole[] sortedHoles;
+	private int terminationPoint = -1;
+
+	// Steps, STEP_SIZE ints each.
+	// Position: STEP_POSITION, target, left point, right point,
+	// created point or -1.  Target is -1 for the mouthpiece, or an
+	// index into sortedHoles.
+	// Section: STEP_SECTION, section index, left point, right point,
+	// 1 if the length was zero and adjusted, 0 otherwise.
+	private int[] steps = new int[16 * STEP_SIZE];
+	private int nrSteps = 0;
+	// Left point had the same position as the target, by position step.
+	private boolean[] leftAtTarget = new boolean[16];
+	private final List<BoreSection> sections = new ArrayList<BoreSection>();
+	// Sections made up to the mouthpiece, and whether each went to the
+	// headspace.
+	private int nrMouthpieceSections = 0;
+	private boolean[] inHeadspace;
+	private int nrPoints;
+	private boolean isReplayable = true;
+
+	// Used only while recording.
+	private Map<BorePoint, Integer> pointIndex;
+
+	// Working positions and diameters of the points, during a replay.
+	private double[] pointPosition;
+	private double[] pointDiameter;
+
+	ComponentLayout(List<BorePoint> aBorePoints, List<Hole> aHoles,
+			Mouthpiece aMouthpiece, Termination aTermination)
+	{
+		borePoints = aBorePoints.toArray(new BorePoint[aBorePoints.size()]);
+		if (aHoles == null)
+		{
+			holes = new Hole[0];
+		}
+		else
+		{
+			holes = aHoles.toArray(new Hole[aHoles.size()]);
+		}
+		mouthpiece = aMouthpiece;
+		termination = aTermination;
+		nrPoints = borePoints.length;
+		pointIndex = new IdentityHashMap<BorePoint, Integer>();
+		for (int i = 0; i < borePoints.length; ++i)
+		{
+			pointIndex.put(borePoints[i], i);
+		}
+	}
+
+	/**
+	 * Record the order in which the rebuild sorted the bore points and
+	 * holes.  The replay relies on positions being distinct, so ties make
+	 * the layout unusable.
+	 */
+	void recordOrder(List<BorePoint> aSortedPoints, List<Hole> aSortedHoles)
+	{
+		sortedPoints = new int[aSortedPoints.size()];
+		for (int i = 0; i < sortedPoints.length; ++i)
+		{
+			sortedPoints[i] = indexOf(aSortedPoints.get(i));
+			if (i > 0 && !(aSortedPoints.get(i - 1).getBorePosition()
+					< aSortedPoints.get(i).getBorePosition()))
+			{
+				isReplayable = false;
+			}
+		}
+		sortedHoles = aSortedHoles.toArray(new Hole[aSortedHoles.size()]);
+		for (int i = 1; i < sortedHoles.length; ++i)
+		{
+			if (!(sortedHoles[i - 1].getBorePosition()
+					< sortedHoles[i].getBorePosition()))
+			{
+				isReplayable = false;
+			}
+		}
+	}
+
+	void recordTermination(BorePoint lastPoint)
+	{
+		terminationPoint = indexOf(lastPoint);
+		if (terminationPoint >= borePoints.length)
+		{
+			isReplayable = false;
+		}
+	}
+
+	/**
+	 * Record the bore diameter set at the mouthpiece or a hole.
+	 * @param target - mouthpiece or hole.
+	 * @param left - point to the left of target.
+	 * @param right - point to the right of target.
+	 * @param created - point created at target, or null if right is at
+	 * target.
+	 */
+	void recordPosition(BorePointInterface target, BorePoint left,
+			BorePoint right, BorePoint created)
+	{
+		int targetNr = -1;
+		if (target != mouthpiece)
+		{
+			targetNr = sortedHoleIndex(target);
+		}
+		double position = target.getBorePosition();
+		if (left.getBorePosition() > position)
+		{
+			// Target is above the top of the bore.
+			isReplayable = false;
+		}
+		if (nrSteps >= leftAtTarget.length)
+		{
+			boolean[] newLeft = new boolean[2 * leftAtTarget.length];
+			System.arraycopy(leftAtTarget, 0, newLeft, 0, leftAtTarget.length);
+			leftAtTarget = newLeft;
+		}
+		leftAtTarget[nrSteps] = (left.getBorePosition() == position);
+		int createdNr = -1;
+		if (created != null)
+		{
+			createdNr = nrPoints++;
+			pointIndex.put(created, createdNr);
+		}
+		addStep(STEP_POSITION, targetNr, indexOf(left), indexOf(right),
+				createdNr);
+		if (target == mouthpiece)
+		{
+			// Include the section ending at the mouthpiece, which is
+			// recorded next.
+			nrMouthpieceSections = sections.size() + 1;
+		}
+	}
+
+	/**
+	 * Record a bore section.
+	 * @param adjusted - true if the section had zero length, and the
+	 * position of right was moved to give it a minimal length.
+	 */
+	void recordSection(BorePoint left, BorePoint right, boolean adjusted,
+			BoreSection section)
+	{
+		int rightNr = indexOf(right);
+		if (adjusted && rightNr < borePoints.length)
+		{
+			// The rebuild moved one of the instrument's own bore points.
+			isReplayable = false;
+		}
+		addStep(STEP_SECTION, sections.size(), indexOf(left), rightNr,
+				adjusted ? 1 : 0);
+		sections.add(section);
+	}
+
+	/**
+	 * Finish recording, noting which sections went to the headspace.
+	 */
+	void recordHeadspace(List<BoreSection> headspace)
+	{
+		inHeadspace = new boolean[nrMouthpieceSections];
+		for (int i = 0; i < nrMouthpieceSections; ++i)
+		{
+			BoreSection section = sections.get(i);
+			for (BoreSection headSection : headspace)
+			{
+				if (headSection == section)
+				{
+					inHeadspace[i] = true;
+				}
+			}
+		}
+		pointIndex = null;
+		pointPosition = new double[nrPoints];
+		pointDiameter = new double[nrPoints];
+	}
+
+	/**
+	 * Bring the components up to date with the current dimensions of the
+	 * bore points, holes and mouthpiece, if their order is unchanged.
+	 * @return false if the instrument no longer matches the layout; the
+	 *         components may have been partly updated, and must be rebuilt.
+	 */
+	boolean update(List<BorePoint> aBorePoints, List<Hole> aHoles,
+			Mouthpiece aMouthpiece, Termination aTermination)
+	{
+		if (!isReplayable || pointPosition == null
+				|| aMouthpiece != mouthpiece || aTermination != termination
+				|| aBorePoints == null
+				|| aBorePoints.size() != borePoints.length
+				|| (aHoles == null ? 0 : aHoles.size()) != holes.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < borePoints.length; ++i)
+		{
+			BorePoint point = aBorePoints.get(i);
+			if (point != borePoints[i])
+			{
+				return false;
+			}
+			pointPosition[i] = point.getBorePosition();
+			pointDiameter[i] = point.getBoreDiameter();
+		}
+		for (int i = 0; i < holes.length; ++i)
+		{
+			if (aHoles.get(i) != holes[i])
+			{
+				return false;
+			}
+		}
+		for (int i = 1; i < sortedPoints.length; ++i)
+		{
+			if (!(pointPosition[sortedPoints[i - 1]]
+					< pointPosition[sortedPoints[i]]))
+			{
+				return false;
+			}
+		}
+		for (int i = 1; i < sortedHoles.length; ++i)
+		{
+			if (!(sortedHoles[i - 1].getBorePosition()
+					< sortedHoles[i].getBorePosition()))
+			{
+				return false;
+			}
+		}
+
+		double mouthpiecePosition = mouthpiece.getBorePosition();
+		for (int step = 0; step < nrSteps; ++step)
+		{
+			int base = step * STEP_SIZE;
+			int left = steps[base + 2];
+			int right = steps[base + 3];
+			if (steps[base] == STEP_POSITION)
+			{
+				BorePointInterface target = (steps[base + 1] < 0 ? mouthpiece
+						: sortedHoles[steps[base + 1]]);
+				if (!updatePosition(target, left, right, steps[base + 4],
+						leftAtTarget[step]))
+				{
+					return false;
+				}
+			}
+			else
+			{
+				int sectionNr = steps[base + 1];
+				double length = pointPosition[right] - pointPosition[left];
+				double rightPosition = pointPosition[right];
+				if ((length == 0.) != (steps[base + 4] != 0) || length < 0.)
+				{
+					return false;
+				}
+				if (length == 0.)
+				{
+					length = Tube.MINIMUM_CONE_LENGTH;
+					rightPosition += Tube.MINIMUM_CONE_LENGTH;
+					pointPosition[right] = rightPosition;
+				}
+				if (sectionNr < nrMouthpieceSections
+						&& (rightPosition <= mouthpiecePosition)
+							!= inHeadspace[sectionNr])
+				{
+					return false;
+				}
+				updateSection(sections.get(sectionNr), length,
+						pointDiameter[left] / 2, pointDiameter[right] / 2,
+						rightPosition);
+			}
+		}
+
+		double position = pointPosition[terminationPoint];
+		double diameter = pointDiameter[terminationPoint];
+		if (termination.getBorePosition() != position)
+		{
+			termination.setBorePosition(position);
+		}
+		if (termination.getBoreDiameter() != diameter)
+		{
+			termination.setBoreDiameter(diameter);
+		}
+		return true;
+	}
+
+	/**
+	 * Set the bore diameter at the mouthpiece or a hole, as
+	 * Instrument.processPosition() does.
+	 */
+	private boolean updatePosition(BorePointInterface target, int left,
+			int right, int created, boolean wasLeftAtTarget)
+	{
+		double leftPosition = pointPosition[left];
+		double leftDiameter = pointDiameter[left];
+		double rightPosition = pointPosition[right];
+		double rightDiameter = pointDiameter[right];
+		double thisPosition = target.getBorePosition();
+		if (leftPosition > thisPosition || rightPosition < thisPosition
+				|| (leftPosition == thisPosition) != wasLeftAtTarget
+				|| (rightPosition > thisPosition) != (created >= 0))
+		{
+			return false;
+		}
+
+		double holeBoreDiameter;
+		if (rightDiameter == leftDiameter || thisPosition == leftPosition)
+		{
+			holeBoreDiameter = leftDiameter;
+		}
+		else if (rightPosition > leftPosition)
+		{
+			holeBoreDiameter = leftDiameter + (thisPosition - leftPosition)
+					* (rightDiameter - leftDiameter)
+					/ (rightPosition - leftPosition);
+		}
+		else
+		{
+			holeBoreDiameter = 0.5 * (leftDiameter + rightDiameter);
+		}
+		if (target.getBoreDiameter() != holeBoreDiameter)
+		{
+			target.setBoreDiameter(holeBoreDiameter);
+		}
+		if (created >= 0)
+		{
+			pointPosition[created] = thisPosition;
+			pointDiameter[created] = holeBoreDiameter;
+		}
+		return true;
+	}
+
+	/**
+	 * Change the dimensions of a section, keeping its cached coefficients
+	 * if nothing changed.
+	 */
+	private static void updateSection(BoreSection section, double length,
+			double leftRadius, double rightRadius, double rightPosition)
+	{
+		if (section.getLength() != length)
+		{
+			section.setLength(length);
+		}
+		if (section.getLeftRadius() != leftRadius)
+		{
+			section.setLeftRadius(leftRadius);
+		}
+		if (section.getRightRadius() != rightRadius)
+		{
+			section.setRightRadius(rightRadius);
+		}
+		if (section.getRightBorePosition() != rightPosition)
+		{
+			section.setRightBorePosition(rightPosition);
+		}
+	}
+
+	private void addStep(int kind, int a, int b, int c, int d)
+	{
+		if ((nrSteps + 1) * STEP_SIZE > steps.length)
+		{
+			int[] newSteps = new int[steps.length * 2];
+			System.arraycopy(steps, 0, newSteps, 0, steps.length);
+			steps = newSteps;
+		}
+		int base = nrSteps * STEP_SIZE;
+		steps[base] = kind;
+		steps[base + 1] = a;
+		steps[base + 2] = b;
+		steps[base + 3] = c;
+		steps[base + 4] = d;
+		++nrSteps;
+	}
+
+	private int indexOf(BorePoint point)
+	{
+		Integer index = pointIndex.get(point);
+		if (index == null)
+		{
+			// Not a point the layout knows about.
+			isReplayable = false;
+			return 0;
+		}
+		return index;
+	}
+
+	private int sortedHoleIndex(BorePointInterface target)
+	{
+		for (int i = 0; i < sortedHoles.length; ++i)
+		{
+			if (sortedHoles[i] == target)
+			{
+				return i;
+			}
+		}
+		isReplayable = false;
+		return 0;
+	}
+}
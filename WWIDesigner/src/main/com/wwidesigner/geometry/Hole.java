@@ -1,5 +1,6 @@
 package com.wwidesigner.geometry;
 
+import com.wwidesigner.geometry.calculation.HoleCoefficients;
 import com.wwidesigner.util.InvalidFieldHandler;
 
 public class Hole implements ComponentInterface, BorePointInterface
@@ -13,6 +14,10 @@ public class Hole implements ComponentInterface, BorePointInterface
 
 	protected double boreDiameter;
 
+	// Frequency-independent coefficients cached by the hole calculator,
+	// discarded whenever the hole geometry changes.
+	protected HoleCoefficients coefficients;
+
 	public Hole()
 	{
 
@@ -25,6 +30,24 @@ public class Hole implements ComponentInterface, BorePointInterface
 		this.height = aHeight;
 	}
 
+	/**
+	 * Create a copy of an existing hole, including its key, if any.
+	 */
+	public Hole(Hole hole)
+	{
+		this.name = hole.name;
+		this.height = hole.height;
+		this.position = hole.position;
+		this.diameter = hole.diameter;
+		this.innerCurvatureRadius = hole.innerCurvatureRadius;
+		if (hole.key != null)
+		{
+			this.key = new Key(hole.key);
+		}
+		this.boreDiameter = hole.boreDiameter;
+		this.coefficients = hole.coefficients;
+	}
+
 	/**
 	 * @return the diameter
 	 */
@@ -40,6 +63,7 @@ public class Hole implements ComponentInterface, BorePointInterface
 	public void setDiameter(double aDiameter)
 	{
 		this.diameter = aDiameter;
+		this.coefficients = null;
 	}
 
 	/**
@@ -57,6 +81,7 @@ public class Hole implements ComponentInterface, BorePointInterface
 	public void setHeight(double aHeight)
 	{
 		this.height = aHeight;
+		this.coefficients = null;
 	}
 
 	/**
@@ -126,6 +151,7 @@ public class Hole implements ComponentInterface, BorePointInterface
 		position *= multiplier;
 		diameter *= multiplier;
 		boreDiameter *= multiplier;
+		coefficients = null;
 		if (innerCurvatureRadius != null)
 		{
 			innerCurvatureRadius *= multiplier;
@@ -140,6 +166,7 @@ public class Hole implements ComponentInterface, BorePointInterface
 	public void setBoreDiameter(double aBoreDiameter)
 	{
 		this.boreDiameter = aBoreDiameter;
+		this.coefficients = null;
 	}
 
 	@Override
@@ -156,6 +183,26 @@ public class Hole implements ComponentInterface, BorePointInterface
 	public void setRatio(double alpha)
 	{
 		diameter = alpha * boreDiameter;
+		coefficients = null;
+	}
+
+	/**
+	 * @return frequency-independent coefficients cached by a hole
+	 *         calculator, or null if there are none for the current geometry.
+	 */
+	public HoleCoefficients getCoefficients()
+	{
+		return coefficients;
+	}
+
+	/**
+	 * Cache frequency-independent coefficients for the current geometry.
+	 * Changing the geometry, or calling Instrument.updateComponents(),
+	 * discards them.
+	 */
+	public void setCoefficients(HoleCoefficients aCoefficients)
+	{
+		this.coefficients = aCoefficients;
 	}
 
 	public void checkValidity(InvalidFieldHandler handler, Double minPosition, Double maxPosition)
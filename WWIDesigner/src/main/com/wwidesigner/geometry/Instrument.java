@@ -21,15 +21,17 @@ package com.wwidesigner.geometry;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import com.wwidesigner.geometry.calculation.Tube;
 import com.wwidesigner.util.Constants.LengthType;
 import com.wwidesigner.util.InvalidFieldException;
 import com.wwidesigner.util.InvalidFieldHandler;
-import com.wwidesigner.util.SortedPositionList;
+import com.wwidesigner.util.PositionIndex;
 
 /**
  * @author kort
@@ -62,6 +64,29 @@ public class Instrument implements InstrumentInterface
 	// mouthpiece.headspace contains the list of bore sections with positions
 	// less than the mouthpiece (above the mouthpiece).
 
+	// Change tracking for incremental calculation.  geometryVersion counts
+	// calls to updateComponents(), and calls to checkComponentChanges()
+	// that found a change; componentVersions[i] is the version in
+	// which components[i] last changed, and terminationVersion and
+	// headspaceVersion the versions in which the termination and the
+	// mouthpiece headspace last changed.  componentSignature holds the
+	// values that were compared to detect the changes.
+	protected static final int SIGNATURE_SIZE = 4;
+	protected int geometryVersion = 0;
+	protected int[] componentVersions;
+	protected int terminationVersion = 0;
+	protected int headspaceVersion = 0;
+	protected double[] componentSignature;
+	protected double[] terminationSignature;
+	protected double[] headspaceSignature;
+	// Previous componentSignature, kept to be reused.
+	private double[] spareSignature;
+
+	// How the components were last built, for updating them in place when
+	// only dimensions have changed.  Null until the first full rebuild,
+	// and in copies.
+	private ComponentLayout layout;
+
 	private boolean convertedToMetres = false;
 
 	public Instrument()
@@ -69,6 +94,96 @@ public class Instrument implements InstrumentInterface
 
 	}
 
+	/**
+	 * Create an independent copy of an existing instrument. The copy has the
+	 * same dimensions and length type as the original, in the same state of
+	 * conversion to metres. If updateComponents() has been called on the
+	 * original, the components are copied as well, so the copy is ready for
+	 * calculation without calling updateComponents() again.
+	 * 
+	 * @param instrument
+	 *            - instrument to copy
+	 */
+	public Instrument(Instrument instrument)
+	{
+		this.name = instrument.name;
+		this.lengthType = instrument.lengthType;
+		this.description = instrument.description;
+		this.convertedToMetres = instrument.convertedToMetres;
+		if (instrument.mouthpiece != null)
+		{
+			this.mouthpiece = new Mouthpiece(instrument.mouthpiece);
+		}
+		if (instrument.borePoint != null)
+		{
+			this.borePoint = new ArrayList<BorePoint>(
+					instrument.borePoint.size());
+			for (BorePoint point : instrument.borePoint)
+			{
+				this.borePoint.add(new BorePoint(point));
+			}
+		}
+		// The components list refers to the holes themselves,
+		// so keep track of the copy made of each hole.
+		Map<Hole, Hole> holeCopies = new IdentityHashMap<Hole, Hole>();
+		if (instrument.hole != null)
+		{
+			this.hole = new ArrayList<Hole>(instrument.hole.size());
+			for (Hole originalHole : instrument.hole)
+			{
+				Hole holeCopy = new Hole(originalHole);
+				holeCopies.put(originalHole, holeCopy);
+				this.hole.add(holeCopy);
+			}
+		}
+		if (instrument.termination != null)
+		{
+			this.termination = new Termination(instrument.termination);
+		}
+		if (instrument.components != null)
+		{
+			this.components = new ArrayList<ComponentInterface>(
+					instrument.components.size());
+			for (ComponentInterface component : instrument.components)
+			{
+				if (component instanceof BoreSection)
+				{
+					this.components
+							.add(new BoreSection((BoreSection) component));
+				}
+				else if (holeCopies.containsKey(component))
+				{
+					this.components.add(holeCopies.get(component));
+				}
+				else if (component instanceof Hole)
+				{
+					this.components.add(new Hole((Hole) component));
+				}
+				else
+				{
+					this.components.add(component);
+				}
+			}
+		}
+		this.geometryVersion = instrument.geometryVersion;
+		this.terminationVersion = instrument.terminationVersion;
+		if (instrument.componentVersions != null)
+		{
+			this.componentVersions = instrument.componentVersions.clone();
+			this.componentSignature = instrument.componentSignature.clone();
+		}
+		if (instrument.terminationSignature != null)
+		{
+			this.terminationSignature = instrument.terminationSignature
+					.clone();
+		}
+		this.headspaceVersion = instrument.headspaceVersion;
+		if (instrument.headspaceSignature != null)
+		{
+			this.headspaceSignature = instrument.headspaceSignature.clone();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -380,22 +495,48 @@ public class Instrument implements InstrumentInterface
 	/**
 	 * Creates the instrument Components (BoreSection and filled-out Holes) from
 	 * the raw BorePoints and Holes. <br/>
+	 * If the bore points, holes and mouthpiece are the same objects as for the
+	 * previous call, in the same order of position, the existing components
+	 * are updated in place with the new dimensions, rather than rebuilt. <br/>
 	 * Pre: this instrument is valid. <br/>
 	 * Post: getComponents returns a list of bore sections, holes and the
 	 * mouthpiece, sorted by increasing position.
 	 */
 	public void updateComponents()
+	{
+		if (layout != null && components != null
+				&& layout.update(borePoint, hole, mouthpiece, termination))
+		{
+			trackComponentChanges();
+			return;
+		}
+		rebuildComponents();
+	}
+
+	/**
+	 * Creates the instrument Components from the raw BorePoints and Holes,
+	 * as for updateComponents(), always building new components.
+	 */
+	public void rebuildComponents()
 	{
 		components = new ArrayList<ComponentInterface>();
+		layout = null;
 
 		if (borePoint != null && !borePoint.isEmpty())
 		{
 			// Sort the bore points from lowest (left-most) to highest
 			// (right-most)
 			// position.
-			SortedPositionList<BorePoint> borePointList = makePositionList(
+			PositionIndex<BorePoint> borePointList = makePositionList(
 					borePoint);
 
+			// Sort the holes from lowest to highest.
+			PositionIndex<Hole> holeList = makePositionList(hole);
+
+			layout = new ComponentLayout(borePoint, hole, mouthpiece,
+					termination);
+			layout.recordOrder(borePointList, holeList);
+
 			// Put any bore sections to the left of the mouthpiece position
 			// into the mouthpiece headspace.
 			processMouthpiece(borePointList);
@@ -403,9 +544,6 @@ public class Instrument implements InstrumentInterface
 			// Set the termination to be at the end of the bore.
 			processTermination(borePointList);
 
-			// Sort the holes from lowest to highest.
-			SortedPositionList<Hole> holeList = makePositionList(hole);
-
 			// Process the holes, making sections as needed to include the hole
 			// on the right
 			if (holeList.size() > 0)
@@ -415,6 +553,7 @@ public class Instrument implements InstrumentInterface
 					double rightPosition = currentHole.getBorePosition();
 					makeSections(borePointList, rightPosition);
 					processPosition(borePointList, currentHole);
+					currentHole.setCoefficients(null);
 
 					components.add(currentHole);
 				}
@@ -424,7 +563,262 @@ public class Instrument implements InstrumentInterface
 			double lastPosition = borePointList.getLast().getBorePosition()
 					+ 1.;
 			makeSections(borePointList, lastPosition);
+			layout.recordHeadspace(mouthpiece.getHeadspace());
 		}
+		trackComponentChanges();
+	}
+
+	/**
+	 * Compare the new components with those from the previous call to
+	 * updateComponents(), and record which ones changed. If the number
+	 * or kind of components changed, all components are treated as changed.
+	 */
+	protected void trackComponentChanges()
+	{
+		++geometryVersion;
+		int nrComponents = components.size();
+		double[] signature = spareSignature;
+		if (signature == null
+				|| signature.length != SIGNATURE_SIZE * nrComponents)
+		{
+			signature = new double[SIGNATURE_SIZE * nrComponents];
+		}
+		for (int i = 0; i < nrComponents; ++i)
+		{
+			setSignature(signature, SIGNATURE_SIZE * i, components.get(i));
+		}
+		boolean sameStructure = componentSignature != null
+				&& componentSignature.length == signature.length;
+		if (sameStructure)
+		{
+			// Update the versions in place.
+			for (int i = 0; i < nrComponents; ++i)
+			{
+				int base = SIGNATURE_SIZE * i;
+				for (int j = base; j < base + SIGNATURE_SIZE; ++j)
+				{
+					if (signature[j] != componentSignature[j])
+					{
+						componentVersions[i] = geometryVersion;
+						break;
+					}
+				}
+			}
+		}
+		else
+		{
+			componentVersions = new int[nrComponents];
+			for (int i = 0; i < nrComponents; ++i)
+			{
+				componentVersions[i] = geometryVersion;
+			}
+		}
+		// Swap, keeping the old signature to fill on the next call.
+		spareSignature = componentSignature;
+		componentSignature = signature;
+
+		trackHeadspaceChanges();
+
+		if (termination == null)
+		{
+			terminationVersion = geometryVersion;
+			terminationSignature = null;
+			return;
+		}
+		double flangeDiameter = termination.getFlangeDiameter();
+		double boreDiameter = termination.getBoreDiameter();
+		if (terminationSignature == null)
+		{
+			terminationSignature = new double[2];
+			terminationVersion = geometryVersion;
+		}
+		else if (flangeDiameter != terminationSignature[0]
+				|| boreDiameter != terminationSignature[1])
+		{
+			terminationVersion = geometryVersion;
+		}
+		terminationSignature[0] = flangeDiameter;
+		terminationSignature[1] = boreDiameter;
+	}
+
+	/**
+	 * Compare the dimensions of the holes and the termination with those
+	 * recorded by the last call to updateComponents() or
+	 * checkComponentChanges(), and record any that have changed, as
+	 * updateComponents() would.  This finds changes made
+	 * directly to a hole's diameter, height or key, or to the termination's
+	 * flange, without a call to updateComponents().  Changes to bore points
+	 * and hole positions, which determine the components themselves, still
+	 * take effect only at the next updateComponents().
+	 * 
+	 * @return the geometry version after any changes found.
+	 */
+	public int checkComponentChanges()
+	{
+		if (components == null || componentSignature == null
+				|| componentSignature.length != SIGNATURE_SIZE
+						* components.size())
+		{
+			return geometryVersion;
+		}
+		int newVersion = geometryVersion + 1;
+		boolean changed = false;
+		for (int i = 0; i < components.size(); ++i)
+		{
+			// Bore sections change only in updateComponents().
+			ComponentInterface component = components.get(i);
+			if (component instanceof Hole
+					&& setSignature(componentSignature, SIGNATURE_SIZE * i,
+							component))
+			{
+				componentVersions[i] = newVersion;
+				changed = true;
+			}
+		}
+		if (termination != null && terminationSignature != null
+				&& (termination.getFlangeDiameter() != terminationSignature[0]
+				|| termination.getBoreDiameter() != terminationSignature[1]))
+		{
+			terminationSignature[0] = termination.getFlangeDiameter();
+			terminationSignature[1] = termination.getBoreDiameter();
+			terminationVersion = newVersion;
+			changed = true;
+		}
+		if (changed)
+		{
+			geometryVersion = newVersion;
+		}
+		return geometryVersion;
+	}
+
+	/**
+	 * Store the dimensions of a component that the impedance calculation
+	 * depends on, at signature[base] through signature[base +
+	 * SIGNATURE_SIZE - 1].
+	 * 
+	 * @return true if any stored value changed.
+	 */
+	protected static boolean setSignature(double[] signature, int base,
+			ComponentInterface component)
+	{
+		double kind;
+		double value1;
+		double value2;
+		double value3;
+		if (component instanceof BoreSection)
+		{
+			BoreSection section = (BoreSection) component;
+			kind = 0.0;
+			value1 = section.getLength();
+			value2 = section.getLeftRadius();
+			value3 = section.getRightRadius();
+		}
+		else if (component instanceof Hole)
+		{
+			Hole currentHole = (Hole) component;
+			kind = currentHole.getKey() == null ? 1.0 : 2.0;
+			value1 = currentHole.getDiameter();
+			value2 = currentHole.getHeight();
+			value3 = currentHole.getBoreDiameter();
+		}
+		else
+		{
+			kind = Double.NaN;
+			value1 = signature[base + 1];
+			value2 = signature[base + 2];
+			value3 = signature[base + 3];
+		}
+		boolean changed = kind != signature[base]
+				|| value1 != signature[base + 1]
+				|| value2 != signature[base + 2]
+				|| value3 != signature[base + 3];
+		signature[base] = kind;
+		signature[base + 1] = value1;
+		signature[base + 2] = value2;
+		signature[base + 3] = value3;
+		return changed;
+	}
+
+	/**
+	 * Compare the mouthpiece headspace with that from the previous call to
+	 * updateComponents(), and record whether it changed.
+	 */
+	protected void trackHeadspaceChanges()
+	{
+		List<BoreSection> headspace = (mouthpiece == null ? null
+				: mouthpiece.getHeadspace());
+		int signatureLength = (headspace == null ? 0
+				: SIGNATURE_SIZE * headspace.size());
+		boolean changed = headspaceSignature == null
+				|| headspaceSignature.length != signatureLength;
+		if (changed)
+		{
+			headspaceSignature = new double[signatureLength];
+		}
+		for (int i = 0; i < signatureLength / SIGNATURE_SIZE; ++i)
+		{
+			BoreSection section = headspace.get(i);
+			int base = SIGNATURE_SIZE * i;
+			changed |= setHeadspaceSignature(base, section.getLength());
+			changed |= setHeadspaceSignature(base + 1, section.getLeftRadius());
+			changed |= setHeadspaceSignature(base + 2, section.getRightRadius());
+			changed |= setHeadspaceSignature(base + 3,
+					section.getRightBorePosition());
+		}
+		if (changed)
+		{
+			headspaceVersion = geometryVersion;
+		}
+	}
+
+	private boolean setHeadspaceSignature(int index, double value)
+	{
+		if (headspaceSignature[index] != value)
+		{
+			headspaceSignature[index] = value;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of times updateComponents() has been called, or
+	 *         checkComponentChanges() has found a change, for comparison
+	 *         with getComponentVersion().
+	 */
+	public int getGeometryVersion()
+	{
+		return geometryVersion;
+	}
+
+	/**
+	 * Pre: updateComponents() has been called since the last change to the
+	 * geometry.
+	 * 
+	 * @param componentNr
+	 *            - index of a component in getComponents().
+	 * @return geometry version in which that component last changed.
+	 */
+	public int getComponentVersion(int componentNr)
+	{
+		return componentVersions[componentNr];
+	}
+
+	/**
+	 * @return geometry version in which the termination last changed.
+	 */
+	public int getTerminationVersion()
+	{
+		return terminationVersion;
+	}
+
+	/**
+	 * @return geometry version in which the bore sections of the mouthpiece
+	 *         headspace last changed.
+	 */
+	public int getHeadspaceVersion()
+	{
+		return headspaceVersion;
 	}
 
 	/**
@@ -441,15 +835,19 @@ public class Instrument implements InstrumentInterface
 	}
 
 	protected void processTermination(
-			SortedPositionList<BorePoint> borePointList)
+			PositionIndex<BorePoint> borePointList)
 	{
 		BorePoint lastPoint = borePointList.getLast();
+		if (layout != null)
+		{
+			layout.recordTermination(lastPoint);
+		}
 		termination.setBoreDiameter(lastPoint.getBoreDiameter());
 		termination.setBorePosition(lastPoint.getBorePosition());
 	}
 
 	protected void processMouthpiece(
-			SortedPositionList<BorePoint> borePointList)
+			PositionIndex<BorePoint> borePointList)
 	{
 		double mouthpiecePosition = mouthpiece.getBorePosition();
 
@@ -488,15 +886,21 @@ public class Instrument implements InstrumentInterface
 		// firstPoint.setBorePosition(newPosition);
 	}
 
-	protected void processPosition(SortedPositionList<BorePoint> borePointList,
+	protected void processPosition(PositionIndex<BorePoint> borePointList,
 			BorePointInterface currentPosition)
 	{
 		// Update bore radius at hole
 		// At this stage, the hole must be between the first and second bore
 		// point
-		Iterator<BorePoint> points = borePointList.iterator();
-		BorePoint leftPoint = points.next();
-		BorePoint rightPoint = points.next();
+		if (borePointList.size() < 2)
+		{
+			// No bore below this position.
+			throw new NoSuchElementException(
+					"No bore point below position "
+							+ currentPosition.getBorePosition());
+		}
+		BorePoint leftPoint = borePointList.get(0);
+		BorePoint rightPoint = borePointList.get(1);
 
 		double leftPosition = leftPoint.getBorePosition();
 		double leftDiameter = leftPoint.getBoreDiameter();
@@ -525,15 +929,27 @@ public class Instrument implements InstrumentInterface
 		currentPosition.setBoreDiameter(holeBoreDiameter);
 
 		// Make new bore section up to the hole.
+		BorePoint newPoint = null;
 		if (rightPosition > thisPosition)
 		{
-			rightPoint = new BorePoint();
-			rightPoint.setBoreDiameter(holeBoreDiameter);
-			rightPoint.setBorePosition(thisPosition);
-			borePointList.add(rightPoint);
+			newPoint = new BorePoint();
+			newPoint.setBoreDiameter(holeBoreDiameter);
+			newPoint.setBorePosition(thisPosition);
+			borePointList.add(newPoint);
+		}
+		if (layout != null)
+		{
+			layout.recordPosition(currentPosition, leftPoint, rightPoint,
+					newPoint);
+		}
+		if (newPoint != null)
+		{
+			rightPoint = newPoint;
 		}
 		addSection(leftPoint, rightPoint);
 		borePointList.remove(leftPoint);
+		// addSection may have moved the right point.
+		borePointList.refreshPosition(borePointList.indexOf(rightPoint));
 	}
 
 	/**
@@ -543,22 +959,16 @@ public class Instrument implements InstrumentInterface
 	 * @param borePointList
 	 * @param rightPosition
 	 */
-	protected void makeSections(SortedPositionList<BorePoint> borePointList,
+	protected void makeSections(PositionIndex<BorePoint> borePointList,
 			double rightPosition)
 	{
-		SortedPositionList<BorePoint> unprocessedPoints = borePointList
-				.headList(rightPosition);
-		if (unprocessedPoints.size() > 1)
+		int nrUnprocessed = borePointList.headSize(rightPosition);
+		for (int i = 1; i < nrUnprocessed; ++i)
 		{
-			Iterator<BorePoint> points = unprocessedPoints.iterator();
-			BorePoint leftPoint = points.next();
-			for (; points.hasNext();)
-			{
-				BorePoint rightPoint = points.next();
-				addSection(leftPoint, rightPoint);
-				borePointList.remove(leftPoint);
-				leftPoint = rightPoint;
-			}
+			addSection(borePointList.get(0), borePointList.get(1));
+			borePointList.removeFirst();
+			// addSection may have moved the right point.
+			borePointList.refreshPosition(0);
 		}
 	}
 
@@ -570,7 +980,8 @@ public class Instrument implements InstrumentInterface
 				- leftPoint.getBorePosition();
 		double rightPosition = rightPoint.getBorePosition();
 		// Ensure that the section length > 0
-		if (length == 0.)
+		boolean adjusted = (length == 0.);
+		if (adjusted)
 		{
 			length = Tube.MINIMUM_CONE_LENGTH;
 			rightPosition += Tube.MINIMUM_CONE_LENGTH;
@@ -580,6 +991,10 @@ public class Instrument implements InstrumentInterface
 		section.setLeftRadius(leftPoint.getBoreDiameter() / 2);
 		section.setRightRadius(rightPoint.getBoreDiameter() / 2);
 		section.setRightBorePosition(rightPosition);
+		if (layout != null)
+		{
+			layout.recordSection(leftPoint, rightPoint, adjusted, section);
+		}
 
 		components.add(section);
 	}
@@ -592,13 +1007,10 @@ public class Instrument implements InstrumentInterface
 	 * @return List containing the supplied positions, sorted by increasing
 	 *         position.
 	 */
-	public static <P extends PositionInterface> SortedPositionList<P> makePositionList(
+	public static <P extends PositionInterface> PositionIndex<P> makePositionList(
 			Collection<P> positions)
 	{
-		SortedPositionList<P> sortedList = new SortedPositionList<P>();
-		sortedList.addAll(positions);
-
-		return sortedList;
+		return new PositionIndex<P>(positions);
 	}
 
 	/**
@@ -618,22 +1030,7 @@ public class Instrument implements InstrumentInterface
 		{
 			sortedPositions[i++] = position;
 		}
-		Arrays.sort(sortedPositions, new Comparator<PositionInterface>()
-		{
-			public int compare(PositionInterface first,
-					PositionInterface second)
-			{
-				if (first.getBorePosition() < second.getBorePosition())
-				{
-					return -1;
-				}
-				if (first.getBorePosition() > second.getBorePosition())
-				{
-					return 1;
-				}
-				return 0;
-			}
-		});
+		Arrays.sort(sortedPositions, PositionIndex.POSITION_ORDER);
 
 		return sortedPositions;
 	}
@@ -16,6 +16,23 @@ public class Key
 	protected double wallThickness;
 	protected double chimneyHeight;
 
+	public Key()
+	{
+	}
+
+	/**
+	 * Create a copy of an existing key.
+	 */
+	public Key(Key key)
+	{
+		this.diameter = key.diameter;
+		this.holeDiameter = key.holeDiameter;
+		this.height = key.height;
+		this.thickness = key.thickness;
+		this.wallThickness = key.wallThickness;
+		this.chimneyHeight = key.chimneyHeight;
+	}
+
 	/**
 	 * @return the diameter
 	 */
@@ -19,6 +19,7 @@
  */
 package com.wwidesigner.geometry;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.wwidesigner.util.InvalidFieldHandler;
@@ -46,6 +47,50 @@ public class Mouthpiece implements ComponentInterface, MouthpieceInterface,
 	protected List<BoreSection> headspace;
 	protected double boreDiameter;
 
+	public Mouthpiece()
+	{
+	}
+
+	/**
+	 * Create a copy of an existing mouthpiece, including its headspace.
+	 */
+	public Mouthpiece(Mouthpiece mouthpiece)
+	{
+		this.position = mouthpiece.position;
+		this.beta = mouthpiece.beta;
+		if (mouthpiece.embouchureHole != null)
+		{
+			this.embouchureHole = new EmbouchureHole(mouthpiece.embouchureHole);
+		}
+		if (mouthpiece.fipple != null)
+		{
+			this.fipple = new Fipple(mouthpiece.fipple);
+		}
+		if (mouthpiece.singleReed != null)
+		{
+			this.singleReed = new SingleReed(mouthpiece.singleReed);
+		}
+		if (mouthpiece.doubleReed != null)
+		{
+			this.doubleReed = new DoubleReed(mouthpiece.doubleReed);
+		}
+		if (mouthpiece.lipReed != null)
+		{
+			this.lipReed = new LipReed(mouthpiece.lipReed);
+		}
+		this.gainFactor = mouthpiece.gainFactor;
+		if (mouthpiece.headspace != null)
+		{
+			this.headspace = new ArrayList<BoreSection>(
+					mouthpiece.headspace.size());
+			for (BoreSection section : mouthpiece.headspace)
+			{
+				this.headspace.add(new BoreSection(section));
+			}
+		}
+		this.boreDiameter = mouthpiece.boreDiameter;
+	}
+
 	/**
 	 * Gets the value of the position property.
 	 * 
@@ -464,6 +509,19 @@ public class Mouthpiece implements ComponentInterface, MouthpieceInterface,
 		protected double airstreamLength;
 		protected double airstreamHeight;
 
+		public EmbouchureHole()
+		{
+		}
+
+		public EmbouchureHole(EmbouchureHole hole)
+		{
+			this.length = hole.length;
+			this.width = hole.width;
+			this.height = hole.height;
+			this.airstreamLength = hole.airstreamLength;
+			this.airstreamHeight = hole.airstreamHeight;
+		}
+
 		/**
 		 * Gets the embouchure hole length (size in longitudinal direction).
 		 */
@@ -620,6 +678,20 @@ public class Mouthpiece implements ComponentInterface, MouthpieceInterface,
 		protected Double windwayLength;
 		protected Double windwayHeight;
 
+		public Fipple()
+		{
+		}
+
+		public Fipple(Fipple fipple)
+		{
+			this.windowWidth = fipple.windowWidth;
+			this.windowLength = fipple.windowLength;
+			this.fippleFactor = fipple.fippleFactor;
+			this.windowHeight = fipple.windowHeight;
+			this.windwayLength = fipple.windwayLength;
+			this.windwayHeight = fipple.windwayHeight;
+		}
+
 		/**
 		 * @return the windowWidth
 		 */
@@ -785,6 +857,15 @@ public class Mouthpiece implements ComponentInterface, MouthpieceInterface,
 	{
 		protected double alpha;
 
+		public SingleReed()
+		{
+		}
+
+		public SingleReed(SingleReed reed)
+		{
+			this.alpha = reed.alpha;
+		}
+
 		/**
 		 * @return the alpha
 		 */
@@ -828,6 +909,16 @@ public class Mouthpiece implements ComponentInterface, MouthpieceInterface,
 		protected double alpha;
 		protected double crowFreq;
 
+		public DoubleReed()
+		{
+		}
+
+		public DoubleReed(DoubleReed reed)
+		{
+			this.alpha = reed.alpha;
+			this.crowFreq = reed.crowFreq;
+		}
+
 		/**
 		 * @return the alpha
 		 */
@@ -897,6 +988,15 @@ public class Mouthpiece implements ComponentInterface, MouthpieceInterface,
 	{
 		protected double alpha;
 
+		public LipReed()
+		{
+		}
+
+		public LipReed(LipReed reed)
+		{
+			this.alpha = reed.alpha;
+		}
+
 		/**
 		 * @return the alpha
 		 */
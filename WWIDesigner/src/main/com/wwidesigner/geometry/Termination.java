@@ -17,6 +17,15 @@ public class Termination extends BorePoint implements TerminationInterface
 	{
 	}
 
+	/**
+	 * Create a copy of an existing termination.
+	 */
+	public Termination(Termination termination)
+	{
+		super(termination);
+		this.flangeDiameter = termination.flangeDiameter;
+	}
+
 	/**
 	 * @return the flangeDiameter
 	 */
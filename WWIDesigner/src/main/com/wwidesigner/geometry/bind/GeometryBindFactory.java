@@ -20,7 +20,7 @@ public class GeometryBindFactory extends BindFactory
 	{
 	}
 
-	public static BindFactory getInstance()
+	public static synchronized BindFactory getInstance()
 	{
 		if (instance == null)
 		{
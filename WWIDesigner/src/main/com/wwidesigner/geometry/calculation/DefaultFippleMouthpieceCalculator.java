@@ -18,36 +18,64 @@
  */
 package com.wwidesigner.geometry.calculation;
 
-import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.geometry.BoreSection;
 import com.wwidesigner.geometry.Mouthpiece;
 import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.util.AirState;
+import com.wwidesigner.util.Constants.TemperatureType;
 import com.wwidesigner.util.PhysicalParameters;
 import com.wwidesigner.util.SimplePhysicalParameters;
 
 public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 {
-	private SimplePhysicalParameters mParams;
+	/**
+	 * Simplified physical parameters, and the temperature they were
+	 * calculated for.
+	 */
+	private static final class SimpleAir
+	{
+		final double temperature;
+		final SimplePhysicalParameters params;
+
+		SimpleAir(AirState air)
+		{
+			temperature = air.getTemperature();
+			params = new SimplePhysicalParameters(temperature,
+					TemperatureType.C);
+		}
+	}
+
+	// Recalculated only when the temperature changes, rather than on
+	// every call.
+	private volatile SimpleAir mSimpleAir;
 	private static final double DEFAULT_WINDWAY_HEIGHT = 0.00078740d;
 	private static final double AIR_GAMMA = 1.4018297351222222d;
 
 	@Override
 	protected TransferMatrix calcTransferMatrix(Mouthpiece mouthpiece,
-			double waveNumber, PhysicalParameters parameters)
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result)
 	{
 		if (mouthpiece.isPressureNode())
 		{
 			// Resort to default if this is not a flow-node mouthpiece.
-			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters);
+			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters,
+					result);
 		}
 		// Use a simplified version of PhysicalParameters: no editable pressure
 		// nor CO2 concentration. This mouthpiece representation gives very
 		// wrong answers when they are varied.
 		// The SimplePhysicalParameters gives correct answers for varying
 		// temperature and humidity, all that a NAF maker is likely to measure.
-		mParams = new SimplePhysicalParameters(parameters);
+		AirState air = parameters.getAirState();
+		SimpleAir simpleAir = mSimpleAir;
+		if (simpleAir == null || simpleAir.temperature != air.getTemperature())
+		{
+			simpleAir = new SimpleAir(air);
+			mSimpleAir = simpleAir;
+		}
 
 		double radius = 0.5*mouthpiece.getBoreDiameter();
 		double z0 = parameters.calcZ0(radius);
@@ -58,11 +86,10 @@ public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 		double cos_kl = FastMath.cos(k_delta_l);
 		double sin_kl = FastMath.sin(k_delta_l);
 
-		Complex A = new Complex(cos_kl, r_rad * sin_kl / z0);
-		Complex B = new Complex(0., 1.).multiply(sin_kl * z0).add(r_rad * cos_kl);
-		Complex C = new Complex(0., 1.).multiply(sin_kl / z0);
-		Complex D = new Complex(cos_kl);
-		return new TransferMatrix(A, B, C, D);
+		// A = cos_kl + i r_rad sin_kl / z0, B = r_rad cos_kl + i sin_kl z0,
+		// C = i sin_kl / z0, D = cos_kl.
+		return result.set(cos_kl, r_rad * sin_kl / z0, r_rad * cos_kl,
+				sin_kl * z0, 0., sin_kl / z0, cos_kl, 0.);
 	}
 
 	protected double calcKDeltaL(Mouthpiece mouthpiece, double omega, double z0)
@@ -85,7 +112,7 @@ public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 	protected double calcJYC(Mouthpiece mouthpiece, double omega)
 	{
 		double gamma = AIR_GAMMA; // mParams.getGamma();
-		double speedOfSound = mParams.getSpeedOfSound();
+		double speedOfSound = mSimpleAir.params.getSpeedOfSound();
 		double v = 2. * calcHeadspaceVolume(mouthpiece);
 
 		double result = -(omega * v) / (gamma * speedOfSound * speedOfSound);
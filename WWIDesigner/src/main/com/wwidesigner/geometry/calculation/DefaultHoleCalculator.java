@@ -85,6 +85,7 @@ public class DefaultHoleCalculator extends HoleCalculator
 	public void setFingerAdjustment(double aFingerAdj)
 	{
 		this.fingerAdjustment = aFingerAdj;
+		settingsChanged();
 	}
 
 	public double getHoleSizeMult()
@@ -95,6 +96,7 @@ public class DefaultHoleCalculator extends HoleCalculator
 	public void setHoleSizeMult(double holeSizeMult)
 	{
 		mHoleSizeMult = holeSizeMult;
+		settingsChanged();
 	}
 
 	/*
@@ -191,44 +193,34 @@ public class DefaultHoleCalculator extends HoleCalculator
 	public TransferMatrix calcTransferMatrix(Hole hole, boolean isOpen,
 			double waveNumber, PhysicalParameters parameters)
 	{
-		double radius = mHoleSizeMult * hole.getDiameter() / 2.;
-		double boreRadius = hole.getBoreDiameter() / 2.;
-		Complex Ys = Complex.ZERO; // Shunt admittance == 1/Zs
-		Complex Za = Complex.ZERO; // Series impedance
+		return calcTransferMatrix(hole, isOpen, waveNumber, parameters,
+				new TransferMatrix());
+	}
 
-		double Z0h = parameters.calcZ0(radius); // Characteristic impedance of
-												// hole.
-		double delta = radius / boreRadius;
-		double delta2 = delta * delta;
-
-		// Equation 8.
-		double tm = 0.125d * radius * delta * (1. + 0.207d * delta * delta2);
-		// From Equation 2.3.12 from Lefebvre 2010.
-		// double outerDelta = radius / (boreRadius + hole.getHeight());
-		// tm = tm - 0.125d * (radius * outerDelta)
-		// * (1 + 0.207d * outerDelta * outerDelta * outerDelta);
-		double te = hole.getHeight() + tm;
-		// Equation 31.
-		double ti = radius * (0.822d + delta * (-0.095d + delta * (-1.566d
-				+ delta * (2.138d + delta * (-1.640d + delta * 0.502d)))));
-		double tiCorrected = radius
-				* (0.822d + delta * (-0.095d + delta * (-1.566d + delta
-						* (2.138d + delta * (-1.640d + delta * 0.502d)))));
+	@Override
+	public TransferMatrix calcTransferMatrix(Hole hole, boolean isOpen,
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result)
+	{
+		HoleCoefficients hc = getCoefficients(hole);
+		// Shunt admittance == 1/Zs
+		double YsRe = 0.;
+		double YsIm = 0.;
 
+		// Characteristic impedance of hole.
+		double Z0h = hc.getZ0(parameters.getAirState());
 		double ta = 0.;
 
 		if (isOpen)
 		{
-			double kb = waveNumber * radius;
-			double ka = waveNumber * boreRadius;
+			double kb = waveNumber * hc.radius;
+			double ka = waveNumber * hc.boreRadius;
 
 			// Equation 33.
-			ta = (-0.35d
-					+ 0.06d * FastMath.tanh(2.7d * hole.getHeight() / radius))
-					* radius * delta2;
+			ta = hc.taOpen;
 
 			// Equation 31 times equation 32.
-			ti = tiCorrected * (1. + (1. - 4.56d * delta + 6.55d * delta2) * ka
+			double ti = hc.ti * (1. + hc.tiFactor * ka
 					* (0.17d + ka * (0.92d + ka * (0.16d - 0.29d * ka))));
 
 			// Normalized radiation resistance, real part of Zs, per equation 3,
@@ -236,85 +228,170 @@ public class DefaultHoleCalculator extends HoleCalculator
 			double Rr = 0.25d * kb * kb;
 			// Radiation length correction (equation 10 with Zr/Z0h = jk*tr
 			// without real part).
-			// Equation 11 times radius.
 			// (Both Dalmont, et al., 2001, and Dickens, 2007, obtained
 			// larger values experimentally.)
-			double tr = radius * (0.822d - 0.47d * FastMath
-					.pow(radius / (boreRadius + hole.getHeight()), 0.8d));
-			// Benade and Murday, 1967.
-			// tr = 0.64d * radius * (1.0 + 0.32d *
-			// FastMath.log(0.3d/outerDelta));
 
 			// Equation 3 and 7, inverted.
 			double kttotal = waveNumber * ti
-					+ FastMath.tan(waveNumber * (te + tr));
-			Ys = Complex.ONE
-					.divide(Complex.I.multiply(kttotal).add(Rr).multiply(Z0h));
+					+ FastMath.tan(waveNumber * (hc.te + hc.tr));
+			double ZsRe = Rr * Z0h;
+			double ZsIm = kttotal * Z0h;
+			double scale = 1.0 / (ZsRe * ZsRe + ZsIm * ZsIm);
+			YsRe = ZsRe * scale;
+			YsIm = - ZsIm * scale;
 
 		}
 		else if (isPlugged)
 		{
 			// Tonehole is fully plugged. Ignore the hole entirely.
 			ta = 0.;
-			Ys = Complex.ZERO;
 		}
 		else if (hole.getKey() == null)
 		{
 			// Tonehole closed by player's finger.
-			// Equation 34, revised constants to better fit figure 13.
-			// ta = (-0.12d - 0.17d * FastMath.tanh(
-			ta = (-0.20d
-					- 0.10d * FastMath.tanh(2.4d * hole.getHeight() / radius))
-					* radius * delta2;
-			double tf = 0.0;
-			// Dickens, 2007, from data limited to bore radius 7.5 mm.
-			// tf = 0.76d * radius * delta;
-			if (fingerAdjustment > 0.0)
-			{
-				// Approximate curve fit.
-				tf = radius * radius / fingerAdjustment;
-				// if (tf > te)
-				// {
-				// tf = te;
-				// fingerAdjustment = te / (radius * delta);
-				// }
-				// Estimated from volume removed by finger divided by hole area.
-				// double h = FingerRadius - FastMath.sqrt(FingerRadius *
-				// FingerRadius
-				// - radius * radius);
-				// tf = h * (3.0d + h * h / (radius * radius))/6.0d;
-			}
+			ta = hc.taFinger;
 			// Equation 16, inverted.
-			double tankt = FastMath.tan(waveNumber * (te - tf));
-			Ys = Complex.valueOf(0.0,
-					tankt / (Z0h * (1.0 - waveNumber * ti * tankt)));
+			double tankt = FastMath.tan(waveNumber * (hc.te - hc.tf));
+			YsIm = tankt / (Z0h * (1.0 - waveNumber * hc.ti * tankt));
 		}
 		else
 		{
 			// Tonehole closed by key, not yet implemented.
-			ta = (-0.12d
-					- 0.17d * FastMath.tanh(2.4d * hole.getHeight() / radius))
-					* radius * delta2;
-			double tankt = FastMath.tan(waveNumber * te);
-			Ys = Complex.valueOf(0.0,
-					tankt / (Z0h * (1.0 - waveNumber * ti * tankt)));
+			ta = hc.taKey;
+			double tankt = FastMath.tan(waveNumber * hc.te);
+			YsIm = tankt / (Z0h * (1.0 - waveNumber * hc.ti * tankt));
 		}
 
 		// Equation 4, 6.
 		// double Z0 = parameters.calcZ0(boreRadius);
 		// Z0 == Z0h * delta*delta
-		Za = Complex.I.multiply(Z0h * delta2 * waveNumber * ta);
-		Complex Za_Zs = Za.multiply(Ys);
+		// Series impedance, Za, is purely imaginary.
+		double ZaIm = Z0h * hc.delta2 * waveNumber * ta;
+		double Za_ZsRe = - ZaIm * YsIm;
+		double Za_ZsIm = ZaIm * YsRe;
 
 		// Transfer matrix (equation 2).
-		Complex A = Za_Zs.divide(2.).add(1.);
-		Complex B = Za.multiply(Za_Zs.divide(4.).add(1.));
-		Complex C = Ys;
-		TransferMatrix result = new TransferMatrix(A, B, C, A);
+		double Are = 0.5 * Za_ZsRe + 1.;
+		double Aim = 0.5 * Za_ZsIm;
+		double Bre = - ZaIm * 0.25 * Za_ZsIm;
+		double Bim = ZaIm * (0.25 * Za_ZsRe + 1.);
 
 		// assert result.determinant() == Complex.ONE;
 
-		return result;
+		return result.set(Are, Aim, Bre, Bim, YsRe, YsIm, Are, Aim);
+	}
+
+	/**
+	 * Calculate the transfer matrix as above, and its derivative with
+	 * respect to wave number.
+	 */
+	@Override
+	public TransferMatrix calcTransferMatrix(Hole hole, boolean isOpen,
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result, TransferMatrix derivative)
+	{
+		HoleCoefficients hc = getCoefficients(hole);
+		// Shunt admittance == 1/Zs, and its derivative.
+		double YsRe = 0.;
+		double YsIm = 0.;
+		double dYsRe = 0.;
+		double dYsIm = 0.;
+
+		double Z0h = hc.getZ0(parameters.getAirState());
+		double ta = 0.;
+
+		if (isOpen)
+		{
+			double kb = waveNumber * hc.radius;
+			double ka = waveNumber * hc.boreRadius;
+
+			ta = hc.taOpen;
+
+			double ti = hc.ti * (1. + hc.tiFactor * ka
+					* (0.17d + ka * (0.92d + ka * (0.16d - 0.29d * ka))));
+			double dTi = hc.ti * hc.tiFactor * hc.boreRadius
+					* (0.17d + ka * (1.84d + ka * (0.48d - 1.16d * ka)));
+
+			double Rr = 0.25d * kb * kb;
+			double dRr = 0.5d * kb * hc.radius;
+
+			double tankt = FastMath.tan(waveNumber * (hc.te + hc.tr));
+			double kttotal = waveNumber * ti + tankt;
+			double dKttotal = ti + waveNumber * dTi
+					+ (1.0 + tankt * tankt) * (hc.te + hc.tr);
+			double ZsRe = Rr * Z0h;
+			double ZsIm = kttotal * Z0h;
+			double scale = 1.0 / (ZsRe * ZsRe + ZsIm * ZsIm);
+			YsRe = ZsRe * scale;
+			YsIm = - ZsIm * scale;
+			// d/dk Ys = - d/dk Zs * Ys^2.
+			double dZsRe = dRr * Z0h;
+			double dZsIm = dKttotal * Z0h;
+			double Ys2Re = YsRe * YsRe - YsIm * YsIm;
+			double Ys2Im = 2.0 * YsRe * YsIm;
+			dYsRe = - (dZsRe * Ys2Re - dZsIm * Ys2Im);
+			dYsIm = - (dZsRe * Ys2Im + dZsIm * Ys2Re);
+		}
+		else if (isPlugged)
+		{
+			ta = 0.;
+		}
+		else
+		{
+			double tl;
+			if (hole.getKey() == null)
+			{
+				ta = hc.taFinger;
+				tl = hc.te - hc.tf;
+			}
+			else
+			{
+				ta = hc.taKey;
+				tl = hc.te;
+			}
+			double tankt = FastMath.tan(waveNumber * tl);
+			double dTankt = (1.0 + tankt * tankt) * tl;
+			double den = 1.0 - waveNumber * hc.ti * tankt;
+			double dDen = - hc.ti * (tankt + waveNumber * dTankt);
+			YsIm = tankt / (Z0h * den);
+			dYsIm = (dTankt * den - tankt * dDen) / (Z0h * den * den);
+		}
+
+		double ZaIm = Z0h * hc.delta2 * waveNumber * ta;
+		double dZaIm = Z0h * hc.delta2 * ta;
+		double Za_ZsRe = - ZaIm * YsIm;
+		double Za_ZsIm = ZaIm * YsRe;
+		double dZa_ZsRe = - (dZaIm * YsIm + ZaIm * dYsIm);
+		double dZa_ZsIm = dZaIm * YsRe + ZaIm * dYsRe;
+
+		double Are = 0.5 * Za_ZsRe + 1.;
+		double Aim = 0.5 * Za_ZsIm;
+		double Bre = - ZaIm * 0.25 * Za_ZsIm;
+		double Bim = ZaIm * (0.25 * Za_ZsRe + 1.);
+		double dAre = 0.5 * dZa_ZsRe;
+		double dAim = 0.5 * dZa_ZsIm;
+		double dBre = - 0.25 * (dZaIm * Za_ZsIm + ZaIm * dZa_ZsIm);
+		double dBim = dZaIm * (0.25 * Za_ZsRe + 1.) + ZaIm * 0.25 * dZa_ZsRe;
+
+		derivative.set(dAre, dAim, dBre, dBim, dYsRe, dYsIm, dAre, dAim);
+		return result.set(Are, Aim, Bre, Bim, YsRe, YsIm, Are, Aim);
+	}
+
+	/**
+	 * Get the frequency-independent coefficients for a hole, computing them
+	 * if the hole has none cached for the current settings of this
+	 * calculator.  The hole discards its cached coefficients when its
+	 * geometry changes.
+	 */
+	protected HoleCoefficients getCoefficients(Hole hole)
+	{
+		HoleCoefficients hc = hole.getCoefficients();
+		if (hc == null || !hc.isFor(mHoleSizeMult, fingerAdjustment))
+		{
+			hc = new HoleCoefficients(hole, mHoleSizeMult, fingerAdjustment);
+			hole.setCoefficients(hc);
+		}
+		return hc;
 	}
 
 }
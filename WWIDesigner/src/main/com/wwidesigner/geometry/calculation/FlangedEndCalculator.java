@@ -32,4 +32,18 @@ public class FlangedEndCalculator extends TerminationCalculator
 		return new StateVector( Zend );
 	}
 
+	@Override
+	public StateVector calcStateVector(Termination termination,
+			boolean isOpen, double wave_number, PhysicalParameters params,
+			StateVector result)
+	{
+		if (! isOpen)
+		{
+			return result.setClosedEnd();
+		}
+		Complex Zend = Tube.calcZflanged(params.calcFrequency(wave_number),
+				0.5*termination.getBoreDiameter(), params);
+		return result.setImpedance( Zend.getReal(), Zend.getImaginary() );
+	}
+
 }
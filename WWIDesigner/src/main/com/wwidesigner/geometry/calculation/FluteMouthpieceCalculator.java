@@ -39,6 +39,9 @@ import com.wwidesigner.util.PhysicalParameters;
  */
 public class FluteMouthpieceCalculator extends MouthpieceCalculator
 {
+	// Scratch state vector for the headspace, reused across calls.
+	protected StateVector headspaceScratch = new StateVector();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -48,40 +51,67 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 	 */
 	@Override
 	protected TransferMatrix calcTransferMatrix(Mouthpiece mouthpiece,
-			double waveNumber, PhysicalParameters parameters)
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result)
 	{
 		if (mouthpiece.isPressureNode())
 		{
 			// Resort to default if this is not a flow-node mouthpiece.
-			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters);
+			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters,
+					result);
 		}
 
 		double freq = parameters.calcFrequency(waveNumber);
 		
 		Complex Zwindow = calcZ(mouthpiece, freq, parameters);
-		return new TransferMatrix(Complex.ONE, Zwindow, Complex.ZERO, Complex.ONE);		
+		return result.set(1.0, 0.0, Zwindow.getReal(), Zwindow.getImaginary(),
+				0.0, 0.0, 1.0, 0.0);
 	}
 	
 	@Override
 	public StateVector calcStateVector(StateVector boreState,
 			Mouthpiece mouthpiece, double waveNumber,
-			PhysicalParameters parameters)
+			PhysicalParameters parameters, StateVector result)
 	{
-		StateVector sv = new StateVector(boreState);
+		return calcStateVector(boreState,
+				calcHeadspaceState(mouthpiece, waveNumber, parameters,
+						headspaceScratch),
+				mouthpiece, waveNumber, parameters, result);
+	}
 
+	@Override
+	public StateVector calcHeadspaceState(Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters,
+			StateVector result)
+	{
 		List<BoreSection> headspace = mouthpiece.getHeadspace();
 		if (headspace.size() > 0)
 		{
-			StateVector headspaceState = calcHeadspace_transmission(headspace, waveNumber, parameters);
+			return calcHeadspace_transmission(headspace, waveNumber,
+					parameters, result);
+		}
+		return null;
+	}
 
+	@Override
+	public StateVector calcStateVector(StateVector boreState,
+			StateVector headspaceState, Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters,
+			StateVector result)
+	{
+		if (headspaceState != null)
+		{
 			// Assume the mouthpiece sees the bore impedance in parallel with
 			// the headspace impedance.
-			sv = boreState.parallel(headspaceState);
+			boreState.parallel(headspaceState, result);
+		}
+		else
+		{
+			result.set(boreState);
 		}
 
-		sv = calcTransferMatrix(mouthpiece, waveNumber, parameters)
-				.multiply(sv);
-		return sv;
+		return calcTransferMatrix(mouthpiece, waveNumber, parameters, tmScratch)
+				.multiply(result, result);
 	}
 
 	/**
@@ -128,17 +158,33 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 	protected StateVector calcHeadspace_transmission(List<BoreSection> headspace,
 			double waveNumber, PhysicalParameters physicalParams)
 	{
-		StateVector headspaceState = StateVector.ClosedEnd();
-		TransferMatrix tm;
+		return calcHeadspace_transmission(headspace, waveNumber,
+				physicalParams, new StateVector());
+	}
+
+	/**
+	 * Calculate a state vector for the headspace into an existing state vector,
+	 * assuming it is long enough to act as a duct with a closed upper end.
+	 * @param headspace - the bore sections of the headspace
+	 * @param waveNumber - 2 pi f / c
+	 * @param physicalParams
+	 * @param headspaceState - state vector to receive the headspace state
+	 * @return headspaceState
+	 */
+	protected StateVector calcHeadspace_transmission(List<BoreSection> headspace,
+			double waveNumber, PhysicalParameters physicalParams,
+			StateVector headspaceState)
+	{
+		headspaceState.setClosedEnd();
 		for (int componentNr = 0; componentNr < headspace.size(); ++componentNr)
 		{
 			ComponentInterface component = headspace.get(componentNr);
 			assert component instanceof BoreSection;
 			BoreSection section = (BoreSection) component;
-			tm = Tube.calcConeMatrix(waveNumber, section.getLength(),
-					section.getRightRadius(), section.getLeftRadius(),
-					physicalParams);
-			headspaceState = tm.multiply(headspaceState);
+			Tube.calcConeMatrix(waveNumber,
+					section.getReverseCoefficients(), physicalParams,
+					tmScratch)
+					.multiply(headspaceState, headspaceState);
 		}
 		return headspaceState;
 	}
@@ -180,4 +226,14 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 						* rightRadius);
 		return volume;
 	}
+
+	@Override
+	public MouthpieceCalculator copy()
+	{
+		FluteMouthpieceCalculator copy = (FluteMouthpieceCalculator) super
+				.copy();
+		copy.headspaceScratch = new StateVector();
+		return copy;
+	}
+
 }
@@ -11,9 +11,92 @@ import com.wwidesigner.util.PhysicalParameters;
  * @author kort
  * 
  */
-public abstract class HoleCalculator
+public abstract class HoleCalculator implements Cloneable
 {
+	// Identifies the current settings of this calculator.
+	private long settingsStamp = SettingsStamp.next();
+
 	public abstract TransferMatrix calcTransferMatrix(Hole hole,
 			boolean isOpen, double waveNumber, PhysicalParameters parameters);
 
+	/**
+	 * Calculate the transfer matrix of a hole into an existing matrix.
+	 * Derived classes should override this to avoid allocation on the
+	 * impedance hot path; the default delegates to the allocating version.
+	 * 
+	 * @param result
+	 *            - matrix to receive the transfer matrix
+	 * @return result
+	 */
+	public TransferMatrix calcTransferMatrix(Hole hole, boolean isOpen,
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result)
+	{
+		return result.set(calcTransferMatrix(hole, isOpen, waveNumber,
+				parameters));
+	}
+
+	/**
+	 * Calculate the transfer matrix of a hole, and its derivative with
+	 * respect to wave number, into existing matrices.
+	 * The default estimates the derivative by central differences;
+	 * derived classes may override this with an analytic derivative.
+	 * 
+	 * @param result
+	 *            - matrix to receive the transfer matrix
+	 * @param derivative
+	 *            - matrix to receive d/dk of the transfer matrix
+	 * @return result
+	 */
+	public TransferMatrix calcTransferMatrix(Hole hole, boolean isOpen,
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result, TransferMatrix derivative)
+	{
+		double step = waveNumber * TransferMatrix.DIFFERENCE_STEP;
+		calcTransferMatrix(hole, isOpen, waveNumber + step, parameters,
+				derivative);
+		calcTransferMatrix(hole, isOpen, waveNumber - step, parameters,
+				result);
+		derivative.setDifference(derivative, result, 0.5 / step);
+		return calcTransferMatrix(hole, isOpen, waveNumber, parameters,
+				result);
+	}
+
+	/**
+	 * @return stamp identifying the current settings of this calculator.
+	 *         The stamp changes whenever a setting that affects the
+	 *         results changes, and differs from that of every other
+	 *         calculator except copies with the same settings.
+	 */
+	public long getSettingsStamp()
+	{
+		return settingsStamp;
+	}
+
+	/**
+	 * Record a change to a setting that affects the results of this
+	 * calculator, so that results cached from the old settings are not
+	 * reused.  Derived classes call this from each such setter.
+	 */
+	protected void settingsChanged()
+	{
+		settingsStamp = SettingsStamp.next();
+	}
+
+	/**
+	 * Create a copy of this calculator that can be used independently of
+	 * the original, for instance on another thread.
+	 */
+	public HoleCalculator copy()
+	{
+		try
+		{
+			return (HoleCalculator) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
 }
@@ -0,0 +1,152 @@
+/**
+ * Frequency-independent coefficients for the transfer matrix of a tonehole.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.calculation;
+
+import org.apache.commons.math3.util.FastMath;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.util.AirState;
+
+/**
+ * The parts of DefaultHoleCalculator.calcTransferMatrix() that depend only on
+ * the hole geometry and the calculator settings, computed once per geometry.
+ * Equation numbers refer to Lefebvre and Scavone, 2012. Instances are
+ * immutable, so they can be shared between copies of a hole and between
+ * threads. They also remember the characteristic impedance of the hole for
+ * the most recent air state.
+ *
+ * @author Burton Patkau
+ */
+public final class HoleCoefficients
+{
+	// Calculator settings these coefficients were computed for.
+	final double holeSizeMult;
+	final double fingerAdjustment;
+
+	final double radius;
+	final double boreRadius;
+	// Cross-sectional area of the hole, for the characteristic impedance.
+	final double area;
+	final double delta;
+	final double delta2;
+	// Equation 8, plus height.
+	final double te;
+	// Equation 31.
+	final double ti;
+	// Coefficient of ka in equation 32.
+	final double tiFactor;
+	// Equation 33, for an open hole.
+	final double taOpen;
+	// Radiation length correction, equation 11 times radius.
+	final double tr;
+	// Equation 34 with revised constants, for a hole closed by a finger,
+	// and the finger intrusion length.
+	final double taFinger;
+	final double tf;
+	// Equation 34, for a hole closed by a key.
+	final double taKey;
+
+	/**
+	 * Characteristic impedance of the hole for one value of rho * c.
+	 */
+	private static final class Impedance
+	{
+		final double rhoC;
+		final double z0;
+
+		Impedance(AirState air, double area)
+		{
+			rhoC = air.getRhoC();
+			z0 = air.calcZ0FromArea(area);
+		}
+	}
+
+	// Replaced, never modified, so a thread that reads a stale value
+	// merely recomputes it.
+	private volatile Impedance holeZ0;
+
+	/**
+	 * Compute the coefficients for a hole.
+	 * @param hole - hole geometry, in metres.
+	 * @param aHoleSizeMult - multiplier applied to the hole diameter.
+	 * @param aFingerAdjustment - adjustment for finger intrusion on a
+	 * closed hole, in metres; zero for no intrusion.
+	 */
+	public HoleCoefficients(Hole hole, double aHoleSizeMult,
+			double aFingerAdjustment)
+	{
+		holeSizeMult = aHoleSizeMult;
+		fingerAdjustment = aFingerAdjustment;
+		radius = aHoleSizeMult * hole.getDiameter() / 2.;
+		boreRadius = hole.getBoreDiameter() / 2.;
+		area = Math.PI * radius * radius;
+		delta = radius / boreRadius;
+		delta2 = delta * delta;
+
+		double tm = 0.125d * radius * delta * (1. + 0.207d * delta * delta2);
+		te = hole.getHeight() + tm;
+		ti = radius * (0.822d + delta * (-0.095d + delta * (-1.566d
+				+ delta * (2.138d + delta * (-1.640d + delta * 0.502d)))));
+		tiFactor = 1. - 4.56d * delta + 6.55d * delta2;
+		taOpen = (-0.35d
+				+ 0.06d * FastMath.tanh(2.7d * hole.getHeight() / radius))
+				* radius * delta2;
+		tr = radius * (0.822d - 0.47d * FastMath
+				.pow(radius / (boreRadius + hole.getHeight()), 0.8d));
+		taFinger = (-0.20d
+				- 0.10d * FastMath.tanh(2.4d * hole.getHeight() / radius))
+				* radius * delta2;
+		if (aFingerAdjustment > 0.0)
+		{
+			// Approximate curve fit.
+			tf = radius * radius / aFingerAdjustment;
+		}
+		else
+		{
+			tf = 0.0;
+		}
+		taKey = (-0.12d
+				- 0.17d * FastMath.tanh(2.4d * hole.getHeight() / radius))
+				* radius * delta2;
+	}
+
+	/**
+	 * Test whether these coefficients were computed for specified
+	 * calculator settings.
+	 */
+	public boolean isFor(double aHoleSizeMult, double aFingerAdjustment)
+	{
+		return holeSizeMult == aHoleSizeMult
+				&& fingerAdjustment == aFingerAdjustment;
+	}
+
+	/**
+	 * @return characteristic impedance of the hole, Z0(radius).
+	 */
+	double getZ0(AirState air)
+	{
+		Impedance value = holeZ0;
+		if (value == null || value.rhoC != air.getRhoC())
+		{
+			value = new Impedance(air, area);
+			holeZ0 = value;
+		}
+		return value.z0;
+	}
+}
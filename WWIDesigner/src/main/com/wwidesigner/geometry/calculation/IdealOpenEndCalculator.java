@@ -28,4 +28,27 @@ public class IdealOpenEndCalculator extends TerminationCalculator
 		return StateVector.OpenEnd();
 	}
 
+	@Override
+	public StateVector calcStateVector(Termination termination,
+			boolean isOpen, double wave_number, PhysicalParameters params,
+			StateVector result)
+	{
+		if (! isOpen)
+		{
+			return result.setClosedEnd();
+		}
+		return result.setOpenEnd();
+	}
+
+	@Override
+	public StateVector calcStateVector(Termination termination,
+			boolean isOpen, double wave_number, PhysicalParameters params,
+			StateVector result, StateVector derivative)
+	{
+		// Ideal ends do not vary with frequency.
+		derivative.set(0.0, 0.0, 0.0, 0.0);
+		return calcStateVector(termination, isOpen, wave_number, params,
+				result);
+	}
+
 }
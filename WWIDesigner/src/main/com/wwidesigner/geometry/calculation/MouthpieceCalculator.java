@@ -3,8 +3,6 @@
  */
 package com.wwidesigner.geometry.calculation;
 
-import org.apache.commons.math3.complex.Complex;
-
 import com.wwidesigner.geometry.Mouthpiece;
 import com.wwidesigner.math.StateVector;
 import com.wwidesigner.math.TransferMatrix;
@@ -14,8 +12,17 @@ import com.wwidesigner.util.PhysicalParameters;
  * @author kort
  * 
  */
-public class MouthpieceCalculator
+public class MouthpieceCalculator implements Cloneable
 {
+	// Scratch matrix, reused across calls to avoid allocation.
+	protected TransferMatrix tmScratch = new TransferMatrix();
+	// Scratch state vectors for the state vector derivative.
+	protected StateVector svScratch = new StateVector();
+	protected StateVector svDerivativeScratch = new StateVector();
+
+	// Identifies the current settings of this calculator.
+	private long settingsStamp = SettingsStamp.next();
+
 	public MouthpieceCalculator()
 	{
 	}
@@ -30,6 +37,24 @@ public class MouthpieceCalculator
 	 */
 	protected TransferMatrix calcTransferMatrix(Mouthpiece mouthpiece,
 			double waveNumber, PhysicalParameters parameters)
+	{
+		return calcTransferMatrix(mouthpiece, waveNumber, parameters,
+				new TransferMatrix());
+	}
+
+	/**
+	 * Calculate Transfer Matrix that represents effect of mouthpiece
+	 * in series with the bore, into an existing matrix.
+	 * Derived classes override this version, rather than the allocating one.
+	 * @param mouthpiece - instrument mouthpiece description.
+	 * @param waveNumber - k = 2*pi*f/c
+	 * @param parameters
+	 * @param result - matrix to receive the TM for effect of mouthpiece
+	 * @return result
+	 */
+	protected TransferMatrix calcTransferMatrix(Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result)
 	{
 		// Default mouthpiece is a pure open end for flow-node mouthpiece,
 		// and a pure closed end for a pressure-node mouthpiece.
@@ -37,9 +62,9 @@ public class MouthpieceCalculator
 		{
 			double headRadius = 0.5 * mouthpiece.getBoreDiameter();
 			double z0 = parameters.calcZ0(headRadius);
-	        return new TransferMatrix(Complex.ZERO, new Complex(z0, 0), Complex.ONE, Complex.ZERO);
+			return result.set(0.0, 0.0, z0, 0.0, 1.0, 0.0, 0.0, 0.0);
 		}
-		return TransferMatrix.makeIdentity();
+		return result.setIdentity();
 	}
 
 	/**
@@ -54,9 +79,152 @@ public class MouthpieceCalculator
 	 */
 	public StateVector calcStateVector(StateVector boreState, Mouthpiece mouthpiece,
 			double waveNumber, PhysicalParameters parameters)
+	{
+		return calcStateVector(boreState, mouthpiece, waveNumber, parameters,
+				new StateVector());
+	}
+
+	/**
+	 * For flow-node mouthpiece, return [P, U] as seen by driving source.
+	 * For pressure-node mouthpiece, return [Z0*U, P] as seen by driving source.
+	 * Derived classes override this version, rather than the allocating one.
+	 * 
+	 * @param boreState - [P, U] of bore, as seen by mouthpiece.
+	 * @param mouthpiece - instrument mouthpiece description.
+	 * @param waveNumber - k = 2*pi*f/c
+	 * @param parameters
+	 * @param result - state vector to receive the state seen by driving
+	 *            source; may be the same object as boreState.
+	 * @return result
+	 */
+	public StateVector calcStateVector(StateVector boreState, Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters, StateVector result)
 	{
 		// Default state vector calculation assumes the transfer matrix includes
 		// the effect of any headspace. 
-		return calcTransferMatrix(mouthpiece, waveNumber, parameters).multiply(boreState);
+		return calcTransferMatrix(mouthpiece, waveNumber, parameters, tmScratch)
+				.multiply(boreState, result);
+	}
+
+	/**
+	 * Calculate the state vector of the mouthpiece headspace, for
+	 * calculators that treat the headspace as a branch in parallel with the
+	 * bore.  The headspace state depends on the wave number and the
+	 * headspace geometry, but not on the fingering, so an instrument
+	 * calculator may calculate it once for all fingerings, and pass it to
+	 * calcStateVector(boreState, headspaceState, ...).
+	 * 
+	 * @param mouthpiece - instrument mouthpiece description.
+	 * @param waveNumber - k = 2*pi*f/c
+	 * @param parameters
+	 * @param result - state vector to receive the headspace state.
+	 * @return result, or null if the mouthpiece has no headspace branch.
+	 *         The default calculator has none.
+	 */
+	public StateVector calcHeadspaceState(Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters,
+			StateVector result)
+	{
+		return null;
 	}
+
+	/**
+	 * As calcStateVector(boreState, mouthpiece, waveNumber, parameters,
+	 * result), using a headspace state already calculated by
+	 * calcHeadspaceState() at the same wave number.
+	 * 
+	 * @param headspaceState - result of calcHeadspaceState(), possibly null.
+	 */
+	public StateVector calcStateVector(StateVector boreState,
+			StateVector headspaceState, Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters,
+			StateVector result)
+	{
+		return calcStateVector(boreState, mouthpiece, waveNumber, parameters,
+				result);
+	}
+
+	/**
+	 * Calculate the state vector seen by the driving source, and its
+	 * derivative with respect to wave number, given the bore state and
+	 * its derivative.  The state vector is a linear function of the bore
+	 * state, so the derivative is d/dk of the mouthpiece effect applied to
+	 * boreState, plus the mouthpiece effect applied to boreDerivative.
+	 * The default estimates the first term by central differences;
+	 * derived classes may override this with an analytic derivative.
+	 * 
+	 * @param boreState - [P, U] of bore, as seen by mouthpiece.
+	 * @param boreDerivative - d/dk of boreState.
+	 * @param mouthpiece - instrument mouthpiece description.
+	 * @param waveNumber - k = 2*pi*f/c
+	 * @param parameters
+	 * @param result - state vector to receive the state seen by driving
+	 *            source; may be the same object as boreState.
+	 * @param resultDerivative - state vector to receive d/dk of result;
+	 *            may be the same object as boreDerivative.
+	 * @return result
+	 */
+	public StateVector calcStateVector(StateVector boreState,
+			StateVector boreDerivative, Mouthpiece mouthpiece,
+			double waveNumber, PhysicalParameters parameters,
+			StateVector result, StateVector resultDerivative)
+	{
+		StateVector state = svScratch.set(boreState);
+		StateVector stateDerivative = svDerivativeScratch.set(boreDerivative);
+		double step = waveNumber * TransferMatrix.DIFFERENCE_STEP;
+		calcStateVector(state, mouthpiece, waveNumber + step, parameters,
+				resultDerivative);
+		calcStateVector(state, mouthpiece, waveNumber - step, parameters,
+				result);
+		resultDerivative.setDifference(resultDerivative, result, 0.5 / step);
+		calcStateVector(stateDerivative, mouthpiece, waveNumber, parameters,
+				result);
+		resultDerivative.add(result);
+		return calcStateVector(state, mouthpiece, waveNumber, parameters,
+				result);
+	}
+
+	/**
+	 * @return stamp identifying the current settings of this calculator.
+	 *         The stamp changes whenever a setting that affects the
+	 *         results changes, and differs from that of every other
+	 *         calculator except copies with the same settings.
+	 */
+	public long getSettingsStamp()
+	{
+		return settingsStamp;
+	}
+
+	/**
+	 * Record a change to a setting that affects the results of this
+	 * calculator, so that results cached from the old settings are not
+	 * reused.  Derived classes call this from each such setter.
+	 */
+	protected void settingsChanged()
+	{
+		settingsStamp = SettingsStamp.next();
+	}
+
+	/**
+	 * Create a copy of this calculator that can be used independently of
+	 * the original, for instance on another thread.  Scratch objects are
+	 * not shared with the original.
+	 */
+	public MouthpieceCalculator copy()
+	{
+		MouthpieceCalculator copy;
+		try
+		{
+			copy = (MouthpieceCalculator) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		copy.tmScratch = new TransferMatrix();
+		copy.svScratch = new StateVector();
+		copy.svDerivativeScratch = new StateVector();
+		return copy;
+	}
+
 }
@@ -0,0 +1,48 @@
+/**
+ * Source of stamps identifying the settings of component calculators.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.calculation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of stamps identifying the settings of component calculators.
+ * Each calculator takes a new stamp when it is created, and whenever one
+ * of its settings changes, so a cache of calculated values can tell
+ * whether the calculator that produced them has since been changed or
+ * replaced by comparing stamps.  Stamps are never reused, and are never
+ * zero.
+ *
+ * @author Burton Patkau
+ */
+public final class SettingsStamp
+{
+	private static final AtomicLong lastStamp = new AtomicLong();
+
+	private SettingsStamp()
+	{
+	}
+
+	/**
+	 * @return a stamp different from every stamp returned before.
+	 */
+	public static long next()
+	{
+		return lastStamp.incrementAndGet();
+	}
+}
@@ -31,4 +31,21 @@ public class SimpleBoreSectionCalculator extends BoreSectionCalculator
 		return Tube.calcConeMatrix(waveNumber, length, leftRadius, rightRadius, params);
 	}
 
+	@Override
+	public TransferMatrix calcTransferMatrix(BoreSection section,
+			double waveNumber, PhysicalParameters params, TransferMatrix result)
+	{
+		return Tube.calcConeMatrix(waveNumber, section.getCoefficients(),
+				params, result);
+	}
+
+	@Override
+	public TransferMatrix calcTransferMatrix(BoreSection section,
+			double waveNumber, PhysicalParameters params, TransferMatrix result,
+			TransferMatrix derivative)
+	{
+		return Tube.calcConeMatrix(waveNumber, section.getCoefficients(),
+				params, result, derivative);
+	}
+
 }
@@ -18,8 +18,6 @@
  */
 package com.wwidesigner.geometry.calculation;
 
-import org.apache.commons.math3.complex.Complex;
-
 import com.wwidesigner.geometry.Mouthpiece;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
@@ -42,12 +40,14 @@ public class SimpleReedMouthpieceCalculator extends MouthpieceCalculator
 	 */
 	@Override
 	protected TransferMatrix calcTransferMatrix(Mouthpiece mouthpiece,
-			double waveNumber, PhysicalParameters parameters)
+			double waveNumber, PhysicalParameters parameters,
+			TransferMatrix result)
 	{
 		if (! mouthpiece.isPressureNode())
 		{
 			// Resort to default if this is not a pressure-node mouthpiece.
-			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters);
+			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters,
+					result);
 		}
 
 		double freq = parameters.calcFrequency(waveNumber);
@@ -77,10 +77,7 @@ public class SimpleReedMouthpieceCalculator extends MouthpieceCalculator
 		double headRadius = 0.5 * mouthpiece.getBoreDiameter();
 		double z0 = parameters.calcZ0(headRadius);
 		double X = alpha*1.0e-3d*freq + beta;
-        TransferMatrix closedEnd = new TransferMatrix(
-        		new Complex(0.0, X), new Complex(z0, 0.0), 
-        		new Complex(1.0, 0.0), Complex.ZERO);
-		return closedEnd;
+		return result.set(0.0, X, z0, 0.0, 1.0, 0.0, 0.0, 0.0);
 	}
 	
 }
@@ -5,14 +5,18 @@ package com.wwidesigner.geometry.calculation;
 
 import com.wwidesigner.geometry.Termination;
 import com.wwidesigner.math.StateVector;
+import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
 
 /**
  * @author kort
  * 
  */
-public abstract class TerminationCalculator
+public abstract class TerminationCalculator implements Cloneable
 {
+	// Identifies the current settings of this calculator.
+	private long settingsStamp = SettingsStamp.next();
+
 	public TerminationCalculator()
 	{
 	}
@@ -43,4 +47,88 @@ public abstract class TerminationCalculator
 	 */
 	public abstract StateVector calcStateVector(Termination termination,
 			boolean isOpen, double wave_number, PhysicalParameters params);
+
+	/**
+	 * Calculate a state vector describing the specified termination
+	 * into an existing state vector.
+	 * Derived classes should override this to avoid allocation on the
+	 * impedance hot path; the default delegates to the allocating version.
+	 * 
+	 * @param termination
+	 * @param isOpen - true if the bore end is open, false if it is closed.
+	 * @param wave_number
+	 * @param params
+	 * @param result - state vector to receive [P, U].
+	 * @return result
+	 */
+	public StateVector calcStateVector(Termination termination,
+			boolean isOpen, double wave_number, PhysicalParameters params,
+			StateVector result)
+	{
+		return result.set(calcStateVector(termination, isOpen, wave_number,
+				params));
+	}
+
+	/**
+	 * Calculate a state vector describing the specified termination,
+	 * and its derivative with respect to wave number,
+	 * into existing state vectors.
+	 * The default estimates the derivative by central differences;
+	 * derived classes may override this with an analytic derivative.
+	 * 
+	 * @param result - state vector to receive [P, U].
+	 * @param derivative - state vector to receive d/dk [P, U].
+	 * @return result
+	 */
+	public StateVector calcStateVector(Termination termination,
+			boolean isOpen, double wave_number, PhysicalParameters params,
+			StateVector result, StateVector derivative)
+	{
+		double step = wave_number * TransferMatrix.DIFFERENCE_STEP;
+		calcStateVector(termination, isOpen, wave_number + step, params,
+				derivative);
+		calcStateVector(termination, isOpen, wave_number - step, params,
+				result);
+		derivative.setDifference(derivative, result, 0.5 / step);
+		return calcStateVector(termination, isOpen, wave_number, params,
+				result);
+	}
+
+	/**
+	 * @return stamp identifying the current settings of this calculator.
+	 *         The stamp changes whenever a setting that affects the
+	 *         results changes, and differs from that of every other
+	 *         calculator except copies with the same settings.
+	 */
+	public long getSettingsStamp()
+	{
+		return settingsStamp;
+	}
+
+	/**
+	 * Record a change to a setting that affects the results of this
+	 * calculator, so that results cached from the old settings are not
+	 * reused.  Derived classes call this from each such setter.
+	 */
+	protected void settingsChanged()
+	{
+		settingsStamp = SettingsStamp.next();
+	}
+
+	/**
+	 * Create a copy of this calculator that can be used independently of
+	 * the original, for instance on another thread.
+	 */
+	public TerminationCalculator copy()
+	{
+		try
+		{
+			return (TerminationCalculator) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
 }
@@ -1,6 +1,5 @@
 package com.wwidesigner.geometry.calculation;
 
-import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.geometry.Termination;
@@ -13,19 +12,19 @@ public class ThickFlangedOpenEndCalculator extends TerminationCalculator
 	public StateVector calcStateVector(Termination termination,
 			boolean isOpen, double wave_number, PhysicalParameters params)
 	{
-		if (! isOpen)
-		{
-			return StateVector.ClosedEnd();
-		}
-		Complex Z = calcZ(termination, wave_number, params).multiply(
-				params.calcZ0(termination.getBoreDiameter() / 2.));
-
-		return new StateVector(Z);
+		return calcStateVector(termination, isOpen, wave_number, params,
+				new StateVector());
 	}
 
-	private static Complex calcZ(Termination termination,
-			double wave_number, PhysicalParameters params)
+	@Override
+	public StateVector calcStateVector(Termination termination,
+			boolean isOpen, double wave_number, PhysicalParameters params,
+			StateVector result)
 	{
+		if (! isOpen)
+		{
+			return result.setClosedEnd();
+		}
 		double a = termination.getBoreDiameter() / 2.;
 		double b = termination.getFlangeDiameter() / 2.;
 
@@ -41,9 +40,19 @@ public class ThickFlangedOpenEndCalculator extends TerminationCalculator
 		double R0 = (1. + 0.2d * ka - 0.084d * ka * ka)
 				/ (1. + 0.2d * ka + (0.5d - 0.084d) * ka * ka);
 
-		Complex R = Complex.I.multiply(-2. * delta_circ * ka).exp()
-				.multiply(-R0);
+		// R = -R0 * exp(-2i * delta_circ * ka).
+		double phase = 2. * delta_circ * ka;
+		double Rre = - R0 * FastMath.cos(phase);
+		double Rim = R0 * FastMath.sin(phase);
+
+		// Z = Z0 * (1 + R) / (1 - R).
+		double z0 = params.calcZ0(a);
+		double denRe = 1. - Rre;
+		double scale = z0 / (denRe * denRe + Rim * Rim);
+		double numRe = 1. + Rre;
+		double Zre = (numRe * denRe - Rim * Rim) * scale;
+		double Zim = (Rim * denRe + numRe * Rim) * scale;
 
-		return R.add(1.).divide(R.negate().add(1.));
+		return result.setImpedance(Zre, Zim);
 	}
 }
@@ -22,6 +22,7 @@ import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.util.AirState;
 import com.wwidesigner.util.PhysicalParameters;
 
 /**
@@ -159,14 +160,88 @@ public class Tube
 	public static TransferMatrix calcCylinderMatrix(double waveNumber, 
 			double length, double radius, PhysicalParameters params)
 	{
-		double Zc = params.calcZ0(radius);
-		double epsilon = params.getAlphaConstant()/(radius * FastMath.sqrt(waveNumber));
-		Complex gammaL = new Complex( epsilon, 1.0d+epsilon ).multiply( waveNumber * length );
-		Complex coshL = gammaL.cosh();
-		Complex sinhL = gammaL.sinh();
-        TransferMatrix result = new TransferMatrix(coshL, sinhL.multiply(Zc), sinhL.divide(Zc), coshL);
-        
-		return result;
+		return calcCylinderMatrix(waveNumber, length, radius, params,
+				new TransferMatrix());
+	}
+
+	/**
+	 * Calculate the transfer matrix of a cylinder, without allocating.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param length - length of the cylinder, in metres.
+	 * @param radius - radius of the cylinder, in metres.
+	 * @param params - physical parameters
+	 * @param result - matrix to receive the transfer matrix
+	 * @return result
+	 */
+	public static TransferMatrix calcCylinderMatrix(double waveNumber, 
+			double length, double radius, PhysicalParameters params,
+			TransferMatrix result)
+	{
+		return calcCylinderMatrix(waveNumber, length, radius,
+				params.getAirState().calcZ0(radius), params, result);
+	}
+
+	/**
+	 * Calculate the transfer matrix of a cylinder with a known
+	 * characteristic impedance, without allocating.
+	 */
+	protected static TransferMatrix calcCylinderMatrix(double waveNumber,
+			double length, double radius, double Zc, PhysicalParameters params,
+			TransferMatrix result)
+	{
+		AirState air = params.getAirState();
+		double epsilon = air.getAlphaConstant()/(radius * air.getSqrtWaveNumber(waveNumber));
+		// gammaL = (epsilon + i(1 + epsilon)) * k * L.
+		double gammaLre = epsilon * waveNumber * length;
+		double gammaLim = (1.0d + epsilon) * waveNumber * length;
+		double coshRe = FastMath.cosh(gammaLre);
+		double sinhRe = FastMath.sinh(gammaLre);
+		double cosIm = FastMath.cos(gammaLim);
+		double sinIm = FastMath.sin(gammaLim);
+		double coshLre = coshRe * cosIm;
+		double coshLim = sinhRe * sinIm;
+		double sinhLre = sinhRe * cosIm;
+		double sinhLim = coshRe * sinIm;
+
+		return result.set(coshLre, coshLim, sinhLre * Zc, sinhLim * Zc,
+				sinhLre / Zc, sinhLim / Zc, coshLre, coshLim);
+	}
+
+	/**
+	 * Calculate the transfer matrix of a cylinder with a known
+	 * characteristic impedance, and its derivative with respect to
+	 * wave number, without allocating.
+	 */
+	protected static TransferMatrix calcCylinderMatrix(double waveNumber,
+			double length, double radius, double Zc, PhysicalParameters params,
+			TransferMatrix result, TransferMatrix derivative)
+	{
+		AirState air = params.getAirState();
+		double epsilon = air.getAlphaConstant()/(radius * air.getSqrtWaveNumber(waveNumber));
+		double gammaLre = epsilon * waveNumber * length;
+		double gammaLim = (1.0d + epsilon) * waveNumber * length;
+		// epsilon varies as 1/sqrt(k), so d/dk (epsilon * k) = epsilon/2.
+		double dGammaLre = 0.5d * epsilon * length;
+		double dGammaLim = (1.0d + 0.5d * epsilon) * length;
+		double coshRe = FastMath.cosh(gammaLre);
+		double sinhRe = FastMath.sinh(gammaLre);
+		double cosIm = FastMath.cos(gammaLim);
+		double sinIm = FastMath.sin(gammaLim);
+		double coshLre = coshRe * cosIm;
+		double coshLim = sinhRe * sinIm;
+		double sinhLre = sinhRe * cosIm;
+		double sinhLim = coshRe * sinIm;
+
+		// d/dk cosh(gammaL) = sinh(gammaL) * d/dk gammaL, and vice versa.
+		double dCoshLre = sinhLre * dGammaLre - sinhLim * dGammaLim;
+		double dCoshLim = sinhLre * dGammaLim + sinhLim * dGammaLre;
+		double dSinhLre = coshLre * dGammaLre - coshLim * dGammaLim;
+		double dSinhLim = coshLre * dGammaLim + coshLim * dGammaLre;
+
+		derivative.set(dCoshLre, dCoshLim, dSinhLre * Zc, dSinhLim * Zc,
+				dSinhLre / Zc, dSinhLim / Zc, dCoshLre, dCoshLim);
+		return result.set(coshLre, coshLim, sinhLre * Zc, sinhLim * Zc,
+				sinhLre / Zc, sinhLim / Zc, coshLre, coshLim);
 	}
 
 	/**
@@ -180,61 +255,257 @@ public class Tube
 	 */
 	public static TransferMatrix calcConeMatrix(double waveNumber, 
 			double length, double sourceRadius, double loadRadius, PhysicalParameters params)
+	{
+		return calcConeMatrix(waveNumber, length, sourceRadius, loadRadius,
+				params, new TransferMatrix());
+	}
+
+	/**
+	 * Calculate the transfer matrix of a conical tube, without allocating.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param length - length of the tube, in metres.
+	 * @param sourceRadius - radius of source end the tube, in metres.
+	 * @param loadRadius - radius of load end the tube, in metres.
+	 * @param params - physical parameters
+	 * @param result - matrix to receive the transfer matrix
+	 * @return result
+	 */
+	public static TransferMatrix calcConeMatrix(double waveNumber, 
+			double length, double sourceRadius, double loadRadius,
+			PhysicalParameters params, TransferMatrix result)
+	{
+		return calcConeMatrix(waveNumber,
+				new TubeCoefficients(length, sourceRadius, loadRadius), params,
+				result);
+	}
+
+	/**
+	 * Calculate the transfer matrix of a conical tube, without allocating,
+	 * from precomputed frequency-independent coefficients.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param tube - coefficients describing the tube geometry.
+	 * @param params - physical parameters
+	 * @param result - matrix to receive the transfer matrix
+	 * @return result
+	 */
+	public static TransferMatrix calcConeMatrix(double waveNumber,
+			TubeCoefficients tube, PhysicalParameters params,
+			TransferMatrix result)
 	{
 		// From: Antoine Lefebvre and Jean Kergomard.
+		AirState air = params.getAirState();
 		
-		if ( sourceRadius == loadRadius )
+		if ( tube.isCylinder )
 		{
-			return calcCylinderMatrix(waveNumber, length, sourceRadius, params);
+			return calcCylinderMatrix(waveNumber, tube.length,
+					tube.sourceRadius, tube.getSourceZ0(air),
+					params, result);
 		}
 
 		// Mean complex wave vector along the whole cone, from Lefebvre and Kergomard.
-		double alpha_0 = params.getAlphaConstant()/FastMath.sqrt(waveNumber);
+		double alpha_0 = air.getLossFactor(waveNumber);
 		double epsilon;
-		if (FastMath.abs(loadRadius - sourceRadius) <= 0.00001 * sourceRadius)
+		if (tube.isNearCylinder)
 		{
 			// Use limiting value as loadRadius approaches sourceRadius.
-			epsilon = alpha_0/loadRadius;
+			epsilon = alpha_0/tube.loadRadius;
 		}
 		else
 		{
-			epsilon = alpha_0 / (loadRadius - sourceRadius)
-					* FastMath.log(loadRadius / sourceRadius);
+			epsilon = alpha_0 / tube.radiusDiff * tube.logRatio;
+		}
+		// kMeanL = (1 + epsilon - i epsilon) * k * L.
+		// Length is limited to MINIMUM_CONE_LENGTH;
+		// length of zero leads to a divide-by-zero below.
+		double kL = waveNumber * tube.effectiveLength;
+		double kMeanLre = (1.0d + epsilon) * kL;
+		double kMeanLim = - epsilon * kL;
+
+		// Cotangents of theta_in and theta_out, as real multiples of 1/kMeanL. 
+		double invScale = 1.0 / (kMeanLre * kMeanLre + kMeanLim * kMeanLim);
+		double invKLre = kMeanLre * invScale;
+		double invKLim = - kMeanLim * invScale;
+		double cotInRe = tube.ratioIn * invKLre;
+		double cotInIm = tube.ratioIn * invKLim;
+		double cotOutRe = tube.ratioOut * invKLre;
+		double cotOutIm = tube.ratioOut * invKLim;
+
+		// sine and cosine of kMean * L.
+		double sinRe = FastMath.sin(kMeanLre);
+		double cosRe = FastMath.cos(kMeanLre);
+		double coshIm = FastMath.cosh(kMeanLim);
+		double sinhIm = FastMath.sinh(kMeanLim);
+		double sinKLre = sinRe * coshIm;
+		double sinKLim = cosRe * sinhIm;
+		double cosKLre = cosRe * coshIm;
+		double cosKLim = - sinRe * sinhIm;
+
+		double loadRatio = tube.loadRatio;
+		double sourceRatio = tube.sourceRatio;
+
+		// A = cos_kL * loadRatio - sin_kL * cot_in.
+		double Are = cosKLre * loadRatio - (sinKLre * cotInRe - sinKLim * cotInIm);
+		double Aim = cosKLim * loadRatio - (sinKLre * cotInIm + sinKLim * cotInRe);
+		// B = i * sin_kL * Z0(load) * loadRatio.
+		double bScale = tube.getLoadZ0(air) * loadRatio;
+		double Bre = - sinKLim * bScale;
+		double Bim = sinKLre * bScale;
+		// C = i * loadRatio/Z0(source)
+		//     * (sin_kL * (cot_out * cot_in + 1) + cos_kL * (cot_out - cot_in)).
+		double prodRe = cotOutRe * cotInRe - cotOutIm * cotInIm + 1.0;
+		double prodIm = cotOutRe * cotInIm + cotOutIm * cotInRe;
+		double diffRe = cotOutRe - cotInRe;
+		double diffIm = cotOutIm - cotInIm;
+		double sumRe = sinKLre * prodRe - sinKLim * prodIm
+				+ cosKLre * diffRe - cosKLim * diffIm;
+		double sumIm = sinKLre * prodIm + sinKLim * prodRe
+				+ cosKLre * diffIm + cosKLim * diffRe;
+		double cScale = tube.loadRadius/(tube.sourceRadius
+				* tube.getSourceZ0(air));
+		double Cre = - sumIm * cScale;
+		double Cim = sumRe * cScale;
+		// D = cos_kL * sourceRatio + sin_kL * cot_out.
+		double Dre = cosKLre * sourceRatio + (sinKLre * cotOutRe - sinKLim * cotOutIm);
+		double Dim = cosKLim * sourceRatio + (sinKLre * cotOutIm + sinKLim * cotOutRe);
+
+		// assert determinant == Complex.valueOf(1.0,0.0);
+		return result.set(Are, Aim, Bre, Bim, Cre, Cim, Dre, Dim);
+	}
+
+	/**
+	 * Calculate the transfer matrix of a conical tube, and its derivative
+	 * with respect to wave number, without allocating,
+	 * from precomputed frequency-independent coefficients.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param tube - coefficients describing the tube geometry.
+	 * @param params - physical parameters
+	 * @param result - matrix to receive the transfer matrix
+	 * @param derivative - matrix to receive d/dk of the transfer matrix
+	 * @return result
+	 */
+	public static TransferMatrix calcConeMatrix(double waveNumber,
+			TubeCoefficients tube, PhysicalParameters params,
+			TransferMatrix result, TransferMatrix derivative)
+	{
+		AirState air = params.getAirState();
+		if ( tube.isCylinder )
+		{
+			return calcCylinderMatrix(waveNumber, tube.length,
+					tube.sourceRadius, tube.getSourceZ0(air),
+					params, result, derivative);
 		}
-		Complex mean = new Complex( 1.0d + epsilon, - epsilon );
-		Complex kMeanL;
-		if (length >= MINIMUM_CONE_LENGTH)
+
+		// Same calculation as calcConeMatrix(waveNumber, tube, params, result),
+		// with the derivative of each intermediate term carried along.
+		double alpha_0 = air.getLossFactor(waveNumber);
+		double epsilon;
+		if (tube.isNearCylinder)
 		{
-			kMeanL = mean.multiply(waveNumber * length);
+			epsilon = alpha_0/tube.loadRadius;
 		}
 		else
 		{
-			// Limit how short the cone can be.
-			// Length of zero leads to a divide-by-zero below.
-			kMeanL = mean.multiply(waveNumber * MINIMUM_CONE_LENGTH);
+			epsilon = alpha_0 / tube.radiusDiff * tube.logRatio;
 		}
-		
-		// Cotangents of theta_in and theta_out. 
-		Complex cot_in  = new Complex((loadRadius-sourceRadius)/sourceRadius)
-							.divide(kMeanL);
-		Complex cot_out = new Complex((loadRadius-sourceRadius)/loadRadius)
-							.divide(kMeanL);
+		double kL = waveNumber * tube.effectiveLength;
+		double kMeanLre = (1.0d + epsilon) * kL;
+		double kMeanLim = - epsilon * kL;
+		// epsilon varies as 1/sqrt(k), so d/dk (epsilon * k) = epsilon/2.
+		double dKMeanLre = (1.0d + 0.5d * epsilon) * tube.effectiveLength;
+		double dKMeanLim = - 0.5d * epsilon * tube.effectiveLength;
 
-		// sine and cosine of kMean * L.
-		Complex sin_kL = kMeanL.sin();
-		Complex cos_kL = kMeanL.cos();
-
-		Complex A = cos_kL.multiply(loadRadius/sourceRadius).subtract(sin_kL.multiply(cot_in));
-		Complex B = Complex.I.multiply(sin_kL)
-				.multiply(params.calcZ0(loadRadius) * (loadRadius/sourceRadius));
-		Complex C = Complex.I.multiply(loadRadius/(sourceRadius*params.calcZ0(sourceRadius))).multiply(
-				sin_kL.multiply(cot_out.multiply(cot_in).add(1.0))
-				.add(cos_kL.multiply(cot_out.subtract(cot_in))));
-		Complex D = cos_kL.multiply(sourceRadius/loadRadius).add(sin_kL.multiply(cot_out));
-
-		TransferMatrix tm = new TransferMatrix(A, B, C, D); 
-		// assert tm.determinant() == Complex.valueOf(1.0,0.0);
-		return tm;
+		double invScale = 1.0 / (kMeanLre * kMeanLre + kMeanLim * kMeanLim);
+		double invKLre = kMeanLre * invScale;
+		double invKLim = - kMeanLim * invScale;
+		// d/dk (1/kMeanL) = - d/dk kMeanL * (1/kMeanL)^2.
+		double invKL2re = invKLre * invKLre - invKLim * invKLim;
+		double invKL2im = 2.0 * invKLre * invKLim;
+		double dInvKLre = - (dKMeanLre * invKL2re - dKMeanLim * invKL2im);
+		double dInvKLim = - (dKMeanLre * invKL2im + dKMeanLim * invKL2re);
+		double cotInRe = tube.ratioIn * invKLre;
+		double cotInIm = tube.ratioIn * invKLim;
+		double cotOutRe = tube.ratioOut * invKLre;
+		double cotOutIm = tube.ratioOut * invKLim;
+		double dCotInRe = tube.ratioIn * dInvKLre;
+		double dCotInIm = tube.ratioIn * dInvKLim;
+		double dCotOutRe = tube.ratioOut * dInvKLre;
+		double dCotOutIm = tube.ratioOut * dInvKLim;
+
+		double sinRe = FastMath.sin(kMeanLre);
+		double cosRe = FastMath.cos(kMeanLre);
+		double coshIm = FastMath.cosh(kMeanLim);
+		double sinhIm = FastMath.sinh(kMeanLim);
+		double sinKLre = sinRe * coshIm;
+		double sinKLim = cosRe * sinhIm;
+		double cosKLre = cosRe * coshIm;
+		double cosKLim = - sinRe * sinhIm;
+		// d/dk sin(kMeanL) = cos(kMeanL) * d/dk kMeanL,
+		// d/dk cos(kMeanL) = - sin(kMeanL) * d/dk kMeanL.
+		double dSinKLre = cosKLre * dKMeanLre - cosKLim * dKMeanLim;
+		double dSinKLim = cosKLre * dKMeanLim + cosKLim * dKMeanLre;
+		double dCosKLre = - (sinKLre * dKMeanLre - sinKLim * dKMeanLim);
+		double dCosKLim = - (sinKLre * dKMeanLim + sinKLim * dKMeanLre);
+
+		double loadRatio = tube.loadRatio;
+		double sourceRatio = tube.sourceRatio;
+
+		// A = cos_kL * loadRatio - sin_kL * cot_in.
+		double Are = cosKLre * loadRatio - (sinKLre * cotInRe - sinKLim * cotInIm);
+		double Aim = cosKLim * loadRatio - (sinKLre * cotInIm + sinKLim * cotInRe);
+		double dAre = dCosKLre * loadRatio
+				- (dSinKLre * cotInRe - dSinKLim * cotInIm)
+				- (sinKLre * dCotInRe - sinKLim * dCotInIm);
+		double dAim = dCosKLim * loadRatio
+				- (dSinKLre * cotInIm + dSinKLim * cotInRe)
+				- (sinKLre * dCotInIm + sinKLim * dCotInRe);
+		// B = i * sin_kL * Z0(load) * loadRatio.
+		double bScale = tube.getLoadZ0(air) * loadRatio;
+		double Bre = - sinKLim * bScale;
+		double Bim = sinKLre * bScale;
+		double dBre = - dSinKLim * bScale;
+		double dBim = dSinKLre * bScale;
+		// C = i * loadRatio/Z0(source)
+		//     * (sin_kL * (cot_out * cot_in + 1) + cos_kL * (cot_out - cot_in)).
+		double prodRe = cotOutRe * cotInRe - cotOutIm * cotInIm + 1.0;
+		double prodIm = cotOutRe * cotInIm + cotOutIm * cotInRe;
+		double dProdRe = dCotOutRe * cotInRe - dCotOutIm * cotInIm
+				+ cotOutRe * dCotInRe - cotOutIm * dCotInIm;
+		double dProdIm = dCotOutRe * cotInIm + dCotOutIm * cotInRe
+				+ cotOutRe * dCotInIm + cotOutIm * dCotInRe;
+		double diffRe = cotOutRe - cotInRe;
+		double diffIm = cotOutIm - cotInIm;
+		double dDiffRe = dCotOutRe - dCotInRe;
+		double dDiffIm = dCotOutIm - dCotInIm;
+		double sumRe = sinKLre * prodRe - sinKLim * prodIm
+				+ cosKLre * diffRe - cosKLim * diffIm;
+		double sumIm = sinKLre * prodIm + sinKLim * prodRe
+				+ cosKLre * diffIm + cosKLim * diffRe;
+		double dSumRe = dSinKLre * prodRe - dSinKLim * prodIm
+				+ sinKLre * dProdRe - sinKLim * dProdIm
+				+ dCosKLre * diffRe - dCosKLim * diffIm
+				+ cosKLre * dDiffRe - cosKLim * dDiffIm;
+		double dSumIm = dSinKLre * prodIm + dSinKLim * prodRe
+				+ sinKLre * dProdIm + sinKLim * dProdRe
+				+ dCosKLre * diffIm + dCosKLim * diffRe
+				+ cosKLre * dDiffIm + cosKLim * dDiffRe;
+		double cScale = tube.loadRadius/(tube.sourceRadius
+				* tube.getSourceZ0(air));
+		double Cre = - sumIm * cScale;
+		double Cim = sumRe * cScale;
+		double dCre = - dSumIm * cScale;
+		double dCim = dSumRe * cScale;
+		// D = cos_kL * sourceRatio + sin_kL * cot_out.
+		double Dre = cosKLre * sourceRatio + (sinKLre * cotOutRe - sinKLim * cotOutIm);
+		double Dim = cosKLim * sourceRatio + (sinKLre * cotOutIm + sinKLim * cotOutRe);
+		double dDre = dCosKLre * sourceRatio
+				+ (dSinKLre * cotOutRe - dSinKLim * cotOutIm)
+				+ (sinKLre * dCotOutRe - sinKLim * dCotOutIm);
+		double dDim = dCosKLim * sourceRatio
+				+ (dSinKLre * cotOutIm + dSinKLim * cotOutRe)
+				+ (sinKLre * dCotOutIm + sinKLim * dCotOutRe);
+
+		derivative.set(dAre, dAim, dBre, dBim, dCre, dCim, dDre, dDim);
+		return result.set(Are, Aim, Bre, Bim, Cre, Cim, Dre, Dim);
 	}
 
-}
\ No newline at end of file
+}
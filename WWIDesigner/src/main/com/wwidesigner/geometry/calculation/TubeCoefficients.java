@@ -0,0 +1,159 @@
+/**
+ * Frequency-independent coefficients for the transfer matrix of a tube.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.calculation;
+
+import org.apache.commons.math3.util.FastMath;
+
+import com.wwidesigner.util.AirState;
+
+/**
+ * The parts of Tube.calcConeMatrix() that depend only on the tube geometry,
+ * computed once so that sweeping frequency only evaluates the
+ * frequency-dependent terms. Instances are immutable, so they can be shared
+ * between copies of a geometry and between threads. They also remember the
+ * characteristic impedances at each end for the most recent air state, so
+ * that each distinct radius of an instrument has its impedance computed once
+ * per change of air, rather than once per frequency.
+ *
+ * @author Burton Patkau
+ */
+public final class TubeCoefficients
+{
+	final double length;
+	final double sourceRadius;
+	final double loadRadius;
+	final boolean isCylinder;
+	// Cross-sectional areas, for the characteristic impedance.
+	final double sourceArea;
+	final double loadArea;
+	// For a cone, epsilon = alpha_0 / radiusDiff * logRatio,
+	// or alpha_0 / loadRadius if the cone is nearly a cylinder.
+	final boolean isNearCylinder;
+	final double radiusDiff;
+	final double logRatio;
+	// Length used for k * L, limited to MINIMUM_CONE_LENGTH.
+	final double effectiveLength;
+	final double ratioIn;
+	final double ratioOut;
+	final double loadRatio;
+	final double sourceRatio;
+
+	/**
+	 * Characteristic impedances for one value of rho * c.
+	 */
+	private static final class Impedances
+	{
+		final double rhoC;
+		final double source;
+		final double load;
+
+		Impedances(AirState air, double sourceArea, double loadArea)
+		{
+			rhoC = air.getRhoC();
+			source = air.calcZ0FromArea(sourceArea);
+			load = air.calcZ0FromArea(loadArea);
+		}
+	}
+
+	// Replaced, never modified, so a thread that reads a stale value
+	// merely recomputes it.
+	private volatile Impedances z0;
+
+	/**
+	 * Compute the coefficients for a conical or cylindrical tube.
+	 * @param aLength - length of the tube, in metres.
+	 * @param aSourceRadius - radius of source end the tube, in metres.
+	 * @param aLoadRadius - radius of load end the tube, in metres.
+	 */
+	public TubeCoefficients(double aLength, double aSourceRadius,
+			double aLoadRadius)
+	{
+		length = aLength;
+		sourceRadius = aSourceRadius;
+		loadRadius = aLoadRadius;
+		isCylinder = (aSourceRadius == aLoadRadius);
+		sourceArea = Math.PI * aSourceRadius * aSourceRadius;
+		loadArea = Math.PI * aLoadRadius * aLoadRadius;
+		isNearCylinder = FastMath.abs(aLoadRadius - aSourceRadius)
+				<= 0.00001 * aSourceRadius;
+		radiusDiff = aLoadRadius - aSourceRadius;
+		if (isCylinder || isNearCylinder)
+		{
+			logRatio = 0.0;
+		}
+		else
+		{
+			logRatio = FastMath.log(aLoadRadius / aSourceRadius);
+		}
+		if (aLength >= Tube.MINIMUM_CONE_LENGTH)
+		{
+			effectiveLength = aLength;
+		}
+		else
+		{
+			effectiveLength = Tube.MINIMUM_CONE_LENGTH;
+		}
+		ratioIn = (aLoadRadius - aSourceRadius) / aSourceRadius;
+		ratioOut = (aLoadRadius - aSourceRadius) / aLoadRadius;
+		loadRatio = aLoadRadius / aSourceRadius;
+		sourceRatio = aSourceRadius / aLoadRadius;
+	}
+
+	/**
+	 * @return characteristic impedance at the source end, Z0(sourceRadius).
+	 */
+	double getSourceZ0(AirState air)
+	{
+		return impedances(air).source;
+	}
+
+	/**
+	 * @return characteristic impedance at the load end, Z0(loadRadius).
+	 */
+	double getLoadZ0(AirState air)
+	{
+		return impedances(air).load;
+	}
+
+	private Impedances impedances(AirState air)
+	{
+		Impedances values = z0;
+		if (values == null || values.rhoC != air.getRhoC())
+		{
+			values = new Impedances(air, sourceArea, loadArea);
+			z0 = values;
+		}
+		return values;
+	}
+
+	public double getLength()
+	{
+		return length;
+	}
+
+	public double getSourceRadius()
+	{
+		return sourceRadius;
+	}
+
+	public double getLoadRadius()
+	{
+		return loadRadius;
+	}
+}
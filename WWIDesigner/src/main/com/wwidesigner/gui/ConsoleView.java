@@ -40,6 +40,12 @@ public class ConsoleView extends DataViewPane
 	JTextArea textArea;
 	private PrintStream out2;
 
+	// Text written since the last update of textArea. Writes only append
+	// here; at most one update is queued on the event dispatch thread at a
+	// time, and it takes all the text pending when it runs.
+	private final StringBuilder pendingText = new StringBuilder();
+	private boolean updatePending = false;
+
 	protected void initializeComponents()
 	{
 
@@ -76,12 +82,28 @@ public class ConsoleView extends DataViewPane
 
 	void updateTextArea(final String text)
 	{
+		synchronized (pendingText)
+		{
+			pendingText.append(text);
+			if (updatePending)
+			{
+				return;
+			}
+			updatePending = true;
+		}
 		SwingUtilities.invokeLater(new Runnable()
 		{
 			public void run()
 			{
-				textArea.append(text);
-				textArea.setCaretPosition(textArea.getText().length());
+				String newText;
+				synchronized (pendingText)
+				{
+					newText = pendingText.toString();
+					pendingText.setLength(0);
+					updatePending = false;
+				}
+				textArea.append(newText);
+				textArea.setCaretPosition(textArea.getDocument().getLength());
 			}
 		});
 	}
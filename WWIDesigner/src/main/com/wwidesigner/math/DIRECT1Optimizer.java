@@ -19,8 +19,6 @@
  */
 package com.wwidesigner.math;
 
-import java.util.Arrays;
-
 /**
  * DIRECT-1 variant of the DIRECT optimization algorithm.
  * For hypercubes, divide all sides, as in the original algorithm.
@@ -61,11 +59,12 @@ public class DIRECT1Optimizer extends DIRECTOptimizer
 	 * For a specified rectangle, choose which sides to use for dividing the rectangle.
 	 */
 	@Override
-	protected EligibleSides selectEligibleSides(RectangleValue rectangle)
+	protected EligibleSides selectEligibleSides(int rect)
 	{
-		EligibleSides eligibleSides = new EligibleSides(rectangle.getWidth().length);
-		int nrEligibleSides = rectangle.getLongCount();
-		int eligibleSide = rectangle.getLongIdx();
+		int n = rectangles.getDimension();
+		EligibleSides eligibleSides = new EligibleSides(n);
+		int nrEligibleSides = rectangles.getLongCount(rect);
+		int eligibleSide = rectangles.getLongIdx(rect);
 		int i;
 		
 		if (nrEligibleSides == 1)
@@ -75,32 +74,29 @@ public class DIRECT1Optimizer extends DIRECTOptimizer
 			return eligibleSides;
 		}
 		
-		if (rectangle.isHypercube())
+		if (isHypercube(rect))
 		{
 			// For hypercubes, divide on all sides.
-			for (i = 0; i < rectangle.getWidth().length; ++i)
+			for (i = 0; i < n; ++i)
 			{
-				eligibleSides.setEligible(i, rectangle.isLongSide(i));
+				eligibleSides.setEligible(i, isLongSide(rect, i));
 			}
 			eligibleSides.setNrEligibleSides(nrEligibleSides);
 			return eligibleSides;
 		}
 
 		// Divide on only one long side with the most potential.
+		// Potentials are zero if none have been assigned.
 		double highestPotential = -Double.MAX_VALUE;
-		double[] potential = rectangle.getPotential();
-		if (potential == null)
-		{
-			potential = new double[rectangle.getWidth().length];
-			Arrays.fill(potential, 0.0);
-		}
+		double potential;
 		nrEligibleSides = 1;
-		for (i = 0; i < rectangle.getWidth().length; ++i)
+		for (i = 0; i < n; ++i)
 		{
-			if (rectangle.isLongSide(i) 
-					&& potential[i] > highestPotential)
+			potential = rectangles.getPotential(rect, i);
+			if (isLongSide(rect, i) 
+					&& potential > highestPotential)
 			{
-				highestPotential = potential[i];
+				highestPotential = potential;
 				eligibleSide = i;
 				eligibleSides.setEligible(i, true);
 			}
@@ -111,34 +107,25 @@ public class DIRECT1Optimizer extends DIRECTOptimizer
 	}
 
 	@Override
-	protected void calculatePotential(RectangleValue rectangle, double[] basePotential,
+	protected void calculatePotential(int rect, int baseRect,
 			int dimension, double thisF, double neighbourF, double baseline)
 	{
-		double[] potential = rectangle.getPotential();
 		double newPotential = (neighbourF - thisF);
-		if (potential == null)
+		if (! rectangles.hasPotential(rect))
 		{
-			if (basePotential == null)
-			{
-				potential = new double[rectangle.getWidth().length];
-				Arrays.fill(potential, 0.0);
-			}
-			else
-			{
-				potential = Arrays.copyOf(basePotential, basePotential.length);
-			}
-			rectangle.setPotential(potential);
+			rectangles.initPotential(rect, baseRect);
 		}
-		if (newPotential >= rectangle.getPotential()[dimension])
+		double potential = rectangles.getPotential(rect, dimension);
+		if (newPotential >= potential)
 		{
 			// When potential increases, use new figure immediately.
-			rectangle.setPotential(dimension, newPotential);
+			rectangles.setPotential(rect, dimension, newPotential);
 		}
 		else
 		{
 			// When potential decreases, only decrease half way.
-			rectangle.setPotential(dimension,
-					0.5 * (newPotential + rectangle.getPotential()[dimension]));
+			rectangles.setPotential(rect, dimension,
+					0.5 * (newPotential + potential));
 		}
 	}
 
@@ -19,7 +19,7 @@
  */
 package com.wwidesigner.math;
 
-import java.util.Map.Entry;
+import java.util.Arrays;
 
 import org.apache.commons.math3.optim.PointValuePair;
 import org.apache.commons.math3.util.FastMath;
@@ -189,18 +189,18 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 	}
 
 	/**
-	 * Calculate Cartesian distance between two points, relative
-	 * to distance between bounds in each dimension.
+	 * Calculate Cartesian distance from the centre of a rectangle to a point,
+	 * relative to distance between bounds in each dimension.
 	 */
-	protected double distance(double[] x1, double[] x2)
+	protected double distance(int rect, double[] x2)
 	{
 		double sumSquares = 0.0;
 		double side;
-		for (int i = 0; i < x1.length; ++i)
+		for (int i = 0; i < x2.length; ++i)
 		{
 			if (boundDifference[i] > 0)
 			{
-				side = (x1[i] - x2[i]) / boundDifference[i];
+				side = (rectangles.getCentre(rect, i) - x2[i]) / boundDifference[i];
 				sumSquares += side * side;
 			}
 		}
@@ -239,7 +239,7 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 	/**
 	 * Find rectangles that are large, and close to a target point, and return
 	 * them in <code>hull</code>.
-	 * 
+	 *
 	 * @param target
 	 *            - Point on which to centre search.
 	 * @param useConvexHull
@@ -253,69 +253,67 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 	protected int getPotentiallyOptimalLargeAndNear(double[] target, boolean useConvexHull)
 	{
 		int nhull = 0;
-		Entry<RectangleKey, RectangleValue> nearest = null;
+		int lvl;
+		int n;
+		int nearest;
 		double nDist = 0.0;
 		double y;
 
-		for (Entry<RectangleKey, RectangleValue> n : rtree.entrySet())
+		for (int k = 0; k < rectangles.getNrLevels(); ++k)
 		{
-			if (n.getValue().isSmall())
-			{
-				// Ignore rectangles that are too small to divide further.
-				// With no small rectangles returned, we know this will not be
-				// the last iteration of optimization.
-				continue;
-			}
-			if (nearest == null)
+			// Find the rectangle of this diameter nearest the target.
+			// Among rectangles at the same distance, take the one that
+			// ranks first in the level.
+			lvl = rectangles.getLevel(k);
+			nearest = -1;
+			for (int i = 0; i < rectangles.getLevelSize(lvl); ++i)
 			{
-				// First potential rectangle.
-				nearest = n;
-				nDist = distance(nearest.getValue().getCentre(), target);
-				continue;
-			}
-			if (n.getKey().getDiameter() == nearest.getKey().getDiameter())
-			{
-				// Rectangle at same distance as prior rectangle.
-				// Check whether it is nearer the current best.
-				y = distance(n.getValue().getCentre(), target);
-				if (y < nDist)
+				n = rectangles.getLevelRectangle(lvl, i);
+				if (isSmall(n))
+				{
+					// Ignore rectangles that are too small to divide further.
+					// With no small rectangles returned, we know this will not be
+					// the last iteration of optimization.
+					continue;
+				}
+				y = distance(n, target);
+				if (nearest < 0 || y < nDist
+						|| (y == nDist && rectangles.isAhead(n, nearest)))
 				{
 					nearest = n;
 					nDist = y;
 				}
-				continue;
 			}
-			// Checked all rectangles with same diameter as nearest.
-			// Add nearest to hull, pruning to convex hull.
-			nhull = pruneHullLargeAndNear(target, nearest.getKey(), nDist,
-					nhull, useConvexHull);
-			checkHullLength(nhull);
-			hull[nhull++] = new Rectangle(nearest);
-
-			// Start search for nearest rectangle at new diameter.
-			nearest = n;
-			nDist = distance(nearest.getValue().getCentre(), target);
+			if (nearest >= 0)
+			{
+				// Add nearest to hull, pruning to convex hull.
+				nhull = pruneHullLargeAndNear(target, nearest, nDist,
+						nhull, useConvexHull);
+				checkHullLength(nhull);
+				hull[nhull++] = nearest;
+			}
+		}
+		if (nhull == 0)
+		{
+			// All rectangles are too small to divide.
+			return super.getPotentiallyOptimal(allowDuplicatesInHull);
 		}
-
-		nhull = pruneHullLargeAndNear(target, nearest.getKey(), nDist, nhull, useConvexHull);
-		checkHullLength(nhull);
-		hull[nhull++] = new Rectangle(nearest);
 
 		return nhull;
 	}
-	
-	protected int pruneHullLargeAndNear(double[] target, RectangleKey nKey,
+
+	protected int pruneHullLargeAndNear(double[] target, int nRect,
 			double nDistance, int nhull, boolean useConvexHull)
 	{
 		// Remove points until we are making a "left turn" to nearest
-		RectangleKey t1, t2;
+		int t1, t2;
 		int it2;
 		double t1Dist, t2Dist;
 		int thisNhull = nhull;
 		while (thisNhull >= 1)
 		{
-			t1 = hull[thisNhull - 1].getKey();
-			t1Dist = distance(hull[thisNhull - 1].getValue().getCentre(), target);
+			t1 = hull[thisNhull - 1];
+			t1Dist = distance(t1, target);
 			it2 = thisNhull - 2;
 			if (t1Dist > nDistance)
 			{
@@ -335,13 +333,13 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 			}
 			else
 			{
-				t2 = hull[it2].getKey();
-				t2Dist = distance(hull[it2].getValue().getCentre(), target);
-				// cross product (t1-t2) x (nKey-t2) > 0 for a left turn: 
-				if ((t1.getDiameter() - t2.getDiameter())
+				t2 = hull[it2];
+				t2Dist = distance(t2, target);
+				// cross product (t1-t2) x (nRect-t2) > 0 for a left turn:
+				if ((rectangles.getDiameter(t1) - rectangles.getDiameter(t2))
 						* (nDistance - t2Dist)
 						- (t1Dist - t2Dist)
-						* (nKey.getDiameter() - t2.getDiameter()) >= 0)
+						* (rectangles.getDiameter(nRect) - rectangles.getDiameter(t2)) >= 0)
 				{
 					// Adding a line segment steeper than prior segment.
 					break;
@@ -349,13 +347,13 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 			}
 			thisNhull = it2 + 1;
 		}
-		
+
 		return thisNhull;
 	}
-	
-	protected int getDistanceBin(double[] x, double[] target, double maxDistance)
+
+	protected int getDistanceBin(int rect, double[] target, double maxDistance)
 	{
-		double dist = distance(x, target) / maxDistance;
+		double dist = distance(rect, target) / maxDistance;
 		for (int i = 0; i < relativeDistance.length; ++i)
 		{
 			if (dist <= relativeDistance[i])
@@ -369,7 +367,7 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 	/**
 	 * Find rectangles that are close to a target point and have low function
 	 * values, and return them in <code>hull</code>.
-	 * 
+	 *
 	 * @param target
 	 *            - Point on which to centre search.
 	 * @param useConvexHull
@@ -384,26 +382,38 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 	{
 		int nhull = 0;
 		double maxDistance = maxDistance(target);
-		Rectangle[] lowest = new Rectangle[DEFAULT_DISTANCE_BINS];
+		int[] lowest = new int[DEFAULT_DISTANCE_BINS];
 		int distBin;
+		int lvl;
+		int n;
 
 		// Perform a bin sort, grouping the available rectangles into
 		// distance bins, and finding the rectangle with lowest function value
-		// that falls in each distance bin.
-		for (Entry<RectangleKey, RectangleValue> n : rtree.entrySet())
+		// that falls in each distance bin.  Among rectangles with equal
+		// function values, take the one with smallest diameter, and lowest
+		// serial number within that diameter.
+		Arrays.fill(lowest, -1);
+		for (int k = 0; k < rectangles.getNrLevels(); ++k)
 		{
-			if (! n.getValue().isSmall())
+			lvl = rectangles.getLevel(k);
+			for (int i = 0; i < rectangles.getLevelSize(lvl); ++i)
 			{
-				distBin = getDistanceBin(n.getValue().getCentre(), target, maxDistance);
-				if (lowest[distBin] == null
-						|| lowest[distBin].getKey() == null
-						|| n.getKey().getfValue() < lowest[distBin].getKey().getfValue())
+				n = rectangles.getLevelRectangle(lvl, i);
+				if (! isSmall(n))
 				{
-					lowest[distBin] = new Rectangle(n);
+					distBin = getDistanceBin(n, target, maxDistance);
+					if (lowest[distBin] < 0
+							|| rectangles.getFValue(n) < rectangles.getFValue(lowest[distBin])
+							|| (rectangles.getFValue(n) == rectangles.getFValue(lowest[distBin])
+								&& rectangles.getDiameter(n) == rectangles.getDiameter(lowest[distBin])
+								&& rectangles.isAhead(n, lowest[distBin])))
+					{
+						lowest[distBin] = n;
+					}
 				}
 			}
 		}
-		
+
 		// Transfer the list of lowest-function-value rectangles to hull,
 		// pruning as needed to produce a monotone or convex hull.
 		int it2;
@@ -412,15 +422,15 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 		nhull = 0;
 		for (int i = 0; i < lowest.length; ++i)
 		{
-			if (lowest[i] != null && lowest[i].getKey() != null)
+			if (lowest[i] >= 0)
 			{
 				// Remove points until we are making a "left turn" to nearest
-				nDist = distance(lowest[i].getValue().getCentre(), target);
-				nValue = lowest[i].getKey().getfValue();
+				nDist = distance(lowest[i], target);
+				nValue = rectangles.getFValue(lowest[i]);
 				while (nhull >= 1)
 				{
-					t1Dist = distance(hull[nhull - 1].getValue().getCentre(), target);
-					t1Value = hull[nhull - 1].getKey().getfValue();
+					t1Dist = distance(hull[nhull - 1], target);
+					t1Value = rectangles.getFValue(hull[nhull - 1]);
 					it2 = nhull - 2;
 					if (t1Value > nValue)
 					{
@@ -440,9 +450,9 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 					}
 					else
 					{
-						t2Dist = distance(hull[it2].getValue().getCentre(), target);
-						t2Value = hull[it2].getKey().getfValue();
-						// cross product (t1-t2) x (nKey-t2) > 0 for a left turn: 
+						t2Dist = distance(hull[it2], target);
+						t2Value = rectangles.getFValue(hull[it2]);
+						// cross product (t1-t2) x (nKey-t2) > 0 for a left turn:
 						if ((t1Dist - t2Dist) * (nValue - t2Value)
 								- (t1Value - t2Value) * (nDist - t2Dist) >= 0)
 						{
@@ -459,5 +469,5 @@ public class DIRECTCOptimizer extends DIRECT1Optimizer
 
 		return nhull;
 	}
-	
+
 }
@@ -99,18 +99,23 @@
  */
 package com.wwidesigner.math;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Map;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.exception.NumberIsTooSmallException;
 import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
 import org.apache.commons.math3.optim.OptimizationData;
 import org.apache.commons.math3.optim.PointValuePair;
 import org.apache.commons.math3.optim.nonlinear.scalar.MultivariateOptimizer;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
 import org.apache.commons.math3.util.FastMath;
 
 /**
@@ -137,6 +142,10 @@ import org.apache.commons.math3.util.FastMath;
  *    converges when it finds a function value less than or equal to the
  *    target value.</li>
  *</ul>
+ * If the optimize() call supplies WorkerFunctions, the sample points of
+ * each iteration are evaluated in parallel, before any rectangles are
+ * divided.  The divisions then use the values in the same order as a
+ * sequential run, so the outcome does not depend on the number of threads.
  */
 public class DIRECTOptimizer extends MultivariateOptimizer
 {
@@ -198,6 +207,25 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 	/** Differences between the upper and lower bounds. */
 	protected double[] boundDifference;
 
+	/**
+	 * Objective function, and copies of it for other threads to use,
+	 * or null to evaluate every point on the calling thread.
+	 */
+	protected MultivariateFunction objectiveFunction;
+	protected MultivariateFunction[] workerFunctions;
+	protected ExecutorService workerExecutor;
+
+	/**
+	 * Sample points evaluated ahead of the rectangle divisions that use them,
+	 * in the order the divisions will request them.  batchErrors[i] holds
+	 * the exception, if any, thrown while evaluating batchPoints[i].
+	 */
+	protected double[][] batchPoints;
+	protected double[] batchValues;
+	protected RuntimeException[] batchErrors;
+	protected int batchSize;
+	protected int nextBatchPoint;
+
 	/**
 	 * Create an optimizer that uses the DIRECT algorithm, with default
 	 * convergence threshold on hyperrectangle sizes.
@@ -243,299 +271,69 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 
 	/* Basic data structure:
 	*
-	* A hyper-rectangle has a Rectangle Key, with the value (f) of the
-	* function at the center, the "size" measure (d) of the rectangle,
-	* an "age" measure for tie-breaking purposes, and a RectangleValue with
-	* the coordinates of the center (c) in absolute terms, and the widths
-	* of the sides (w) relative to boundDifference.
+	* A hyper-rectangle has the value (f) of the function at the center,
+	* the "size" measure (d) of the rectangle, a serial number for
+	* tie-breaking purposes, the coordinates of the center (c) in absolute
+	* terms, and the widths of the sides (w) relative to boundDifference.
 	*
-	* We store the hyper-rectangles in a red-black tree, sorted by (d,f)
-	* in lexicographic order, to allow us to perform quick convex-hull
-	* calculations (in the future, we might make this data structure
-	* more sophisticated based on the dynamic convex-hull literature).
+	* We keep the hyper-rectangles in a RectangleStore, which holds their
+	* attributes in flat arrays, and groups them into levels of equal d.
+	* Within each level, a heap orders the rectangles by (f, serial), so
+	* the lowest rectangle of each level, needed for the convex-hull
+	* calculations, is always at hand.  Rectangles are identified by
+	* their index in the store.
 	*/
 	protected int nextSerial;			// Serial number for next new rect
-	protected class RectangleKey implements Comparable<RectangleKey>
-	{
-		protected double diameter;	// "Size" of the rectangle.
-		protected double fValue;	// Value of the function at the centre.
-		protected int serial;		// Serial nr of rectangle, for tie-breaking purposes.
-
-		/**
-		 * Create the key for a real rectangle, of specified diameter and
-		 * function value.
-		 * @param aDiameter - "diameter" measure of the rectangle
-		 * @param aFValue - function value at centre of rectangle
-		 */
-		public RectangleKey(double aDiameter, double aFValue)
-		{
-			this.diameter = aDiameter;
-			this.fValue = aFValue;
-			this.serial = ++nextSerial;
-		}
-
-		/**
-		 * Create an index reference, used for searching the rectangle tree for
-		 * rectangles before or after a specified diameter.
-		 * @param aDiameter
-		 */
-		public RectangleKey(double aDiameter)
-		{
-			this.diameter = aDiameter;
-			this.fValue = -Double.MAX_VALUE;
-			this.serial = 0;
-		}
-
-		public double getDiameter()
-		{
-			return diameter;
-		}
+	protected RectangleStore rectangles;
+	protected int[] hull;	// array to store convex hull
+	protected int[] levelMinima;	// Workspace for rectangles with equal (d,f).
+	protected boolean isXConverged;		// Set by dividePotentiallyOptimal if small rectangles.
 
-		public double getfValue()
-		{
-			return fValue;
-		}
+	/**
+	 * Workspace for the centre, sample points, and widths when dividing
+	 * a rectangle.
+	 */
+	protected double[] centreWork;
+	protected double[] newCentreWork;
+	protected double[] widthWork;
 
-		@Override
-		public int compareTo(RectangleKey arg0)
-		{
-			if (this.diameter > arg0.diameter)
-			{
-				return 1;
-			}
-			if (this.diameter < arg0.diameter)
-			{
-				return -1;
-			}
-			if (this.fValue > arg0.fValue)
-			{
-				return 1;
-			}
-			if (this.fValue < arg0.fValue)
-			{
-				return -1;
-			}
-			if (this.serial > arg0.serial)
-			{
-				return 1;
-			}
-			if (this.serial < arg0.serial)
-			{
-				return -1;
-			}
-			if (this.equals(arg0))
-			{
-				return 0;
-			}
-			// Should not occur.
-			return this.hashCode() - arg0.hashCode();
-		}
-	}
-	
-	protected class RectangleValue
+	/** {@inheritDoc} */
+	@Override
+	protected PointValuePair doOptimize()
 	{
-		/**
-		 * Coordinates of centre point of the rectangle, in absolute terms.
-		 */
-		protected  double[] centre;
-		
-		/**
-		 * Width of rectangle, relative to boundDifference.
-		 */
-		protected  double[] width;
-		
-		/**
-		 * Indication of potential improvement available on each dimension.
-		 */
-		protected  double[] potential;
-		
-		/**
-		 * Length of longest side, count of long sides, and index of first long side.
-		 */
-		protected  double maxWidth;
-		protected  int longCount;
-		protected  int longIdx;
-
-		/**
-		 * @param aCentre - Coordinates of centre point of the rectangle, in absolute terms.
-		 * @param aWidth - Width of rectangle, relative to boundDifference.
-		 */
-		public RectangleValue(double[] aCentre, double[] aWidth)
-		{
-			this.centre = aCentre;
-			this.width = aWidth;
-			this.potential = null;
-			updateLongSides();
-		}
-		
-		/**
-		 * @param aCentre - Coordinates of centre point of the rectangle, in absolute terms.
-		 * @param aWidth - Width of rectangle, relative to boundDifference.
-		 */
-		public RectangleValue(double[] aCentre, double[] aWidth, double[] aPotential)
-		{
-			this.centre = aCentre;
-			this.width = aWidth;
-			this.potential = aPotential;
-			updateLongSides();
-		}
-		
-		public void updateLongSides()
-		{
-			int i;
-			maxWidth = width[0];
-			longIdx = 0;
-			for (i = 1; i < width.length; ++i)
-			{
-				if (width[i] > maxWidth)
-				{
-					maxWidth = width[i];
-					longIdx = i;
-				}
-			}
-			longCount = 0;
-			for (i = 0; i < width.length; ++i)
-			{
-				if (width[i] >= maxWidth * (1.0 - EQUAL_SIDE_TOL))
-				{
-					++longCount;
-				}
-			}
-		}
-
-		public double[] getCentre()
-		{
-			return centre;
-		}
-
-		public double[] getWidth()
-		{
-			return width;
-		}
-
-		public double[] getPotential()
-		{
-			return potential;
-		}
-
-		public void setPotential(double[] aPotential)
-		{
-			this.potential = aPotential;
-		}
-
-		public void setPotential(int dimension, double aPotential)
-		{
-			this.potential[dimension] = aPotential;
-		}
+		currentBest = new PointValuePair(getStartPoint(), Double.MAX_VALUE, true);
+		iterationOfLastImprovement = 0;
+		int nrPromising;
 
-		public int getLongCount()
+		if (workerFunctions != null && workerFunctions.length > 0)
 		{
-			return longCount;
+			workerExecutor = Executors
+					.newFixedThreadPool(workerFunctions.length);
 		}
-
-		public int getLongIdx()
+		try
 		{
-			return longIdx;
-		}
+			// Validity checks.
+			setup();
 
-		public boolean isLongSide(int i)
-		{
-			if (i == longIdx)
-			{
-				return true;
-			}
-			return width[i] >= maxWidth * (1.0 - EQUAL_SIDE_TOL);
-		}
+			double convergenceDiameter = thresholdDiameter(convergenceXThreshold, boundDifference.length );
 
-		public boolean isSmall()
-		{
-			int i;
-			for (i = 0; i < width.length; ++i)
+			do
 			{
-				if (width[i] > convergenceXThreshold)
-				{
-					return false;
-				}
+				incrementIterationCount();
+				nrPromising = dividePotentiallyOptimal(convergenceDiameter);
 			}
-			return true;
+			while (! hasConverged(nrPromising));
 		}
-
-		public boolean isHypercube()
+		finally
 		{
-			int i;
-			for (i = 0; i < width.length; ++i)
+			if (workerExecutor != null)
 			{
-				if (boundDifference[i] > 0.0 && ! isLongSide(i) )
-				{
-					return false;
-				}
+				workerExecutor.shutdown();
+				workerExecutor = null;
 			}
-			return true;
-		}
-	}
-	
-	protected class Rectangle implements
-				Map.Entry<RectangleKey, RectangleValue>
-	{
-		protected RectangleKey key;
-		protected RectangleValue value;
-
-		public Rectangle()
-		{
-			this.key = null;
-			this.value = null;
+			clearBatch();
 		}
 
-		public Rectangle(Map.Entry<RectangleKey, RectangleValue> entry)
-		{
-			this.key = entry.getKey();
-			this.value = entry.getValue();
-		}
-
-		@Override
-		public RectangleKey getKey()
-		{
-			return key;
-		}
-
-		@Override
-		public RectangleValue getValue()
-		{
-			return value;
-		}
-
-		@Override
-		public RectangleValue setValue(RectangleValue aValue)
-		{
-			this.value = aValue;
-			return aValue;
-		}
-	}
-
-	protected TreeMap<RectangleKey, RectangleValue> rtree;
-	protected Rectangle[] hull;	// array to store convex hull
-	protected boolean isXConverged;		// Set by dividePotentiallyOptimal if small rectangles.
-
-	/** {@inheritDoc} */
-	@Override
-	protected PointValuePair doOptimize()
-	{
-		currentBest = new PointValuePair(getStartPoint(), Double.MAX_VALUE, true);
-		iterationOfLastImprovement = 0;
-		int nrPromising;
-
-		// Validity checks.
-		setup();
-		
-		double convergenceDiameter = thresholdDiameter(convergenceXThreshold, boundDifference.length );
-
-		do
-		{
-			incrementIterationCount();
-			nrPromising = dividePotentiallyOptimal(convergenceDiameter);
-		}
-		while (! hasConverged(nrPromising));
-
 		if (getGoalType() == GoalType.MAXIMIZE)
 		{
 			return new PointValuePair(currentBest.getPoint(),
@@ -601,7 +399,7 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		double fval;
 		try
 		{
-			fval = super.computeObjectiveValue(params);
+			fval = evaluateObjective(params);
 			if (getGoalType() == GoalType.MAXIMIZE)
 			{
 				fval = -fval;
@@ -622,6 +420,159 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		}
 		return fval;
 	}
+
+	/**
+	 * Return the raw objective function value at a point, using the value
+	 * from the current batch if the point is the next one evaluated there.
+	 */
+	protected double evaluateObjective(double[] params)
+	{
+		if (nextBatchPoint < batchSize)
+		{
+			int pointNr = nextBatchPoint++;
+			if (Arrays.equals(params, batchPoints[pointNr]))
+			{
+				incrementEvaluationCount();
+				if (batchErrors[pointNr] != null)
+				{
+					throw batchErrors[pointNr];
+				}
+				return batchValues[pointNr];
+			}
+			// Points requested out of order.  Evaluate the rest directly.
+			clearBatch();
+		}
+		return super.computeObjectiveValue(params);
+	}
+
+	/**
+	 * Evaluate, in parallel, all the points that divideRectangle() will
+	 * sample when dividing a list of rectangles, and save them for
+	 * evaluateObjective() to return.  Each thread evaluates every
+	 * nrThreads'th point, stopping at the first exception other than
+	 * NoSuchElementException; a sequential run would stop at the same point.
+	 */
+	protected void evaluateDivisionPoints(int[] rects, int nrRects)
+	{
+		List<double[]> points = new ArrayList<double[]>();
+		for (int i = 0; i < nrRects; ++i)
+		{
+			addDivisionPoints(rects[i], points);
+		}
+		batchPoints = points.toArray(new double[points.size()][]);
+		batchValues = new double[batchPoints.length];
+		batchErrors = new RuntimeException[batchPoints.length];
+
+		final int nrThreads = workerFunctions.length + 1;
+		List<Future<?>> results = new ArrayList<Future<?>>(nrThreads - 1);
+		for (int threadNr = 1; threadNr < nrThreads; ++threadNr)
+		{
+			final int firstPoint = threadNr;
+			final MultivariateFunction function = workerFunctions[threadNr - 1];
+			results.add(workerExecutor.submit(new Runnable()
+			{
+				public void run()
+				{
+					evaluateBatchPoints(function, firstPoint, nrThreads);
+				}
+			}));
+		}
+		evaluateBatchPoints(objectiveFunction, 0, nrThreads);
+		try
+		{
+			for (Future<?> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			for (Future<?> result : results)
+			{
+				result.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			clearBatch();
+			return;
+		}
+		catch (ExecutionException e)
+		{
+			// evaluateBatchPoints() catches runtime exceptions.
+			throw new IllegalStateException(e.getCause());
+		}
+		batchSize = batchPoints.length;
+		nextBatchPoint = 0;
+	}
+
+	protected void evaluateBatchPoints(MultivariateFunction function,
+			int firstPoint, int stride)
+	{
+		for (int i = firstPoint; i < batchPoints.length; i += stride)
+		{
+			try
+			{
+				batchValues[i] = function.value(batchPoints[i]);
+			}
+			catch (RuntimeException e)
+			{
+				batchErrors[i] = e;
+				if (! (e instanceof NoSuchElementException))
+				{
+					return;
+				}
+			}
+		}
+	}
+
+	protected void clearBatch()
+	{
+		batchPoints = null;
+		batchValues = null;
+		batchErrors = null;
+		batchSize = 0;
+		nextBatchPoint = 0;
+	}
+
+	/**
+	 * Add the points that divideRectangle() will sample when dividing a
+	 * rectangle, in the order it samples them.
+	 */
+	protected void addDivisionPoints(int rect, List<double[]> points)
+	{
+		int n = rectangles.getDimension();
+		double[] c = rectangles.getCentre(rect, new double[n]);
+		double[] newC;
+
+		EligibleSides eligibleSides = selectEligibleSides(rect);
+
+		if (eligibleSides.getNrEligibleSides() > 1)
+		{
+			for (int i = 0; i < n; ++i)
+			{
+				if (eligibleSides.isEligible(i))
+				{
+					double w = rectangles.getWidth(rect, i);
+					newC = Arrays.copyOf(c, n);
+					newC[i] = c[i] - w * THIRD * boundDifference[i];
+					points.add(newC);
+					newC = Arrays.copyOf(c, n);
+					newC[i] = c[i] + w * THIRD * boundDifference[i];
+					points.add(newC);
+				}
+			}
+		}
+		else
+		{
+			int i = eligibleSides.getEligibleSide();
+			double newW = rectangles.getWidth(rect, i) * THIRD;
+			newC = Arrays.copyOf(c, n);
+			newC[i] = c[i] - newW * boundDifference[i];
+			points.add(newC);
+			newC = Arrays.copyOf(c, n);
+			newC[i] = c[i] + newW * boundDifference[i];
+			points.add(newC);
+		}
+	}
 	
 	public static class TargetFunctionValue implements OptimizationData
 	{
@@ -638,6 +589,28 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		}
 	}
 
+	/**
+	 * Copies of the objective function, one for each additional thread to
+	 * use for evaluating sample points.  Each copy must return the same
+	 * values as the objective function itself, and be safe to use while the
+	 * objective function is in use on another thread.  Applies only to the
+	 * optimize() call it is passed to.
+	 */
+	public static class WorkerFunctions implements OptimizationData
+	{
+		MultivariateFunction[] functions;
+
+		public WorkerFunctions(MultivariateFunction... aFunctions)
+		{
+			this.functions = aFunctions;
+		}
+
+		public MultivariateFunction[] getFunctions()
+		{
+			return functions;
+		}
+	}
+
     /**
      * Scans the list of (required and optional) optimization data that
      * characterize the problem.
@@ -651,8 +624,15 @@ public class DIRECTOptimizer extends MultivariateOptimizer
         super.parseOptimizationData(optData);
 
         // The existing values (as set by the previous call) are reused if
-        // not provided in the argument list.
+        // not provided in the argument list, except for worker functions.
+        workerFunctions = null;
         for (OptimizationData data : optData) {
+            if (data instanceof ObjectiveFunction) {
+                objectiveFunction = ((ObjectiveFunction) data).getObjectiveFunction();
+            }
+            if (data instanceof WorkerFunctions) {
+                workerFunctions = ((WorkerFunctions) data).getFunctions();
+            }
             if (data instanceof TargetFunctionValue) {
                 targetFunctionValue = ((TargetFunctionValue) data).getTargetValue();
                 if (getGoalType() == GoalType.MAXIMIZE)
@@ -739,26 +719,35 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		}
 		
 		nextSerial = 0;
-		rtree = new TreeMap<RectangleKey, RectangleValue>();
+		rectangles = new RectangleStore(dimension);
 		fv = new double[2 * dimension];
 		isort = new Integer[dimension];
+		centreWork = new double[dimension];
+		newCentreWork = new double[dimension];
+		widthWork = new double[dimension];
 		int hullSize = (int) FastMath.sqrt(getMaxEvaluations());
 		if (hullSize < 150)
 		{
 			hullSize = 150;
 		}
-		hull = new Rectangle[hullSize];
+		hull = new int[hullSize];
+		levelMinima = new int[hullSize];
 
 		fMax = 1.0;
-		RectangleValue firstRect = new RectangleValue(centre, width);
-		RectangleKey   firstKey = new RectangleKey(
-				rectangleDiameter(width), computeObjectiveValue(centre));
+		double firstDiameter = rectangleDiameter(width);
+		double firstValue = computeObjectiveValue(centre);
 		// We assume that the first point is feasible, and does not throw
 		// an exception, otherwise the function value will be fMax.
-		fMax = firstKey.getfValue();
+		fMax = firstValue;
 
-		rtree.put(firstKey, firstRect);
-		divideRectangle(firstKey, firstRect);
+		int firstRect = rectangles.add(centre, width, firstValue,
+				firstDiameter, ++nextSerial, EQUAL_SIDE_TOL);
+		if (workerExecutor != null)
+		{
+			evaluateDivisionPoints(new int[] { firstRect }, 1);
+		}
+		divideRectangle(firstRect);
+		clearBatch();
 	}
 
 	/**
@@ -828,16 +817,16 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 	/**
 	 * For a specified rectangle, choose which sides to use for dividing the rectangle.
 	 */
-	protected EligibleSides selectEligibleSides(RectangleValue rectangle)
+	protected EligibleSides selectEligibleSides(int rect)
 	{
-		EligibleSides eligibleSides = new EligibleSides(rectangle.getWidth().length);
-		int nrEligibleSides = rectangle.getLongCount();
-		int eligibleSide = rectangle.getLongIdx();
+		EligibleSides eligibleSides = new EligibleSides(rectangles.getDimension());
+		int nrEligibleSides = rectangles.getLongCount(rect);
+		int eligibleSide = rectangles.getLongIdx(rect);
 		int i;
 		// Divide on all longest sides.
-		for (i = 0; i < rectangle.getWidth().length; ++i)
+		for (i = 0; i < rectangles.getDimension(); ++i)
 		{
-			eligibleSides.setEligible(i, rectangle.isLongSide(i));
+			eligibleSides.setEligible(i, isLongSide(rect, i));
 		}
 		eligibleSides.setNrEligibleSides(nrEligibleSides);
 		eligibleSides.setEligibleSide(eligibleSide);
@@ -864,29 +853,30 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 	}
 
 	/**
-	 * Divide a specified rectangle, already in rtree, into thirds,
-	 * and update rtree accordingly.  Divide either on all the
+	 * Divide a specified rectangle, already in the rectangle store, into
+	 * thirds, and update the store accordingly.  Divide either on all the
 	 * long sides, or only on one longest side,
-	 * depending on optDivide_oneSide.
+	 * depending on selectEligibleSides().
 	 * @return Number of new function points that suggest there may
 	 * be a better minimum within the original rectangle.
 	 */
-	protected int divideRectangle(RectangleKey rectKey,
-			RectangleValue rectangle)
+	protected int divideRectangle(int rect)
 	{
 		int i;
-		int n = rectangle.getWidth().length;
-		double[] c = rectangle.getCentre();
-		double[] w = rectangle.getWidth();
+		int side;
+		int n = rectangles.getDimension();
+		double[] c = rectangles.getCentre(rect, centreWork);
+		double[] new_c = newCentreWork;
+		double[] w = widthWork;
 		double csave;
-		double centreF = rectKey.getfValue();	// f at old centre.
+		double centreF = rectangles.getFValue(rect);	// f at old centre.
 		double newF;			// f at new points.
+		double newW;			// width of divided side.
+		double diameter;		// diameter of divided rectangles.
 		int nrPromising = 0;	// Number of new rectangles that may contain minimum.
-		RectangleKey newKey;
-		RectangleValue newRect;
-		double[] new_c, new_w;
+		int newRect;
 
-		EligibleSides eligibleSides = selectEligibleSides(rectangle);
+		EligibleSides eligibleSides = selectEligibleSides(rect);
 
 		if (eligibleSides.getNrEligibleSides() > 1)
 		{
@@ -897,14 +887,15 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 				isort[i] = i;
 				if (eligibleSides.isEligible(i))
 				{
+					newW = rectangles.getWidth(rect, i);
 					csave = c[i];
-					c[i] = csave - w[i] * THIRD * boundDifference[i];
+					c[i] = csave - newW * THIRD * boundDifference[i];
 					newF = fv[2 * i] = computeObjectiveValue(c);
 					if (isPromising(centreF, newF, n))
 					{
 						++nrPromising;
 					}
-					c[i] = csave + w[i] * THIRD * boundDifference[i];
+					c[i] = csave + newW * THIRD * boundDifference[i];
 					newF = fv[2 * i + 1] = computeObjectiveValue(c);
 					if (isPromising(centreF, newF, n))
 					{
@@ -918,83 +909,66 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 				}
 			}
 			Arrays.sort(isort, new RectangleDivisionComparator());
-			RectangleKey thisRectKey = rectKey;
 			for (i = 0; i < eligibleSides.getNrEligibleSides(); ++i) {
 				// Replace centre rectangle with smaller rectangle.
-				w[isort[i]] *= THIRD;
-				rtree.remove(thisRectKey);
-				rectangle.updateLongSides();
-				thisRectKey = new RectangleKey(rectangleDiameter(w),
-						thisRectKey.getfValue());
-				rtree.put(thisRectKey, rectangle);
+				side = isort[i];
+				newW = rectangles.getWidth(rect, side) * THIRD;
+				rectangles.setWidth(rect, side, newW);
+				diameter = rectangleDiameter(rectangles.getWidth(rect, w));
+				rectangles.rekey(rect, diameter, ++nextSerial, EQUAL_SIDE_TOL);
 
 				// Insert new rectangles for side divisions.
-				new_c = Arrays.copyOf(c, c.length);
-				new_w = Arrays.copyOf(w, w.length);
-				new_c[isort[i]] = c[isort[i]] - w[isort[i]] * boundDifference[isort[i]];
-				newKey = new RectangleKey(thisRectKey.getDiameter(),
-						fv[2 * isort[i]]);
-				newRect = new RectangleValue(new_c, new_w);
-				calculatePotential(newRect, rectangle.getPotential(), isort[i],
-						fv[2 * isort[i]], centreF, w[isort[i]]);
-				rtree.put(newKey, newRect);
-				new_c = Arrays.copyOf(c, c.length);
-				new_w = Arrays.copyOf(w, w.length);
-				new_c[isort[i]] = c[isort[i]] + w[isort[i]] * boundDifference[isort[i]];
-				newKey = new RectangleKey(thisRectKey.getDiameter(),
-						fv[2 * isort[i] + 1]);
-				newRect = new RectangleValue(new_c, new_w);
-				calculatePotential(newRect, rectangle.getPotential(), isort[i],
-						fv[2 * isort[i] + 1], centreF, w[isort[i]]);
-				rtree.put(newKey, newRect);
-				calculatePotential(rectangle, rectangle.getPotential(), isort[i], centreF,
-						FastMath.min(fv[2 * isort[i]], fv[2 * isort[i] + 1]), w[i]);
+				System.arraycopy(c, 0, new_c, 0, n);
+				new_c[side] = c[side] - newW * boundDifference[side];
+				newRect = rectangles.add(new_c, w, fv[2 * side], diameter,
+						++nextSerial, EQUAL_SIDE_TOL);
+				calculatePotential(newRect, rect, side,
+						fv[2 * side], centreF, newW);
+				new_c[side] = c[side] + newW * boundDifference[side];
+				newRect = rectangles.add(new_c, w, fv[2 * side + 1], diameter,
+						++nextSerial, EQUAL_SIDE_TOL);
+				calculatePotential(newRect, rect, side,
+						fv[2 * side + 1], centreF, newW);
+				calculatePotential(rect, rect, side, centreF,
+						FastMath.min(fv[2 * side], fv[2 * side + 1]), w[i]);
 			}
 		}
 		else
 		{
 			// Replace centre rectangle with smaller rectangle.
 			i = eligibleSides.getEligibleSide();
-			w[i] *= THIRD;
-			newKey = new RectangleKey(rectangleDiameter(w), rectKey.getfValue());
-			rtree.remove(rectKey);
-			rectangle.updateLongSides();
-			rtree.put(newKey, rectangle);
+			newW = rectangles.getWidth(rect, i) * THIRD;
+			rectangles.setWidth(rect, i, newW);
+			diameter = rectangleDiameter(rectangles.getWidth(rect, w));
+			rectangles.rekey(rect, diameter, ++nextSerial, EQUAL_SIDE_TOL);
 
 			// Insert new rectangles for side divisions.
-			new_c = Arrays.copyOf(c, c.length);
-			new_w = Arrays.copyOf(w, w.length);
-			new_c[i] = c[i] - w[i] * boundDifference[i];
+			System.arraycopy(c, 0, new_c, 0, n);
+			new_c[i] = c[i] - newW * boundDifference[i];
 			fv[0] = computeObjectiveValue(new_c);
-			newKey = new RectangleKey(newKey.getDiameter(), fv[0]);
-			newRect = new RectangleValue(new_c, new_w);
-			calculatePotential(newRect, rectangle.getPotential(), i,
-					fv[0], centreF, w[i]);
-			rtree.put(newKey, newRect);
+			newRect = rectangles.add(new_c, w, fv[0], diameter,
+					++nextSerial, EQUAL_SIDE_TOL);
+			calculatePotential(newRect, rect, i, fv[0], centreF, newW);
 			if (isPromising(centreF, fv[0], n))
 			{
 				++nrPromising;
 			}
 
-			new_c = Arrays.copyOf(c, c.length);
-			new_w = Arrays.copyOf(w, w.length);
-			new_c[i] = c[i] + w[i] * boundDifference[i];
+			new_c[i] = c[i] + newW * boundDifference[i];
 			fv[1] = computeObjectiveValue(new_c);
-			newKey = new RectangleKey(newKey.getDiameter(), fv[1]);
-			newRect = new RectangleValue(new_c, new_w);
-			calculatePotential(newRect, rectangle.getPotential(), i,
-					fv[1], centreF, w[i]);
-			rtree.put(newKey, newRect);
+			newRect = rectangles.add(new_c, w, fv[1], diameter,
+					++nextSerial, EQUAL_SIDE_TOL);
+			calculatePotential(newRect, rect, i, fv[1], centreF, newW);
 			if (isPromising(centreF, fv[1], n))
 			{
 				++nrPromising;
 			}
-			calculatePotential(rectangle, rectangle.getPotential(), i,
-					centreF, FastMath.min(fv[0], fv[1]), w[i]);
+			calculatePotential(rect, rect, i,
+					centreF, FastMath.min(fv[0], fv[1]), newW);
 		}
 		return nrPromising;
 	}
-	
+
 	/**
 	 * Return true if a new function point indicates the possibility that there
 	 * is a better minimum than the current best.
@@ -1020,11 +994,39 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		return false;
 	}
 
-	protected void calculatePotential(RectangleValue rectangle, double[] basePotential,
+	/**
+	 * Update the potential of a rectangle on one dimension, after a division.
+	 * @param rect - rectangle to update.
+	 * @param baseRect - rectangle that was divided; a new rectangle with no
+	 * potentials yet starts from the potentials of baseRect.
+	 */
+	protected void calculatePotential(int rect, int baseRect,
 			int dimension, double thisF, double neighbourF, double baseline)
 	{
 	}
 
+	protected boolean isLongSide(int rect, int i)
+	{
+		return rectangles.isLongSide(rect, i, EQUAL_SIDE_TOL);
+	}
+
+	protected boolean isSmall(int rect)
+	{
+		return rectangles.isSmall(rect, convergenceXThreshold);
+	}
+
+	protected boolean isHypercube(int rect)
+	{
+		for (int i = 0; i < rectangles.getDimension(); ++i)
+		{
+			if (boundDifference[i] > 0.0 && ! isLongSide(rect, i) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Search for rectangles that might contain better global minimizers,
 	 * and divide them.  Set isXConverged to indicate whether the POH
@@ -1042,11 +1044,25 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		isXConverged = false;
 
 		nhull = getPotentiallyOptimal(allowDuplicatesInHull);
+
+		if (workerExecutor != null)
+		{
+			// Evaluate all the new points for this iteration at once.
+			int[] toDivide = new int[nhull];
+			int nrToDivide = 0;
+			for (i = 0; i < nhull; ++i)
+			{
+				if (! isTooSmallToDivide(hull[i], convergenceDiameter))
+				{
+					toDivide[nrToDivide++] = hull[i];
+				}
+			}
+			evaluateDivisionPoints(toDivide, nrToDivide);
+		}
 		
 		for (i = 0; i < nhull; ++i)
 		{
-			if (hull[i].getKey().getDiameter() < convergenceDiameter
-					&& hull[i].getValue().isSmall())
+			if (isTooSmallToDivide(hull[i], convergenceDiameter))
 			{
 				// Rectangle already smaller than required accuracy.
 				// Not worth dividing.
@@ -1056,13 +1072,14 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 			else
 			{
 				/* "potentially optimal" rectangle, so subdivide */
-				nrPromisingDivisions += divideRectangle(hull[i].getKey(), hull[i].getValue());
+				nrPromisingDivisions += divideRectangle(hull[i]);
 			}
 		}
+		clearBatch();
 		
 		if (DISPLAY_PROGRESS)
 		{
-			System.out.println("DIRECT: " + rtree.size() + " rectangles, " + nhull + " POH ("
+			System.out.println("DIRECT: " + rectangles.size() + " rectangles, " + nhull + " POH ("
 					+ nrSmall + " small, " + nrPromisingDivisions + " promising)."
 					+ " Current best " + currentBest.getValue());
 		}
@@ -1070,6 +1087,12 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		return nrPromisingDivisions;
 	}
 
+	protected boolean isTooSmallToDivide(int rect, double convergenceDiameter)
+	{
+		return rectangles.getDiameter(rect) < convergenceDiameter
+				&& isSmall(rect);
+	}
+
 	/* Convex hull algorithm, used to find the potentially optimal
 	   points.  What we really have in DIRECT is a "dynamic convex hull"
 	   problem, since we are dynamically adding/removing points and
@@ -1077,8 +1100,8 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 	   algorithms for this problem yet. */
 
 	/**
-	 * Find the lower convex hull of a set of points (x,y) stored in a rb-tree
-	 * of pointers to {x,y} arrays sorted in ascending order by (x,y).
+	 * Find the lower convex hull of a set of points (x,y) = (diameter, fValue)
+	 * held in the rectangle store.
 	 *
 	 * Unlike standard convex hulls, we allow redundant points on the hull,
 	 * and even allow duplicate points if allow_dups is nonzero.
@@ -1086,84 +1109,61 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 	 * the first point on the hull is that with the minimum y value so far,
 	 * at the largest x value of such points.
 	 *
-	 * @return the number of points in the hull, with pointers
-	 * stored in hull[i] (should be an array of length >= t->N).
+	 * Most of the points in DIRECT lie along vertical lines at a few x values.
+	 * Only the lowest point on each line, and points equal to it, can be on
+	 * the hull, so we examine only those, taken from the level heaps.
+	 *
+	 * @return the number of points in the hull, with the rectangle indexes
+	 * stored in hull[i].
 	 */
 	protected int getPotentiallyOptimal(boolean allow_dups)
 	{
 		int nhull = 0;
 		double minslope;
 		double xmax, ymaxmin;
-		Entry<RectangleKey, RectangleValue> n, nmax;
-		RectangleKey newKey;
+		int lvl, n, nmax;
+		double x, y;
 
 		/* Monotone chain algorithm [Andrew, 1979]. */
 
-		n = rtree.firstEntry();
-		nmax = rtree.lastEntry();
-		xmax = nmax.getKey().getDiameter();
-
-		// Set nmax to first node with x == xmax
-		//	while (nmax.getKey().getDiameter() == xmax)
-		//	{
-		//		max = rtree.lowerEntry(nmax.getKey());
-		//	}
-		//	nmax = rtree.higherEntry(nmax.getKey());
-		// performance hack (see also below)
-		RectangleKey testKey = new RectangleKey(xmax
-				* (1 - DIAMETER_GRANULARITY));
-		nmax = rtree.higherEntry(testKey);
-		assert nmax.getKey().getDiameter() == xmax;
-
-		ymaxmin = nmax.getKey().getfValue();
+		// Find the largest diameter that has any rectangles.
+		int top = rectangles.getNrLevels() - 1;
+		while (rectangles.getLevelSize(rectangles.getLevel(top)) == 0)
+		{
+			--top;
+		}
+		nmax = rectangles.getLevelFirst(rectangles.getLevel(top));
+		xmax = rectangles.getDiameter(nmax);
+		ymaxmin = rectangles.getFValue(nmax);
 
 		double xlast = 0;						// Diameter of last entry in hull.
 		double ylast = currentBest.getValue();	// f value of last entry in hull.
 		minslope = (ymaxmin - ylast) / (xmax - xlast);
 
-		RectangleKey k;
-		for (; ! n.getKey().equals(nmax.getKey());
-				n = rtree.higherEntry(n.getKey()))
+		for (int k = 0; k < top; ++k)
 		{
-			k = n.getKey();
-
-			/* performance hack: most of the points in DIRECT lie along
-			   vertical lines at a few x values, and we can exploit this */
-			if (nhull > 0 && k.getDiameter() == xlast)
+			lvl = rectangles.getLevel(k);
+			if (rectangles.getLevelSize(lvl) == 0)
 			{
-				/* x == previous x.  Skip all points with higher y. */
-				if (k.getfValue() > ylast)
-				{
-					/* because of the round to float in rect_diameter, above,
-					   it shouldn't be possible for two diameters (x values)
-					   to have a fractional difference < 1e-13.  Note
-					   that k.diameter > 0 always in DIRECT */
-					newKey = new RectangleKey(k.getDiameter()
-							* (1 + DIAMETER_GRANULARITY));
-					n = rtree.floorEntry(newKey);
-					continue;
-				}
-				/* equal y values, add to hull */
-				if (allow_dups)
-				{
-					checkHullLength(nhull);
-					hull[nhull++] = new Rectangle(n);
-				}
 				continue;
 			}
+			n = rectangles.getLevelFirst(lvl);
+			x = rectangles.getDiameter(n);
+			y = rectangles.getFValue(n);
 
-			if (nhull > 0 && k.getfValue() > ylast + (k.getDiameter() - xlast) * minslope)
+			if (nhull > 0 && y > ylast + (x - xlast) * minslope)
 			{
-				// This point is above the line from last point to nmax.
+				// This point, and every other point with the same x,
+				// is above the line from last point to nmax.
 				continue;
 			}
 
-			/* Remove points until we are making a "left turn" to k */
-			RectangleKey t1, t2;
+			/* Remove points until we are making a "left turn" to n */
+			int t1, t2;
 			int it2;
 			while (nhull >= 1)
 			{
-				t1 = hull[nhull - 1].getKey();
+				t1 = hull[nhull - 1];
 
 				/* because we allow equal points in our hull, we have
 				   to modify the standard convex-hull algorithm slightly:
@@ -1172,7 +1172,7 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 				it2 = getPrunePoint(hull, nhull, t1);
 				if (it2 < 0)
 				{
-					if (t1.getfValue() < k.getfValue())
+					if (rectangles.getFValue(t1) < y)
 					{
 						// Adding a first segment with positive slope.
 						// No more pruning needed.
@@ -1181,12 +1181,12 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 				}
 				else
 				{
-					t2 = hull[it2].getKey();
-					/* cross product (t1-t2) x (k-t2) > 0 for a left turn: */
-					if ((t1.getDiameter() - t2.getDiameter())
-							* (k.getfValue() - t2.getfValue())
-							- (t1.getfValue() - t2.getfValue())
-							* (k.getDiameter() - t2.getDiameter()) >= 0)
+					t2 = hull[it2];
+					/* cross product (t1-t2) x (n-t2) > 0 for a left turn: */
+					if ((rectangles.getDiameter(t1) - rectangles.getDiameter(t2))
+							* (y - rectangles.getFValue(t2))
+							- (rectangles.getFValue(t1) - rectangles.getFValue(t2))
+							* (x - rectangles.getDiameter(t2)) >= 0)
 					{
 						// Adding a line segment steeper than prior segment.
 						break;
@@ -1194,43 +1194,64 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 				}
 				nhull = it2 + 1;
 			}
-			checkHullLength(nhull);
-			hull[nhull++] = new Rectangle(n);
-			xlast = n.getKey().getDiameter();
-			ylast = n.getKey().getfValue();
+			if (allow_dups)
+			{
+				/* include n, and any points equal to it */
+				nhull = addLevelMinima(lvl, nhull);
+			}
+			else
+			{
+				checkHullLength(nhull);
+				hull[nhull++] = n;
+			}
+			xlast = x;
+			ylast = y;
 			minslope = (ymaxmin - ylast) / (xmax - xlast);
 		}
 
 		if (allow_dups)
 		{
-			do
-			{
-				/* include any duplicate points at (xmax,ymaxmin) */
-				checkHullLength(nhull);
-				hull[nhull++] = new Rectangle(nmax);
-				nmax = rtree.higherEntry(nmax.getKey());
-			}
-			while (nmax != null && nmax.getKey().getDiameter() == xmax
-					&& nmax.getKey().getfValue() == ymaxmin);
+			/* include any duplicate points at (xmax,ymaxmin) */
+			nhull = addLevelMinima(rectangles.getLevel(top), nhull);
 		}
 		else
 		{
 			checkHullLength(nhull);
-			hull[nhull++] = new Rectangle(nmax);
+			hull[nhull++] = nmax;
 		}
 
 		return nhull;
 	}
-	
-	protected int getPrunePoint(Rectangle[] aHull, int nhull, RectangleKey t1)
+
+	/**
+	 * Add the lowest rectangles of a level to the hull, in the order
+	 * of their serial numbers.
+	 * @return new number of points in the hull.
+	 */
+	protected int addLevelMinima(int lvl, int nhull)
+	{
+		if (levelMinima.length < rectangles.getLevelSize(lvl))
+		{
+			levelMinima = new int[2 * rectangles.getLevelSize(lvl)];
+		}
+		int nrMinima = rectangles.getLevelMinima(lvl, levelMinima);
+		for (int i = 0; i < nrMinima; ++i)
+		{
+			checkHullLength(nhull);
+			hull[nhull++] = levelMinima[i];
+		}
+		return nhull;
+	}
+
+	protected int getPrunePoint(int[] aHull, int nhull, int t1)
 	{
 		int it2 = nhull - 2;
-		RectangleKey t2;
+		int t2;
 		while (it2 >= 0)
 		{
-			t2 = aHull[it2].getKey();
-			if (t2.getDiameter() != t1.getDiameter()
-					|| t2.getfValue() != t1.getfValue())
+			t2 = aHull[it2];
+			if (rectangles.getDiameter(t2) != rectangles.getDiameter(t1)
+					|| rectangles.getFValue(t2) != rectangles.getFValue(t1))
 			{
 				return it2;
 			}
@@ -1238,7 +1259,7 @@ public class DIRECTOptimizer extends MultivariateOptimizer
 		}
 		return -1;
 	}
-	
+
 	protected void checkHullLength(int nhull)
 	{
 		if (nhull > hull.length - 10)
@@ -0,0 +1,560 @@
+/**
+ * Storage for the hyperrectangles of the DIRECT optimization algorithms.
+ *
+ * Copyright (C) 2016, Burton Patkau, Edward Kort, Antoine Lefebvre.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.wwidesigner.math;
+
+import java.util.Arrays;
+
+/**
+ * Store of the hyperrectangles examined by DIRECTOptimizer.
+ *<br/>
+ * Each rectangle is identified by an integer index, assigned in order of
+ * creation, and its attributes are kept in parallel arrays rather than in
+ * separate objects.  The centre coordinates, widths and potentials of
+ * rectangle r occupy elements r*dimension to (r+1)*dimension-1 of their
+ * respective arrays.
+ *<br/>
+ * Rectangles are grouped into levels of equal diameter.  DIRECT produces
+ * only a few distinct diameters, because diameters are rounded to single
+ * precision.  Each level keeps its rectangles in a min-heap ordered by
+ * function value, then by serial number, so the rectangles of a level are
+ * ranked in the same order as the (diameter, fValue, serial) keys of the
+ * original red-black tree implementation.
+ */
+public class RectangleStore
+{
+	protected static final int INITIAL_CAPACITY = 256;
+	protected static final int INITIAL_LEVEL_CAPACITY = 16;
+
+	protected final int dimension;
+	protected int size;
+	protected int capacity;
+
+	/** Coordinates of centre point of each rectangle, in absolute terms. */
+	protected double[] centre;
+	/** Widths of each rectangle, relative to the bound differences. */
+	protected double[] width;
+	/** Indication of potential improvement available on each dimension. */
+	protected double[] potential;
+	protected boolean[] hasPotential;
+
+	/** Value of the function at the centre. */
+	protected double[] fValue;
+	/** "Size" of the rectangle, and the level that holds this size. */
+	protected double[] diameter;
+	protected int[] level;
+	/** Serial nr of rectangle key, for tie-breaking purposes. */
+	protected int[] serial;
+	/** Position of the rectangle within the heap for its level. */
+	protected int[] heapPosition;
+
+	/**
+	 * Length of longest side, count of long sides, and index of first long side.
+	 */
+	protected double[] maxWidth;
+	protected int[] longCount;
+	protected int[] longIdx;
+
+	/**
+	 * Levels, in order of creation.  levelOrder lists the level indexes
+	 * in increasing order of diameter.
+	 */
+	protected int nrLevels;
+	protected double[] levelDiameter;
+	protected int[][] levelHeap;
+	protected int[] levelSize;
+	protected int[] levelOrder;
+
+	public RectangleStore(int aDimension)
+	{
+		this.dimension = aDimension;
+		this.size = 0;
+		this.capacity = INITIAL_CAPACITY;
+		centre = new double[capacity * dimension];
+		width = new double[capacity * dimension];
+		potential = new double[capacity * dimension];
+		hasPotential = new boolean[capacity];
+		fValue = new double[capacity];
+		diameter = new double[capacity];
+		level = new int[capacity];
+		serial = new int[capacity];
+		heapPosition = new int[capacity];
+		maxWidth = new double[capacity];
+		longCount = new int[capacity];
+		longIdx = new int[capacity];
+
+		nrLevels = 0;
+		levelDiameter = new double[INITIAL_LEVEL_CAPACITY];
+		levelHeap = new int[INITIAL_LEVEL_CAPACITY][];
+		levelSize = new int[INITIAL_LEVEL_CAPACITY];
+		levelOrder = new int[INITIAL_LEVEL_CAPACITY];
+	}
+
+	public int getDimension()
+	{
+		return dimension;
+	}
+
+	/**
+	 * Number of rectangles in the store.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Add a new rectangle to the store.
+	 * @param aCentre - Coordinates of centre point of the rectangle, in absolute terms.
+	 * @param aWidth - Width of rectangle, relative to boundDifference.
+	 * @param aFValue - function value at centre of rectangle
+	 * @param aDiameter - "diameter" measure of the rectangle
+	 * @param aSerial - serial number of the rectangle key
+	 * @param equalSideTolerance - tolerance to equate side sizes
+	 * @return index of the new rectangle.
+	 */
+	public int add(double[] aCentre, double[] aWidth, double aFValue,
+			double aDiameter, int aSerial, double equalSideTolerance)
+	{
+		if (size >= capacity)
+		{
+			grow();
+		}
+		int rect = size++;
+		System.arraycopy(aCentre, 0, centre, rect * dimension, dimension);
+		System.arraycopy(aWidth, 0, width, rect * dimension, dimension);
+		hasPotential[rect] = false;
+		fValue[rect] = aFValue;
+		updateLongSides(rect, equalSideTolerance);
+		insert(rect, aDiameter, aSerial);
+		return rect;
+	}
+
+	/**
+	 * Change the diameter and serial number of a rectangle, after its
+	 * widths have changed, moving it to the appropriate level.
+	 */
+	public void rekey(int rect, double aDiameter, int aSerial,
+			double equalSideTolerance)
+	{
+		heapRemove(level[rect], rect);
+		updateLongSides(rect, equalSideTolerance);
+		insert(rect, aDiameter, aSerial);
+	}
+
+	protected void insert(int rect, double aDiameter, int aSerial)
+	{
+		diameter[rect] = aDiameter;
+		serial[rect] = aSerial;
+		int lvl = findLevel(aDiameter);
+		level[rect] = lvl;
+		heapAdd(lvl, rect);
+	}
+
+	protected void grow()
+	{
+		capacity *= 2;
+		centre = Arrays.copyOf(centre, capacity * dimension);
+		width = Arrays.copyOf(width, capacity * dimension);
+		potential = Arrays.copyOf(potential, capacity * dimension);
+		hasPotential = Arrays.copyOf(hasPotential, capacity);
+		fValue = Arrays.copyOf(fValue, capacity);
+		diameter = Arrays.copyOf(diameter, capacity);
+		level = Arrays.copyOf(level, capacity);
+		serial = Arrays.copyOf(serial, capacity);
+		heapPosition = Arrays.copyOf(heapPosition, capacity);
+		maxWidth = Arrays.copyOf(maxWidth, capacity);
+		longCount = Arrays.copyOf(longCount, capacity);
+		longIdx = Arrays.copyOf(longIdx, capacity);
+	}
+
+	public void updateLongSides(int rect, double equalSideTolerance)
+	{
+		int base = rect * dimension;
+		int i;
+		double max = width[base];
+		int idx = 0;
+		for (i = 1; i < dimension; ++i)
+		{
+			if (width[base + i] > max)
+			{
+				max = width[base + i];
+				idx = i;
+			}
+		}
+		int count = 0;
+		for (i = 0; i < dimension; ++i)
+		{
+			if (width[base + i] >= max * (1.0 - equalSideTolerance))
+			{
+				++count;
+			}
+		}
+		maxWidth[rect] = max;
+		longIdx[rect] = idx;
+		longCount[rect] = count;
+	}
+
+	public double getCentre(int rect, int i)
+	{
+		return centre[rect * dimension + i];
+	}
+
+	/**
+	 * Copy the centre point of a rectangle into a caller-supplied array.
+	 */
+	public double[] getCentre(int rect, double[] result)
+	{
+		System.arraycopy(centre, rect * dimension, result, 0, dimension);
+		return result;
+	}
+
+	public double getWidth(int rect, int i)
+	{
+		return width[rect * dimension + i];
+	}
+
+	/**
+	 * Copy the widths of a rectangle into a caller-supplied array.
+	 */
+	public double[] getWidth(int rect, double[] result)
+	{
+		System.arraycopy(width, rect * dimension, result, 0, dimension);
+		return result;
+	}
+
+	public void setWidth(int rect, int i, double aWidth)
+	{
+		width[rect * dimension + i] = aWidth;
+	}
+
+	/**
+	 * Test whether potentials have been assigned to a rectangle.
+	 */
+	public boolean hasPotential(int rect)
+	{
+		return hasPotential[rect];
+	}
+
+	/**
+	 * Potential of a rectangle on one dimension, 0.0 if no potentials
+	 * have been assigned.
+	 */
+	public double getPotential(int rect, int i)
+	{
+		if (! hasPotential[rect])
+		{
+			return 0.0;
+		}
+		return potential[rect * dimension + i];
+	}
+
+	public void setPotential(int rect, int i, double aPotential)
+	{
+		potential[rect * dimension + i] = aPotential;
+	}
+
+	/**
+	 * Assign initial potentials to a rectangle, copied from those of
+	 * another rectangle, or zero if the other rectangle has none.
+	 */
+	public void initPotential(int rect, int baseRect)
+	{
+		if (baseRect >= 0 && hasPotential[baseRect])
+		{
+			System.arraycopy(potential, baseRect * dimension, potential,
+					rect * dimension, dimension);
+		}
+		else
+		{
+			Arrays.fill(potential, rect * dimension, (rect + 1) * dimension,
+					0.0);
+		}
+		hasPotential[rect] = true;
+	}
+
+	public double getFValue(int rect)
+	{
+		return fValue[rect];
+	}
+
+	public double getDiameter(int rect)
+	{
+		return diameter[rect];
+	}
+
+	public int getSerial(int rect)
+	{
+		return serial[rect];
+	}
+
+	public int getLongCount(int rect)
+	{
+		return longCount[rect];
+	}
+
+	public int getLongIdx(int rect)
+	{
+		return longIdx[rect];
+	}
+
+	public boolean isLongSide(int rect, int i, double equalSideTolerance)
+	{
+		if (i == longIdx[rect])
+		{
+			return true;
+		}
+		return width[rect * dimension + i] >= maxWidth[rect]
+				* (1.0 - equalSideTolerance);
+	}
+
+	/**
+	 * Test whether all sides of a rectangle are no larger than a threshold.
+	 */
+	public boolean isSmall(int rect, double threshold)
+	{
+		int base = rect * dimension;
+		for (int i = 0; i < dimension; ++i)
+		{
+			if (width[base + i] > threshold)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compare two rectangles in the order of the original (diameter, fValue,
+	 * serial) keys, ignoring diameter.
+	 * @return true if rect1 ranks ahead of rect2 within a level.
+	 */
+	public boolean isAhead(int rect1, int rect2)
+	{
+		if (fValue[rect1] < fValue[rect2])
+		{
+			return true;
+		}
+		if (fValue[rect1] > fValue[rect2])
+		{
+			return false;
+		}
+		return serial[rect1] < serial[rect2];
+	}
+
+	/**
+	 * Number of levels, including levels that are currently empty.
+	 */
+	public int getNrLevels()
+	{
+		return nrLevels;
+	}
+
+	/**
+	 * Return the level with the k'th smallest diameter.
+	 */
+	public int getLevel(int k)
+	{
+		return levelOrder[k];
+	}
+
+	public double getLevelDiameter(int lvl)
+	{
+		return levelDiameter[lvl];
+	}
+
+	public int getLevelSize(int lvl)
+	{
+		return levelSize[lvl];
+	}
+
+	/**
+	 * Return the i'th rectangle of a level, in heap order.
+	 */
+	public int getLevelRectangle(int lvl, int i)
+	{
+		return levelHeap[lvl][i];
+	}
+
+	/**
+	 * Return the rectangle of a level that ranks first: the one with
+	 * lowest function value, and lowest serial number among those.
+	 */
+	public int getLevelFirst(int lvl)
+	{
+		return levelHeap[lvl][0];
+	}
+
+	/**
+	 * Find the rectangles of a level with a function value equal to that of
+	 * its first rectangle, in increasing order of serial number.
+	 * @param lvl - level to search.
+	 * @param result - array to receive the rectangles, with length at least
+	 * getLevelSize(lvl).
+	 * @return number of rectangles stored in result.
+	 */
+	public int getLevelMinima(int lvl, int[] result)
+	{
+		int[] heap = levelHeap[lvl];
+		int nr = levelSize[lvl];
+		double fMin = fValue[heap[0]];
+		int count = 0;
+		result[count++] = heap[0];
+		// Rectangles with the minimum value form a subtree at the root.
+		for (int i = 0; i < count; ++i)
+		{
+			int pos = heapPosition[result[i]];
+			for (int child = 2 * pos + 1; child <= 2 * pos + 2 && child < nr; ++child)
+			{
+				if (fValue[heap[child]] == fMin)
+				{
+					result[count++] = heap[child];
+				}
+			}
+		}
+		// Sort by serial number.
+		for (int i = 1; i < count; ++i)
+		{
+			int rect = result[i];
+			int j = i - 1;
+			while (j >= 0 && serial[result[j]] > serial[rect])
+			{
+				result[j + 1] = result[j];
+				--j;
+			}
+			result[j + 1] = rect;
+		}
+		return count;
+	}
+
+	/**
+	 * Return the level for a specified diameter, creating a new one if none
+	 * exists.
+	 */
+	protected int findLevel(double aDiameter)
+	{
+		int lo = 0;
+		int hi = nrLevels - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			double midDiameter = levelDiameter[levelOrder[mid]];
+			if (midDiameter < aDiameter)
+			{
+				lo = mid + 1;
+			}
+			else if (midDiameter > aDiameter)
+			{
+				hi = mid - 1;
+			}
+			else
+			{
+				return levelOrder[mid];
+			}
+		}
+		// Create a new level, and insert it at position lo in levelOrder.
+		if (nrLevels >= levelDiameter.length)
+		{
+			int newLength = 2 * levelDiameter.length;
+			levelDiameter = Arrays.copyOf(levelDiameter, newLength);
+			levelHeap = Arrays.copyOf(levelHeap, newLength);
+			levelSize = Arrays.copyOf(levelSize, newLength);
+			levelOrder = Arrays.copyOf(levelOrder, newLength);
+		}
+		int lvl = nrLevels++;
+		levelDiameter[lvl] = aDiameter;
+		levelHeap[lvl] = new int[INITIAL_LEVEL_CAPACITY];
+		levelSize[lvl] = 0;
+		System.arraycopy(levelOrder, lo, levelOrder, lo + 1, lvl - lo);
+		levelOrder[lo] = lvl;
+		return lvl;
+	}
+
+	protected void heapAdd(int lvl, int rect)
+	{
+		int pos = levelSize[lvl]++;
+		if (pos >= levelHeap[lvl].length)
+		{
+			levelHeap[lvl] = Arrays.copyOf(levelHeap[lvl], 2 * pos);
+		}
+		siftUp(levelHeap[lvl], pos, rect);
+	}
+
+	protected void heapRemove(int lvl, int rect)
+	{
+		int[] heap = levelHeap[lvl];
+		int pos = heapPosition[rect];
+		int last = heap[--levelSize[lvl]];
+		if (last == rect)
+		{
+			return;
+		}
+		if (pos > 0 && isAhead(last, heap[(pos - 1) >>> 1]))
+		{
+			siftUp(heap, pos, last);
+		}
+		else
+		{
+			siftDown(heap, levelSize[lvl], pos, last);
+		}
+	}
+
+	protected void siftUp(int[] heap, int pos, int rect)
+	{
+		while (pos > 0)
+		{
+			int parentPos = (pos - 1) >>> 1;
+			int parent = heap[parentPos];
+			if (! isAhead(rect, parent))
+			{
+				break;
+			}
+			heap[pos] = parent;
+			heapPosition[parent] = pos;
+			pos = parentPos;
+		}
+		heap[pos] = rect;
+		heapPosition[rect] = pos;
+	}
+
+	protected void siftDown(int[] heap, int nr, int pos, int rect)
+	{
+		int half = nr >>> 1;
+		while (pos < half)
+		{
+			int childPos = 2 * pos + 1;
+			int child = heap[childPos];
+			int rightPos = childPos + 1;
+			if (rightPos < nr && isAhead(heap[rightPos], child))
+			{
+				childPos = rightPos;
+				child = heap[childPos];
+			}
+			if (! isAhead(child, rect))
+			{
+				break;
+			}
+			heap[pos] = child;
+			heapPosition[child] = pos;
+			pos = childPos;
+		}
+		heap[pos] = rect;
+		heapPosition[rect] = pos;
+	}
+}
@@ -21,14 +21,22 @@ package com.wwidesigner.math;
 import org.apache.commons.math3.complex.Complex;
 
 /**
+ * Mutable complex state vector, stored as primitive real and imaginary parts.
+ * <p>
+ * The set methods, and the methods taking a result argument, work in place,
+ * and do not allocate.  The Complex constructors and getters are retained
+ * as a convenience API over the primitive fields.
+ * 
  * @author kort
  * 
  */
 public class StateVector
 {
 
-    protected Complex mP;
-    protected Complex mU;
+    protected double mPre;
+    protected double mPim;
+    protected double mUre;
+    protected double mUim;
 
     /**
      * Simple 2x1 complex vector representing the state of the air column at a
@@ -36,20 +44,17 @@ public class StateVector
      */
     public StateVector()
     {
-        mP = Complex.ZERO;
-        mU = Complex.ZERO;
+        set( 0.0, 0.0, 0.0, 0.0 );
     }
 
     public StateVector( Complex p, Complex u )
     {
-        mP = TransferMatrix.copyComplex( p );
-        mU = TransferMatrix.copyComplex( u );
+        set( p.getReal(), p.getImaginary(), u.getReal(), u.getImaginary() );
     }
 
     public StateVector( StateVector from )
     {
-        mP = TransferMatrix.copyComplex( from.mP );
-        mU = TransferMatrix.copyComplex( from.mU );
+        set( from );
     }
 
     /**
@@ -57,24 +62,95 @@ public class StateVector
      */
     public StateVector( Complex Z )
     {
-    	if (Z.getReal() == Double.POSITIVE_INFINITY)
+        setImpedance( Z.getReal(), Z.getImaginary() );
+    }
+
+    /**
+     * Set both elements of this vector from their real and imaginary parts.
+     * @return this vector
+     */
+    public StateVector set( double pRe, double pIm, double uRe, double uIm )
+    {
+        mPre = pRe;
+        mPim = pIm;
+        mUre = uRe;
+        mUim = uIm;
+        return this;
+    }
+
+    /**
+     * Copy both elements of another vector into this vector.
+     * @return this vector
+     */
+    public StateVector set( StateVector from )
+    {
+        return set( from.mPre, from.mPim, from.mUre, from.mUim );
+    }
+
+    /**
+     * Set this vector to a state that satisfies
+     * getImpedance() == zRe + i * zIm.
+     * @return this vector
+     */
+    public StateVector setImpedance( double zRe, double zIm )
+    {
+    	if (zRe == Double.POSITIVE_INFINITY)
     	{
-    		mP = new Complex(1.0, 0.0);
-    		mU = new Complex(0.0, 0.0);
-    		return;
+    		return set( 1.0, 0.0, 0.0, 0.0 );
     	}
-    	if (Z.getReal() == Double.NEGATIVE_INFINITY)
+    	if (zRe == Double.NEGATIVE_INFINITY)
     	{
-    		mP = new Complex(-1.0, 0.0);
-    		mU = new Complex(0.0, 0.0);
-    		return;
+    		return set( -1.0, 0.0, 0.0, 0.0 );
     	}
     	// For greater robustness, divide both P and U by (1+Z),
     	// so that both are between 0 and 1, but ratio still works out to Z.
     	// From Paul Dickens, 2007.
-    	Complex Zplus1 = Z.add(1.0);
-        mP = Z.divide(Zplus1);
-        mU = Complex.ONE.divide(Zplus1);
+    	double denRe = zRe + 1.0;
+    	double scale = 1.0 / (denRe * denRe + zIm * zIm);
+    	double uRe = denRe * scale;
+    	double uIm = - zIm * scale;
+    	return set( zRe * uRe - zIm * uIm, zRe * uIm + zIm * uRe, uRe, uIm );
+    }
+
+    /**
+     * Set this vector to (lhs - rhs) * scale, for instance to form a
+     * finite-difference derivative.
+     * The operands may be the same object as this vector.
+     * @return this vector
+     */
+    public StateVector setDifference( StateVector lhs, StateVector rhs, double scale )
+    {
+        return set( ( lhs.mPre - rhs.mPre ) * scale, ( lhs.mPim - rhs.mPim ) * scale,
+                    ( lhs.mUre - rhs.mUre ) * scale, ( lhs.mUim - rhs.mUim ) * scale );
+    }
+
+    /**
+     * Add another state vector to this one, element by element.
+     * Unlike series(), this is the sum of the vectors, not of the impedances.
+     * @return this vector
+     */
+    public StateVector add( StateVector other )
+    {
+        return set( mPre + other.mPre, mPim + other.mPim,
+                    mUre + other.mUre, mUim + other.mUim );
+    }
+
+    /**
+     * Set this vector to represent an ideal open end.
+     * @return this vector
+     */
+    public StateVector setOpenEnd()
+    {
+    	return set( 0.0, 0.0, 1.0, 0.0 );
+    }
+
+    /**
+     * Set this vector to represent an ideal closed end.
+     * @return this vector
+     */
+    public StateVector setClosedEnd()
+    {
+    	return set( 1.0, 0.0, 0.0, 0.0 );
     }
 
     /**
@@ -83,7 +159,7 @@ public class StateVector
     public static StateVector OpenEnd()
     {
     	// At an open end, pressure is zero.
-    	return new StateVector(Complex.ZERO, Complex.ONE);
+    	return new StateVector().setOpenEnd();
     }
 
     /**
@@ -92,7 +168,23 @@ public class StateVector
     public static StateVector ClosedEnd()
     {
     	// At a closed end, acoustic flow is zero.
-    	return new StateVector(Complex.ONE, Complex.ZERO);
+    	return new StateVector().setClosedEnd();
+    }
+
+    /**
+     * @return the pressure element of this state vector
+     */
+    public Complex getP()
+    {
+    	return new Complex( mPre, mPim );
+    }
+
+    /**
+     * @return the volume flow element of this state vector
+     */
+    public Complex getU()
+    {
+    	return new Complex( mUre, mUim );
     }
 
 	/**
@@ -101,7 +193,25 @@ public class StateVector
 	 */
     public Complex getImpedance()
     {
-    	return mP.divide(mU);
+    	return getP().divide(getU());
+    }
+
+	/**
+	 * @param derivative - derivative of this state vector with respect to
+	 *        some variable, such as wave number
+	 * @return the derivative of getImpedance() with respect to the same
+	 *         variable
+	 */
+    public Complex getImpedanceDerivative( StateVector derivative )
+    {
+    	// d(P/U) = (dP * U - P * dU) / U^2.
+    	double numRe = derivative.mPre * mUre - derivative.mPim * mUim
+    			- ( mPre * derivative.mUre - mPim * derivative.mUim );
+    	double numIm = derivative.mPre * mUim + derivative.mPim * mUre
+    			- ( mPre * derivative.mUim + mPim * derivative.mUre );
+    	double denRe = mUre * mUre - mUim * mUim;
+    	double denIm = 2.0 * mUre * mUim;
+    	return new Complex( numRe, numIm ).divide( new Complex( denRe, denIm ) );
     }
 
 	/**
@@ -110,7 +220,7 @@ public class StateVector
 	 */
     public Complex getAdmittance()
     {
-    	return mU.divide(mP);
+    	return getU().divide(getP());
     }
 
 	/**
@@ -119,8 +229,8 @@ public class StateVector
 	 */
     public Complex getReflectance(double Z0)
     {
-    	return mP.subtract(mU.multiply(Z0))
-    			.divide(mP.add(mU.multiply(Z0)));
+    	return new Complex( mPre - mUre * Z0, mPim - mUim * Z0 )
+    			.divide( new Complex( mPre + mUre * Z0, mPim + mUim * Z0 ) );
     }
 
     /**
@@ -130,9 +240,25 @@ public class StateVector
      */
     public StateVector series(StateVector other)
     {
-    	Complex newP = this.mP.multiply(other.mU).add(other.mP.multiply(this.mU));
-    	Complex newU = this.mU.multiply(other.mU);
-    	return new StateVector(newP, newU);
+    	return series(other, new StateVector());
+    }
+
+    /**
+     * Add another state vector in series with this, without allocating.
+     * The result may be the same object as this or other.
+     * @param other
+     * @param result - state vector to receive the series combination
+     * @return result
+     */
+    public StateVector series(StateVector other, StateVector result)
+    {
+    	double newPre = mPre * other.mUre - mPim * other.mUim
+    			+ other.mPre * mUre - other.mPim * mUim;
+    	double newPim = mPre * other.mUim + mPim * other.mUre
+    			+ other.mPre * mUim + other.mPim * mUre;
+    	double newUre = mUre * other.mUre - mUim * other.mUim;
+    	double newUim = mUre * other.mUim + mUim * other.mUre;
+    	return result.set(newPre, newPim, newUre, newUim);
     }
 
     /**
@@ -142,8 +268,24 @@ public class StateVector
      */
     public StateVector parallel(StateVector other)
     {
-    	Complex newU = this.mP.multiply(other.mU).add(other.mP.multiply(this.mU));
-    	Complex newP = this.mP.multiply(other.mP);
-    	return new StateVector(newP, newU);
+    	return parallel(other, new StateVector());
+    }
+
+    /**
+     * Add another state vector in parallel with this, without allocating.
+     * The result may be the same object as this or other.
+     * @param other
+     * @param result - state vector to receive the parallel combination
+     * @return result
+     */
+    public StateVector parallel(StateVector other, StateVector result)
+    {
+    	double newUre = mPre * other.mUre - mPim * other.mUim
+    			+ other.mPre * mUre - other.mPim * mUim;
+    	double newUim = mPre * other.mUim + mPim * other.mUre
+    			+ other.mPre * mUim + other.mPim * mUre;
+    	double newPre = mPre * other.mPre - mPim * other.mPim;
+    	double newPim = mPre * other.mPim + mPim * other.mPre;
+    	return result.set(newPre, newPim, newUre, newUim);
     }
 }
@@ -21,16 +21,32 @@ package com.wwidesigner.math;
 import org.apache.commons.math3.complex.Complex;
 
 /**
+ * Mutable 2x2 complex matrix, stored as primitive real and imaginary parts.
+ * <p>
+ * The methods taking a result argument work in place, and do not allocate,
+ * so that calculators can reuse scratch instances on the impedance hot path.
+ * The methods returning new objects, and the Complex getters and setters,
+ * are retained as a convenience API over the primitive fields.
+ * 
  * @author kort
  * 
  */
 public class TransferMatrix
 {
+    /**
+     * Relative step in wave number for calculators that estimate the
+     * derivative of a transfer matrix by central differences.
+     */
+    public static final double DIFFERENCE_STEP = 1.0e-6;
 
-    protected Complex mPP;
-    protected Complex mPU;
-    protected Complex mUP;
-    protected Complex mUU;
+    protected double mPPre;
+    protected double mPPim;
+    protected double mPUre;
+    protected double mPUim;
+    protected double mUPre;
+    protected double mUPim;
+    protected double mUUre;
+    protected double mUUim;
 
     /**
      * Simple 2x2 complex matrix. Here e.g. PU represents the component of the
@@ -39,60 +55,185 @@ public class TransferMatrix
      */
     public TransferMatrix()
     {
-        mPP = Complex.ONE;
-        mPU = Complex.ZERO;
-        mUP = Complex.ZERO;
-        mUU = Complex.ONE;
+        setIdentity();
     }
 
     public TransferMatrix( Complex pp, Complex pu, Complex up, Complex uu )
     {
-        mPP = copyComplex( pp );
-        mPU = copyComplex( pu );
-        mUP = copyComplex( up );
-        mUU = copyComplex( uu );
+        set( pp.getReal(), pp.getImaginary(), pu.getReal(), pu.getImaginary(),
+             up.getReal(), up.getImaginary(), uu.getReal(), uu.getImaginary() );
     }
 
     public TransferMatrix( TransferMatrix from )
     {
-        mPP = copyComplex( from.mPP );
-        mPU = copyComplex( from.mPU );
-        mUP = copyComplex( from.mUP );
-        mUU = copyComplex( from.mUU );
+        set( from );
+    }
+
+    /**
+     * Set all elements of this matrix from their real and imaginary parts.
+     * @return this matrix
+     */
+    public TransferMatrix set( double ppRe, double ppIm, double puRe, double puIm,
+                               double upRe, double upIm, double uuRe, double uuIm )
+    {
+        mPPre = ppRe;
+        mPPim = ppIm;
+        mPUre = puRe;
+        mPUim = puIm;
+        mUPre = upRe;
+        mUPim = upIm;
+        mUUre = uuRe;
+        mUUim = uuIm;
+        return this;
+    }
+
+    /**
+     * Copy all elements of another matrix into this matrix.
+     * @return this matrix
+     */
+    public TransferMatrix set( TransferMatrix from )
+    {
+        return set( from.mPPre, from.mPPim, from.mPUre, from.mPUim,
+                    from.mUPre, from.mUPim, from.mUUre, from.mUUim );
+    }
+
+    /**
+     * Reset this matrix to the identity matrix.
+     * @return this matrix
+     */
+    public TransferMatrix setIdentity()
+    {
+        return set( 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 1.0, 0.0 );
     }
 
     public static TransferMatrix multiply( TransferMatrix lhs, TransferMatrix rhs )
     {
-        return new TransferMatrix( lhs.mPP.multiply( rhs.mPP ).add( lhs.mPU.multiply( rhs.mUP ) ),
-                                   lhs.mPP.multiply( rhs.mPU ).add( lhs.mPU.multiply( rhs.mUU ) ),
-                                   lhs.mUP.multiply( rhs.mPP ).add( lhs.mUU.multiply( rhs.mUP ) ),
-                                   lhs.mUP.multiply( rhs.mPU ).add( lhs.mUU.multiply( rhs.mUU ) ) );
+        return multiply( lhs, rhs, new TransferMatrix() );
     }
 
     public TransferMatrix multiply( TransferMatrix rhs )
     {
-        return new TransferMatrix( this.mPP.multiply( rhs.mPP ).add( this.mPU.multiply( rhs.mUP ) ),
-                                   this.mPP.multiply( rhs.mPU ).add( this.mPU.multiply( rhs.mUU ) ),
-                                   this.mUP.multiply( rhs.mPP ).add( this.mUU.multiply( rhs.mUP ) ),
-                                   this.mUP.multiply( rhs.mPU ).add( this.mUU.multiply( rhs.mUU ) ) );
+        return multiply( this, rhs, new TransferMatrix() );
+    }
+
+    /**
+     * Multiply two matrices, without allocating.
+     * The result may be the same object as either operand.
+     * @param lhs - left-hand operand
+     * @param rhs - right-hand operand
+     * @param result - matrix to receive lhs * rhs
+     * @return result
+     */
+    public static TransferMatrix multiply( TransferMatrix lhs, TransferMatrix rhs,
+                                           TransferMatrix result )
+    {
+        double ppRe = lhs.mPPre * rhs.mPPre - lhs.mPPim * rhs.mPPim
+                    + lhs.mPUre * rhs.mUPre - lhs.mPUim * rhs.mUPim;
+        double ppIm = lhs.mPPre * rhs.mPPim + lhs.mPPim * rhs.mPPre
+                    + lhs.mPUre * rhs.mUPim + lhs.mPUim * rhs.mUPre;
+        double puRe = lhs.mPPre * rhs.mPUre - lhs.mPPim * rhs.mPUim
+                    + lhs.mPUre * rhs.mUUre - lhs.mPUim * rhs.mUUim;
+        double puIm = lhs.mPPre * rhs.mPUim + lhs.mPPim * rhs.mPUre
+                    + lhs.mPUre * rhs.mUUim + lhs.mPUim * rhs.mUUre;
+        double upRe = lhs.mUPre * rhs.mPPre - lhs.mUPim * rhs.mPPim
+                    + lhs.mUUre * rhs.mUPre - lhs.mUUim * rhs.mUPim;
+        double upIm = lhs.mUPre * rhs.mPPim + lhs.mUPim * rhs.mPPre
+                    + lhs.mUUre * rhs.mUPim + lhs.mUUim * rhs.mUPre;
+        double uuRe = lhs.mUPre * rhs.mPUre - lhs.mUPim * rhs.mPUim
+                    + lhs.mUUre * rhs.mUUre - lhs.mUUim * rhs.mUUim;
+        double uuIm = lhs.mUPre * rhs.mPUim + lhs.mUPim * rhs.mPUre
+                    + lhs.mUUre * rhs.mUUim + lhs.mUUim * rhs.mUUre;
+        return result.set( ppRe, ppIm, puRe, puIm, upRe, upIm, uuRe, uuIm );
     }
 
     public static StateVector multiply( TransferMatrix lhs, StateVector rhs )
     {
-        return new StateVector( lhs.mPP.multiply( rhs.mP ).add( lhs.mPU.multiply( rhs.mU ) ),
-                                lhs.mUP.multiply( rhs.mP ).add( lhs.mUU.multiply( rhs.mU ) ) );
+        return lhs.multiply( rhs, new StateVector() );
     }
 
     public StateVector multiply( StateVector rhs )
     {
-        return new StateVector( this.mPP.multiply( rhs.mP ).add( this.mPU.multiply( rhs.mU ) ),
-                                this.mUP.multiply( rhs.mP ).add( this.mUU.multiply( rhs.mU ) ) );
+        return multiply( rhs, new StateVector() );
+    }
+
+    /**
+     * Multiply a state vector by this matrix, without allocating.
+     * The result may be the same object as rhs.
+     * @param rhs - state vector to transform
+     * @param result - state vector to receive this * rhs
+     * @return result
+     */
+    public StateVector multiply( StateVector rhs, StateVector result )
+    {
+        double pRe = mPPre * rhs.mPre - mPPim * rhs.mPim
+                   + mPUre * rhs.mUre - mPUim * rhs.mUim;
+        double pIm = mPPre * rhs.mPim + mPPim * rhs.mPre
+                   + mPUre * rhs.mUim + mPUim * rhs.mUre;
+        double uRe = mUPre * rhs.mPre - mUPim * rhs.mPim
+                   + mUUre * rhs.mUre - mUUim * rhs.mUim;
+        double uIm = mUPre * rhs.mPim + mUPim * rhs.mPre
+                   + mUUre * rhs.mUim + mUUim * rhs.mUre;
+        return result.set( pRe, pIm, uRe, uIm );
     }
     
+    /**
+     * Multiply a state vector by this matrix, and carry the derivative of
+     * the state vector along with it, without allocating.  If this matrix
+     * and the state vector are functions of some variable, such as wave
+     * number, the result derivative is derivative * rhs + this * rhsDerivative.
+     * Results may be the same objects as rhs and rhsDerivative.
+     * @param derivative - derivative of this matrix
+     * @param rhs - state vector to transform
+     * @param rhsDerivative - derivative of rhs
+     * @param result - state vector to receive this * rhs
+     * @param resultDerivative - state vector to receive the derivative
+     * of this * rhs
+     * @return result
+     */
+    public StateVector multiply( TransferMatrix derivative, StateVector rhs,
+                                 StateVector rhsDerivative, StateVector result,
+                                 StateVector resultDerivative )
+    {
+        double dpRe = derivative.mPPre * rhs.mPre - derivative.mPPim * rhs.mPim
+                    + derivative.mPUre * rhs.mUre - derivative.mPUim * rhs.mUim
+                    + mPPre * rhsDerivative.mPre - mPPim * rhsDerivative.mPim
+                    + mPUre * rhsDerivative.mUre - mPUim * rhsDerivative.mUim;
+        double dpIm = derivative.mPPre * rhs.mPim + derivative.mPPim * rhs.mPre
+                    + derivative.mPUre * rhs.mUim + derivative.mPUim * rhs.mUre
+                    + mPPre * rhsDerivative.mPim + mPPim * rhsDerivative.mPre
+                    + mPUre * rhsDerivative.mUim + mPUim * rhsDerivative.mUre;
+        double duRe = derivative.mUPre * rhs.mPre - derivative.mUPim * rhs.mPim
+                    + derivative.mUUre * rhs.mUre - derivative.mUUim * rhs.mUim
+                    + mUPre * rhsDerivative.mPre - mUPim * rhsDerivative.mPim
+                    + mUUre * rhsDerivative.mUre - mUUim * rhsDerivative.mUim;
+        double duIm = derivative.mUPre * rhs.mPim + derivative.mUPim * rhs.mPre
+                    + derivative.mUUre * rhs.mUim + derivative.mUUim * rhs.mUre
+                    + mUPre * rhsDerivative.mPim + mUPim * rhsDerivative.mPre
+                    + mUUre * rhsDerivative.mUim + mUUim * rhsDerivative.mUre;
+        multiply( rhs, result );
+        resultDerivative.set( dpRe, dpIm, duRe, duIm );
+        return result;
+    }
+
+    /**
+     * Set this matrix to (lhs - rhs) * scale, for instance to form a
+     * finite-difference derivative.
+     * The operands may be the same object as this matrix.
+     * @return this matrix
+     */
+    public TransferMatrix setDifference( TransferMatrix lhs, TransferMatrix rhs,
+                                         double scale )
+    {
+        return set( ( lhs.mPPre - rhs.mPPre ) * scale, ( lhs.mPPim - rhs.mPPim ) * scale,
+                    ( lhs.mPUre - rhs.mPUre ) * scale, ( lhs.mPUim - rhs.mPUim ) * scale,
+                    ( lhs.mUPre - rhs.mUPre ) * scale, ( lhs.mUPim - rhs.mUPim ) * scale,
+                    ( lhs.mUUre - rhs.mUUre ) * scale, ( lhs.mUUim - rhs.mUUim ) * scale );
+    }
+
     public Complex determinant()
     {
-    	Complex det = mPP.multiply(mUU).subtract(mPU.multiply(mUP));
-    	return det;
+        return new Complex( mPPre * mUUre - mPPim * mUUim - mPUre * mUPre + mPUim * mUPim,
+                            mPPre * mUUim + mPPim * mUUre - mPUre * mUPim - mPUim * mUPre );
     }
 
     public static Complex copyComplex( Complex in )
@@ -106,7 +247,7 @@ public class TransferMatrix
      */
     public Complex getPP()
     {
-        return mPP;
+        return new Complex( mPPre, mPPim );
     }
 
     
@@ -115,7 +256,7 @@ public class TransferMatrix
      */
     public Complex getPU()
     {
-        return mPU;
+        return new Complex( mPUre, mPUim );
     }
 
     
@@ -124,7 +265,7 @@ public class TransferMatrix
      */
     public Complex getUP()
     {
-        return mUP;
+        return new Complex( mUPre, mUPim );
     }
 
     
@@ -133,7 +274,7 @@ public class TransferMatrix
      */
     public Complex getUU()
     {
-        return mUU;
+        return new Complex( mUUre, mUUim );
     }
 
     
@@ -142,7 +283,8 @@ public class TransferMatrix
      */
     public void setPP( Complex pp )
     {
-        mPP = pp;
+        mPPre = pp.getReal();
+        mPPim = pp.getImaginary();
     }
 
     
@@ -151,7 +293,8 @@ public class TransferMatrix
      */
     public void setPU( Complex pu )
     {
-        mPU = pu;
+        mPUre = pu.getReal();
+        mPUim = pu.getImaginary();
     }
 
     
@@ -160,7 +303,8 @@ public class TransferMatrix
      */
     public void setUP( Complex up )
     {
-        mUP = up;
+        mUPre = up.getReal();
+        mUPim = up.getImaginary();
     }
 
     
@@ -169,11 +313,12 @@ public class TransferMatrix
      */
     public void setUU( Complex uu )
     {
-        mUU = uu;
+        mUUre = uu.getReal();
+        mUUim = uu.getImaginary();
     }
 
 	public static TransferMatrix makeIdentity()
 	{
-        return new TransferMatrix(Complex.ONE, Complex.ZERO, Complex.ZERO, Complex.ONE);
+        return new TransferMatrix();
 	}
 }
@@ -0,0 +1,588 @@
+/**
+ * Spectrum of a complex quantity, sampled adaptively over a frequency range.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.analysis.UnivariateFunction;
+import org.apache.commons.math3.analysis.solvers.BrentSolver;
+import org.apache.commons.math3.analysis.solvers.UnivariateSolver;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.univariate.BrentOptimizer;
+import org.apache.commons.math3.optim.univariate.SearchInterval;
+import org.apache.commons.math3.optim.univariate.UnivariateObjectiveFunction;
+import org.apache.commons.math3.optim.univariate.UnivariateOptimizer;
+import org.apache.commons.math3.optim.univariate.UnivariatePointValuePair;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A spectrum of a complex quantity, such as impedance or reflectance,
+ * sampled over a range of frequencies.  The samples are a subset of the
+ * nfreq equally-spaced frequencies of a uniform sweep: the spectrum starts
+ * with every COARSE_STRIDE'th frequency, or closer if that would give
+ * fewer than MIN_COARSE_INTERVALS intervals, then repeatedly halves the
+ * intervals where a monitored quantity departs from a straight line by more
+ * than its tolerance.  Sampling is dense only near resonances, where the
+ * quantities change rapidly.  The samples are held in primitive arrays, in
+ * order of frequency, and never number more than nfreq.
+ *
+ * Each round of refinement calculates all its new samples with one call to
+ * calcValues(), so calculators can share work between frequencies.
+ *
+ * Minima and maxima are bracketed by the samples, then located with a
+ * Brent root solver where the extremum is a zero crossing, or a Brent
+ * optimizer otherwise.  Their accuracy does not depend on the sample
+ * spacing.
+ *
+ * @author Burton Patkau
+ */
+public abstract class AdaptiveSpectrum
+{
+	/**
+	 * Largest spacing of the initial samples, in steps of the uniform sweep.
+	 */
+	public static final int COARSE_STRIDE = 32;
+	/**
+	 * Smallest number of intervals between the initial samples.
+	 */
+	public static final int MIN_COARSE_INTERVALS = 64;
+
+	/**
+	 * A real quantity derived from a complex sample.
+	 */
+	public interface Quantity
+	{
+		double value(double freq, double re, double im);
+	}
+
+	/**
+	 * log |z|.  Changes rapidly near resonances, on any scale of z.
+	 */
+	public static final Quantity LOG_MAGNITUDE = new Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			return FastMath.log(FastMath.hypot(re, im) + Double.MIN_NORMAL);
+		}
+	};
+
+	/**
+	 * arg(z), in radians.
+	 */
+	public static final Quantity ARGUMENT = new Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			return FastMath.atan2(im, re);
+		}
+	};
+
+	/**
+	 * Re(z).
+	 */
+	public static final Quantity REAL = new Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			return re;
+		}
+	};
+
+	/**
+	 * Im(z).
+	 */
+	public static final Quantity IMAGINARY = new Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			return im;
+		}
+	};
+
+	// Quantities that govern refinement, and the largest departure from
+	// linear interpolation allowed in each.
+	protected final Quantity[] monitors;
+	protected final double[] tolerances;
+
+	// Samples in use are 0 through size - 1, in order of frequency.
+	// steps[i] is the position of sample i in the uniform sweep.
+	protected int size;
+	protected int[] steps;
+	protected double[] freqs;
+	protected double[] re;
+	protected double[] im;
+	// monitorValues[m][i] is monitors[m] at sample i.
+	protected double[][] monitorValues;
+
+	// Buffers for merging new samples, swapped with the arrays above.
+	protected int[] spareSteps;
+	protected double[] spareFreqs;
+	protected double[] spareRe;
+	protected double[] spareIm;
+	protected double[][] spareMonitorValues;
+
+	protected double freqStart;
+	protected double freqStep;
+
+	// Scratch arrays for calculating single values.
+	private final double[] singleFreq = new double[1];
+	private final double[] singleRe = new double[1];
+	private final double[] singleIm = new double[1];
+
+	/**
+	 * @param aMonitors
+	 *            - quantities that govern refinement.
+	 * @param aTolerances
+	 *            - for each monitored quantity, the largest departure from
+	 *            linear interpolation allowed between samples.
+	 */
+	public AdaptiveSpectrum(Quantity[] aMonitors, double[] aTolerances)
+	{
+		monitors = aMonitors;
+		tolerances = aTolerances;
+		monitorValues = new double[monitors.length][];
+		spareMonitorValues = new double[monitors.length][];
+	}
+
+	/**
+	 * Calculate the complex quantity at each of a set of frequencies.
+	 *
+	 * @param frequencies
+	 *            - frequencies at which to calculate, in increasing order.
+	 * @param outRe
+	 *            - on return, real part at each frequency.
+	 * @param outIm
+	 *            - on return, imaginary part at each frequency.
+	 */
+	protected abstract void calcValues(double[] frequencies, double[] outRe,
+			double[] outIm);
+
+	/**
+	 * Sample the spectrum between two frequencies, replacing any previous
+	 * samples.
+	 *
+	 * @param aFreqStart
+	 *            - lowest frequency.
+	 * @param freqEnd
+	 *            - highest frequency.
+	 * @param nfreq
+	 *            - number of frequencies in the equivalent uniform sweep;
+	 *            the largest number of samples taken.
+	 */
+	public void calculate(double aFreqStart, double freqEnd, int nfreq)
+	{
+		freqStart = aFreqStart;
+		freqStep = (nfreq > 1 ? (freqEnd - aFreqStart) / (nfreq - 1) : 0.0);
+		size = 0;
+		int lastStep = nfreq - 1;
+		int stride = Math.max(1,
+				Math.min(COARSE_STRIDE, lastStep / MIN_COARSE_INTERVALS));
+		int nrCoarse = (lastStep + stride - 1) / stride + 1;
+		if (nfreq <= 0)
+		{
+			nrCoarse = 0;
+		}
+		else if (nfreq == 1)
+		{
+			nrCoarse = 1;
+		}
+		int[] newSteps = new int[nrCoarse];
+		for (int i = 0; i < nrCoarse; ++i)
+		{
+			newSteps[i] = Math.min(i * stride, lastStep);
+		}
+		ensureCapacity(Math.min(nfreq, 2 * nrCoarse));
+		addSamples(newSteps, nrCoarse);
+
+		// Refine, until no interval needs it, or all are at the spacing of
+		// the uniform sweep.
+		boolean[] isCurved = new boolean[size];
+		while (true)
+		{
+			if (isCurved.length < size)
+			{
+				isCurved = new boolean[steps.length];
+			}
+			for (int i = 0; i < size; ++i)
+			{
+				isCurved[i] = (i > 0 && i < size - 1 && isCurved(i));
+			}
+			int nrNew = 0;
+			for (int i = 0; i < size - 1; ++i)
+			{
+				if ((isCurved[i] || isCurved[i + 1])
+						&& steps[i + 1] - steps[i] >= 2)
+				{
+					if (nrNew == newSteps.length)
+					{
+						newSteps = Arrays.copyOf(newSteps, 2 * nrNew + 1);
+					}
+					newSteps[nrNew++] = (steps[i] + steps[i + 1]) >>> 1;
+				}
+			}
+			if (nrNew == 0)
+			{
+				break;
+			}
+			ensureCapacity(Math.min(nfreq, size + nrNew));
+			addSamples(newSteps, nrNew);
+		}
+	}
+
+	/**
+	 * Test whether monitored quantities at sample i depart from a straight
+	 * line between its neighbours by more than their tolerances.
+	 */
+	protected boolean isCurved(int i)
+	{
+		double fraction = (double) (steps[i] - steps[i - 1])
+				/ (double) (steps[i + 1] - steps[i - 1]);
+		for (int m = 0; m < monitors.length; ++m)
+		{
+			double[] y = monitorValues[m];
+			double interpolated = y[i - 1] + fraction * (y[i + 1] - y[i - 1]);
+			if (!(Math.abs(y[i] - interpolated) <= tolerances[m]))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calculate samples at positions newSteps[0 .. nrNew - 1] of the uniform
+	 * sweep, in increasing order, and merge them with the existing samples.
+	 */
+	protected void addSamples(int[] newSteps, int nrNew)
+	{
+		double[] newFreqs = new double[nrNew];
+		double[] newRe = new double[nrNew];
+		double[] newIm = new double[nrNew];
+		for (int j = 0; j < nrNew; ++j)
+		{
+			newFreqs[j] = frequencyAt(newSteps[j]);
+		}
+		calcValues(newFreqs, newRe, newIm);
+
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < size || j < nrNew)
+		{
+			if (j >= nrNew || (i < size && steps[i] < newSteps[j]))
+			{
+				spareSteps[k] = steps[i];
+				spareFreqs[k] = freqs[i];
+				spareRe[k] = re[i];
+				spareIm[k] = im[i];
+				for (int m = 0; m < monitors.length; ++m)
+				{
+					spareMonitorValues[m][k] = monitorValues[m][i];
+				}
+				++i;
+			}
+			else
+			{
+				spareSteps[k] = newSteps[j];
+				spareFreqs[k] = newFreqs[j];
+				spareRe[k] = newRe[j];
+				spareIm[k] = newIm[j];
+				for (int m = 0; m < monitors.length; ++m)
+				{
+					spareMonitorValues[m][k] = monitors[m].value(newFreqs[j],
+							newRe[j], newIm[j]);
+				}
+				++j;
+			}
+			++k;
+		}
+		size = k;
+
+		int[] swapSteps = steps;
+		steps = spareSteps;
+		spareSteps = swapSteps;
+		double[] swap = freqs;
+		freqs = spareFreqs;
+		spareFreqs = swap;
+		swap = re;
+		re = spareRe;
+		spareRe = swap;
+		swap = im;
+		im = spareIm;
+		spareIm = swap;
+		double[][] swapMonitors = monitorValues;
+		monitorValues = spareMonitorValues;
+		spareMonitorValues = swapMonitors;
+	}
+
+	/**
+	 * Ensure both sets of sample arrays can hold at least capacity samples.
+	 */
+	protected void ensureCapacity(int capacity)
+	{
+		if (steps != null && steps.length >= capacity)
+		{
+			return;
+		}
+		int newLength = Math.max(capacity,
+				(steps == null ? 0 : 2 * steps.length));
+		steps = (steps == null ? new int[newLength] : Arrays.copyOf(steps,
+				newLength));
+		freqs = grow(freqs, newLength);
+		re = grow(re, newLength);
+		im = grow(im, newLength);
+		spareSteps = new int[newLength];
+		spareFreqs = new double[newLength];
+		spareRe = new double[newLength];
+		spareIm = new double[newLength];
+		for (int m = 0; m < monitors.length; ++m)
+		{
+			monitorValues[m] = grow(monitorValues[m], newLength);
+			spareMonitorValues[m] = new double[newLength];
+		}
+	}
+
+	private static double[] grow(double[] array, int newLength)
+	{
+		if (array == null)
+		{
+			return new double[newLength];
+		}
+		return Arrays.copyOf(array, newLength);
+	}
+
+	/**
+	 * @return frequency at a position of the uniform sweep, calculated as
+	 *         the uniform sweep does.
+	 */
+	protected double frequencyAt(int step)
+	{
+		return freqStart + step * freqStep;
+	}
+
+	/**
+	 * @return number of samples.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public double getFrequency(int i)
+	{
+		return freqs[i];
+	}
+
+	public double getReal(int i)
+	{
+		return re[i];
+	}
+
+	public double getImaginary(int i)
+	{
+		return im[i];
+	}
+
+	/**
+	 * @return value of monitored quantity m at sample i.
+	 */
+	public double getMonitorValue(int m, int i)
+	{
+		return monitorValues[m][i];
+	}
+
+	/**
+	 * @return value of a quantity at a frequency, not necessarily one of the
+	 *         samples.
+	 */
+	public double calcQuantity(Quantity quantity, double freq)
+	{
+		singleFreq[0] = freq;
+		calcValues(singleFreq, singleRe, singleIm);
+		return quantity.value(freq, singleRe[0], singleIm[0]);
+	}
+
+	/**
+	 * Find the local minima or maxima of a quantity.  Each sample that is
+	 * strictly below (or above) both its neighbours brackets an extremum.
+	 * If zeroOf is not null, and changes sign between the neighbours, the
+	 * extremum is taken to be the zero of zeroOf; otherwise, the extremum is
+	 * located by a Brent optimizer.
+	 * 
+	 * The first and last intervals have no sample beyond them to complete a
+	 * bracket, so if zeroOf is not null, a zero of zeroOf in one of them is
+	 * also taken as an extremum, if the quantity there is below (or above)
+	 * its value at both ends of the interval.
+	 *
+	 * @param quantity
+	 *            - quantity whose extrema to find.
+	 * @param zeroOf
+	 *            - quantity whose zero marks an extremum, or null.
+	 * @param goal
+	 *            - GoalType.MINIMIZE to find minima, MAXIMIZE to find
+	 *            maxima.
+	 * @param extremaFreqs
+	 *            - on return, frequency of each extremum found, in increasing
+	 *            order.
+	 * @param extremaValues
+	 *            - if not null, on return, quantity at each extremum found.
+	 */
+	public void findExtrema(final Quantity quantity, final Quantity zeroOf,
+			GoalType goal, List<Double> extremaFreqs, List<Double> extremaValues)
+	{
+		double sign = (goal == GoalType.MINIMIZE ? 1.0 : -1.0);
+		if (size >= 2 && !(size > 2 && isBracketed(quantity, sign, 1)))
+		{
+			addEndExtremum(quantity, zeroOf, sign, 0, extremaFreqs,
+					extremaValues);
+		}
+		for (int i = 1; i < size - 1; ++i)
+		{
+			if (!isBracketed(quantity, sign, i))
+			{
+				continue;
+			}
+			double extremum = Double.NaN;
+			if (zeroOf != null)
+			{
+				extremum = locateZero(zeroOf, i - 1, i);
+				if (Double.isNaN(extremum))
+				{
+					extremum = locateZero(zeroOf, i, i + 1);
+				}
+			}
+			if (Double.isNaN(extremum))
+			{
+				extremum = locateExtremum(quantity, goal, i);
+			}
+			extremaFreqs.add(extremum);
+			if (extremaValues != null)
+			{
+				extremaValues.add(calcQuantity(quantity, extremum));
+			}
+		}
+		if (size > 2 && !isBracketed(quantity, sign, size - 2))
+		{
+			addEndExtremum(quantity, zeroOf, sign, size - 2, extremaFreqs,
+					extremaValues);
+		}
+	}
+
+	/**
+	 * Test whether sign * quantity at sample i is strictly below its value
+	 * at both neighbouring samples.
+	 */
+	protected boolean isBracketed(Quantity quantity, double sign, int i)
+	{
+		double yPrev = sign * quantity.value(freqs[i - 1], re[i - 1], im[i - 1]);
+		double y = sign * quantity.value(freqs[i], re[i], im[i]);
+		double yNext = sign * quantity.value(freqs[i + 1], re[i + 1], im[i + 1]);
+		return y < yPrev && y < yNext;
+	}
+
+	/**
+	 * Add an extremum at a zero of zeroOf between samples i and i + 1, if
+	 * there is one, and sign * quantity there is below its value at both
+	 * samples.
+	 */
+	protected void addEndExtremum(Quantity quantity, Quantity zeroOf,
+			double sign, int i, List<Double> extremaFreqs,
+			List<Double> extremaValues)
+	{
+		if (zeroOf == null)
+		{
+			return;
+		}
+		double extremum = locateZero(zeroOf, i, i + 1);
+		if (Double.isNaN(extremum))
+		{
+			return;
+		}
+		double y = calcQuantity(quantity, extremum);
+		if (sign * y < sign * quantity.value(freqs[i], re[i], im[i])
+				&& sign * y < sign
+						* quantity.value(freqs[i + 1], re[i + 1], im[i + 1]))
+		{
+			extremaFreqs.add(extremum);
+			if (extremaValues != null)
+			{
+				extremaValues.add(y);
+			}
+		}
+	}
+
+	/**
+	 * Locate the zero of a quantity between samples i and j, if it changes
+	 * sign between them.
+	 *
+	 * @return frequency of the zero, or NaN if there is no sign change.
+	 */
+	protected double locateZero(final Quantity quantity, int i, int j)
+	{
+		double yLow = quantity.value(freqs[i], re[i], im[i]);
+		double yHigh = quantity.value(freqs[j], re[j], im[j]);
+		if (yLow == 0.0)
+		{
+			return freqs[i];
+		}
+		if (yHigh == 0.0)
+		{
+			return freqs[j];
+		}
+		if ((yLow < 0.0) == (yHigh < 0.0))
+		{
+			return Double.NaN;
+		}
+		UnivariateSolver solver = new BrentSolver(1.0e-12, 1.0e-6);
+		return solver.solve(50, new UnivariateFunction()
+		{
+			@Override
+			public double value(double freq)
+			{
+				return calcQuantity(quantity, freq);
+			}
+		}, freqs[i], freqs[j]);
+	}
+
+	/**
+	 * Locate the extremum of a quantity bracketed by samples i - 1 and i + 1.
+	 */
+	protected double locateExtremum(final Quantity quantity, GoalType goal,
+			int i)
+	{
+		UnivariateOptimizer optimizer = new BrentOptimizer(1.0e-8, 1.0e-4);
+		UnivariatePointValuePair optimum = optimizer.optimize(goal,
+				new UnivariateObjectiveFunction(new UnivariateFunction()
+				{
+					@Override
+					public double value(double freq)
+					{
+						return calcQuantity(quantity, freq);
+					}
+				}), new SearchInterval(freqs[i - 1], freqs[i + 1], freqs[i]),
+				new MaxEval(50));
+		return optimum.getPoint();
+	}
+}
@@ -18,6 +18,7 @@
  */
 package com.wwidesigner.modelling;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.wwidesigner.note.Fingering;
@@ -58,24 +59,39 @@ public class CentDeviationEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
 		double[] errorValues = new double[fingeringTargets.size()];
+		double[] rangeValues = calculateErrorVector(fingeringTargets, 0,
+				fingeringTargets.size());
+		System.arraycopy(rangeValues, 0, errorValues, 0, rangeValues.length);
+		return errorValues;
+	}
+
+	/**
+	 * @see com.wwidesigner.modelling.EvaluatorInterface#calculateErrorVector(java
+	 *      .util.List, int, int)
+	 */
+	@Override
+	public double[] calculateErrorVector(List<Fingering> fingeringTargets,
+			int first, int last)
+	{
+		double[] errorValues = new double[last - first];
 
 		Tuning targetTuning = new Tuning();
 		targetTuning.setFingering(fingeringTargets);
 		tuner.setTuning(targetTuning);
 
 		int index = 0;
-		for (Fingering target : fingeringTargets)
+		for (Fingering target : fingeringTargets.subList(first, last))
 		{
 			double centDeviation = 1200.0;
 			if ( target.getNote() != null && target.getNote().getFrequency() != null )
 			{
-				try
+				// A fingering with no playing range, or a failed
+				// prediction, keeps the default deviation.
+				Double predicted = tuner.tryPredictedFrequency(target);
+				if (predicted != null)
 				{
 					centDeviation = Note.cents(target.getNote().getFrequency(),
-							tuner.predictedFrequency(target));
-				}
-				catch (RuntimeException e)
-				{
+							predicted);
 				}
 				errorValues[index++] = centDeviation;
 			}
@@ -87,7 +103,7 @@ public class CentDeviationEvaluator implements EvaluatorInterface
 			}
 		}
 
-		return errorValues;
+		return Arrays.copyOf(errorValues, index);
 	}
 
 	protected void setTuner(InstrumentTuner aTuner)
@@ -98,4 +114,10 @@ public class CentDeviationEvaluator implements EvaluatorInterface
 		this.tuner.setParams(calculator.getPhysicalParameters());
 	}
 
+	@Override
+	public EvaluatorInterface copy(InstrumentCalculator aCalculator)
+	{
+		return new CentDeviationEvaluator(aCalculator, tuner.copy());
+	}
+
 }
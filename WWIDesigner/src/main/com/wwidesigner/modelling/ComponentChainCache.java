@@ -0,0 +1,206 @@
+/**
+ * Cache of partial results for incremental impedance calculation.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.math.StateVector;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.AirState;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Cache of the component transfer matrices, and the partial products of
+ * those matrices with the termination state vector, for recently calculated
+ * (frequency, fingering) pairs.  When the instrument geometry changes, a
+ * calculator need only recalculate the matrices of the components that
+ * Instrument.updateComponents() or Instrument.checkComponentChanges()
+ * reports as changed, and the partial products from the lowest changed
+ * component up to the mouthpiece.
+ *
+ * The cache is direct-mapped: each (frequency, fingering) pair has one slot,
+ * and a new pair replaces whatever occupied its slot.  Not thread-safe;
+ * each calculator has its own cache.
+ *
+ * @author Burton Patkau
+ */
+public class ComponentChainCache
+{
+	public static final int DEFAULT_SIZE = 256;
+
+	/**
+	 * Cached results for one frequency and fingering.
+	 */
+	public static final class Entry
+	{
+		protected double frequency;
+		protected Fingering fingering;
+		protected Instrument instrument;
+		// Properties of the air used for the cached matrices.
+		protected AirState air;
+		// Settings version of the component calculators used for the
+		// cached matrices.
+		protected int settingsVersion;
+		// Instrument geometry version when the entry was last brought up
+		// to date, or -1 if nothing in the entry is valid.
+		protected int version;
+		protected boolean isOpenEnd;
+		// Hole states used for the cached hole matrices.
+		protected boolean[] openHoles;
+		// matrices[i] is the transfer matrix of component i.
+		protected TransferMatrix[] matrices;
+		// states[i] is the state vector at the input of component i,
+		// looking towards the termination; states[nrComponents] is the
+		// state vector of the termination.
+		protected StateVector[] states;
+
+		protected Entry()
+		{
+			version = -1;
+		}
+
+		/**
+		 * Size the arrays for an instrument, discarding any cached values
+		 * if the number of components or holes has changed.
+		 */
+		protected void resize(int nrComponents, int nrHoles)
+		{
+			if (matrices == null || matrices.length != nrComponents
+					|| openHoles.length != nrHoles)
+			{
+				matrices = new TransferMatrix[nrComponents];
+				for (int i = 0; i < nrComponents; ++i)
+				{
+					matrices[i] = new TransferMatrix();
+				}
+				states = new StateVector[nrComponents + 1];
+				for (int i = 0; i <= nrComponents; ++i)
+				{
+					states[i] = new StateVector();
+				}
+				openHoles = new boolean[nrHoles];
+				version = -1;
+			}
+		}
+	}
+
+	protected final Entry[] entries;
+	// Statistics, for tuning the cache size.
+	protected long hits;
+	protected long misses;
+
+	public ComponentChainCache()
+	{
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size - number of entries; rounded up to a power of 2.
+	 */
+	public ComponentChainCache(int size)
+	{
+		int capacity = 1;
+		while (capacity < size)
+		{
+			capacity <<= 1;
+		}
+		entries = new Entry[capacity];
+	}
+
+	/**
+	 * Find the entry for a frequency and fingering.  If the slot held a
+	 * different frequency, fingering, instrument, set of physical
+	 * parameters or calculator settings, the entry is reset so that
+	 * everything in it is recalculated: its version is -1.
+	 *
+	 * @param frequency - frequency being calculated.
+	 * @param fingering - fingering being calculated.
+	 * @param instrument - instrument being calculated.
+	 * @param params - physical parameters in use.
+	 * @param settingsVersion - version of the component calculator
+	 *            settings in use, as maintained by the calculator.
+	 * @return entry for the frequency and fingering, sized for the
+	 *         instrument's current components.
+	 */
+	public Entry getEntry(double frequency, Fingering fingering,
+			Instrument instrument, PhysicalParameters params,
+			int settingsVersion)
+	{
+		long bits = Double.doubleToLongBits(frequency);
+		int hash = (int) (bits ^ (bits >>> 32))
+				^ System.identityHashCode(fingering);
+		hash ^= (hash >>> 16);
+		int slot = hash & (entries.length - 1);
+		Entry entry = entries[slot];
+		if (entry == null)
+		{
+			entry = new Entry();
+			entries[slot] = entry;
+		}
+		if (entry.fingering != fingering
+				|| Double.doubleToLongBits(entry.frequency) != bits
+				|| entry.instrument != instrument
+				|| entry.settingsVersion != settingsVersion
+				|| !params.getAirState().hasSameAcoustics(entry.air))
+		{
+			entry.frequency = frequency;
+			entry.fingering = fingering;
+			entry.instrument = instrument;
+			entry.air = params.getAirState();
+			entry.settingsVersion = settingsVersion;
+			entry.version = -1;
+			++misses;
+		}
+		else
+		{
+			++hits;
+		}
+		entry.resize(instrument.getComponents().size(),
+				fingering.getOpenHole().size());
+		return entry;
+	}
+
+	/**
+	 * Discard all cached values.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < entries.length; ++i)
+		{
+			entries[i] = null;
+		}
+	}
+
+	/**
+	 * @return number of lookups that found the same frequency and
+	 *         fingering already cached.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that had to start a new entry.
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+}
@@ -18,6 +18,8 @@
  */
 package com.wwidesigner.modelling;
 
+import java.util.List;
+
 import org.apache.commons.math3.complex.Complex;
 
 import com.wwidesigner.geometry.ComponentInterface;
@@ -39,6 +41,27 @@ import com.wwidesigner.util.PhysicalParameters;
  */
 public class DefaultInstrumentCalculator extends InstrumentCalculator
 {
+	// Scratch objects for calcInputStateVector, reused to avoid allocation.
+	private StateVector svScratch = new StateVector();
+	private TransferMatrix tmScratch = new TransferMatrix();
+	// Scratch derivatives for calcZ with dZ/df.
+	private StateVector svDerivativeScratch = new StateVector();
+	private TransferMatrix tmDerivativeScratch = new TransferMatrix();
+	// Scratch state vectors and wave numbers for the batched calcZ.
+	private StateVector[] svBatch = new StateVector[0];
+	private double[] waveNumberBatch = new double[0];
+	// Cached component matrices and partial products, for recalculating
+	// only the components that changed; null to calculate every component
+	// on every call.
+	private ComponentChainCache chainCache = new ComponentChainCache();
+	// Cached bore section matrices, termination and headspace states,
+	// shared by all fingerings at a frequency; null when chainCache is.
+	private FrequencyMatrixCache frequencyCache = new FrequencyMatrixCache();
+	// Settings stamps of the mouthpiece, termination, hole and bore section
+	// calculators when last checked, and a version number for the cache
+	// keys that changes whenever any of them does.
+	private long[] settingsStamps = new long[4];
+	private int settingsVersion;
 
 	public DefaultInstrumentCalculator(Instrument aInstrument,
 			PhysicalParameters physicalParams)
@@ -72,6 +95,107 @@ public class DefaultInstrumentCalculator extends InstrumentCalculator
 	    super();
 	}
 
+	@Override
+	public InstrumentCalculator copy()
+	{
+		DefaultInstrumentCalculator copy = (DefaultInstrumentCalculator) super
+				.copy();
+		copy.svScratch = new StateVector();
+		copy.tmScratch = new TransferMatrix();
+		copy.svDerivativeScratch = new StateVector();
+		copy.tmDerivativeScratch = new TransferMatrix();
+		copy.svBatch = new StateVector[0];
+		copy.waveNumberBatch = new double[0];
+		copy.settingsStamps = new long[4];
+		if (chainCache != null)
+		{
+			copy.chainCache = new ComponentChainCache();
+			copy.frequencyCache = new FrequencyMatrixCache();
+		}
+		return copy;
+	}
+
+	/**
+	 * Enable or disable incremental calculation.  With incremental
+	 * calculation enabled, the default, the calculator caches the transfer
+	 * matrix of each component for recent frequencies and fingerings,
+	 * and recalculates only those components that changed.  The bore
+	 * section matrices, and the termination and headspace state vectors,
+	 * are shared by all fingerings at a frequency.  Results are identical
+	 * either way; disable it to save memory when the geometry changes on
+	 * every call.  Each calculation checks the holes and termination for
+	 * changes made directly to them, so a hole resized without a call to
+	 * Instrument.updateComponents() is recalculated, as it would be without
+	 * the cache.  A change to the settings of a component calculator, or a
+	 * new component calculator, discards the cached values.
+	 */
+	public void setIncrementalCalculation(boolean isIncremental)
+	{
+		if (!isIncremental)
+		{
+			chainCache = null;
+			frequencyCache = null;
+		}
+		else if (chainCache == null)
+		{
+			chainCache = new ComponentChainCache();
+			frequencyCache = new FrequencyMatrixCache();
+		}
+	}
+
+	public boolean isIncrementalCalculation()
+	{
+		return chainCache != null;
+	}
+
+	/**
+	 * @return cache used for incremental calculation, or null if
+	 *         incremental calculation is disabled.
+	 */
+	public ComponentChainCache getChainCache()
+	{
+		return chainCache;
+	}
+
+	/**
+	 * @return cache of fingering-independent values used for incremental
+	 *         calculation, or null if incremental calculation is disabled.
+	 */
+	public FrequencyMatrixCache getFrequencyCache()
+	{
+		return frequencyCache;
+	}
+
+	/**
+	 * @return version number of the settings of the component calculators,
+	 *         which changes whenever a calculator is replaced or one of its
+	 *         settings changes.
+	 */
+	private int getSettingsVersion()
+	{
+		long mouthpieceStamp = mouthpieceCalculator.getSettingsStamp();
+		long terminationStamp = terminationCalculator.getSettingsStamp();
+		long holeStamp = holeCalculator.getSettingsStamp();
+		long boreSectionStamp = boreSectionCalculator.getSettingsStamp();
+		if (mouthpieceStamp != settingsStamps[0]
+				|| terminationStamp != settingsStamps[1]
+				|| holeStamp != settingsStamps[2]
+				|| boreSectionStamp != settingsStamps[3])
+		{
+			settingsStamps[0] = mouthpieceStamp;
+			settingsStamps[1] = terminationStamp;
+			settingsStamps[2] = holeStamp;
+			settingsStamps[3] = boreSectionStamp;
+			++settingsVersion;
+		}
+		return settingsVersion;
+	}
+
+	/**
+	 * Calculate the state vector seen by the driving source.
+	 * Writes into, and returns, a scratch state vector owned by this
+	 * calculator, so the result is only valid until the next call.
+	 */
 	private StateVector calcInputStateVector(double freq, Fingering fingering)
 	{
 		double waveNumber = params.calcWaveNumber(freq);
@@ -86,32 +210,193 @@ public class DefaultInstrumentCalculator extends InstrumentCalculator
 		{
 			isOpenEnd = false;
 		}
+		if (chainCache != null && instrument.checkComponentChanges() > 0)
+		{
+			int currentSettings = getSettingsVersion();
+			FrequencyMatrixCache.Entry shared = updateFrequencyEntry(freq,
+					waveNumber, currentSettings);
+			StateVector sv = svScratch.set(calcChainIncrementally(freq,
+					waveNumber, fingering, isOpenEnd, shared,
+					currentSettings));
+			return mouthpieceCalculator.calcStateVector(sv,
+					getHeadspaceState(shared, waveNumber),
+					instrument.getMouthpiece(), waveNumber, params, sv);
+		}
 		StateVector sv = terminationCalculator.calcStateVector(instrument.getTermination(),
-				isOpenEnd, waveNumber, params);
-		TransferMatrix tm;
+				isOpenEnd, waveNumber, params, svScratch);
+		TransferMatrix tm = tmScratch;
 		for (int componentNr = instrument.getComponents().size() - 1; componentNr >= 0; --componentNr)
 		{
 			ComponentInterface component = instrument.getComponents().get(
 					componentNr);
 			if (component instanceof BoreSection)
 			{
-				tm = boreSectionCalculator.calcTransferMatrix(
-						(BoreSection) component, waveNumber, params);
+				calcBoreSectionMatrix((BoreSection) component, waveNumber,
+						tm);
 			}
 			else
 			{
 				assert component instanceof Hole;
-				tm = holeCalculator.calcTransferMatrix((Hole) component,
+				calcHoleMatrix((Hole) component,
 						fingering.getOpenHole().get(nextHoleIndex--),
-						waveNumber, params);
+						waveNumber, tm);
 			}
-			sv = tm.multiply(sv);
+			tm.multiply(sv, sv);
 		}
-		sv = mouthpieceCalculator.calcStateVector(sv, instrument.getMouthpiece(), waveNumber, params);
+		sv = mouthpieceCalculator.calcStateVector(sv, instrument.getMouthpiece(),
+				waveNumber, params, sv);
 
 		return sv;
 		
 	}
+
+	/**
+	 * Find the fingering-independent cache entry for a frequency, and
+	 * recalculate the bore section matrices that have changed since the
+	 * entry was last used.  The termination and headspace state vectors
+	 * are recalculated on demand.
+	 */
+	private FrequencyMatrixCache.Entry updateFrequencyEntry(double freq,
+			double waveNumber, int currentSettings)
+	{
+		FrequencyMatrixCache.Entry shared = frequencyCache.getEntry(freq,
+				instrument, params, currentSettings);
+		int sharedVersion = shared.version;
+		if (sharedVersion == instrument.getGeometryVersion())
+		{
+			return shared;
+		}
+		// If a calculation below fails, the entry is no longer consistent.
+		shared.version = -1;
+		if (sharedVersion < 0
+				|| instrument.getTerminationVersion() > sharedVersion
+				|| instrument.getHeadspaceVersion() > sharedVersion)
+		{
+			shared.invalidateStates();
+		}
+		List<ComponentInterface> components = instrument.getComponents();
+		for (int componentNr = components.size() - 1; componentNr >= 0; --componentNr)
+		{
+			ComponentInterface component = components.get(componentNr);
+			if (component instanceof BoreSection
+					&& instrument.getComponentVersion(componentNr) > sharedVersion)
+			{
+				calcBoreSectionMatrix((BoreSection) component, waveNumber,
+						shared.matrices[componentNr]);
+			}
+		}
+		shared.version = instrument.getGeometryVersion();
+		return shared;
+	}
+
+	/**
+	 * @return termination state vector from a frequency cache entry,
+	 *         calculating it if necessary.
+	 */
+	private StateVector getTerminationState(FrequencyMatrixCache.Entry shared,
+			boolean isOpenEnd, double waveNumber)
+	{
+		int index = isOpenEnd ? 1 : 0;
+		if (!shared.isTerminationValid[index])
+		{
+			terminationCalculator.calcStateVector(instrument.getTermination(),
+					isOpenEnd, waveNumber, params,
+					shared.terminationStates[index]);
+			shared.isTerminationValid[index] = true;
+		}
+		return shared.terminationStates[index];
+	}
+
+	/**
+	 * @return headspace state vector from a frequency cache entry,
+	 *         calculating it if necessary; may be null.
+	 */
+	private StateVector getHeadspaceState(FrequencyMatrixCache.Entry shared,
+			double waveNumber)
+	{
+		if (!shared.isHeadspaceValid)
+		{
+			shared.headspaceState = mouthpieceCalculator.calcHeadspaceState(
+					instrument.getMouthpiece(), waveNumber, params,
+					shared.headspaceStorage);
+			shared.isHeadspaceValid = true;
+		}
+		return shared.headspaceState;
+	}
+
+	/**
+	 * Calculate the state vector at the input of the first component,
+	 * reusing cached transfer matrices for components that have not changed
+	 * since the last calculation at this frequency and fingering.  Bore
+	 * sections and the termination come from the frequency cache entry,
+	 * shared with other fingerings.  The multiplications are done in the
+	 * same order as in a full calculation, so the results are identical.
+	 * 
+	 * @return cached state vector, valid until the next call.
+	 */
+	private StateVector calcChainIncrementally(double freq,
+			double waveNumber, Fingering fingering, boolean isOpenEnd,
+			FrequencyMatrixCache.Entry shared, int currentSettings)
+	{
+		ComponentChainCache.Entry entry = chainCache.getEntry(freq,
+				fingering, instrument, params, currentSettings);
+		List<ComponentInterface> components = instrument.getComponents();
+		List<Boolean> openHoles = fingering.getOpenHole();
+		int nrComponents = components.size();
+		int entryVersion = entry.version;
+		// If a calculation below fails, the entry is no longer consistent.
+		entry.version = -1;
+
+		// Highest component whose output state vector must be recalculated;
+		// nrComponents denotes the termination.
+		int topChanged = -1;
+		if (instrument.getTerminationVersion() > entryVersion
+				|| entry.isOpenEnd != isOpenEnd)
+		{
+			entry.states[nrComponents].set(getTerminationState(shared,
+					isOpenEnd, waveNumber));
+			entry.isOpenEnd = isOpenEnd;
+			topChanged = nrComponents;
+		}
+		int nextHoleIndex = openHoles.size() - 1;
+		for (int componentNr = nrComponents - 1; componentNr >= 0; --componentNr)
+		{
+			ComponentInterface component = components.get(componentNr);
+			boolean isChanged = instrument
+					.getComponentVersion(componentNr) > entryVersion;
+			// Bore section matrices are in the frequency cache entry.
+			if (!(component instanceof BoreSection))
+			{
+				assert component instanceof Hole;
+				boolean isOpen = openHoles.get(nextHoleIndex);
+				if (isChanged || entry.openHoles[nextHoleIndex] != isOpen)
+				{
+					calcHoleMatrix((Hole) component, isOpen, waveNumber,
+							entry.matrices[componentNr]);
+					entry.openHoles[nextHoleIndex] = isOpen;
+					isChanged = true;
+				}
+				--nextHoleIndex;
+			}
+			if (isChanged && topChanged < componentNr)
+			{
+				topChanged = componentNr;
+			}
+		}
+
+		// Partial products below the highest change are still valid.
+		for (int componentNr = Math.min(topChanged, nrComponents - 1);
+				componentNr >= 0; --componentNr)
+		{
+			TransferMatrix tm = (components.get(componentNr) instanceof BoreSection
+					? shared.matrices[componentNr]
+					: entry.matrices[componentNr]);
+			tm.multiply(entry.states[componentNr + 1],
+					entry.states[componentNr]);
+		}
+		entry.version = instrument.getGeometryVersion();
+		return entry.states[0];
+	}
 	
 	@Override
 	public Complex calcReflectionCoefficient(double frequency, Fingering fingering)
@@ -135,9 +420,252 @@ public class DefaultInstrumentCalculator extends InstrumentCalculator
 	@Override
 	public Complex calcZ(double freq, Fingering fingering)
 	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			Complex z = calcInputStateVector(freq, fingering).getImpedance();
+			ModelProfiler.counters().addCalcZ(1, System.nanoTime() - startTime);
+			return z;
+		}
 		return calcInputStateVector(freq, fingering).getImpedance();
 	}
 
+	/**
+	 * Calculate the impedance and its derivative with respect to frequency,
+	 * carrying d/dk of the state vector through the component chain
+	 * alongside the state vector itself:  each component supplies its
+	 * transfer matrix T and dT/dk, and the state vector derivative becomes
+	 * dT/dk * sv + T * dsv/dk.  The component chain cache is not used.
+	 */
+	@Override
+	public Complex calcZ(double freq, Fingering fingering, double[] dZdf)
+	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			Complex z = calcZWithDerivative(freq, fingering, dZdf);
+			ModelProfiler.counters().addCalcZ(1, System.nanoTime() - startTime);
+			return z;
+		}
+		return calcZWithDerivative(freq, fingering, dZdf);
+	}
+
+	private Complex calcZWithDerivative(double freq, Fingering fingering,
+			double[] dZdf)
+	{
+		double waveNumber = params.calcWaveNumber(freq);
+		int nextHoleIndex = fingering.getOpenHole().size() - 1;
+
+		boolean isOpenEnd = true;
+		if (fingering.getOpenEnd() != null && ! fingering.getOpenEnd())
+		{
+			isOpenEnd = false;
+		}
+		StateVector sv = svScratch;
+		StateVector dsv = svDerivativeScratch;
+		TransferMatrix tm = tmScratch;
+		TransferMatrix dtm = tmDerivativeScratch;
+		terminationCalculator.calcStateVector(instrument.getTermination(),
+				isOpenEnd, waveNumber, params, sv, dsv);
+		for (int componentNr = instrument.getComponents().size() - 1; componentNr >= 0; --componentNr)
+		{
+			ComponentInterface component = instrument.getComponents().get(
+					componentNr);
+			if (component instanceof BoreSection)
+			{
+				calcBoreSectionMatrix((BoreSection) component, waveNumber,
+						tm, dtm);
+			}
+			else
+			{
+				assert component instanceof Hole;
+				calcHoleMatrix((Hole) component,
+						fingering.getOpenHole().get(nextHoleIndex--),
+						waveNumber, tm, dtm);
+			}
+			tm.multiply(dtm, sv, dsv, sv, dsv);
+		}
+		mouthpieceCalculator.calcStateVector(sv, dsv,
+				instrument.getMouthpiece(), waveNumber, params, sv, dsv);
+
+		// Wave number is proportional to frequency.
+		double dkdf = waveNumber / freq;
+		Complex dZdk = sv.getImpedanceDerivative(dsv);
+		dZdf[0] = dZdk.getReal() * dkdf;
+		dZdf[1] = dZdk.getImaginary() * dkdf;
+		return sv.getImpedance();
+	}
+
+	@Override
+	public boolean hasFrequencyDerivative()
+	{
+		return true;
+	}
+
+	/**
+	 * Calculate the impedance at a series of frequencies, walking the
+	 * components once and calculating each component's transfer matrix at
+	 * every frequency before moving on to the next component.  The
+	 * arithmetic for each frequency is the same as in calcZ(double,
+	 * Fingering), so the results are identical.  The component chain cache
+	 * is not used: a spectrum sweep visits each frequency only once.
+	 */
+	@Override
+	public void calcZ(double[] freqs, Fingering fingering, double[] outRe,
+			double[] outIm)
+	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			calcZBatch(freqs, fingering, outRe, outIm);
+			ModelProfiler.counters().addCalcZ(freqs.length,
+					System.nanoTime() - startTime);
+			return;
+		}
+		calcZBatch(freqs, fingering, outRe, outIm);
+	}
+
+	private void calcZBatch(double[] freqs, Fingering fingering,
+			double[] outRe, double[] outIm)
+	{
+		int nrFreqs = freqs.length;
+		if (svBatch.length < nrFreqs)
+		{
+			StateVector[] newBatch = new StateVector[nrFreqs];
+			System.arraycopy(svBatch, 0, newBatch, 0, svBatch.length);
+			for (int i = svBatch.length; i < nrFreqs; ++i)
+			{
+				newBatch[i] = new StateVector();
+			}
+			svBatch = newBatch;
+			waveNumberBatch = new double[nrFreqs];
+		}
+		StateVector[] states = svBatch;
+		double[] waveNumbers = waveNumberBatch;
+
+		boolean isOpenEnd = true;
+		if (fingering.getOpenEnd() != null && ! fingering.getOpenEnd())
+		{
+			isOpenEnd = false;
+		}
+		for (int i = 0; i < nrFreqs; ++i)
+		{
+			waveNumbers[i] = params.calcWaveNumber(freqs[i]);
+			terminationCalculator.calcStateVector(instrument.getTermination(),
+					isOpenEnd, waveNumbers[i], params, states[i]);
+		}
+
+		List<ComponentInterface> components = instrument.getComponents();
+		TransferMatrix tm = tmScratch;
+		int nextHoleIndex = fingering.getOpenHole().size() - 1;
+		for (int componentNr = components.size() - 1; componentNr >= 0; --componentNr)
+		{
+			ComponentInterface component = components.get(componentNr);
+			if (component instanceof BoreSection)
+			{
+				BoreSection section = (BoreSection) component;
+				for (int i = 0; i < nrFreqs; ++i)
+				{
+					calcBoreSectionMatrix(section, waveNumbers[i], tm);
+					tm.multiply(states[i], states[i]);
+				}
+			}
+			else
+			{
+				assert component instanceof Hole;
+				Hole hole = (Hole) component;
+				boolean isOpen = fingering.getOpenHole().get(nextHoleIndex--);
+				for (int i = 0; i < nrFreqs; ++i)
+				{
+					calcHoleMatrix(hole, isOpen, waveNumbers[i], tm);
+					tm.multiply(states[i], states[i]);
+				}
+			}
+		}
+
+		for (int i = 0; i < nrFreqs; ++i)
+		{
+			StateVector sv = mouthpieceCalculator.calcStateVector(states[i],
+					instrument.getMouthpiece(), waveNumbers[i], params,
+					states[i]);
+			Complex z = sv.getImpedance();
+			outRe[i] = z.getReal();
+			outIm[i] = z.getImaginary();
+		}
+	}
+
+	/**
+	 * Calculate the transfer matrix of a bore section, counting it if
+	 * profiling is on.
+	 */
+	private void calcBoreSectionMatrix(BoreSection section,
+			double waveNumber, TransferMatrix tm)
+	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			boreSectionCalculator.calcTransferMatrix(section, waveNumber,
+					params, tm);
+			ModelProfiler.counters().addMatrix(boreSectionCalculator.getClass(),
+					System.nanoTime() - startTime);
+			return;
+		}
+		boreSectionCalculator.calcTransferMatrix(section, waveNumber, params,
+				tm);
+	}
+
+	private void calcBoreSectionMatrix(BoreSection section,
+			double waveNumber, TransferMatrix tm, TransferMatrix dtm)
+	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			boreSectionCalculator.calcTransferMatrix(section, waveNumber,
+					params, tm, dtm);
+			ModelProfiler.counters().addMatrix(boreSectionCalculator.getClass(),
+					System.nanoTime() - startTime);
+			return;
+		}
+		boreSectionCalculator.calcTransferMatrix(section, waveNumber, params,
+				tm, dtm);
+	}
+
+	/**
+	 * Calculate the transfer matrix of a hole, counting it if profiling
+	 * is on.
+	 */
+	private void calcHoleMatrix(Hole hole, boolean isOpen, double waveNumber,
+			TransferMatrix tm)
+	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			holeCalculator.calcTransferMatrix(hole, isOpen, waveNumber,
+					params, tm);
+			ModelProfiler.counters().addMatrix(holeCalculator.getClass(),
+					System.nanoTime() - startTime);
+			return;
+		}
+		holeCalculator.calcTransferMatrix(hole, isOpen, waveNumber, params,
+				tm);
+	}
+
+	private void calcHoleMatrix(Hole hole, boolean isOpen, double waveNumber,
+			TransferMatrix tm, TransferMatrix dtm)
+	{
+		if (ModelProfiler.isEnabled())
+		{
+			long startTime = System.nanoTime();
+			holeCalculator.calcTransferMatrix(hole, isOpen, waveNumber,
+					params, tm, dtm);
+			ModelProfiler.counters().addMatrix(holeCalculator.getClass(),
+					System.nanoTime() - startTime);
+			return;
+		}
+		holeCalculator.calcTransferMatrix(hole, isOpen, waveNumber, params,
+				tm, dtm);
+	}
+
 	@Override
 	public double calcGain(double freq, Complex Z)
 	{
@@ -43,4 +43,30 @@ public interface EvaluatorInterface
 	 * 			length = fingeringTargets.size().
 	 */
 	public abstract double[] calculateErrorVector(List<Fingering> fingeringTargets);
+
+	/**
+	 * Calculate the differences for a contiguous range of fingerings
+	 * from a list, in the context of the full list of fingering targets.
+	 * Concatenating the results for consecutive ranges that cover the list,
+	 * and padding with zeros to the length of the list, gives the same
+	 * result as calculateErrorVector(fingeringTargets).
+	 * Used to split one evaluation between several threads.
+	 * @param fingeringTargets  - Fingering and target note.
+	 * @param first - index of the first fingering to evaluate.
+	 * @param last - index after the last fingering to evaluate.
+	 * @return difference between target and predicted performance,
+	 * 			for those fingerings in the range that calculateErrorVector()
+	 * 			includes in its result.
+	 */
+	public abstract double[] calculateErrorVector(List<Fingering> fingeringTargets,
+			int first, int last);
+
+	/**
+	 * Create an evaluator of the same type and settings as this one,
+	 * that uses a different calculator.  Used to give each thread
+	 * of a parallel optimization its own evaluator.
+	 * @param aCalculator - calculator for the new evaluator to use.
+	 * @return new evaluator.
+	 */
+	public abstract EvaluatorInterface copy(InstrumentCalculator aCalculator);
 }
\ No newline at end of file
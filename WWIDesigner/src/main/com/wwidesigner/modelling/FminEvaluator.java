@@ -56,27 +56,36 @@ public class FminEvaluator implements EvaluatorInterface
 	@Override
 	public double[] calculateErrorVector(List<Fingering> fingeringActualData)
 	{
-		double[] errorVector = new double[fingeringActualData.size()];
+		return calculateErrorVector(fingeringActualData, 0,
+				fingeringActualData.size());
+	}
+
+	/**
+	 * @see com.wwidesigner.modelling.EvaluatorInterface#calculateErrorVector(java
+	 *      .util.List, int, int)
+	 */
+	@Override
+	public double[] calculateErrorVector(List<Fingering> fingeringActualData,
+			int first, int last)
+	{
+		double[] errorVector = new double[last - first];
 
 		Tuning targetTuning = new Tuning();
 		targetTuning.setFingering(fingeringActualData);
 		tuner.setTuning(targetTuning);
 
 		int i = 0;
-		for (Fingering actual: fingeringActualData)
+		for (Fingering actual : fingeringActualData.subList(first, last))
 		{
 			double centDeviation = 400.0;
 			if ( actual.getNote() != null && actual.getNote().getFrequencyMin() != null )
 			{
-				try
+				Note predicted = tuner.tryPredictedNote(actual);
+				if (predicted != null && predicted.getFrequencyMin() != null)
 				{
-					Note predicted = tuner.predictedNote(actual);
 					centDeviation = Note.cents(actual.getNote().getFrequencyMin(),
 							predicted.getFrequencyMin());
 				}
-				catch (RuntimeException e)
-				{
-				}
 			}
 			else
 			{
@@ -96,4 +105,11 @@ public class FminEvaluator implements EvaluatorInterface
 		this.tuner.setInstrument(calculator.getInstrument());
 		this.tuner.setParams(calculator.getPhysicalParameters());
 	}
-}
\ No newline at end of file
+
+	@Override
+	public EvaluatorInterface copy(InstrumentCalculator aCalculator)
+	{
+		return new FminEvaluator(aCalculator, tuner.copy());
+	}
+
+}
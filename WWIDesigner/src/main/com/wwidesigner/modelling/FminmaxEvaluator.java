@@ -19,6 +19,7 @@
  */
 package com.wwidesigner.modelling;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.math3.util.FastMath;
@@ -75,27 +76,49 @@ public class FminmaxEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringActualData)
 	{
 		double[] errorValues = new double[fingeringActualData.size()];
+		double[] rangeValues = calculateErrorVector(fingeringActualData, 0,
+				fingeringActualData.size());
+		System.arraycopy(rangeValues, 0, errorValues, 0, rangeValues.length);
+		return errorValues;
+	}
+
+	/**
+	 * @see com.wwidesigner.modelling.EvaluatorInterface#calculateErrorVector(java
+	 *      .util.List, int, int)
+	 */
+	@Override
+	public double[] calculateErrorVector(List<Fingering> fingeringActualData,
+			int first, int last)
+	{
+		double[] errorValues = new double[last - first];
 
 		Tuning targetTuning = new Tuning();
 		targetTuning.setFingering(fingeringActualData);
 		tuner.setTuning(targetTuning);
 
 		int index = 0;
-		for (Fingering actual : fingeringActualData)
+		for (Fingering actual : fingeringActualData.subList(first, last))
 		{
 			double centDeviation = 1200.0;
 			if (actual.getNote() != null)
 			{
-				try
+				// A prediction that is not available keeps the default
+				// deviation.
+				Note predicted = tuner.tryPredictedNote(actual);
+				if (predicted == null)
 				{
-					Note predicted = tuner.predictedNote(actual);
-					if (actual.getNote().getFrequencyMax() != null)
+					// The model failed on this geometry; keep the default.
+				}
+				else if (actual.getNote().getFrequencyMax() != null)
+				{
+					if (predicted.getFrequencyMax() != null)
 					{
 						centDeviation = FMAX_WEIGHT
 								* Note.cents(
 										actual.getNote().getFrequencyMax(),
 										predicted.getFrequencyMax());
-						if (actual.getNote().getFrequencyMin() != null)
+						if (actual.getNote().getFrequencyMin() != null
+								&& predicted.getFrequencyMin() != null)
 						{
 							double centDeviationMin = FMIN_WEIGHT
 									* Note.cents(actual.getNote()
@@ -106,28 +129,31 @@ public class FminmaxEvaluator implements EvaluatorInterface
 									* centDeviationMin);
 						}
 					}
-					else if (actual.getNote().getFrequencyMin() != null)
+				}
+				else if (actual.getNote().getFrequencyMin() != null)
+				{
+					if (predicted.getFrequencyMin() != null)
 					{
 						centDeviation = FMIN_WEIGHT
 								* Note.cents(
 										actual.getNote().getFrequencyMin(),
 										predicted.getFrequencyMin());
 					}
-					else if (actual.getNote().getFrequency() != null)
+				}
+				else if (actual.getNote().getFrequency() != null)
+				{
+					if (predicted.getFrequency() != null)
 					{
 						centDeviation = FPLAYING_WEIGHT
 								* Note.cents(actual.getNote().getFrequency(),
 										predicted.getFrequency());
 					}
-					else
-					{
-						// No target available for this fingering.
-						// Don't include it in optimization.
-						centDeviation = 0.0;
-					}
 				}
-				catch (RuntimeException e)
+				else
 				{
+					// No target available for this fingering.
+					// Don't include it in optimization.
+					centDeviation = 0.0;
 				}
 				errorValues[index++] = centDeviation;
 			}
@@ -139,7 +165,7 @@ public class FminmaxEvaluator implements EvaluatorInterface
 			}
 		}
 
-		return errorValues;
+		return Arrays.copyOf(errorValues, index);
 	}
 
 	protected void setTuner(InstrumentTuner aTuner)
@@ -150,4 +176,10 @@ public class FminmaxEvaluator implements EvaluatorInterface
 		this.tuner.setParams(calculator.getPhysicalParameters());
 	}
 
+	@Override
+	public EvaluatorInterface copy(InstrumentCalculator aCalculator)
+	{
+		return new FminmaxEvaluator(aCalculator, tuner.copy());
+	}
+
 }
@@ -0,0 +1,209 @@
+/**
+ * Cache of fingering-independent results for impedance calculation.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.math.StateVector;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.util.AirState;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Cache of the results that depend on frequency but not on fingering:
+ * the transfer matrices of the bore sections, the state vectors of the
+ * termination, open and closed, and the state vector of the mouthpiece
+ * headspace.  ComponentChainCache keeps results for each (frequency,
+ * fingering) pair; this cache lets the fingerings at one frequency share
+ * the parts of the calculation they have in common.
+ *
+ * An entry is discarded when the instrument, the properties of the air,
+ * or the settings of the component calculators change.  Within an entry,
+ * the calculator recalculates the values that Instrument.updateComponents()
+ * or Instrument.checkComponentChanges() reports as changed since the entry
+ * was last used.
+ *
+ * The cache is direct-mapped: each frequency has one slot, and a new
+ * frequency replaces whatever occupied its slot.  Not thread-safe;
+ * each calculator has its own cache.
+ *
+ * @author Burton Patkau
+ */
+public class FrequencyMatrixCache
+{
+	public static final int DEFAULT_SIZE = 64;
+
+	/**
+	 * Cached results for one frequency.
+	 */
+	public static final class Entry
+	{
+		protected double frequency;
+		protected Instrument instrument;
+		// Properties of the air used for the cached values.
+		protected AirState air;
+		// Settings version of the component calculators used for the
+		// cached values.
+		protected int settingsVersion;
+		// Instrument geometry version when the entry was last brought up
+		// to date, or -1 if nothing in the entry is valid.
+		protected int version;
+		// matrices[i] is the transfer matrix of component i, if component
+		// i is a bore section.  Entries for holes are not used.
+		protected TransferMatrix[] matrices;
+		// Termination state vectors, indexed by isOpenEnd ? 1 : 0.
+		protected final StateVector[] terminationStates = new StateVector[] {
+				new StateVector(), new StateVector() };
+		protected final boolean[] isTerminationValid = new boolean[2];
+		// Headspace state vector, as returned by the mouthpiece calculator;
+		// may be null.
+		protected StateVector headspaceState;
+		protected final StateVector headspaceStorage = new StateVector();
+		protected boolean isHeadspaceValid;
+
+		protected Entry()
+		{
+			version = -1;
+		}
+
+		/**
+		 * Size the matrix array for an instrument, discarding any cached
+		 * values if the number of components has changed.
+		 */
+		protected void resize(int nrComponents)
+		{
+			if (matrices == null || matrices.length != nrComponents)
+			{
+				matrices = new TransferMatrix[nrComponents];
+				for (int i = 0; i < nrComponents; ++i)
+				{
+					matrices[i] = new TransferMatrix();
+				}
+				version = -1;
+			}
+		}
+
+		/**
+		 * Mark the termination and headspace state vectors as invalid.
+		 */
+		protected void invalidateStates()
+		{
+			isTerminationValid[0] = false;
+			isTerminationValid[1] = false;
+			isHeadspaceValid = false;
+		}
+	}
+
+	protected final Entry[] entries;
+	// Statistics, for tuning the cache size.
+	protected long hits;
+	protected long misses;
+
+	public FrequencyMatrixCache()
+	{
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size - number of entries; rounded up to a power of 2.
+	 */
+	public FrequencyMatrixCache(int size)
+	{
+		int capacity = 1;
+		while (capacity < size)
+		{
+			capacity <<= 1;
+		}
+		entries = new Entry[capacity];
+	}
+
+	/**
+	 * Find the entry for a frequency.  If the slot held a different
+	 * frequency, instrument, set of physical parameters or calculator
+	 * settings, the entry is reset so that everything in it is
+	 * recalculated: its version is -1.
+	 *
+	 * @param frequency - frequency being calculated.
+	 * @param instrument - instrument being calculated.
+	 * @param params - physical parameters in use.
+	 * @param settingsVersion - version of the component calculator
+	 *            settings in use, as maintained by the calculator.
+	 * @return entry for the frequency, sized for the instrument's current
+	 *         components.
+	 */
+	public Entry getEntry(double frequency, Instrument instrument,
+			PhysicalParameters params, int settingsVersion)
+	{
+		long bits = Double.doubleToLongBits(frequency);
+		int hash = (int) (bits ^ (bits >>> 32));
+		hash ^= (hash >>> 16);
+		int slot = hash & (entries.length - 1);
+		Entry entry = entries[slot];
+		if (entry == null)
+		{
+			entry = new Entry();
+			entries[slot] = entry;
+		}
+		if (Double.doubleToLongBits(entry.frequency) != bits
+				|| entry.instrument != instrument
+				|| entry.settingsVersion != settingsVersion
+				|| !params.getAirState().hasSameAcoustics(entry.air))
+		{
+			entry.frequency = frequency;
+			entry.instrument = instrument;
+			entry.air = params.getAirState();
+			entry.settingsVersion = settingsVersion;
+			entry.version = -1;
+			++misses;
+		}
+		else
+		{
+			++hits;
+		}
+		entry.resize(instrument.getComponents().size());
+		return entry;
+	}
+
+	/**
+	 * Discard all cached values.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < entries.length; ++i)
+		{
+			entries[i] = null;
+		}
+	}
+
+	/**
+	 * @return number of lookups that found the same frequency already
+	 *         cached.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that had to start a new entry.
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+}
@@ -6,13 +6,11 @@ package com.wwidesigner.modelling;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
-import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
 
 import com.jidesoft.chart.Chart;
 import com.jidesoft.chart.Legend;
@@ -29,10 +27,28 @@ import com.wwidesigner.util.PhysicalParameters;
 public class ImpedanceSpectrum
 {
 
+	/**
+	 * Tolerances for refinement of the spectrum: log |Z|, and arg(Z) in
+	 * radians.
+	 */
+	protected static final double[] TOLERANCES = { 0.05, 0.05 };
+
+	/**
+	 * |Im(Z)|, the quantity whose minima and maxima are reported.
+	 */
+	protected static final AdaptiveSpectrum.Quantity ABS_IMAGINARY = new AdaptiveSpectrum.Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			return Math.abs(im);
+		}
+	};
+
 	/**
 	 * Holds impedance spectrum (created by calcImpedance()).
 	 */
-	Map<Double, Complex> mSpectrum;
+	AdaptiveSpectrum mSpectrum;
 
 	/**
 	 * Holds impedance minima.
@@ -45,51 +61,36 @@ public class ImpedanceSpectrum
 	private List<Double> mMaxima;
 
 	/**
-	 * Add or replace a point in the spectrum.
+	 * Calculate the impedance spectrum, sampling densely only where the
+	 * impedance changes rapidly, and find the minima and maxima of |Im(Z)|.
+	 * 
+	 * @param nfreq
+	 *            - largest number of frequencies to sample.
 	 */
-	public void setDataPoint(double frequency, Complex impedance)
-	{
-		mSpectrum.put(frequency, impedance);
-	}
-
 	public void calcImpedance(InstrumentInterface flute,
-			InstrumentCalculator calculator,
-			double freqStart, double freqEnd, int nfreq, Fingering fingering,
+			final InstrumentCalculator calculator,
+			double freqStart, double freqEnd, int nfreq, final Fingering fingering,
 			PhysicalParameters physicalParams)
 	{
-		mSpectrum = new TreeMap<Double, Complex>();
-		mMinima = new ArrayList<Double>();
-		mMaxima = new ArrayList<Double>();
-		Complex prevZ = Complex.ZERO;
-		double absPrevPrevZ = 0;
-		double prevFreq = 0;
-		double freqStep = (freqEnd - freqStart) / (nfreq - 1);
-		for (int i = 0; i < nfreq; ++i)
+		mSpectrum = new AdaptiveSpectrum(new AdaptiveSpectrum.Quantity[] {
+				AdaptiveSpectrum.LOG_MAGNITUDE, AdaptiveSpectrum.ARGUMENT },
+				TOLERANCES)
 		{
-			double freq = freqStart + i * freqStep;
-			Complex zAc = calculator.calcZ(freq, fingering);
-			double absZAc = Math.abs(zAc.getImaginary()); //zAc.abs();
-
-			setDataPoint(freq, zAc);
-
-			double absPrevZ = Math.abs(prevZ.getImaginary()); //prevZ.abs();
-
-			if ((i >= 2) && (absPrevZ < absZAc) && (absPrevZ < absPrevPrevZ))
+			@Override
+			protected void calcValues(double[] frequencies, double[] outRe,
+					double[] outIm)
 			{
-				// We have found an impedance minimum.
-				getMinima().add(prevFreq);
+				calculator.calcZ(frequencies, fingering, outRe, outIm);
 			}
-
-			if ((i >= 2) && (absPrevZ > absZAc) && (absPrevZ > absPrevPrevZ))
-			{
-				// We have found an impedance maximum.
-				getMaxima().add(prevFreq);
-			}
-
-			absPrevPrevZ = absPrevZ;
-			prevZ = zAc;
-			prevFreq = freq;
-		}
+		};
+		mSpectrum.calculate(freqStart, freqEnd, nfreq);
+		mMinima = new ArrayList<Double>();
+		mMaxima = new ArrayList<Double>();
+		// Minima of |Im(Z)| are normally where Im(Z) crosses zero.
+		mSpectrum.findExtrema(ABS_IMAGINARY, AdaptiveSpectrum.IMAGINARY,
+				GoalType.MINIMIZE, mMinima, null);
+		mSpectrum.findExtrema(ABS_IMAGINARY, null, GoalType.MAXIMIZE,
+				mMaxima, null);
 	}
 
 	public List<Double> getMaxima()
@@ -112,16 +113,11 @@ public class ImpedanceSpectrum
 		mMinima = minima;
 	}
 
-	public Map<Double, Complex> getSpectrum()
+	public AdaptiveSpectrum getSpectrum()
 	{
 		return mSpectrum;
 	}
 
-	public void setSpectrum(Map<Double, Complex> spectrum)
-	{
-		mSpectrum = spectrum;
-	}
-
 	public Double getClosestMinimumFrequency(double frequency)
 	{
 		Double closestFreq = null;
@@ -169,11 +165,12 @@ public class ImpedanceSpectrum
 						"Absolute Value");
 				DefaultChartModel model2 = new DefaultChartModel(
 						"Absolute value, imaginary");
-				for (Map.Entry<Double, Complex> point : mSpectrum.entrySet())
+				for (int idx = 0; idx < mSpectrum.size(); ++idx)
 				{
-					double x = point.getKey();
-					double y = point.getValue().abs();
-					double i = Math.abs(point.getValue().getImaginary());
+					double x = mSpectrum.getFrequency(idx);
+					double y = Math.hypot(mSpectrum.getReal(idx),
+							mSpectrum.getImaginary(idx));
+					double i = Math.abs(mSpectrum.getImaginary(idx));
 					model1.addPoint(x, y);
 					model2.addPoint(x, i);
 				}
@@ -30,6 +30,7 @@ import com.wwidesigner.geometry.calculation.MouthpieceCalculator;
 import com.wwidesigner.geometry.calculation.SimpleBoreSectionCalculator;
 import com.wwidesigner.geometry.calculation.TerminationCalculator;
 import com.wwidesigner.geometry.calculation.IdealOpenEndCalculator;
+import com.wwidesigner.math.TransferMatrix;
 
 /**
  * Calculates attributes of the instrument body as seen by the driving
@@ -56,7 +57,7 @@ import com.wwidesigner.geometry.calculation.IdealOpenEndCalculator;
  * @author kort
  * 
  */
-public abstract class InstrumentCalculator
+public abstract class InstrumentCalculator implements Cloneable
 {
 	// The instrument being modeled.
 	protected Instrument instrument;
@@ -196,6 +197,53 @@ public abstract class InstrumentCalculator
 		this.params = physicalParams;
 	}
 
+	/**
+	 * Create a copy of this calculator that can be used on another thread, or
+	 * modified, while this calculator remains in use. The copy has its own
+	 * copy of the instrument, of the physical parameters, and of each
+	 * component calculator. The instrument copy keeps the components of the
+	 * original, so no XML round trip or updateComponents() is needed.
+	 * 
+	 * @return independent copy of this calculator
+	 */
+	public InstrumentCalculator copy()
+	{
+		InstrumentCalculator copy;
+		try
+		{
+			copy = (InstrumentCalculator) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		if (mouthpieceCalculator != null)
+		{
+			copy.mouthpieceCalculator = mouthpieceCalculator.copy();
+		}
+		if (terminationCalculator != null)
+		{
+			copy.terminationCalculator = terminationCalculator.copy();
+		}
+		if (holeCalculator != null)
+		{
+			copy.holeCalculator = holeCalculator.copy();
+		}
+		if (boreSectionCalculator != null)
+		{
+			copy.boreSectionCalculator = boreSectionCalculator.copy();
+		}
+		if (instrument != null)
+		{
+			copy.instrument = new Instrument(instrument);
+		}
+		if (params != null)
+		{
+			copy.params = new PhysicalParameters(params);
+		}
+		return copy;
+	}
+
 	/**
 	 * Calculate the reflection coefficient at the nominal frequency for a
 	 * specified fingering.
@@ -248,6 +296,71 @@ public abstract class InstrumentCalculator
 	 */
 	public abstract Complex calcZ(double freq, Fingering fingering);
 
+	/**
+	 * Calculate the overall impedance at a specified frequency and
+	 * fingering, and its derivative with respect to frequency.
+	 * The default implementation estimates the derivative by central
+	 * differences, at the cost of two extra calls to calcZ;
+	 * subclasses that can calculate it more cheaply should override this,
+	 * and hasFrequencyDerivative().
+	 * 
+	 * @param freq
+	 *            - the frequency at which to calculate
+	 * @param fingering
+	 *            - the fingering for which to calculate
+	 * @param dZdf
+	 *            - on return, { Re(dZ/df), Im(dZ/df) }
+	 * @return impedance
+	 */
+	public Complex calcZ(double freq, Fingering fingering, double[] dZdf)
+	{
+		double step = freq * TransferMatrix.DIFFERENCE_STEP;
+		Complex zAbove = calcZ(freq + step, fingering);
+		Complex zBelow = calcZ(freq - step, fingering);
+		dZdf[0] = (zAbove.getReal() - zBelow.getReal()) * 0.5 / step;
+		dZdf[1] = (zAbove.getImaginary() - zBelow.getImaginary()) * 0.5
+				/ step;
+		return calcZ(freq, fingering);
+	}
+
+	/**
+	 * Test whether calcZ(double, Fingering, double[]) calculates the
+	 * derivative along with the impedance, at little more than the cost of
+	 * the impedance alone.  If not, derivative-based solvers are not
+	 * worthwhile with this calculator.
+	 */
+	public boolean hasFrequencyDerivative()
+	{
+		return false;
+	}
+
+	/**
+	 * Calculate the overall impedance at a series of frequencies for a
+	 * specified fingering.  The default implementation calls
+	 * calcZ(double, Fingering) for each frequency; subclasses may override
+	 * it to share work between frequencies.
+	 * 
+	 * @param freqs
+	 *            - the frequencies at which to calculate
+	 * @param fingering
+	 *            - the fingering for which to calculate
+	 * @param outRe
+	 *            - on return, real part of the impedance at each frequency
+	 * @param outIm
+	 *            - on return, imaginary part of the impedance at each
+	 *            frequency
+	 */
+	public void calcZ(double[] freqs, Fingering fingering, double[] outRe,
+			double[] outIm)
+	{
+		for (int i = 0; i < freqs.length; ++i)
+		{
+			Complex z = calcZ(freqs[i], fingering);
+			outRe[i] = z.getReal();
+			outIm[i] = z.getImaginary();
+		}
+	}
+
 	/**
 	 * Calculate the loop gain at the nominal frequency for a specified
 	 * fingering.
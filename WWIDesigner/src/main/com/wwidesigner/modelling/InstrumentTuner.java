@@ -18,9 +18,6 @@
  */
 package com.wwidesigner.modelling;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import com.wwidesigner.geometry.Instrument;
 import com.wwidesigner.geometry.bind.GeometryBindFactory;
 import com.wwidesigner.note.Fingering;
@@ -34,7 +31,7 @@ import com.wwidesigner.util.PhysicalParameters;
  * @author kort
  * 
  */
-public abstract class InstrumentTuner
+public abstract class InstrumentTuner implements Cloneable
 {
 
 	protected Instrument instrument;
@@ -65,11 +62,8 @@ public abstract class InstrumentTuner
 
 	public void showTuning(String title, boolean exitOnTableClose)
 	{
-		calculator.setInstrument(instrument);
-		calculator.setPhysicalParameters(params);
-		Tuning predicted = getPredictedTuning();
 		TuningComparisonTable table = new TuningComparisonTable(title);
-		table.buildTable(tuning, predicted);
+		table.buildTable(analyzeTuning());
 		table.showTuning(exitOnTableClose);
 	}
 	
@@ -80,13 +74,22 @@ public abstract class InstrumentTuner
 
 	public void plotTuning(String title, boolean exitOnTableClose)
 	{
-		calculator.setInstrument(instrument);
-		calculator.setPhysicalParameters(params);
-		Tuning predicted = getPredictedTuning();
 		PlotPlayingRanges plot = new PlotPlayingRanges(title);
-		plot.buildGraph(calculator, tuning, predicted);
+		plot.buildGraph(analyzeTuning());
 		plot.plotGraph(exitOnTableClose);
 	}
+
+	/**
+	 * Predict the tuning of the instrument, and calculate the impedance
+	 * values used in the tuning reports, in parallel across fingerings.
+	 * @return analysis from which to build tuning tables and graphs.
+	 */
+	public TuningAnalysis analyzeTuning()
+	{
+		calculator.setInstrument(instrument);
+		calculator.setPhysicalParameters(params);
+		return new TuningAnalysis(this);
+	}
 	
 	/**
 	 * For a given target note, extract a frequency to use
@@ -141,6 +144,46 @@ public abstract class InstrumentTuner
 		return predNote;
 	}
 
+	/**
+	 * Predict the nominal playing frequency, as for predictedFrequency(),
+	 * where a failed prediction must not stop the caller, as when
+	 * evaluating trial geometries during optimization.  A fingering with no
+	 * playing range gives null without an exception; an unexpected runtime
+	 * failure of the model, such as on a degenerate trial geometry, also
+	 * gives null rather than propagating.
+	 * @param fingering - Target note and fingering.
+	 * @return Predicted nominal playing frequency, or null if none is available.
+	 */
+	public Double tryPredictedFrequency(Fingering fingering)
+	{
+		try
+		{
+			return predictedFrequency(fingering);
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Predict the played note, as for predictedNote(), giving null if the
+	 * model fails unexpectedly, as for tryPredictedFrequency().
+	 * @param fingering - Target note and fingering.
+	 * @return note object with predicted frequencies, or null.
+	 */
+	public Note tryPredictedNote(Fingering fingering)
+	{
+		try
+		{
+			return predictedNote(fingering);
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
 	public Instrument getInstrument()
 	{
 		return instrument;
@@ -212,6 +255,27 @@ public abstract class InstrumentTuner
 		return this.calculator;
 	}
 
+	/**
+	 * Create a copy of this tuner, with the same tuning and settings,
+	 * that is not yet associated with an instrument or calculator.
+	 * @return new tuner.
+	 */
+	public InstrumentTuner copy()
+	{
+		InstrumentTuner copy;
+		try
+		{
+			copy = (InstrumentTuner) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		copy.instrument = null;
+		copy.calculator = null;
+		return copy;
+	}
+
 	/**
 	 * @param aCalculator
 	 *            the calculator to set
@@ -245,29 +309,12 @@ public abstract class InstrumentTuner
 	/**
 	 * Construct a predicted tuning for the instrument,
 	 * with a predicted note for each note in the target tuning.
+	 * The notes are predicted in parallel, as in TuningAnalysis.
 	 * @return predicted tuning
 	 */
 	public Tuning getPredictedTuning()
 	{
-		Tuning predicted = new Tuning();
-		predicted.setName(tuning.getName());
-		predicted.setComment(tuning.getComment());
-		predicted.setNumberOfHoles(tuning.getNumberOfHoles());
-
-		List<Fingering>  noteList = tuning.getFingering();
-		List<Fingering>  newNotes = new ArrayList<Fingering>();
-
-		for ( int i = 0; i < noteList.size(); ++ i )
-		{
-			Fingering fingering = noteList.get(i);
-			Fingering predFingering = new Fingering();
-			predFingering.setOpenHole(fingering.getOpenHole());
-			predFingering.setOpenEnd(fingering.getOpenEnd());
-			predFingering.setNote(predictedNote(fingering));
-			newNotes.add(predFingering);
-		}
-		predicted.setFingering(newNotes);
-		return predicted;
+		return new TuningAnalysis(this, false).getPredictedTuning();
 	}
 
 }
@@ -22,7 +22,6 @@ import java.util.List;
 
 import org.apache.commons.math3.complex.Complex;
 
-import com.wwidesigner.modelling.PlayingRange.NoPlayingRange;
 import com.wwidesigner.note.Fingering;
 import com.wwidesigner.note.Note;
 import com.wwidesigner.note.Tuning;
@@ -246,17 +245,17 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 		double vMax, vMin;
 
 		PlayingRange range = new PlayingRange(calculator, noteLow);
-		try 
+		// Find playing range for lowest note.
+		fmax = range.tryFindXZero(fLow);
+		fmin = range.tryFindFmin(fmax);
+		if (! Double.isNaN(fmin))
 		{
-			// Find playing range for lowest note.
-			fmax = range.findXZero(fLow);
-			fmin = range.findFmin(fmax);
 			// Interpolate a velocity within this playing range.
 			vMax = velocity(fmax,windowLength,calculator.calcZ(fmax, noteLow));
 			vMin = velocity(fmin,windowLength,calculator.calcZ(fmin, noteLow));
 			vLow = vMax - BottomFraction * (vMax - vMin);
 		}
-		catch ( NoPlayingRange e )
+		else
 		{
 			fmax = fmin = fLow;
 			// Use predicted velocity for fLow set to fmax, at which Im(Z)=0.
@@ -266,16 +265,16 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 		fLow = fmax;
 
 		range.setFingering(noteHigh);
-		try
+		// Find the playing range for the highest note.
+		fmax = range.tryFindXZero(fHigh);
+		fmin = range.tryFindFmin(fmax);
+		if (! Double.isNaN(fmin))
 		{
-			// Find the playing range for the highest note.
-			fmax = range.findXZero(fHigh);
-			fmin = range.findFmin(fmax);
 			vMax = velocity(fmax,windowLength,calculator.calcZ(fmax, noteHigh));
 			vMin = velocity(fmin,windowLength,calculator.calcZ(fmin, noteHigh));
 			vHigh = vMax - TopFraction * (vMax - vMin);
 		}
-		catch ( NoPlayingRange e )
+		else
 		{
 			fmax = fmin = fHigh;
 			// Use predicted velocity at fHigh set to fmax, at which Im(Z)=0.
@@ -348,17 +347,15 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 	{
 		Note targetNote = fingering.getNote();
 		PlayingRange range = new PlayingRange(calculator, fingering);
-		try
-		{
-			double target = getFrequencyTarget(targetNote);
-			double windowLength = calculator.getInstrument().getMouthpiece().getAirstreamLength();
-			double zRatio = zRatio(target, windowLength, getNominalV(target));
-			return range.findZRatio(target, zRatio);
-		}
-		catch (NoPlayingRange e)
+		double target = getFrequencyTarget(targetNote);
+		double windowLength = calculator.getInstrument().getMouthpiece().getAirstreamLength();
+		double zRatio = zRatio(target, windowLength, getNominalV(target));
+		double fnom = range.tryFindZRatio(target, zRatio);
+		if (Double.isNaN(fnom))
 		{
 			return null;
 		}
+		return fnom;
 	}
 
 	/* (non-Javadoc)
@@ -382,27 +379,25 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 		// Predict playing range.
 		PlayingRange range = new PlayingRange(calculator, fingering);
 		double fmax, fmin, fnom;
-		try {
-			fmax = range.findXZero(target);
+		// Leave any frequency that is not found unassigned.
+		fmax = range.tryFindXZero(target);
+		if (! Double.isNaN(fmax))
+		{
 			predNote.setFrequencyMax(fmax);
-			fmin = range.findFmin(fmax);
-			predNote.setFrequencyMin(fmin);
+			fmin = range.tryFindFmin(fmax);
+			if (! Double.isNaN(fmin))
+			{
+				predNote.setFrequencyMin(fmin);
+			}
 		}
-		catch (NoPlayingRange e)
+		double windowLength = calculator.getInstrument().getMouthpiece().getAirstreamLength();
+		double velocity = getNominalV(target);
+		double zRatio = zRatio(target, windowLength, velocity);
+		fnom = range.tryFindZRatio(target, zRatio);
+		if (! Double.isNaN(fnom))
 		{
-			// Leave fmax and fmin unassigned.
-		}
-		try {
-			double windowLength = calculator.getInstrument().getMouthpiece().getAirstreamLength();
-			double velocity = getNominalV(target);
-			double zRatio = zRatio(target, windowLength, velocity);
-			fnom = range.findZRatio(target, zRatio);
 			predNote.setFrequency(fnom);
 		}
-		catch (NoPlayingRange e)
-		{
-			// Leave fnom unassigned.
-		}
 		return predNote;
 	}
 }
@@ -22,7 +22,6 @@ import java.util.List;
 
 import org.apache.commons.math3.complex.Complex;
 
-import com.wwidesigner.modelling.PlayingRange.NoPlayingRange;
 import com.wwidesigner.note.Fingering;
 import com.wwidesigner.note.Note;
 import com.wwidesigner.note.Tuning;
@@ -166,14 +165,14 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 		Complex z;
 
 		PlayingRange range = new PlayingRange(calculator, noteLow);
-		try 
+		fmax = range.tryFindXZero(fLow);
+		fmin = range.tryFindFmin(fmax);
+		if (! Double.isNaN(fmin))
 		{
-			fmax = range.findXZero(fLow);
-			fmin = range.findFmin(fmax);
 			z = calculator.calcZ(fmin, noteLow);
 			xLow = BottomFraction * z.getImaginary();
 		}
-		catch ( NoPlayingRange e )
+		else
 		{
 			fmax = fmin = fLow;
 			xLow = 0.0;
@@ -181,14 +180,14 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 		fLow = fmax;	// Nominal frequency for our interpolation.
 		
 		range.setFingering(noteHigh);
-		try
+		fmax = range.tryFindXZero(fHigh);
+		fmin = range.tryFindFmin(fmax);
+		if (! Double.isNaN(fmin))
 		{
-			fmax = range.findXZero(fHigh);
-			fmin = range.findFmin(fmax);
 			z = calculator.calcZ(fmin, noteHigh);
 			xHigh = TopFraction * z.getImaginary();
 		}
-		catch ( NoPlayingRange e )
+		else
 		{
 			fmax = fmin = fHigh;
 			xHigh = -1.0e6;		// Arbitrary line-in-the-sand.
@@ -259,16 +258,13 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 	{
 		Note targetNote = fingering.getNote();
 		PlayingRange range = new PlayingRange(calculator, fingering);
-		try
-		{
-			double target = getFrequencyTarget(targetNote);
-			double reactance = getNominalX(target);
-			return range.findX(target, reactance);
-		}
-		catch (NoPlayingRange e)
+		double target = getFrequencyTarget(targetNote);
+		double fnom = range.tryFindX(target, getNominalX(target));
+		if (Double.isNaN(fnom))
 		{
 			return null;
 		}
+		return fnom;
 	}
 
 	/* (non-Javadoc)
@@ -292,24 +288,22 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 		// Predict playing range.
 		PlayingRange range = new PlayingRange(calculator, fingering);
 		double fmax, fmin, fnom;
-		try {
-			fmax = range.findXZero(target);
+		// Leave any frequency that is not found unassigned.
+		fmax = range.tryFindXZero(target);
+		if (! Double.isNaN(fmax))
+		{
 			predNote.setFrequencyMax(fmax);
-			fmin = range.findFmin(fmax);
-			predNote.setFrequencyMin(fmin);
+			fmin = range.tryFindFmin(fmax);
+			if (! Double.isNaN(fmin))
+			{
+				predNote.setFrequencyMin(fmin);
+			}
 		}
-		catch (NoPlayingRange e)
+		fnom = range.tryFindX(target, getNominalX(target));
+		if (! Double.isNaN(fnom))
 		{
-			// Leave fmax and fmin unassigned.
-		}
-		try {
-			fnom = range.findX(target, getNominalX(target));
 			predNote.setFrequency(fnom);
 		}
-		catch (NoPlayingRange e)
-		{
-			// Leave fnom unassigned.
-		}
 		return predNote;
 	}
 }
@@ -0,0 +1,403 @@
+/**
+ * Counters of the work done by the acoustic model.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Optional profiling of the acoustic model: counts and times impedance
+ * calculations, component transfer matrices by calculator class, and the
+ * impedance calculations PlayingRange spends on bracket searches and on
+ * root solving, and counts NoPlayingRange outcomes by fingering.
+ *
+ * Profiling is off by default, and costs one volatile read per call when
+ * off.  When on, each thread counts into its own Counters, without
+ * synchronization; snapshot() merges the counters of every thread that has
+ * done any work since the last reset().  Call snapshot() after the threads
+ * of a run have finished, for instance after an optimization returns.
+ * The counters are global, so profile one optimization at a time.
+ *
+ * @author Burton Patkau
+ */
+public class ModelProfiler
+{
+	/**
+	 * What an impedance calculation is being done for.
+	 */
+	public enum Phase
+	{
+		/** Called directly, for instance by an evaluator or tuner. */
+		OTHER,
+		/** Searching for a bracket around a root. */
+		BRACKET,
+		/** Solving for a root within a bracket. */
+		SOLVER,
+		/** Stepping down from fmax to find fmin. */
+		FMIN
+	}
+
+	/**
+	 * Counts of work done by one thread, or merged from several threads.
+	 */
+	public static class Counters
+	{
+		protected long calcZCalls;
+		protected long calcZNanos;
+		protected final long[] phaseEntries = new long[Phase.values().length];
+		protected final long[] phaseCalcZ = new long[Phase.values().length];
+		protected final long[] phaseNanos = new long[Phase.values().length];
+		// Calculator class -> { transfer matrices, nanoseconds }.
+		protected final Map<Class<?>, long[]> matrices = new HashMap<Class<?>, long[]>();
+		// Fingering name -> { NoPlayingRange outcomes }.
+		protected final Map<String, long[]> noPlayingRange = new HashMap<String, long[]>();
+		protected Phase phase = Phase.OTHER;
+		protected int generation = -1;
+
+		/**
+		 * Count impedance calculations, attributing them to the current
+		 * phase.
+		 */
+		public void addCalcZ(int nrCalls, long nanos)
+		{
+			calcZCalls += nrCalls;
+			calcZNanos += nanos;
+			phaseCalcZ[phase.ordinal()] += nrCalls;
+			phaseNanos[phase.ordinal()] += nanos;
+		}
+
+		public void addMatrix(Class<?> calculatorClass, long nanos)
+		{
+			long[] count = matrices.get(calculatorClass);
+			if (count == null)
+			{
+				count = new long[2];
+				matrices.put(calculatorClass, count);
+			}
+			count[0] += 1;
+			count[1] += nanos;
+		}
+
+		public void addNoPlayingRange(String fingeringName)
+		{
+			long[] count = noPlayingRange.get(fingeringName);
+			if (count == null)
+			{
+				count = new long[1];
+				noPlayingRange.put(fingeringName, count);
+			}
+			count[0] += 1;
+		}
+
+		/**
+		 * Add the counts from another Counters object to this one.
+		 */
+		public void add(Counters other)
+		{
+			calcZCalls += other.calcZCalls;
+			calcZNanos += other.calcZNanos;
+			for (int i = 0; i < phaseEntries.length; ++i)
+			{
+				phaseEntries[i] += other.phaseEntries[i];
+				phaseCalcZ[i] += other.phaseCalcZ[i];
+				phaseNanos[i] += other.phaseNanos[i];
+			}
+			for (Map.Entry<Class<?>, long[]> entry : other.matrices.entrySet())
+			{
+				long[] count = matrices.get(entry.getKey());
+				if (count == null)
+				{
+					count = new long[2];
+					matrices.put(entry.getKey(), count);
+				}
+				count[0] += entry.getValue()[0];
+				count[1] += entry.getValue()[1];
+			}
+			for (Map.Entry<String, long[]> entry : other.noPlayingRange.entrySet())
+			{
+				long[] count = noPlayingRange.get(entry.getKey());
+				if (count == null)
+				{
+					count = new long[1];
+					noPlayingRange.put(entry.getKey(), count);
+				}
+				count[0] += entry.getValue()[0];
+			}
+		}
+
+		public void clear()
+		{
+			calcZCalls = 0;
+			calcZNanos = 0;
+			for (int i = 0; i < phaseEntries.length; ++i)
+			{
+				phaseEntries[i] = 0;
+				phaseCalcZ[i] = 0;
+				phaseNanos[i] = 0;
+			}
+			matrices.clear();
+			noPlayingRange.clear();
+			phase = Phase.OTHER;
+		}
+
+		public long getCalcZCalls()
+		{
+			return calcZCalls;
+		}
+
+		public long getCalcZNanos()
+		{
+			return calcZNanos;
+		}
+
+		/**
+		 * @return number of times a phase was entered, such as the number
+		 *         of bracket searches or root solutions.
+		 */
+		public long getPhaseEntries(Phase aPhase)
+		{
+			return phaseEntries[aPhase.ordinal()];
+		}
+
+		/**
+		 * @return impedance calculations done in a phase, such as bracket
+		 *         steps or solver iterations.
+		 */
+		public long getPhaseCalcZ(Phase aPhase)
+		{
+			return phaseCalcZ[aPhase.ordinal()];
+		}
+
+		public long getPhaseNanos(Phase aPhase)
+		{
+			return phaseNanos[aPhase.ordinal()];
+		}
+
+		/**
+		 * @return number of transfer matrices calculated by a component
+		 *         calculator class.
+		 */
+		public long getMatrices(Class<?> calculatorClass)
+		{
+			long[] count = matrices.get(calculatorClass);
+			return count == null ? 0 : count[0];
+		}
+
+		public long getMatrixNanos(Class<?> calculatorClass)
+		{
+			long[] count = matrices.get(calculatorClass);
+			return count == null ? 0 : count[1];
+		}
+
+		public long getNoPlayingRange(String fingeringName)
+		{
+			long[] count = noPlayingRange.get(fingeringName);
+			return count == null ? 0 : count[0];
+		}
+
+		/**
+		 * @return total number of NoPlayingRange outcomes.
+		 */
+		public long getNoPlayingRange()
+		{
+			long total = 0;
+			for (long[] count : noPlayingRange.values())
+			{
+				total += count[0];
+			}
+			return total;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder text = new StringBuilder("Model profile:");
+			text.append(String.format("%n  Impedance calculations: %d, %.1f ms",
+					calcZCalls, 1.0e-6 * calcZNanos));
+			for (Phase aPhase : Phase.values())
+			{
+				int i = aPhase.ordinal();
+				text.append(String.format(
+						"%n    %-8s %8d entries, %10d calcZ, %10.1f ms",
+						aPhase, phaseEntries[i], phaseCalcZ[i],
+						1.0e-6 * phaseNanos[i]));
+			}
+			Map<String, long[]> sortedMatrices = new TreeMap<String, long[]>();
+			for (Map.Entry<Class<?>, long[]> entry : matrices.entrySet())
+			{
+				sortedMatrices.put(entry.getKey().getSimpleName(),
+						entry.getValue());
+			}
+			text.append(String.format("%n  Transfer matrices:"));
+			for (Map.Entry<String, long[]> entry : sortedMatrices.entrySet())
+			{
+				text.append(String.format("%n    %-40s %10d, %10.1f ms",
+						entry.getKey(), entry.getValue()[0],
+						1.0e-6 * entry.getValue()[1]));
+			}
+			if (!noPlayingRange.isEmpty())
+			{
+				text.append(String.format("%n  No playing range:"));
+				for (Map.Entry<String, long[]> entry : new TreeMap<String, long[]>(
+						noPlayingRange).entrySet())
+				{
+					text.append(String.format("%n    %-12s %8d",
+							entry.getKey(), entry.getValue()[0]));
+				}
+			}
+			return text.toString();
+		}
+	}
+
+	protected static volatile boolean enabled = false;
+	// Incremented by reset(); counters from an earlier generation are
+	// cleared on their next use.
+	protected static volatile int generation = 0;
+	// Counters used since the last reset().
+	protected static final List<Counters> activeCounters = new ArrayList<Counters>();
+	protected static final ThreadLocal<Counters> localCounters = new ThreadLocal<Counters>()
+	{
+		@Override
+		protected Counters initialValue()
+		{
+			return new Counters();
+		}
+	};
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Turn profiling on or off.  Takes effect on all threads, at their next
+	 * call into the model.
+	 */
+	public static void setEnabled(boolean isEnabled)
+	{
+		enabled = isEnabled;
+	}
+
+	/**
+	 * @return counters for the current thread.
+	 */
+	public static Counters counters()
+	{
+		Counters counters = localCounters.get();
+		int currentGeneration = generation;
+		if (counters.generation != currentGeneration)
+		{
+			counters.clear();
+			counters.generation = currentGeneration;
+			synchronized (activeCounters)
+			{
+				activeCounters.add(counters);
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * Discard the counts of all threads.
+	 */
+	public static void reset()
+	{
+		synchronized (activeCounters)
+		{
+			++generation;
+			activeCounters.clear();
+		}
+	}
+
+	/**
+	 * @return counts merged from all threads since the last reset().
+	 */
+	public static Counters snapshot()
+	{
+		Counters total = new Counters();
+		synchronized (activeCounters)
+		{
+			for (Counters counters : activeCounters)
+			{
+				if (counters.generation == generation)
+				{
+					total.add(counters);
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Attribute subsequent impedance calculations on this thread to a
+	 * specified phase.
+	 *
+	 * @return the phase to restore with exitPhase, or null if profiling is
+	 *         off.
+	 */
+	public static Phase enterPhase(Phase aPhase)
+	{
+		if (!enabled)
+		{
+			return null;
+		}
+		Counters counters = counters();
+		Phase previous = counters.phase;
+		counters.phase = aPhase;
+		counters.phaseEntries[aPhase.ordinal()] += 1;
+		return previous;
+	}
+
+	/**
+	 * Restore the phase returned by enterPhase.
+	 */
+	public static void exitPhase(Phase previous)
+	{
+		if (previous != null)
+		{
+			counters().phase = previous;
+		}
+	}
+
+	/**
+	 * Count a NoPlayingRange outcome for a fingering, if profiling is on.
+	 */
+	public static void countNoPlayingRange(Fingering fingering)
+	{
+		if (!enabled)
+		{
+			return;
+		}
+		String name = null;
+		if (fingering != null && fingering.getNote() != null)
+		{
+			name = fingering.getNote().getName();
+		}
+		if (name == null)
+		{
+			name = String.valueOf(fingering);
+		}
+		counters().addNoPlayingRange(name);
+	}
+}
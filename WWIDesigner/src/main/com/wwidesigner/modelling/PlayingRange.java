@@ -66,6 +66,10 @@ public class PlayingRange
 	protected static final double Granularity = 0.012;	// About 20 cents.
 	/* Loop gain that defines fmin for a playing range. */
 	protected static final double MinimumGain = 1.0;
+	/* Step size for a bracket search that starts from a nearby root,
+	 * as a fraction of f.  The search gives up, and falls back to
+	 * the full search, after moving Granularity from the starting root. */
+	protected static final double WarmStartStep = Granularity / 8.0;
 	
 	// A calculator for the instrument being modeled.
 	protected InstrumentCalculator calculator;
@@ -82,6 +86,12 @@ public class PlayingRange
 	protected interface UnivariateZFunction extends UnivariateFunction
 	{
 		double value(Complex z);
+
+		/**
+		 * Derivative of value(z) with respect to frequency,
+		 * given dZdf = { Re(dZ/df), Im(dZ/df) }.
+		 */
+		double derivative(Complex z, double[] dZdf);
 	}
 
 	/**
@@ -121,6 +131,11 @@ public class PlayingRange
 		{
 			return z.getImaginary() - targetX;
 		}
+
+		public double derivative(Complex z, double[] dZdf)
+		{
+			return dZdf[1];
+		}
 	}
 
 	/**
@@ -186,6 +201,12 @@ public class PlayingRange
 			return z.getImaginary()/z.getReal() - targetRatio;
 		}
 
+		public double derivative(Complex z, double[] dZdf)
+		{
+			double r = z.getReal();
+			return (dZdf[1] * r - z.getImaginary() * dZdf[0]) / (r * r);
+		}
+
 		public double value(double f)
 		{
 			Complex z = calculator.calcZ(f, fingering);
@@ -224,6 +245,12 @@ public class PlayingRange
 			return z.abs() - targetMagnitude;
 		}
 
+		public double derivative(Complex z, double[] dZdf)
+		{
+			return (z.getReal() * dZdf[0] + z.getImaginary() * dZdf[1])
+					/ z.abs();
+		}
+
 		public double value(double f)
 		{
 			Complex z = calculator.calcZ(f, fingering);
@@ -237,6 +264,11 @@ public class PlayingRange
 	protected ZMagnitude zMagnitude;
 	protected UnivariateSolver solver;
 	protected UnivariateOptimizer optimizer;
+	// Use solveNewton, rather than the solver, when the calculator
+	// supplies a cheap derivative of impedance.
+	protected boolean useNewton = true;
+	// Derivative of impedance from the latest calcZ in solveNewton.
+	protected double[] dZdf = new double[2];
 	
 	public class NoPlayingRange extends RuntimeException
 	{
@@ -412,6 +444,39 @@ public class PlayingRange
 	 */
 	public double[] findBracket(double nearFreq, UnivariateZFunction function)
 			throws NoPlayingRange
+	{
+		double[] bracket = tryFindBracket(nearFreq, function);
+		if (bracket == null)
+		{
+			throw new NoPlayingRange(nearFreq);
+		}
+		return bracket;
+	}
+
+	/**
+	 * Find a bracket near a specified frequency, as for findBracket,
+	 * without throwing an exception if there is none.
+	 * @returns array { lowerFreq, upperFreq }, or null if no bracket is
+	 * found to satisfy the post-condition.
+	 */
+	public double[] tryFindBracket(double nearFreq, UnivariateZFunction function)
+	{
+		ModelProfiler.Phase previousPhase
+			= ModelProfiler.enterPhase(ModelProfiler.Phase.BRACKET);
+		try
+		{
+			return searchBracket(nearFreq, function);
+		}
+		finally
+		{
+			ModelProfiler.exitPhase(previousPhase);
+		}
+	}
+
+	/**
+	 * Search for a bracket near a specified frequency, for tryFindBracket.
+	 */
+	protected double[] searchBracket(double nearFreq, UnivariateZFunction function)
 	{
 		double freq = nearFreq;
 		Complex zNear = calculator.calcZ(freq, fingering);
@@ -456,7 +521,7 @@ public class PlayingRange
 			if (upwardBracket[0] <= 0.0)
 			{
 				// We didn't find a bracket searching upward.
-				throw new NoPlayingRange(nearFreq);
+				return null;
 			}
 			return upwardBracket;
 		}
@@ -486,10 +551,10 @@ public class PlayingRange
 		if (downwardBracket[0] <= 0.0)
 		{
 			// We didn't find a bracket searching downward.
-			throw new NoPlayingRange(nearFreq);
+			return null;
 		}
 		return downwardBracket;
-	} // findBracket
+	} // searchBracket
 
 	/**
 	 * Find the zero of reactance nearest to nearFreq
@@ -499,24 +564,442 @@ public class PlayingRange
 	 * within the specified range of nearFreq.
 	 */
 	public double findXZero(double nearFreq) throws NoPlayingRange
+	{
+		double rootFreq = tryFindXZero(nearFreq);
+		if (Double.isNaN(rootFreq))
+		{
+			throw new NoPlayingRange(nearFreq);
+		}
+		return rootFreq;
+	}
+
+	/**
+	 * Find the zero of reactance nearest to nearFreq, as for findXZero,
+	 * without throwing an exception if there is none.
+	 * @param nearFreq
+	 * @returns frequency at which Im(Z) is zero, or NaN if there is no zero
+	 * of X within the specified range of nearFreq.
+	 */
+	public double tryFindXZero(double nearFreq)
 	{
 		double rootFreq;		// Frequency at which Z.imag == 0.
-		double[] bracket = findBracket(nearFreq, reactance);
+		double[] bracket = tryFindBracket(nearFreq, reactance);
+		if (bracket == null)
+		{
+			ModelProfiler.countNoPlayingRange(fingering);
+			return Double.NaN;
+		}
 
-		try {
-			rootFreq = solver.solve( 50, reactance, bracket[0], bracket[1] );
+		ModelProfiler.Phase previousPhase
+			= ModelProfiler.enterPhase(ModelProfiler.Phase.SOLVER);
+		try
+		{
+			rootFreq = solveNewton(bracket, reactance);
+			if (! Double.isNaN(rootFreq))
+			{
+				return rootFreq;
+			}
+			try {
+				rootFreq = solver.solve( 50, reactance, bracket[0], bracket[1] );
+			}
+			catch (Exception e)
+			{
+				// For step tapers, this exception is hit with no other consequences.
+				// Comment out the system message so as not to raise unneeded flags.
+				// System.out.println("Exception in findXZero: " + e.getMessage());
+				// e.printStackTrace();
+				ModelProfiler.countNoPlayingRange(fingering);
+				return Double.NaN;
+			}
+			return rootFreq;
 		}
-		catch (Exception e)
+		finally
+		{
+			ModelProfiler.exitPhase(previousPhase);
+		}
+	}
+
+	/**
+	 * Find the zero of reactance nearest to nearFreq, starting the search
+	 * from a root found earlier for this fingering, such as the root
+	 * for a slightly different geometry.  If the calculator has a cheap
+	 * derivative, uses Newton's method from the earlier root; otherwise
+	 * brackets the new root near the earlier one.  If no root is found
+	 * within Granularity of the earlier root, or if the root found is
+	 * not one the full search would certainly choose, as tested by
+	 * isPreferredRoot(), uses the full search of findXZero(nearFreq).
+	 * @param nearFreq
+	 * @param estimate - { rootFreq, slope } of the earlier root, as returned
+	 * by this function, or null if there is no earlier root.
+	 * Slope is d/df Im(Z) at rootFreq, or NaN if unknown.
+	 * @returns array { rootFreq, slope }, with slope from the derivative or
+	 * estimated from a small bracket, or NaN if the full search was used.
+	 * @throws NoPlayingRange if there is no zero of X
+	 * within the specified range of nearFreq.
+	 */
+	public double[] findXZero(double nearFreq, double[] estimate)
+			throws NoPlayingRange
+	{
+		double[] result = tryFindXZero(nearFreq, estimate);
+		if (result == null)
 		{
-			// For step tapers, this exception is hit with no other consequences.
-			// Comment out the system message so as not to raise unneeded flags.
-			// System.out.println("Exception in findXZero: " + e.getMessage());
-			// e.printStackTrace();
 			throw new NoPlayingRange(nearFreq);
 		}
-		return rootFreq;
+		return result;
 	}
 
+	/**
+	 * Find the zero of reactance nearest to nearFreq, starting from an
+	 * earlier root, as for findXZero(nearFreq, estimate), without throwing
+	 * an exception if there is none.
+	 * @returns array { rootFreq, slope }, or null if there is no zero of X
+	 * within the specified range of nearFreq.
+	 */
+	public double[] tryFindXZero(double nearFreq, double[] estimate)
+	{
+		if (estimate != null && useNewton && calculator.hasFrequencyDerivative())
+		{
+			double[] result;
+			ModelProfiler.Phase previousPhase
+				= ModelProfiler.enterPhase(ModelProfiler.Phase.SOLVER);
+			try
+			{
+				result = solveNewtonFrom(estimate[0], reactance);
+			}
+			finally
+			{
+				ModelProfiler.exitPhase(previousPhase);
+			}
+			if (result != null && isPreferredRoot(nearFreq, result[0]))
+			{
+				return result;
+			}
+			estimate = null;
+		}
+		double[] bracket = null;
+		if (estimate != null)
+		{
+			ModelProfiler.Phase previousPhase
+				= ModelProfiler.enterPhase(ModelProfiler.Phase.BRACKET);
+			try
+			{
+				bracket = findBracketFrom(estimate[0], estimate[1], reactance);
+			}
+			finally
+			{
+				ModelProfiler.exitPhase(previousPhase);
+			}
+		}
+		if (bracket != null)
+		{
+			double[] result;
+			ModelProfiler.Phase previousPhase
+				= ModelProfiler.enterPhase(ModelProfiler.Phase.SOLVER);
+			try
+			{
+				result = solveBracket(bracket, reactance);
+			}
+			finally
+			{
+				ModelProfiler.exitPhase(previousPhase);
+			}
+			if (result != null && isPreferredRoot(nearFreq, result[0]))
+			{
+				return result;
+			}
+		}
+		double rootFreq = tryFindXZero(nearFreq);
+		if (Double.isNaN(rootFreq))
+		{
+			return null;
+		}
+		double[] result = { rootFreq, Double.NaN };
+		return result;
+	}
+
+	/**
+	 * Test whether a root found from an earlier root is certainly the one
+	 * the full search of tryFindXZero(nearFreq) would choose.  The full
+	 * search looks first above nearFreq if the reactance there is negative,
+	 * below nearFreq if it is positive, and keeps the first root it brackets
+	 * in that direction if the bracket lies within PreferredSolutionRatio
+	 * of nearFreq; otherwise it may choose a root on the other side.
+	 * A root on the other side, or too close to the limit for its bracket
+	 * to be within PreferredSolutionRatio, may belong to a different
+	 * resonance from the one the full search would find.
+	 */
+	protected boolean isPreferredRoot(double nearFreq, double rootFreq)
+	{
+		final double stepSize = nearFreq * Granularity;
+		double nearValue = reactance.value(calculator.calcZ(nearFreq, fingering));
+		if (nearValue < 0.0)
+		{
+			return rootFreq >= nearFreq
+					&& rootFreq + stepSize <= nearFreq * PreferredSolutionRatio;
+		}
+		if (nearValue > 0.0)
+		{
+			return rootFreq <= nearFreq
+					&& rootFreq - stepSize >= nearFreq / PreferredSolutionRatio;
+		}
+		return false;
+	}
+
+	/**
+	 * Find the root of function.value(calcZ(f)) in a bracket from
+	 * findBracket, using Newton's method with the derivative of impedance
+	 * from the calculator.  Steps that would leave the bracket are replaced
+	 * by bisection, and the bracket shrinks with every evaluation,
+	 * so the iteration cannot diverge.  Resonances are smooth, so it
+	 * usually converges in three or four evaluations.
+	 * @param bracket - { lowerFreq, upperFreq }, with
+	 *       function(lowerFreq) < 0 and function(upperFreq) > 0.
+	 * @param function - objective function.
+	 * @returns root frequency, or NaN if the calculator has no cheap
+	 *       derivative, Newton solving is disabled, or the iteration fails.
+	 */
+	protected double solveNewton(double[] bracket, UnivariateZFunction function)
+	{
+		if (! useNewton || ! calculator.hasFrequencyDerivative())
+		{
+			return Double.NaN;
+		}
+		final double accuracy = solver.getAbsoluteAccuracy();
+		double lowerFreq = bracket[0];
+		double upperFreq = bracket[1];
+		double freq = 0.5 * (lowerFreq + upperFreq);
+
+		for (int iteration = 0; iteration < 50; ++iteration)
+		{
+			Complex z = calculator.calcZ(freq, fingering, dZdf);
+			double value = function.value(z);
+			if (value == 0.0)
+			{
+				return freq;
+			}
+			if (value < 0.0)
+			{
+				lowerFreq = freq;
+			}
+			else if (value > 0.0)
+			{
+				upperFreq = freq;
+			}
+			else
+			{
+				// NaN value.
+				return Double.NaN;
+			}
+			double newFreq = freq - value / function.derivative(z, dZdf);
+			// Written this way to catch a NaN step as well.
+			if (! (newFreq > lowerFreq && newFreq < upperFreq))
+			{
+				newFreq = 0.5 * (lowerFreq + upperFreq);
+			}
+			if (Math.abs(newFreq - freq) < accuracy
+					|| upperFreq - lowerFreq < accuracy)
+			{
+				return newFreq;
+			}
+			freq = newFreq;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Choose whether root finding uses Newton's method, for calculators
+	 * that supply a cheap derivative of impedance.
+	 * @param aUseNewton - if false, always use the derivative-free solver.
+	 */
+	public void setUseNewton(boolean aUseNewton)
+	{
+		this.useNewton = aUseNewton;
+	}
+
+	public boolean isUseNewton()
+	{
+		return useNewton;
+	}
+
+	/**
+	 * Find the root in a small bracket from findBracketFrom, using the
+	 * Illinois variant of regula falsi.  Unlike the BrentSolver, this
+	 * re-uses the function values at the ends of the bracket, and on
+	 * the nearly-linear function in a small bracket, it usually converges
+	 * in one or two evaluations.
+	 * @param bracket - { lowerFreq, upperFreq, lowerValue, upperValue }
+	 * @param function - objective function.
+	 * @returns array { rootFreq, slope }, with slope estimated from
+	 * the bracket, or null if the iteration does not converge.
+	 */
+	protected double[] solveBracket(double[] bracket, UnivariateZFunction function)
+	{
+		final double accuracy = solver.getAbsoluteAccuracy();
+		double lowerFreq = bracket[0];
+		double upperFreq = bracket[1];
+		double lowerValue = bracket[2];
+		double upperValue = bracket[3];
+		double slope = (upperValue - lowerValue) / (upperFreq - lowerFreq);
+		double freq = Double.NaN;
+		int lastSide = 0;	// Side of the bracket last replaced.
+
+		for (int iteration = 0; iteration < 50; ++iteration)
+		{
+			double newFreq = lowerFreq - lowerValue * (upperFreq - lowerFreq)
+					/ (upperValue - lowerValue);
+			double value = function.value(calculator.calcZ(newFreq, fingering));
+			if (Double.isNaN(value))
+			{
+				return null;
+			}
+			// Converged if the iterate has stopped moving, or if a Newton
+			// step from here, with the bracket slope, would be too small
+			// to matter.
+			boolean converged = Math.abs(newFreq - freq) < accuracy
+					|| Math.abs(value / slope) < accuracy;
+			freq = newFreq;
+			if (value == 0.0 || converged)
+			{
+				double[] result = { freq, slope };
+				return result;
+			}
+			if (value < 0.0)
+			{
+				lowerFreq = freq;
+				lowerValue = value;
+				if (lastSide < 0)
+				{
+					// Same end replaced twice; halve the other end's value.
+					upperValue *= 0.5;
+				}
+				lastSide = -1;
+			}
+			else
+			{
+				upperFreq = freq;
+				upperValue = value;
+				if (lastSide > 0)
+				{
+					lowerValue *= 0.5;
+				}
+				lastSide = 1;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find a root of function.value(calcZ(f)) near an earlier root, which
+	 * has moved by a small amount, using Newton's method with the derivative
+	 * of impedance from the calculator.  Starting so close to the root,
+	 * it usually converges in two evaluations.  With no bracket to keep it
+	 * in check, it gives up if it strays more than startFreq*Granularity
+	 * from the earlier root, or reaches a falling slope, where the full
+	 * search would not look for a root.
+	 * @param startFreq - earlier root.
+	 * @param function - objective function.
+	 * @returns array { rootFreq, slope }, or null if no root is found.
+	 */
+	protected double[] solveNewtonFrom(double startFreq,
+			UnivariateZFunction function)
+	{
+		final double accuracy = solver.getAbsoluteAccuracy();
+		final double maxMove = startFreq * Granularity;
+		double freq = startFreq;
+
+		for (int iteration = 0; iteration < 10; ++iteration)
+		{
+			Complex z = calculator.calcZ(freq, fingering, dZdf);
+			double value = function.value(z);
+			double slope = function.derivative(z, dZdf);
+			// Written this way to catch NaN values as well.
+			if (! (slope > 0.0) || Double.isNaN(value))
+			{
+				return null;
+			}
+			double newFreq = freq - value / slope;
+			if (Math.abs(newFreq - startFreq) > maxMove)
+			{
+				return null;
+			}
+			if (value == 0.0 || Math.abs(newFreq - freq) < accuracy)
+			{
+				double[] result = { newFreq, slope };
+				return result;
+			}
+			freq = newFreq;
+		}
+		return null;
+	}
+
+	/**
+	 * Find a small bracket for a root of function.value(calcZ(f))
+	 * near an earlier root, which has moved by a small amount.
+	 * If the slope at the earlier root is known, the first trial point
+	 * is just beyond a Newton step from the earlier root.
+	 * Otherwise, and on later trials, steps by startFreq*WarmStartStep.
+	 * @param startFreq - earlier root.
+	 * @param slope - d/df function at startFreq, or NaN if unknown.
+	 * @param function - objective function.
+	 * @returns array { lowerFreq, upperFreq, lowerValue, upperValue },
+	 *       satisfying lowerValue = function(lowerFreq) < 0
+	 *       and upperValue = function(upperFreq) > 0,
+	 *       or null if no such bracket is found within
+	 *       startFreq*Granularity of startFreq.
+	 */
+	protected double[] findBracketFrom(double startFreq, double slope,
+			UnivariateZFunction function)
+	{
+		final double stepSize = startFreq * WarmStartStep;
+		final double maxMove = startFreq * Granularity;
+		double startValue = function.value(calculator.calcZ(startFreq, fingering));
+		if (startValue == 0.0 || Double.isNaN(startValue))
+		{
+			return null;
+		}
+		// Distance to the first trial point.
+		double move = stepSize;
+		if (slope > 0.0 && ! Double.isInfinite(slope))
+		{
+			// Go 50% beyond the Newton estimate, plus a little.
+			move = 1.5 * Math.abs(startValue / slope) + 0.01 * stepSize;
+			if (move > maxMove)
+			{
+				return null;
+			}
+		}
+		// Function value is negative below the root, positive above.
+		double direction = (startValue < 0.0 ? 1.0 : -1.0);
+		double nearFreq = startFreq;
+		double nearValue = startValue;
+		double farFreq = startFreq + direction * move;
+		double farValue = function.value(calculator.calcZ(farFreq, fingering));
+		// Written this way to keep stepping past NaN values.
+		while (! (farValue * direction > 0.0))
+		{
+			if (farValue * direction < 0.0)
+			{
+				// Move up the near end of the bracket.
+				nearFreq = farFreq;
+				nearValue = farValue;
+			}
+			move += stepSize;
+			if (move > maxMove)
+			{
+				return null;
+			}
+			farFreq = startFreq + direction * move;
+			farValue = function.value(calculator.calcZ(farFreq, fingering));
+		}
+		if (direction > 0.0)
+		{
+			double[] bracket = { nearFreq, farFreq, nearValue, farValue };
+			return bracket;
+		}
+		double[] bracket = { farFreq, nearFreq, farValue, nearValue };
+		return bracket;
+	} // findBracketFrom
+
 	/**
 	 * Find the frequency with a specified reactance nearest to nearFreq
 	 * satisfying nearFreq/SearchBoundRatio <= f <= nearFreq*SearchBoundRatio
@@ -526,21 +1009,57 @@ public class PlayingRange
 	 * within the specified range of nearFreq.
 	 */
 	public double findX(double nearFreq, double targetX) throws NoPlayingRange
+	{
+		double rootFreq = tryFindX(nearFreq, targetX);
+		if (Double.isNaN(rootFreq))
+		{
+			throw new NoPlayingRange(nearFreq);
+		}
+		return rootFreq;
+	}
+
+	/**
+	 * Find the frequency with a specified reactance nearest to nearFreq,
+	 * as for findX, without throwing an exception if there is none.
+	 * @returns frequency at which Im(Z) == targetX, or NaN if there is
+	 * none within the specified range of nearFreq.
+	 */
+	public double tryFindX(double nearFreq, double targetX)
 	{
 		double rootFreq;		// Frequency at which Z.imag == targetX.
 		Reactance aReactance = new Reactance( targetX );
-		double[] bracket = findBracket(nearFreq, aReactance);
+		double[] bracket = tryFindBracket(nearFreq, aReactance);
+		if (bracket == null)
+		{
+			ModelProfiler.countNoPlayingRange(fingering);
+			return Double.NaN;
+		}
 
-		try {
-			rootFreq = solver.solve( 50, aReactance, bracket[0], bracket[1] );
+		ModelProfiler.Phase previousPhase
+			= ModelProfiler.enterPhase(ModelProfiler.Phase.SOLVER);
+		try
+		{
+			rootFreq = solveNewton(bracket, aReactance);
+			if (! Double.isNaN(rootFreq))
+			{
+				return rootFreq;
+			}
+			try {
+				rootFreq = solver.solve( 50, aReactance, bracket[0], bracket[1] );
+			}
+			catch (Exception e)
+			{
+				System.out.println("Exception in findX: " + e.getMessage());
+				// e.printStackTrace();
+				ModelProfiler.countNoPlayingRange(fingering);
+				return Double.NaN;
+			}
+			return rootFreq;
 		}
-		catch (Exception e)
+		finally
 		{
-			System.out.println("Exception in findX: " + e.getMessage());
-			// e.printStackTrace();
-			throw new NoPlayingRange(nearFreq);
+			ModelProfiler.exitPhase(previousPhase);
 		}
-		return rootFreq;
 	}
 
 	/**
@@ -549,8 +1068,51 @@ public class PlayingRange
 	 * either gain(fmin) == MinimumGain
 	 * or fmin is a local minimum of Im(Z)/Re(Z).
 	 * @param fmax - maximum frequency, as returned by findFmax().
+	 * @throws NoPlayingRange if there is no playing range below fmax.
 	 */
 	public double findFmin(double fmax)
+	{
+		double fmin = tryFindFmin(fmax);
+		if (Double.isNaN(fmin))
+		{
+			throw new NoPlayingRange(fmax);
+		}
+		return fmin;
+	}
+
+	/**
+	 * Find fmin for a playing range, given fmax, as for findFmin,
+	 * without throwing an exception if there is none.
+	 * @param fmax - maximum frequency, as returned by findFmax().
+	 * @returns fmin, or NaN if there is no playing range below fmax.
+	 */
+	public double tryFindFmin(double fmax)
+	{
+		if (Double.isNaN(fmax))
+		{
+			return Double.NaN;
+		}
+		ModelProfiler.Phase previousPhase
+			= ModelProfiler.enterPhase(ModelProfiler.Phase.FMIN);
+		try
+		{
+			double fmin = searchFmin(fmax);
+			if (Double.isNaN(fmin))
+			{
+				ModelProfiler.countNoPlayingRange(fingering);
+			}
+			return fmin;
+		}
+		finally
+		{
+			ModelProfiler.exitPhase(previousPhase);
+		}
+	}
+
+	/**
+	 * Search down from fmax for fmin, for tryFindFmin.
+	 */
+	protected double searchFmin(double fmax)
 	{
 		final double stepSize = fmax * Granularity;		// Step size for search.
 
@@ -565,7 +1127,7 @@ public class PlayingRange
 		{
 			// Loop gain is too small, even at fmax.
 			// There is no playing range here.
-			throw new NoPlayingRange(fmax);
+			return Double.NaN;
 		}
 		
 		// Lower bound on fmin either has gain < MinimumGain
@@ -576,7 +1138,7 @@ public class PlayingRange
 			lowerFreq -= stepSize;
 			if ( lowerFreq < fmax/SearchBoundRatio )
 			{
-				throw new NoPlayingRange(fmax);
+				return Double.NaN;
 			}
 			z_lo = calculator.calcZ(lowerFreq, fingering);
 			g_lo = calculator.calcGain(lowerFreq,z_lo);
@@ -596,7 +1158,7 @@ public class PlayingRange
 			{
 				System.out.println("Exception solving for fmin (gain): " + e.getMessage());
 				// e.printStackTrace();
-				throw new NoPlayingRange(fmax);
+				return Double.NaN;
 			}
 		}
 		else {
@@ -615,7 +1177,7 @@ public class PlayingRange
 		{
 			System.out.println("Exception solving for fmin (ratio): " + e.getMessage());
 			// e.printStackTrace();
-			throw new NoPlayingRange(fmax);
+			return Double.NaN;
 		}
 		if ( freqRatio > freqGain ) {
 			return freqRatio;
@@ -632,21 +1194,58 @@ public class PlayingRange
 	 * within the specified range of nearFreq.
 	 */
 	public double findZRatio(double nearFreq, double targetRatio) throws NoPlayingRange
+	{
+		double rootFreq = tryFindZRatio(nearFreq, targetRatio);
+		if (Double.isNaN(rootFreq))
+		{
+			throw new NoPlayingRange(nearFreq);
+		}
+		return rootFreq;
+	}
+
+	/**
+	 * Find the frequency with a specified ratio Im(Z)/Re(Z) nearest to
+	 * nearFreq, as for findZRatio, without throwing an exception if there
+	 * is none.
+	 * @returns frequency at which Im(Z)/Re(Z) == targetRatio, or NaN if
+	 * there is none within the specified range of nearFreq.
+	 */
+	public double tryFindZRatio(double nearFreq, double targetRatio)
 	{
 		double rootFreq;		// Frequency at which Z.imag == targetX.
 		ZRatio ratio = new ZRatio( targetRatio );
-		double[] bracket = findBracket(nearFreq, ratio);
+		double[] bracket = tryFindBracket(nearFreq, ratio);
+		if (bracket == null)
+		{
+			ModelProfiler.countNoPlayingRange(fingering);
+			return Double.NaN;
+		}
 
-		try {
-			rootFreq = solver.solve( 50, ratio, bracket[0], bracket[1] );
+		ModelProfiler.Phase previousPhase
+			= ModelProfiler.enterPhase(ModelProfiler.Phase.SOLVER);
+		try
+		{
+			rootFreq = solveNewton(bracket, ratio);
+			if (! Double.isNaN(rootFreq))
+			{
+				return rootFreq;
+			}
+			try {
+				rootFreq = solver.solve( 50, ratio, bracket[0], bracket[1] );
+			}
+			catch (Exception e)
+			{
+				System.out.println("Exception in findZRatio: " + e.getMessage());
+				// e.printStackTrace();
+				ModelProfiler.countNoPlayingRange(fingering);
+				return Double.NaN;
+			}
+			return rootFreq;
 		}
-		catch (Exception e)
+		finally
 		{
-			System.out.println("Exception in findZRatio: " + e.getMessage());
-			// e.printStackTrace();
-			throw new NoPlayingRange(nearFreq);
+			ModelProfiler.exitPhase(previousPhase);
 		}
-		return rootFreq;
 	}
 
 	/**
@@ -16,6 +16,7 @@ import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
 import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
 import org.apache.commons.math3.util.FastMath;
 
 import com.jidesoft.chart.Chart;
@@ -46,49 +47,18 @@ public class PlayingRangeSpectrum
 	/**
 	 * Holds impedance spectrum (created by calcImpedance()).
 	 */
-	protected Map<Double, Complex> mImpedance;
+	protected AdaptiveSpectrum mImpedance;
 
 	/**
-	 * Holds loop gain spectrum (created by calcImpedance()).
+	 * Loop gain, from the impedance (set by calcImpedance()).
 	 */
-	protected Map<Double, Double> mGain;
+	protected AdaptiveSpectrum.Quantity mGain;
 
 	/**
 	 * Holds loop gain maxima
 	 */
 	public Map<Double, Double> mGainMaxima;
 
-	private int dataPointIndex;
-	private double prevFreq;
-	private double prevLoopGain;
-	private double prevPrevLoopGain;
-
-	/**
-	 * Add or replace a point in the spectrum.
-	 */
-	protected void setDataPoint(double frequency, Complex impedance,
-			Double loopGain)
-	{
-		mImpedance.put(frequency, impedance);
-		mGain.put(frequency, loopGain);
-		findLoopGainMaximum(frequency, loopGain);
-	}
-
-	private void findLoopGainMaximum(double frequency, Double loopGain)
-	{
-		if ((dataPointIndex >= 2) && (prevLoopGain > loopGain)
-				&& (prevLoopGain > prevPrevLoopGain))
-		{
-			// We have found a loop gain maximum.
-			mGainMaxima.put(prevFreq, prevLoopGain);
-		}
-
-		dataPointIndex++;
-		prevPrevLoopGain = prevLoopGain;
-		prevLoopGain = loopGain;
-		prevFreq = frequency;
-	}
-
 	protected void printLoopGainMaxima()
 	{
 		Set<Entry<Double, Double>> entries = mGainMaxima.entrySet();
@@ -104,8 +74,9 @@ public class PlayingRangeSpectrum
 		}
 	}
 
-	protected void calcImpedance(InstrumentCalculator calculator,
-			Fingering fingering, double freqStart, double freqEnd, int nfreq)
+	protected void calcImpedance(final InstrumentCalculator calculator,
+			final Fingering fingering, double freqStart, double freqEnd,
+			int nfreq)
 	{
 		Note myNote = fingering.getNote();
 		mName = "Note";
@@ -156,28 +127,45 @@ public class PlayingRangeSpectrum
 				freqHarmonic += freqTarget;
 			}
 		}
-		mImpedance = new TreeMap<Double, Complex>();
-		mGain = new TreeMap<Double, Double>();
-		double freqStep = (freqEnd - freqStart) / (nfreq - 1);
-		for (int i = 0; i < nfreq; ++i)
+		// Loop gain varies inversely with |Z|, so the tolerance on log |Z|
+		// also bounds the relative error in gain between samples.
+		mImpedance = new AdaptiveSpectrum(new AdaptiveSpectrum.Quantity[] {
+				AdaptiveSpectrum.LOG_MAGNITUDE, AdaptiveSpectrum.ARGUMENT },
+				ImpedanceSpectrum.TOLERANCES)
 		{
-			double freq = freqStart + i * freqStep;
-			Complex zAc = calculator.calcZ(freq, fingering);
-			Double gain = calculator.calcGain(freq, zAc);
-			setDataPoint(freq, zAc, gain);
+			@Override
+			protected void calcValues(double[] frequencies, double[] outRe,
+					double[] outIm)
+			{
+				calculator.calcZ(frequencies, fingering, outRe, outIm);
+			}
+		};
+		mGain = new AdaptiveSpectrum.Quantity()
+		{
+			@Override
+			public double value(double freq, double re, double im)
+			{
+				return calculator.calcGain(freq, new Complex(re, im));
+			}
+		};
+		mImpedance.calculate(freqStart, freqEnd, nfreq);
+
+		mGainMaxima = new TreeMap<Double, Double>();
+		List<Double> maximaFreqs = new ArrayList<Double>();
+		List<Double> maximaGains = new ArrayList<Double>();
+		mImpedance.findExtrema(mGain, null, GoalType.MAXIMIZE, maximaFreqs,
+				maximaGains);
+		for (int i = 0; i < maximaFreqs.size(); ++i)
+		{
+			mGainMaxima.put(maximaFreqs.get(i), maximaGains.get(i));
 		}
 	}
 
-	protected Map<Double, Complex> getSpectrum()
+	protected AdaptiveSpectrum getSpectrum()
 	{
 		return mImpedance;
 	}
 
-	protected void setSpectrum(Map<Double, Complex> spectrum)
-	{
-		mImpedance = spectrum;
-	}
-
 	protected void plotImpedanceSpectrum(final boolean exitOnClose)
 	{
 		SwingUtilities.invokeLater(new Runnable()
@@ -192,13 +180,11 @@ public class PlayingRangeSpectrum
 				frame.setSize(800, 600);
 				DefaultChartModel modelReal = new DefaultChartModel("Real");
 				DefaultChartModel modelImag = new DefaultChartModel("Imaginary");
-				for (Map.Entry<Double, Complex> point : mImpedance.entrySet())
+				for (int idx = 0; idx < mImpedance.size(); ++idx)
 				{
-					double x = point.getKey();
-					double r = point.getValue().getReal();
-					double i = point.getValue().getImaginary();
-					modelReal.addPoint(x, r);
-					modelImag.addPoint(x, i);
+					double x = mImpedance.getFrequency(idx);
+					modelReal.addPoint(x, mImpedance.getReal(idx));
+					modelImag.addPoint(x, mImpedance.getImaginary(idx));
 				}
 				Chart chart = new Chart();
 				chart.setAutoRanging(true);
@@ -232,13 +218,14 @@ public class PlayingRangeSpectrum
 				frame.setSize(800, 600);
 				DefaultChartModel modelMagnitude = new DefaultChartModel("Magnitude");
 				DefaultChartModel modelPhase = new DefaultChartModel("Phase");
-				for (Map.Entry<Double, Complex> point : mImpedance.entrySet())
+				for (int idx = 0; idx < mImpedance.size(); ++idx)
 				{
-					double x = point.getKey();
-					double z = point.getValue().abs();
-					double phi = point.getValue().getArgument();
-					modelMagnitude.addPoint(x, FastMath.log10(z));
-					modelPhase.addPoint(x, phi);
+					double x = mImpedance.getFrequency(idx);
+					double r = mImpedance.getReal(idx);
+					double i = mImpedance.getImaginary(idx);
+					modelMagnitude.addPoint(x,
+							FastMath.log10(FastMath.hypot(r, i)));
+					modelPhase.addPoint(x, FastMath.atan2(i, r));
 				}
 				Chart chart = new Chart();
 				chart.setAutoRanging(true);
@@ -291,17 +278,13 @@ public class PlayingRangeSpectrum
 					modelActuals = new DefaultChartModel("Target Frequency");
 				}
 				DefaultChartModel modelHarmonics = new DefaultChartModel("Harmonics");
-				for (Map.Entry<Double, Complex> point : mImpedance.entrySet())
+				for (int idx = 0; idx < mImpedance.size(); ++idx)
 				{
-					double x = point.getKey();
-					double r = point.getValue().getReal();
-					double i = point.getValue().getImaginary();
+					double x = mImpedance.getFrequency(idx);
+					double r = mImpedance.getReal(idx);
+					double i = mImpedance.getImaginary(idx);
 					modelRatio.addPoint(x, i / r);
-				}
-				for (Map.Entry<Double, Double> point : mGain.entrySet())
-				{
-					double x = point.getKey();
-					double g = point.getValue();
+					double g = mGain.value(x, r, i);
 					if (g >= 1.0)
 					{
 						modelGain.addPoint(x, g);
@@ -386,7 +369,7 @@ public class PlayingRangeSpectrum
 	 *            - Range of frequencies to plot above fingered note, as a
 	 *            multiple > 1 of the note.
 	 * @param numberPoints
-	 *            - number of points to calculate for plotting.
+	 *            - largest number of points to calculate for plotting.
 	 */
 	public void plot(InstrumentCalculator calculator, Fingering fingering,
 			double freqRangeBelow, double freqRangeAbove, int numberPoints,
@@ -416,13 +399,6 @@ public class PlayingRangeSpectrum
 			freqEnd = targetFreq * freqRangeAbove;
 		}
 
-		// Set up loop gain maxima find
-		mGainMaxima = new TreeMap<Double, Double>();
-		dataPointIndex = 0;
-		prevFreq = 0.;
-		prevLoopGain = 0.;
-		prevPrevLoopGain = 0.;
-
 		calcImpedance(calculator, fingering, freqStart, freqEnd, numberPoints);
 		// plotImpedanceMagnitude(exitOnClose);
 		printLoopGainMaxima();
@@ -101,14 +101,14 @@ public class PlotPlayingRanges
 	protected static final String Y_VALUE_NAME = "Reactance Ratio, X/R";
 	/**
 	 * Calculate a y value for a point on the graph.
-	 * @param calculator - instrument calculator to calculate y value.
+	 * @param analysis - tuning analysis holding impedance values.
+	 * @param idx - index of the note in the target tuning.
 	 * @param freq - frequency at which to calculate y value.
 	 * @return y value.
 	 */
-	protected static double yValue(InstrumentCalculator calculator, double freq,
-			Fingering fingering)
+	protected static double yValue(TuningAnalysis analysis, int idx, double freq)
 	{
-		Complex z = calculator.calcZ(freq, fingering);
+		Complex z = analysis.calcZ(idx, freq);
 		return z.getImaginary()/z.getReal();
 	}
 
@@ -142,11 +142,24 @@ public class PlotPlayingRanges
 	 */
 	public void buildGraph(InstrumentCalculator calculator, Tuning target, Tuning predicted)
 	{
+		buildGraph(new TuningAnalysis(calculator, target, predicted));
+	}
+
+	/**
+	 * Collect the data necessary to graph the predicted tuning for an instrument,
+	 * from a tuning analysis.
+	 * Following this call, use plotGraph() to display the graph.
+	 * @param analysis - predicted tuning and impedance values for the instrument.
+	 */
+	public void buildGraph(TuningAnalysis analysis)
+	{
+		Tuning target = analysis.getTargetTuning();
+		Tuning predicted = analysis.getPredictedTuning();
 		if ( mName == null )
 		{
-			if ( calculator.instrument.getName() != null )
+			if ( analysis.getInstrument().getName() != null )
 			{
-				mName = calculator.instrument.getName();
+				mName = analysis.getInstrument().getName();
 			}
 			else 
 			{
@@ -204,7 +217,7 @@ public class PlotPlayingRanges
 			}
 			if ( frequencyMin != null )
 			{
-				y = yValue(calculator, frequencyMin, predFingering);
+				y = yValue(analysis, idx, frequencyMin);
 				if ( y < minY )
 				{
 					minY = y;
@@ -216,7 +229,7 @@ public class PlotPlayingRanges
 			}
 			if ( frequencyMax != null )
 			{
-				y = yValue(calculator, frequencyMax, predFingering);
+				y = yValue(analysis, idx, frequencyMax);
 				if ( y < minY )
 				{
 					minY = y;
@@ -281,7 +294,7 @@ public class PlotPlayingRanges
 			if ( tgt.getFrequency() != null )
 			{
 				f = tgt.getFrequency();
-				y = yValue(calculator, f, predFingering);
+				y = yValue(analysis, idx, f);
 				y = clamp(y,minY,maxY);
 				if (frequencyMax != null && f > frequencyMax)
 				{
@@ -321,14 +334,14 @@ public class PlotPlayingRanges
 			if ( pred.getFrequency() != null
 				&& ( tgt.getFrequency() == null || pred.getFrequency() != tgt.getFrequency() ) )
 			{
-				y = yValue(calculator, pred.getFrequency(), predFingering);
+				y = yValue(analysis, idx, pred.getFrequency());
 				y = clamp(y,minY,maxY);
 				nominalModel.addPoint(pred.getFrequency(), y);
 			}
 			if ( frequencyMin != null )
 			{
 				f = frequencyMin;
-				y = yValue(calculator, f, predFingering);
+				y = yValue(analysis, idx, f);
 				y = clamp(y,minY,maxY);
 				if (isMarkerNote)
 				{
@@ -342,7 +355,7 @@ public class PlotPlayingRanges
 			if ( frequencyMax != null )
 			{
 				f = frequencyMax;
-				y = yValue(calculator, f, predFingering);
+				y = yValue(analysis, idx, f);
 				y = clamp(y,minY,maxY);
 				if (isMarkerNote)
 				{
@@ -356,13 +369,10 @@ public class PlotPlayingRanges
 			if ( frequencyMin != null && frequencyMax != null )
 			{
 				DefaultChartModel rangeModel  = new DefaultChartModel();
-				double step = (frequencyMax - frequencyMin)/32.0;
-				f = frequencyMin;
-				for (int i = 0; i <= 32; i++ )
+				for (double sweepF : TuningAnalysis.sweep(frequencyMin, frequencyMax))
 				{
-					y = yValue(calculator, f, predFingering);
-					rangeModel.addPoint(f, y);
-					f += step;
+					y = yValue(analysis, idx, sweepF);
+					rangeModel.addPoint(sweepF, y);
 				}
 				if (isMarkerNote)
 				{
@@ -377,14 +387,11 @@ public class PlotPlayingRanges
 					&& tgt.getFrequency() != pred.getFrequency() )
 			{
 				DefaultChartModel rangeModel  = new DefaultChartModel();
-				double step = (tgt.getFrequency() - pred.getFrequency())/32.0;
-				f = pred.getFrequency();
-				for (int i = 0; i <= 32; i++ )
+				for (double sweepF : TuningAnalysis.sweep(pred.getFrequency(), tgt.getFrequency()))
 				{
-					y = yValue(calculator, f, predFingering);
+					y = yValue(analysis, idx, sweepF);
 					y = clamp(y,minY,maxY);
-					rangeModel.addPoint(f, y);
-					f += step;
+					rangeModel.addPoint(sweepF, y);
 				}
 				if (isMarkerNote)
 				{
@@ -28,10 +28,21 @@ public class ReactanceEvaluator implements EvaluatorInterface
 
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
-		double[] errorVector = new double[fingeringTargets.size()];
+		return calculateErrorVector(fingeringTargets, 0,
+				fingeringTargets.size());
+	}
+
+	/**
+	 * @see com.wwidesigner.modelling.EvaluatorInterface#calculateErrorVector(java
+	 *      .util.List, int, int)
+	 */
+	public double[] calculateErrorVector(List<Fingering> fingeringTargets,
+			int first, int last)
+	{
+		double[] errorVector = new double[last - first];
 
 		int i = 0;
-		for (Fingering target: fingeringTargets)
+		for (Fingering target : fingeringTargets.subList(first, last))
 		{
 			if ( target.getNote() == null || target.getNote().getFrequency() == null )
 			{
@@ -47,4 +58,11 @@ public class ReactanceEvaluator implements EvaluatorInterface
 		}
 		return errorVector;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public EvaluatorInterface copy(InstrumentCalculator aCalculator)
+	{
+		return new ReactanceEvaluator(aCalculator);
+	}
+
+}
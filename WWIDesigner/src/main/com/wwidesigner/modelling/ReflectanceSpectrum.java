@@ -6,13 +6,12 @@ package com.wwidesigner.modelling;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
 import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
 
 import com.jidesoft.chart.Chart;
 import com.jidesoft.chart.Legend;
@@ -32,10 +31,40 @@ public class ReflectanceSpectrum
 	public static final int PLOT_SQ_REFL_ANGLE_ONLY = 1;
 	public static final int PLOT_REFL_MAGNITUDE_ONLY = 2;
 
+	/**
+	 * Tolerances for refinement of the spectrum: Re(R) and Im(R).
+	 */
+	protected static final double[] TOLERANCES = { 0.05, 0.05 };
+
+	/**
+	 * Square of the reflectance angle.
+	 */
+	protected static final AdaptiveSpectrum.Quantity SQUARED_ANGLE = new AdaptiveSpectrum.Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			double angle = Math.atan2(im, re);
+			return angle * angle;
+		}
+	};
+
+	/**
+	 * |R|.
+	 */
+	protected static final AdaptiveSpectrum.Quantity MAGNITUDE = new AdaptiveSpectrum.Quantity()
+	{
+		@Override
+		public double value(double freq, double re, double im)
+		{
+			return Math.hypot(re, im);
+		}
+	};
+
 	/**
 	 * Holds reflectance spectrum (created by calcReflectance().
 	 */
-	Map<Double, Complex> mSpectrum;
+	AdaptiveSpectrum mSpectrum;
 
 	/**
 	 * Holds squared reflectance angle minima.
@@ -55,66 +84,48 @@ public class ReflectanceSpectrum
 	Fingering currentFingering;
 
 	/**
-	 * Add or replace a point in the spectrum.
+	 * Calculate the reflectance spectrum, sampling densely only where the
+	 * reflectance changes rapidly, and find the minima and maxima of the
+	 * squared reflectance angle, and the minima of the reflectance
+	 * magnitude.
+	 * 
+	 * @param nfreq
+	 *            - largest number of frequencies to sample.
 	 */
-	public void setDataPoint(double frequency, Complex value)
-	{
-		mSpectrum.put(frequency, value);
-	}
-
 	public void calcReflectance(InstrumentInterface flute,
-			InstrumentCalculator calculator, double freqStart, double freqEnd,
-			int nfreq, Fingering fingering, PhysicalParameters physicalParams)
+			final InstrumentCalculator calculator, double freqStart,
+			double freqEnd, int nfreq, final Fingering fingering,
+			PhysicalParameters physicalParams)
 	{
 		currentFingering = fingering;
-		mSpectrum = new TreeMap<Double, Complex>();
-		mMinima = new ArrayList<Double>();
-		mMaxima = new ArrayList<Double>();
-		mMagnitudeMinima = new ArrayList<Double>();
-		double prevReflAngle = 0.;
-		double prevPrevReflAngle = 0.;
-		double prevFreq = 0.;
-		double prevRefMag = 0.;
-		double prevPrevRefMag = 0.;
-		double freqStep = (freqEnd - freqStart) / (nfreq - 1);
-		for (int i = 0; i < nfreq; ++i)
+		mSpectrum = new AdaptiveSpectrum(new AdaptiveSpectrum.Quantity[] {
+				AdaptiveSpectrum.REAL, AdaptiveSpectrum.IMAGINARY }, TOLERANCES)
 		{
-			double freq = freqStart + i * freqStep;
-			Complex reflectance = calculator.calcReflectionCoefficient(freq, fingering);
-
-			setDataPoint(freq, reflectance);
-
-			double reflectAngle = reflectance.getArgument();
-			reflectAngle *= reflectAngle;
-
-			if ((i >= 2) && (prevReflAngle < reflectAngle)
-					&& (prevReflAngle < prevPrevReflAngle))
-			{
-				// We have found an impedance minimum.
-				getMinima().add(prevFreq);
-			}
-
-			if ((i >= 2) && (prevReflAngle > reflectAngle)
-					&& (prevReflAngle > prevPrevReflAngle))
-			{
-				// We have found an impedance maximum.
-				getMaxima().add(prevFreq);
-			}
-
-			// Collect reflectance magnitude minimum values
-			double refMagnitude = reflectance.abs();
-			if ((i >= 2) && (prevRefMag < refMagnitude)
-					&& (prevRefMag < prevPrevRefMag))
+			@Override
+			protected void calcValues(double[] frequencies, double[] outRe,
+					double[] outIm)
 			{
-				mMagnitudeMinima.add(prevFreq);
+				for (int i = 0; i < frequencies.length; ++i)
+				{
+					Complex reflectance = calculator.calcReflectionCoefficient(
+							frequencies[i], fingering);
+					outRe[i] = reflectance.getReal();
+					outIm[i] = reflectance.getImaginary();
+				}
 			}
-			prevPrevRefMag = prevRefMag;
-			prevRefMag = refMagnitude;
-
-			prevPrevReflAngle = prevReflAngle;
-			prevReflAngle = reflectAngle;
-			prevFreq = freq;
-		}
+		};
+		mSpectrum.calculate(freqStart, freqEnd, nfreq);
+		mMinima = new ArrayList<Double>();
+		mMaxima = new ArrayList<Double>();
+		mMagnitudeMinima = new ArrayList<Double>();
+		// Extrema of the squared angle are normally where the reflectance
+		// crosses the real axis.
+		mSpectrum.findExtrema(SQUARED_ANGLE, AdaptiveSpectrum.IMAGINARY,
+				GoalType.MINIMIZE, mMinima, null);
+		mSpectrum.findExtrema(SQUARED_ANGLE, AdaptiveSpectrum.IMAGINARY,
+				GoalType.MAXIMIZE, mMaxima, null);
+		mSpectrum.findExtrema(MAGNITUDE, null, GoalType.MINIMIZE,
+				mMagnitudeMinima, null);
 	}
 
 	public List<Double> getMaxima()
@@ -137,7 +148,7 @@ public class ReflectanceSpectrum
 		mMinima = minima;
 	}
 
-	public Map<Double, Complex> getSpectrum()
+	public AdaptiveSpectrum getSpectrum()
 	{
 		return mSpectrum;
 	}
@@ -147,11 +158,6 @@ public class ReflectanceSpectrum
 		return mMagnitudeMinima;
 	}
 
-	public void setSpectrum(Map<Double, Complex> spectrum)
-	{
-		mSpectrum = spectrum;
-	}
-
 	public Double getClosestMinimumFrequency(double frequency)
 	{
 		Double closestFreq = null;
@@ -209,20 +215,18 @@ public class ReflectanceSpectrum
 				{
 					model2 = new DefaultChartModel("Reflectance angle, squared");
 				}
-				for (Map.Entry<Double, Complex> point : mSpectrum.entrySet())
+				for (int idx = 0; idx < mSpectrum.size(); ++idx)
 				{
-					double x = point.getKey();
-					Complex cy = point.getValue();
+					double x = mSpectrum.getFrequency(idx);
+					double re = mSpectrum.getReal(idx);
+					double im = mSpectrum.getImaginary(idx);
 					if (model1 != null)
 					{
-						double y = cy.abs();
-						model1.addPoint(x, y);
+						model1.addPoint(x, MAGNITUDE.value(x, re, im));
 					}
 					if (model2 != null)
 					{
-						double ra = cy.getArgument();
-						ra *= ra;
-						model2.addPoint(x, ra);
+						model2.addPoint(x, SQUARED_ANGLE.value(x, re, im));
 					}
 				}
 				Chart chart = new Chart();
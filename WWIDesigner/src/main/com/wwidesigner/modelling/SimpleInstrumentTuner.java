@@ -18,18 +18,35 @@
  */
 package com.wwidesigner.modelling;
 
-import com.wwidesigner.modelling.PlayingRange.NoPlayingRange;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.wwidesigner.geometry.Instrument;
 import com.wwidesigner.note.Fingering;
 
 /**
  * InstrumentTuner for use with calculators that predict zero reactance
  * at the nominal playing frequency, rather than predicting minimum and
  * maximum frequencies of a playing range.
+ * 
+ * During optimization, the tuner is called repeatedly for the same
+ * fingerings on an instrument whose geometry changes only slightly
+ * between calls.  With warm start enabled, the tuner remembers the
+ * predicted frequency for each fingering, and starts the next search for
+ * that fingering from there.  Warm-started predictions then depend on the
+ * earlier predictions, so warm start is off by default.
  * @author kort
  * 
  */
 public class SimpleInstrumentTuner extends InstrumentTuner
 {
+	// Last { rootFreq, slope } found for each fingering, from
+	// PlayingRange.tryFindXZero(nearFreq, estimate).  Keyed on the identity
+	// of the Fingering, which does not override equals().
+	protected Map<Fingering, double[]> lastRoots = new WeakHashMap<Fingering, double[]>();
+	protected boolean warmStart = false;
+	protected PlayingRange range = null;
+
 	@Override
 	public Double predictedFrequency(Fingering fingering)
 	{
@@ -37,13 +54,79 @@ public class SimpleInstrumentTuner extends InstrumentTuner
 		{
 			return null;
 		}
-		PlayingRange range = new PlayingRange(calculator, fingering);
-		try {
-			return range.findXZero(fingering.getNote().getFrequency());
+		if (range == null)
+		{
+			range = new PlayingRange(calculator, fingering);
+		}
+		else
+		{
+			range.setFingering(fingering);
+		}
+		double targetFreq = fingering.getNote().getFrequency();
+		if (! warmStart)
+		{
+			double fmax = range.tryFindXZero(targetFreq);
+			if (Double.isNaN(fmax))
+			{
+				return null;
+			}
+			return fmax;
 		}
-		catch (NoPlayingRange e)
+		double[] root = range.tryFindXZero(targetFreq, lastRoots.get(fingering));
+		if (root == null)
 		{
+			lastRoots.remove(fingering);
 			return null;
 		}
+		lastRoots.put(fingering, root);
+		return root[0];
+	}
+
+	public boolean isWarmStart()
+	{
+		return warmStart;
+	}
+
+	/**
+	 * Choose whether to start each search from the previous frequency
+	 * predicted for a fingering.  Off by default.
+	 * @param aWarmStart - if false, always search from the target frequency.
+	 */
+	public void setWarmStart(boolean aWarmStart)
+	{
+		this.warmStart = aWarmStart;
+		resetRoots();
+	}
+
+	/**
+	 * Forget the previous frequencies predicted for each fingering.
+	 */
+	public void resetRoots()
+	{
+		lastRoots.clear();
+	}
+
+	@Override
+	public void setInstrument(Instrument aInstrument)
+	{
+		super.setInstrument(aInstrument);
+		resetRoots();
+	}
+
+	@Override
+	public void setCalculator(InstrumentCalculator aCalculator)
+	{
+		super.setCalculator(aCalculator);
+		range = null;
+		resetRoots();
+	}
+
+	@Override
+	public InstrumentTuner copy()
+	{
+		SimpleInstrumentTuner copy = (SimpleInstrumentTuner) super.copy();
+		copy.lastRoots = new WeakHashMap<Fingering, double[]>();
+		copy.range = null;
+		return copy;
 	}
 }
@@ -46,8 +46,6 @@ import com.wwidesigner.note.Note;
  */
 public class SupplementaryInfoTable extends DefaultTableModel
 {
-	protected final static double DeltaF = 0.0012;	// Baseline for derivative, about 2 cents.
-	
 	String title;
 	DecimalFormat format_;
 	DecimalFormat format_0;
@@ -88,34 +86,6 @@ public class SupplementaryInfoTable extends DefaultTableModel
 		return format_00.format(f);
 	}
 
-	/**
-	 * Estimate Q factor using:<br/>
-	 * Q = f0/2 * d/df (Im(z)/Re(z))<br/>
-	 * cf. Arthur D. Yaghjian, Steven R. Best, "Impedance, Bandwidth, and Q of Antennas,"
-	 * IEEE Transactions on Antennas and Propagation, V 53, n 4, April 2005.
-	 */
-	protected static double Q(double freq, Complex z,
-			InstrumentCalculator calculator, Fingering fingering)
-	{
-		double freqPlus = freq * (1 + DeltaF);
-		Complex zPlus = calculator.calcZ(freqPlus, fingering);
-		return 0.25
-				* (freq + freqPlus)
-				* (zPlus.getImaginary() / zPlus.getReal() - z.getImaginary()
-						/ z.getReal()) / (freqPlus - freq);
-	}
-
-	/*
-	 * Estimate Q factor for a note, from 
-	 * Michael J. Moloney and Daniel L. Hatten, "Acoustic quality factor and energy losses in cylindrical pipes,"
-	 * Am. J. Phys. 69 (3), March 2001, p. 311.
-		double waveNumber = parms.calcWaveNumber(freq);
-		double qWall = 0.5 * radius * Math.sqrt(waveNumber)
-				/ (Math.sqrt(parms.getRho()) * parms.getAlphaConstant());
-		double qRadiation = 2.0 * length / (waveNumber*radius*radius);
-		return 1.0/(1.0/qWall + 1.0/qRadiation);
-	 */
-
 	/**
 	 * Collect the data necessary to tabulate the supplementary data for an
 	 * instrument. Following this call, use showTuning() or printTuning() to
@@ -129,18 +99,35 @@ public class SupplementaryInfoTable extends DefaultTableModel
 	 */
 	public void buildTable(InstrumentTuner tuner, boolean usePredicted)
 	{
-		InstrumentCalculator calculator = tuner.getCalculator();
-		Instrument instrument = tuner.getInstrument();
+		buildTable(new TuningAnalysis(tuner), usePredicted);
+	}
+
+	/**
+	 * Collect the data necessary to tabulate the supplementary data for an
+	 * instrument, from a tuning analysis. Following this call, use
+	 * showTable() or printTable() to display the table.
+	 * 
+	 * @param analysis
+	 *            - predicted tuning and impedance values for the instrument.
+	 * @param usePredicted
+	 *            - true to tabulate data at the predicted tuning,
+	 *              false to tabulate data at target tuning.
+	 */
+	public void buildTable(TuningAnalysis analysis, boolean usePredicted)
+	{
+		Instrument instrument = analysis.getInstrument();
 		Mouthpiece mouthpiece = instrument.getMouthpiece();
-		List<Fingering> fingeringsTarget = tuner.getTuning().getFingering();
-		List<Fingering> fingeringsPredicted = tuner.getPredictedTuning()
+		List<Fingering> fingeringsTarget = analysis.getTargetTuning()
+				.getFingering();
+		List<Fingering> fingeringsPredicted = analysis.getPredictedTuning()
 				.getFingering();
+		TuningAnalysis.NoteAnalysis noteAnalysis;
 		Note note, predicted;
 		Double targetFreq, predictedFreq;
 		Double windowLength = null; // Window length in meters, if available.
 		Double windwayArea = null; // Windway cross-section, in mm**2, if
 									// available.
-		Complex z, zTarget;
+		Complex zTarget;
 		double speed;
 		if (mouthpiece.getFipple() != null)
 		{
@@ -178,6 +165,7 @@ public class SupplementaryInfoTable extends DefaultTableModel
 
 		for (int i = 0; i < fingeringsTarget.size(); ++i)
 		{
+			noteAnalysis = analysis.getNote(i);
 			note = fingeringsTarget.get(i).getNote();
 			predicted = fingeringsPredicted.get(i).getNote();
 			targetFreq = note.getFrequency();
@@ -198,18 +186,18 @@ public class SupplementaryInfoTable extends DefaultTableModel
 			if (note.getFrequencyMax() != null
 					&& predicted.getFrequencyMax() != null)
 			{
-				double correction = calculator.calcZ(note.getFrequencyMax(),
-						fingeringsTarget.get(i)).getImaginary()
-						- calculator.calcZ(predicted.getFrequencyMax(),
-								fingeringsPredicted.get(i)).getImaginary();
+				double correction = analysis.calcZ(i, note.getFrequencyMax())
+						.getImaginary()
+						- analysis.calcZ(i, predicted.getFrequencyMax())
+								.getImaginary();
 				values[colNr++] = format_sci.format(correction);
 			}
 			else if (note.getFrequency() != null && predicted.getFrequency() != null)
 			{
-				double correction = calculator.calcZ(note.getFrequency(),
-						fingeringsTarget.get(i)).getImaginary()
-						- calculator.calcZ(predicted.getFrequency(),
-								fingeringsPredicted.get(i)).getImaginary();
+				double correction = analysis.calcZ(i, note.getFrequency())
+						.getImaginary()
+						- analysis.calcZ(i, predicted.getFrequency())
+								.getImaginary();
 				values[colNr++] = format_sci.format(correction);
 			}
 			else
@@ -219,7 +207,7 @@ public class SupplementaryInfoTable extends DefaultTableModel
 
 			if (targetFreq != null)
 			{
-				zTarget = calculator.calcZ(targetFreq, fingeringsTarget.get(i));
+				zTarget = analysis.calcZ(i, targetFreq);
 
 				// Air speed and flow values indicate what it would take to hit
 				// the target frequency.
@@ -253,11 +241,8 @@ public class SupplementaryInfoTable extends DefaultTableModel
 			if (predictedFreq != null)
 			{
 				// Gain and Q values must be at predicted playing frequencies.
-				z = calculator.calcZ(predictedFreq, fingeringsPredicted.get(i));
-				double gain1 = calculator.calcGain(predictedFreq, z);
-				values[colNr++] = formatted(gain1);
-				values[colNr++] = formatted(Q(predictedFreq, z, calculator,
-						fingeringsPredicted.get(i)));
+				values[colNr++] = formatted(noteAnalysis.getGain());
+				values[colNr++] = formatted(noteAnalysis.getQ());
 			}
 			else
 			{
@@ -0,0 +1,577 @@
+/**
+ * Predicted tuning and impedance results shared by the tuning reports.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.complex.Complex;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.OperationCancelledException;
+
+/**
+ * The predicted tuning of an instrument, together with the impedance values
+ * that the tuning reports derive from it: impedance at the target and
+ * predicted frequencies of each note, at the points of a sweep across each
+ * predicted playing range, and the loop gain and Q factor at each predicted
+ * nominal frequency.  TuningComparisonTable, SupplementaryInfoTable and
+ * PlotPlayingRanges render from one analysis, so each value is calculated
+ * once, however many reports are shown.
+ *
+ * The fingerings are divided into contiguous ranges, analysed in parallel.
+ * The calling thread analyses the first range with the tuner and calculator
+ * supplied; each other range is analysed with copies of them, on a thread
+ * pool shared by all analyses.  Results are stored by fingering, so they do
+ * not depend on the number of threads.
+ *
+ * @author Burton Patkau
+ */
+public class TuningAnalysis
+{
+	/**
+	 * Baseline for the Q factor derivative, about 2 cents.
+	 */
+	public static final double DELTA_F = 0.0012;
+	/**
+	 * Number of intervals in a sweep across a playing range.
+	 */
+	public static final int SWEEP_INTERVALS = 32;
+
+	// Maximum number of threads to use in an analysis.
+	private static int analysisThreads = Runtime.getRuntime()
+			.availableProcessors();
+	// Threads for the ranges after the first, shared by all analyses.
+	private static ThreadPoolExecutor analysisExecutor;
+
+	/**
+	 * Results for one fingering of the target tuning.
+	 */
+	public static class NoteAnalysis
+	{
+		protected final Fingering target;
+		protected Fingering predicted;
+		// Impedance at each frequency calculated for this fingering.
+		protected final Map<Double, Complex> impedance = new HashMap<Double, Complex>();
+		protected Double gain;
+		protected Double qFactor;
+
+		protected NoteAnalysis(Fingering aTarget)
+		{
+			target = aTarget;
+		}
+
+		/**
+		 * @return fingering and note from the target tuning.
+		 */
+		public Fingering getTarget()
+		{
+			return target;
+		}
+
+		/**
+		 * @return fingering from the target tuning, with the predicted note.
+		 */
+		public Fingering getPredicted()
+		{
+			return predicted;
+		}
+
+		/**
+		 * @return loop gain at the predicted nominal frequency, or null if
+		 *         there is no predicted nominal frequency.
+		 */
+		public Double getGain()
+		{
+			return gain;
+		}
+
+		/**
+		 * @return Q factor at the predicted nominal frequency, or null if
+		 *         there is no predicted nominal frequency.
+		 */
+		public Double getQ()
+		{
+			return qFactor;
+		}
+
+		/**
+		 * Calculate impedance for this fingering, unless it has already been
+		 * calculated at this frequency.
+		 */
+		protected Complex calcZ(InstrumentCalculator calculator, double freq)
+		{
+			Complex z = impedance.get(freq);
+			if (z == null)
+			{
+				z = calculator.calcZ(freq, target);
+				impedance.put(freq, z);
+			}
+			return z;
+		}
+
+		/**
+		 * Calculate impedance at the frequency in a note, if it is not null.
+		 */
+		protected void calcZ(InstrumentCalculator calculator, Double freq)
+		{
+			if (freq != null)
+			{
+				calcZ(calculator, freq.doubleValue());
+			}
+		}
+	}
+
+	protected final Tuning targetTuning;
+	protected final InstrumentCalculator calculator;
+	protected final List<NoteAnalysis> notes;
+	protected Tuning predictedTuning;
+
+	/**
+	 * Predict the tuning of the tuner's instrument, and calculate the
+	 * impedance values used in the tuning reports.  The tuner must have
+	 * its instrument, tuning and calculator set.
+	 */
+	public TuningAnalysis(InstrumentTuner tuner)
+	{
+		this(tuner, true);
+	}
+
+	/**
+	 * Predict the tuning of the tuner's instrument.
+	 *
+	 * @param tuner
+	 *            - instrument tuner loaded with instrument, tuning and
+	 *            calculator.
+	 * @param withImpedance
+	 *            - true to calculate the impedance values used in the
+	 *            tuning reports as well, false to predict the tuning only.
+	 */
+	public TuningAnalysis(InstrumentTuner tuner, boolean withImpedance)
+	{
+		targetTuning = tuner.getTuning();
+		calculator = tuner.getCalculator();
+		notes = createNotes(targetTuning);
+		analyze(tuner, withImpedance);
+	}
+
+	/**
+	 * Calculate the impedance values used in the tuning reports, for a
+	 * tuning that has already been predicted.
+	 *
+	 * @param aCalculator
+	 *            - an impedance calculator for the instrument.
+	 * @param target
+	 *            - target tuning.
+	 * @param predicted
+	 *            - predicted tuning, with a predicted note for each note in
+	 *            target tuning.
+	 */
+	public TuningAnalysis(InstrumentCalculator aCalculator, Tuning target,
+			Tuning predicted)
+	{
+		targetTuning = target;
+		calculator = aCalculator;
+		notes = createNotes(targetTuning);
+		for (int i = 0; i < notes.size(); ++i)
+		{
+			notes.get(i).predicted = predicted.getFingering().get(i);
+		}
+		predictedTuning = predicted;
+		analyze(null, true);
+	}
+
+	protected static List<NoteAnalysis> createNotes(Tuning target)
+	{
+		List<NoteAnalysis> notes = new ArrayList<NoteAnalysis>(target
+				.getFingering().size());
+		for (Fingering fingering : target.getFingering())
+		{
+			notes.add(new NoteAnalysis(fingering));
+		}
+		return notes;
+	}
+
+	/**
+	 * @return maximum number of threads used in each analysis.
+	 */
+	public static int getAnalysisThreads()
+	{
+		return analysisThreads;
+	}
+
+	/**
+	 * Set the maximum number of threads used in each analysis. The default
+	 * is the number of available processors; with 1, all fingerings are
+	 * analysed sequentially on the calling thread.
+	 *
+	 * @param nrThreads
+	 *            - number of threads; values less than 1 select the number
+	 *            of available processors.
+	 */
+	public static void setAnalysisThreads(int nrThreads)
+	{
+		if (nrThreads < 1)
+		{
+			nrThreads = Runtime.getRuntime().availableProcessors();
+		}
+		analysisThreads = nrThreads;
+	}
+
+	/**
+	 * Return the thread pool for analysis ranges, with at least nrWorkers
+	 * threads.  The pool threads are daemon threads, and exit when idle.
+	 */
+	protected static synchronized ThreadPoolExecutor getAnalysisExecutor(
+			int nrWorkers)
+	{
+		if (analysisExecutor == null)
+		{
+			analysisExecutor = new ThreadPoolExecutor(nrWorkers, nrWorkers,
+					10L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+					{
+						@Override
+						public Thread newThread(Runnable r)
+						{
+							Thread thread = new Thread(r, "TuningAnalysis");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			analysisExecutor.allowCoreThreadTimeOut(true);
+		}
+		else if (analysisExecutor.getMaximumPoolSize() < nrWorkers)
+		{
+			analysisExecutor.setMaximumPoolSize(nrWorkers);
+			analysisExecutor.setCorePoolSize(nrWorkers);
+		}
+		return analysisExecutor;
+	}
+
+	/**
+	 * Return a sequence of frequencies across a range, at SWEEP_INTERVALS
+	 * equal intervals, including both ends.
+	 */
+	public static double[] sweep(double fStart, double fEnd)
+	{
+		double[] frequencies = new double[SWEEP_INTERVALS + 1];
+		double step = (fEnd - fStart) / SWEEP_INTERVALS;
+		double f = fStart;
+		for (int i = 0; i <= SWEEP_INTERVALS; i++)
+		{
+			frequencies[i] = f;
+			f += step;
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Estimate Q factor using:<br/>
+	 * Q = f0/2 * d/df (Im(z)/Re(z))<br/>
+	 * cf. Arthur D. Yaghjian, Steven R. Best, "Impedance, Bandwidth, and Q of
+	 * Antennas," IEEE Transactions on Antennas and Propagation, V 53, n 4,
+	 * April 2005.
+	 *
+	 * @param freq
+	 *            - frequency, f0.
+	 * @param z
+	 *            - impedance at freq.
+	 * @param freqPlus
+	 *            - a frequency slightly above freq.
+	 * @param zPlus
+	 *            - impedance at freqPlus.
+	 */
+	public static double calcQ(double freq, Complex z, double freqPlus,
+			Complex zPlus)
+	{
+		return 0.25
+				* (freq + freqPlus)
+				* (zPlus.getImaginary() / zPlus.getReal() - z.getImaginary()
+						/ z.getReal()) / (freqPlus - freq);
+	}
+
+	/*
+	 * Estimate Q factor for a note, from 
+	 * Michael J. Moloney and Daniel L. Hatten, "Acoustic quality factor and energy losses in cylindrical pipes,"
+	 * Am. J. Phys. 69 (3), March 2001, p. 311.
+		double waveNumber = parms.calcWaveNumber(freq);
+		double qWall = 0.5 * radius * Math.sqrt(waveNumber)
+				/ (Math.sqrt(parms.getRho()) * parms.getAlphaConstant());
+		double qRadiation = 2.0 * length / (waveNumber*radius*radius);
+		return 1.0/(1.0/qWall + 1.0/qRadiation);
+	 */
+
+	/**
+	 * Analyse all the notes, on as many as analysisThreads threads.
+	 *
+	 * @param tuner
+	 *            - tuner to predict notes, or null if the notes have
+	 *            already been predicted.
+	 * @param withImpedance
+	 *            - true to calculate impedance values.
+	 */
+	protected void analyze(final InstrumentTuner tuner,
+			final boolean withImpedance)
+	{
+		final int nrNotes = notes.size();
+		int nrRanges = Math.max(1, Math.min(analysisThreads, nrNotes));
+		List<Future<Object>> rangeResults = new ArrayList<Future<Object>>(
+				nrRanges - 1);
+		if (nrRanges > 1)
+		{
+			ThreadPoolExecutor executor = getAnalysisExecutor(nrRanges - 1);
+			for (int range = 1; range < nrRanges; ++range)
+			{
+				final int first = range * nrNotes / nrRanges;
+				final int last = (range + 1) * nrNotes / nrRanges;
+				rangeResults.add(executor.submit(new Callable<Object>()
+				{
+					@Override
+					public Object call()
+					{
+						InstrumentCalculator workerCalculator = calculator
+								.copy();
+						InstrumentTuner workerTuner = null;
+						if (tuner != null)
+						{
+							workerTuner = tuner.copy();
+							workerTuner.setParams(workerCalculator
+									.getPhysicalParameters());
+							workerTuner.setInstrument(workerCalculator
+									.getInstrument());
+							workerTuner.setCalculator(workerCalculator);
+						}
+						analyze(workerTuner, workerCalculator, withImpedance,
+								first, last);
+						return null;
+					}
+				}));
+			}
+		}
+
+		// Wait for every range, even if one fails, so that no worker is
+		// still busy when the analysis is used.
+		RuntimeException failure = null;
+		try
+		{
+			analyze(tuner, calculator, withImpedance, 0, nrNotes / nrRanges);
+		}
+		catch (RuntimeException e)
+		{
+			failure = e;
+		}
+		for (Future<Object> result : rangeResults)
+		{
+			try
+			{
+				result.get();
+			}
+			catch (ExecutionException e)
+			{
+				if (failure == null)
+				{
+					if (e.getCause() instanceof RuntimeException)
+					{
+						failure = (RuntimeException) e.getCause();
+					}
+					else
+					{
+						failure = new IllegalStateException(e.getCause());
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				if (failure == null)
+				{
+					failure = new OperationCancelledException(
+							"Operation interrupted.");
+				}
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+		if (tuner != null)
+		{
+			predictedTuning = buildPredictedTuning();
+		}
+	}
+
+	/**
+	 * Analyse notes first through last - 1.
+	 *
+	 * @param tuner
+	 *            - tuner to predict notes, or null if the notes have
+	 *            already been predicted.
+	 * @param aCalculator
+	 *            - calculator for impedance values; the tuner's calculator
+	 *            if tuner is not null.
+	 * @param withImpedance
+	 *            - true to calculate impedance values.
+	 */
+	protected void analyze(InstrumentTuner tuner,
+			InstrumentCalculator aCalculator, boolean withImpedance,
+			int first, int last)
+	{
+		for (int i = first; i < last; ++i)
+		{
+			NoteAnalysis note = notes.get(i);
+			if (tuner != null)
+			{
+				Fingering predFingering = new Fingering();
+				predFingering.setOpenHole(note.target.getOpenHole());
+				predFingering.setOpenEnd(note.target.getOpenEnd());
+				predFingering.setNote(tuner.predictedNote(note.target));
+				note.predicted = predFingering;
+			}
+			if (withImpedance)
+			{
+				calcImpedance(note, aCalculator);
+			}
+		}
+	}
+
+	/**
+	 * Calculate the impedance values for one note: at each target and
+	 * predicted frequency, across the predicted playing range, and at the
+	 * predicted nominal frequency for gain and Q factor.
+	 */
+	protected void calcImpedance(NoteAnalysis note,
+			InstrumentCalculator aCalculator)
+	{
+		Note tgt = note.target.getNote();
+		Note pred = note.predicted.getNote();
+		note.calcZ(aCalculator, tgt.getFrequency());
+		note.calcZ(aCalculator, tgt.getFrequencyMin());
+		note.calcZ(aCalculator, tgt.getFrequencyMax());
+		note.calcZ(aCalculator, pred.getFrequencyMin());
+		note.calcZ(aCalculator, pred.getFrequencyMax());
+		if (pred.getFrequencyMin() != null && pred.getFrequencyMax() != null)
+		{
+			for (double f : sweep(pred.getFrequencyMin(),
+					pred.getFrequencyMax()))
+			{
+				note.calcZ(aCalculator, f);
+			}
+		}
+		else if (tgt.getFrequency() != null && pred.getFrequency() != null
+				&& !tgt.getFrequency().equals(pred.getFrequency()))
+		{
+			for (double f : sweep(pred.getFrequency(), tgt.getFrequency()))
+			{
+				note.calcZ(aCalculator, f);
+			}
+		}
+		if (pred.getFrequency() != null)
+		{
+			double freq = pred.getFrequency();
+			double freqPlus = freq * (1 + DELTA_F);
+			Complex z = note.calcZ(aCalculator, freq);
+			Complex zPlus = note.calcZ(aCalculator, freqPlus);
+			note.gain = aCalculator.calcGain(freq, z);
+			note.qFactor = calcQ(freq, z, freqPlus, zPlus);
+		}
+	}
+
+	protected Tuning buildPredictedTuning()
+	{
+		Tuning predicted = new Tuning();
+		predicted.setName(targetTuning.getName());
+		predicted.setComment(targetTuning.getComment());
+		predicted.setNumberOfHoles(targetTuning.getNumberOfHoles());
+		List<Fingering> newNotes = new ArrayList<Fingering>(notes.size());
+		for (NoteAnalysis note : notes)
+		{
+			newNotes.add(note.predicted);
+		}
+		predicted.setFingering(newNotes);
+		return predicted;
+	}
+
+	public Tuning getTargetTuning()
+	{
+		return targetTuning;
+	}
+
+	/**
+	 * @return predicted tuning, with a predicted note for each note in the
+	 *         target tuning.
+	 */
+	public Tuning getPredictedTuning()
+	{
+		return predictedTuning;
+	}
+
+	public InstrumentCalculator getCalculator()
+	{
+		return calculator;
+	}
+
+	public Instrument getInstrument()
+	{
+		return calculator.getInstrument();
+	}
+
+	/**
+	 * @return number of notes in the target tuning.
+	 */
+	public int getNrNotes()
+	{
+		return notes.size();
+	}
+
+	/**
+	 * @return results for note idx of the target tuning.
+	 */
+	public NoteAnalysis getNote(int idx)
+	{
+		return notes.get(idx);
+	}
+
+	/**
+	 * Return the impedance for a note of the target tuning at a specified
+	 * frequency.  Values not calculated in the analysis are calculated on the
+	 * calling thread, and remembered.
+	 *
+	 * @param idx
+	 *            - index of the note in the target tuning.
+	 * @param freq
+	 *            - frequency at which to return impedance.
+	 */
+	public Complex calcZ(int idx, double freq)
+	{
+		return notes.get(idx).calcZ(calculator, freq);
+	}
+}
@@ -166,6 +166,19 @@ public class TuningComparisonTable extends DefaultTableModel
 		return format_00.format(f);
 	}
 
+	/**
+	 * Collect the data necessary to tabulate the predicted tuning for an
+	 * instrument, from a tuning analysis. Following this call, use
+	 * showTuning() or printTuning() to display the table.
+	 * 
+	 * @param analysis
+	 *            - predicted tuning of the instrument.
+	 */
+	public void buildTable(TuningAnalysis analysis)
+	{
+		buildTable(analysis.getTargetTuning(), analysis.getPredictedTuning());
+	}
+
 	/**
 	 * Collect the data necessary to tabulate the predicted tuning for an
 	 * instrument. Following this call, use showTuning() or printTuning() to
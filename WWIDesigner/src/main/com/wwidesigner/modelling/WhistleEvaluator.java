@@ -54,7 +54,18 @@ public class WhistleEvaluator implements EvaluatorInterface
 
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
-		double[] errorVector = new double[fingeringTargets.size()];
+		return calculateErrorVector(fingeringTargets, 0,
+				fingeringTargets.size());
+	}
+
+	/**
+	 * @see com.wwidesigner.modelling.EvaluatorInterface#calculateErrorVector(java
+	 *      .util.List, int, int)
+	 */
+	public double[] calculateErrorVector(List<Fingering> fingeringTargets,
+			int first, int last)
+	{
+		double[] errorVector = new double[last - first];
 		double deviation;
 
 		Tuning targetTuning = new Tuning();
@@ -62,7 +73,7 @@ public class WhistleEvaluator implements EvaluatorInterface
 		tuner.setTuning(targetTuning);
 
 		int i = 0;
-		for (Fingering target: fingeringTargets)
+		for (Fingering target : fingeringTargets.subList(first, last))
 		{
 			deviation = 0.0;
 			if ( target.getNote() != null && target.getNote().getFrequency() != null )
@@ -102,4 +113,12 @@ public class WhistleEvaluator implements EvaluatorInterface
 		}
 		return errorVector;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public EvaluatorInterface copy(InstrumentCalculator aCalculator)
+	{
+		return new WhistleEvaluator((WhistleCalculator) aCalculator,
+				tuner.copy());
+	}
+
+}
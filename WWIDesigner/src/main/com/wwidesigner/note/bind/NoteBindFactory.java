@@ -20,7 +20,7 @@ public class NoteBindFactory extends BindFactory
 
 	}
 
-	public static BindFactory getInstance()
+	public static synchronized BindFactory getInstance()
 	{
 		if (instance == null)
 		{
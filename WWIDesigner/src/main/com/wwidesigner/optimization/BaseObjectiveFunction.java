@@ -18,11 +18,21 @@
  */
 package com.wwidesigner.optimization;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.analysis.UnivariateFunction;
 import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.TooManyEvaluationsException;
 import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.geometry.Instrument;
@@ -40,7 +50,7 @@ import com.wwidesigner.util.OperationCancelledException;
  * @author Burton Patkau
  */
 public abstract class BaseObjectiveFunction
-		implements MultivariateFunction, UnivariateFunction
+		implements MultivariateFunction, UnivariateFunction, Cloneable
 {
 	// The Intent denotes the use of the ObjectiveFunction based on it
 	// Constraints
@@ -76,11 +86,39 @@ public abstract class BaseObjectiveFunction
 												// for
 												// processing and termination
 												// logic.
-	protected boolean cancel;
+	protected volatile boolean cancel;
+
+	// For a copy made by copy(), the objective function it was copied from.
+	// Cancelling the original also cancels the copy.
+	protected BaseObjectiveFunction original;
+	// Evaluations remaining in a budget shared by copies of an objective
+	// function running in parallel, or null if there is no shared budget.
+	protected AtomicInteger sharedEvaluationBudget;
+
+	// Number of threads that share the fingering targets in each call to
+	// getErrorVector().  With more than one thread, each additional thread
+	// evaluates its share of the targets on its own copy of this objective
+	// function, made afresh for each call.
+	protected int evaluationThreads = 1;
+	protected BaseObjectiveFunction[] evaluationWorkers;
+	protected ThreadPoolExecutor evaluationExecutor;
+
+	// Values already calculated by value(double[]), or null to calculate
+	// every value.
+	protected EvaluationCache evaluationCache;
 
 	// Statistics for the results of an optimization.
 	protected int tuningsDone; // Number of tuning error calculations.
 	protected int evaluationsDone; // Number of calculations of error norm.
+	protected int cacheHits; // Evaluations answered from evaluationCache.
+	protected int cacheMisses; // Evaluations not found in evaluationCache.
+
+	// Progress reports, shared with copies of this objective function.
+	// Each copy keeps its own stage, so parallel starts report their own
+	// start numbers.
+	protected OptimizationProgress progress;
+	protected OptimizationProgressEvent.Stage progressStage;
+	protected int progressStartNr;
 
 	protected boolean runTwoStageOptimization = false;
 
@@ -104,6 +142,9 @@ public abstract class BaseObjectiveFunction
 		cancel = false;
 		evaluationsDone = 0;
 		tuningsDone = 0;
+		progress = new OptimizationProgress();
+		progressStage = OptimizationProgressEvent.Stage.SETUP;
+		progressStartNr = 0;
 		constraints = new Constraints(
 				aCalculator.getInstrument().getLengthType());
 	}
@@ -111,6 +152,9 @@ public abstract class BaseObjectiveFunction
 	/**
 	 * The multivariate objective function to be optimized, a sum of squares of
 	 * the error value specific to the derived class.
+	 * If an evaluation cache is in use, a value found in the cache is returned
+	 * without calculating the tuning, and without setting the instrument
+	 * geometry to the point.
 	 * 
 	 * @param point
 	 *            - geometry values to test. point.length == nrDimensions.
@@ -121,10 +165,34 @@ public abstract class BaseObjectiveFunction
 	@Override
 	public double value(double[] point)
 	{
+		if (sharedEvaluationBudget != null
+				&& sharedEvaluationBudget.decrementAndGet() < 0)
+		{
+			throw new TooManyEvaluationsException(maxEvaluations);
+		}
 		++evaluationsDone;
+		if (evaluationCache != null)
+		{
+			checkCancelled();
+			Double cachedValue = evaluationCache.get(point, evaluator);
+			if (cachedValue != null)
+			{
+				++cacheHits;
+				progress.evaluated(progressStage, progressStartNr, point,
+						cachedValue);
+				return cachedValue;
+			}
+			++cacheMisses;
+		}
 		double[] errorVector = getErrorVector(point);
 		tuningsDone += errorVector.length;
-		return calcNorm(errorVector);
+		double norm = calcNorm(errorVector);
+		if (evaluationCache != null)
+		{
+			evaluationCache.put(point, evaluator, norm);
+		}
+		progress.evaluated(progressStage, progressStartNr, point, norm);
+		return norm;
 	}
 
 	/**
@@ -188,20 +256,260 @@ public abstract class BaseObjectiveFunction
 	 */
 	public double[] getErrorVector(double[] point)
 	{
-		if (cancel)
-		{
-			cancel = false;
-			throw new OperationCancelledException("Operation cancelled.");
-		}
+		checkCancelled();
 		if (point.length != nrDimensions)
 		{
 			throw new DimensionMismatchException(point.length, nrDimensions);
 		}
 		setGeometryPoint(point);
+		if (evaluationThreads > 1 && fingeringTargets.size() > 1)
+		{
+			return calcErrorVectorInParallel(point);
+		}
 		double[] errorVector = evaluator.calculateErrorVector(fingeringTargets);
 		return errorVector;
 	}
 
+	/**
+	 * Throw OperationCancelledException if this objective function, or the
+	 * one it was copied from, has been cancelled.
+	 */
+	protected void checkCancelled()
+	{
+		if (cancel || (original != null && original.cancel))
+		{
+			cancel = false;
+			throw new OperationCancelledException("Operation cancelled.");
+		}
+	}
+
+	/**
+	 * Calculate errors at each fingering target, splitting the targets into
+	 * contiguous ranges evaluated on separate threads.  This thread evaluates
+	 * the first range itself; each other range is evaluated by a worker copy
+	 * of this objective function.  Results are assembled in target order, so
+	 * the error vector is the same as a sequential evaluation would produce.
+	 * 
+	 * @param point
+	 *            - geometry values to test, already set in the instrument.
+	 * @return array of error values, one for each fingering target.
+	 */
+	protected double[] calcErrorVectorInParallel(final double[] point)
+	{
+		final int nrTargets = fingeringTargets.size();
+		int nrRanges = Math.min(evaluationThreads, nrTargets);
+		prepareEvaluationWorkers(nrRanges - 1);
+
+		List<Future<double[]>> rangeResults = new ArrayList<Future<double[]>>(
+				nrRanges - 1);
+		for (int range = 1; range < nrRanges; ++range)
+		{
+			final BaseObjectiveFunction worker = evaluationWorkers[range - 1];
+			final int first = range * nrTargets / nrRanges;
+			final int last = (range + 1) * nrTargets / nrRanges;
+			rangeResults.add(evaluationExecutor.submit(new Callable<double[]>()
+			{
+				@Override
+				public double[] call()
+				{
+					worker.setGeometryPoint(point);
+					return worker.evaluator.calculateErrorVector(
+							fingeringTargets, first, last);
+				}
+			}));
+		}
+
+		// Wait for every range, even if one fails, so that no worker is
+		// still busy when the next evaluation starts.
+		double[] errorVector = new double[nrTargets];
+		RuntimeException failure = null;
+		int nrErrors = 0;
+		try
+		{
+			double[] rangeErrors = evaluator.calculateErrorVector(
+					fingeringTargets, 0, nrTargets / nrRanges);
+			System.arraycopy(rangeErrors, 0, errorVector, 0,
+					rangeErrors.length);
+			nrErrors = rangeErrors.length;
+		}
+		catch (RuntimeException e)
+		{
+			failure = e;
+		}
+		for (Future<double[]> result : rangeResults)
+		{
+			try
+			{
+				double[] rangeErrors = result.get();
+				System.arraycopy(rangeErrors, 0, errorVector, nrErrors,
+						rangeErrors.length);
+				nrErrors += rangeErrors.length;
+			}
+			catch (ExecutionException e)
+			{
+				if (failure == null)
+				{
+					if (e.getCause() instanceof RuntimeException)
+					{
+						failure = (RuntimeException) e.getCause();
+					}
+					else
+					{
+						failure = new IllegalStateException(e.getCause());
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				if (failure == null)
+				{
+					failure = new OperationCancelledException(
+							"Operation interrupted.");
+				}
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+		return errorVector;
+	}
+
+	/**
+	 * Make nrWorkers worker copies of this objective function, and ensure
+	 * there is a thread pool to run them. The workers are copied for each
+	 * evaluation, so they follow any change to the instrument, physical
+	 * parameters, calculator or evaluator since the last one. The pool
+	 * threads are daemon threads, and exit when idle.
+	 */
+	protected void prepareEvaluationWorkers(int nrWorkers)
+	{
+		if (evaluationWorkers == null || evaluationWorkers.length < nrWorkers)
+		{
+			evaluationWorkers = new BaseObjectiveFunction[nrWorkers];
+		}
+		for (int i = 0; i < nrWorkers; ++i)
+		{
+			evaluationWorkers[i] = copy();
+			evaluationWorkers[i].evaluationThreads = 1;
+		}
+		if (evaluationExecutor == null
+				|| evaluationExecutor.getMaximumPoolSize() < nrWorkers)
+		{
+			if (evaluationExecutor != null)
+			{
+				evaluationExecutor.shutdown();
+			}
+			evaluationExecutor = new ThreadPoolExecutor(nrWorkers, nrWorkers,
+					10L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+					{
+						@Override
+						public Thread newThread(Runnable r)
+						{
+							Thread thread = new Thread(r,
+									"ObjectiveFunctionEvaluator");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			evaluationExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/**
+	 * @return number of threads that share the fingering targets in each
+	 *         evaluation of this objective function.
+	 */
+	public int getEvaluationThreads()
+	{
+		return evaluationThreads;
+	}
+
+	/**
+	 * Set the number of threads that share the fingering targets in each
+	 * evaluation of this objective function. With 1, the default, all
+	 * targets are evaluated sequentially on the calling thread.
+	 * 
+	 * @param nrThreads
+	 *            - number of threads; values less than 1 select the number
+	 *            of available processors.
+	 */
+	public void setEvaluationThreads(int nrThreads)
+	{
+		if (nrThreads < 1)
+		{
+			nrThreads = Runtime.getRuntime().availableProcessors();
+		}
+		evaluationThreads = nrThreads;
+	}
+
+	/**
+	 * Create a copy of this objective function that can be used on another
+	 * thread while this one remains in use. The copy has its own calculator,
+	 * instrument and evaluators; it shares the fingering targets, bounds and
+	 * constraints, which optimization does not modify.
+	 * 
+	 * @return independent copy of this objective function
+	 */
+	public BaseObjectiveFunction copy()
+	{
+		return copy(calculator.copy());
+	}
+
+	/**
+	 * Create a copy of this objective function that uses a specified
+	 * calculator. Derived classes with members that refer to the calculator
+	 * or instrument must override this to re-create those members for the
+	 * copy.
+	 * 
+	 * @param aCalculator
+	 *            - calculator for the copy to use
+	 * @return copy of this objective function, using aCalculator
+	 */
+	protected BaseObjectiveFunction copy(InstrumentCalculator aCalculator)
+	{
+		BaseObjectiveFunction copy;
+		try
+		{
+			copy = (BaseObjectiveFunction) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		copy.calculator = aCalculator;
+		if (evaluator != null)
+		{
+			copy.evaluator = evaluator.copy(aCalculator);
+		}
+		if (firstStageEvaluator == evaluator)
+		{
+			copy.firstStageEvaluator = copy.evaluator;
+		}
+		else if (firstStageEvaluator != null)
+		{
+			copy.firstStageEvaluator = firstStageEvaluator.copy(aCalculator);
+		}
+		copy.original = this;
+		// The copy shares progress, so that its evaluations are reported
+		// along with those of the original.
+		copy.sharedEvaluationBudget = null;
+		copy.evaluationWorkers = null;
+		copy.evaluationExecutor = null;
+		copy.cancel = false;
+		if (evaluationCache != null)
+		{
+			copy.evaluationCache = evaluationCache.emptyCopy();
+		}
+		copy.evaluationsDone = 0;
+		copy.tuningsDone = 0;
+		copy.cacheHits = 0;
+		copy.cacheMisses = 0;
+		return copy;
+	}
+
 	/**
 	 * Calculate an error norm from an error vector, as the sum of squares.
 	 * Weight each squared error by the optimization weight from each Fingering.
@@ -573,6 +881,74 @@ public abstract class BaseObjectiveFunction
 		return tuningsDone;
 	}
 
+	/**
+	 * @return number of evaluations answered from the evaluation cache.
+	 */
+	public int getNumberOfCacheHits()
+	{
+		return cacheHits;
+	}
+
+	/**
+	 * @return number of evaluations looked up in the evaluation cache and
+	 *         not found.
+	 */
+	public int getNumberOfCacheMisses()
+	{
+		return cacheMisses;
+	}
+
+	/**
+	 * Add the statistics of a copy of this objective function, after the copy
+	 * has done part of an optimization.
+	 */
+	protected void addStatistics(BaseObjectiveFunction copy)
+	{
+		evaluationsDone += copy.evaluationsDone;
+		tuningsDone += copy.tuningsDone;
+		cacheHits += copy.cacheHits;
+		cacheMisses += copy.cacheMisses;
+	}
+
+	/**
+	 * Keep values calculated by value(double[]), so that an optimizer
+	 * returning to a point already evaluated gets the value without a new
+	 * tuning calculation. Values are kept separately for each evaluator.
+	 * Call clearEvaluationCache() after changing anything other than the
+	 * geometry point or evaluator that affects the objective function value.
+	 * 
+	 * @param maxSize
+	 *            - maximum number of values kept; if less than 1, do not
+	 *            cache values.
+	 * @param resolution
+	 *            - relative difference below which geometry values are
+	 *            treated as equal; 0.0 to match only identical points.
+	 */
+	public void setEvaluationCache(int maxSize, double resolution)
+	{
+		if (maxSize < 1)
+		{
+			evaluationCache = null;
+		}
+		else
+		{
+			evaluationCache = new EvaluationCache(maxSize, resolution);
+		}
+	}
+
+	public EvaluationCache getEvaluationCache()
+	{
+		return evaluationCache;
+	}
+
+	public void clearEvaluationCache()
+	{
+		if (evaluationCache != null)
+		{
+			evaluationCache.clear();
+		}
+	}
+
 	public Constraints getConstraints()
 	{
 		return constraints;
@@ -609,6 +985,59 @@ public abstract class BaseObjectiveFunction
 	 */
 	abstract protected void setConstraints();
 
+	/**
+	 * @return progress reporter for optimizations of this objective function,
+	 *         shared with its copies.
+	 */
+	public OptimizationProgress getProgress()
+	{
+		return progress;
+	}
+
+	/**
+	 * Add a listener for progress events from optimizations of this
+	 * objective function, including evaluations done by its copies.
+	 */
+	public void addProgressListener(OptimizationProgressListener listener)
+	{
+		progress.addListener(listener);
+	}
+
+	public void removeProgressListener(OptimizationProgressListener listener)
+	{
+		progress.removeListener(listener);
+	}
+
+	public OptimizationProgressEvent.Stage getProgressStage()
+	{
+		return progressStage;
+	}
+
+	/**
+	 * Set the stage that subsequent evaluations by this object are reported
+	 * under, and issue a STAGE event.
+	 * 
+	 * @param stage
+	 *            - new optimization stage
+	 * @param startNr
+	 *            - 1-based start number for a multi-start stage, or 0
+	 */
+	public void setProgressStage(OptimizationProgressEvent.Stage stage,
+			int startNr)
+	{
+		progressStage = stage;
+		progressStartNr = startNr;
+		progress.stageStarted(stage, startNr);
+	}
+
+	/**
+	 * Issue a MESSAGE event from the current stage.
+	 */
+	public void reportProgressMessage(String text)
+	{
+		progress.message(progressStage, progressStartNr, text);
+	}
+
 	/**
 	 * Set cancel to true to cancel an optimization.
 	 */
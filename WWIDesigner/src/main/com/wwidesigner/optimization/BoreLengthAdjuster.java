@@ -12,14 +12,37 @@ public class BoreLengthAdjuster implements BoreLengthAdjustmentInterface
 {
 	protected BaseObjectiveFunction mParent;
 	protected BoreLengthAdjustmentInterface adjustmentWorker;
+	protected BoreLengthAdjustmentType mAdjustmentType;
 
 	public BoreLengthAdjuster(BaseObjectiveFunction parent,
 			BoreLengthAdjustmentType adjustmentType)
 	{
 		mParent = parent;
+		mAdjustmentType = adjustmentType;
 		setAdjustmentWorker(adjustmentType);
 	}
 
+	/**
+	 * Create an adjuster of the same type for a copy of the parent objective
+	 * function.
+	 * 
+	 * @param parent
+	 *            - copy of the original parent
+	 */
+	protected BoreLengthAdjuster copy(BaseObjectiveFunction parent)
+	{
+		BoreLengthAdjuster copy = new BoreLengthAdjuster(parent,
+				mAdjustmentType);
+		if (adjustmentWorker instanceof BoreLengthAdjusterPreserveBell)
+		{
+			// Keep the bell found in the original instrument.
+			BoreLengthAdjusterPreserveBell worker = (BoreLengthAdjusterPreserveBell) adjustmentWorker;
+			BoreLengthAdjusterPreserveBell copyWorker = (BoreLengthAdjusterPreserveBell) copy.adjustmentWorker;
+			copyWorker.mBellIndex = worker.mBellIndex;
+		}
+		return copy;
+	}
+
 	protected void setAdjustmentWorker(BoreLengthAdjustmentType adjustmentType)
 	{
 		switch (adjustmentType)
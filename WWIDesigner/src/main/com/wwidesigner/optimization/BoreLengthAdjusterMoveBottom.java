@@ -7,7 +7,7 @@ import org.apache.commons.math3.exception.DimensionMismatchException;
 
 import com.wwidesigner.geometry.BorePoint;
 import com.wwidesigner.modelling.InstrumentCalculator;
-import com.wwidesigner.util.SortedPositionList;
+import com.wwidesigner.util.PositionIndex;
 
 /**
  * @author kort
@@ -33,7 +33,7 @@ public class BoreLengthAdjusterMoveBottom
 		}
 
 		InstrumentCalculator calculator = mParent.calculator;
-		SortedPositionList<BorePoint> boreList = new SortedPositionList<BorePoint>(
+		PositionIndex<BorePoint> boreList = new PositionIndex<BorePoint>(
 				calculator.getInstrument().getBorePoint());
 		BorePoint endPoint = boreList.getLast();
 
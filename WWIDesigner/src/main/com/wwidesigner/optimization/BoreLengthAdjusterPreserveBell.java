@@ -8,7 +8,7 @@ import org.apache.commons.math3.exception.DimensionMismatchException;
 import com.wwidesigner.geometry.BorePoint;
 import com.wwidesigner.geometry.Instrument;
 import com.wwidesigner.modelling.InstrumentCalculator;
-import com.wwidesigner.util.SortedPositionList;
+import com.wwidesigner.util.PositionIndex;
 
 /**
  * @author kort
@@ -37,7 +37,7 @@ public class BoreLengthAdjusterPreserveBell
 	 */
 	protected static int findBell(Instrument instrument)
 	{
-		SortedPositionList<BorePoint> boreList = new SortedPositionList<BorePoint>(
+		PositionIndex<BorePoint> boreList = new PositionIndex<BorePoint>(
 				instrument.getBorePoint());
 		double longestSegment = 0;
 		double lastPosition = boreList.get(0).getBorePosition();
@@ -64,7 +64,7 @@ public class BoreLengthAdjusterPreserveBell
 			throw new DimensionMismatchException(point.length, nrDimensions);
 		}
 
-		SortedPositionList<BorePoint> boreList = new SortedPositionList<BorePoint>(
+		PositionIndex<BorePoint> boreList = new PositionIndex<BorePoint>(
 				mCalculator.getInstrument().getBorePoint());
 		BorePoint endPoint = boreList.getLast();
 
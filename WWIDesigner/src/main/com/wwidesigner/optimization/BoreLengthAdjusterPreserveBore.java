@@ -13,7 +13,7 @@ import com.wwidesigner.geometry.BorePoint;
 import com.wwidesigner.modelling.InstrumentCalculator;
 import com.wwidesigner.util.BoreProfileOptimizationException;
 import com.wwidesigner.util.DoubleFormatter;
-import com.wwidesigner.util.SortedPositionList;
+import com.wwidesigner.util.PositionIndex;
 
 /**
  * @author Edward Kort
@@ -39,7 +39,7 @@ public class BoreLengthAdjusterPreserveBore
 		}
 
 		InstrumentCalculator calculator = mParent.calculator;
-		SortedPositionList<BorePoint> boreList = new SortedPositionList<BorePoint>(
+		PositionIndex<BorePoint> boreList = new PositionIndex<BorePoint>(
 				calculator.getInstrument().getBorePoint());
 		BorePoint endPoint = boreList.getLast();
 
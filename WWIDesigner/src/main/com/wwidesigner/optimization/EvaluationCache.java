@@ -0,0 +1,181 @@
+/**
+ * Bounded cache of objective function values, keyed by geometry point.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.util.FastMath;
+
+import com.wwidesigner.modelling.EvaluatorInterface;
+
+/**
+ * Least-recently-used cache of objective function values, so that an
+ * optimizer returning to a point it has already evaluated does not repeat
+ * the tuning calculations.  Points are keyed by their coordinates, rounded
+ * to a specified relative resolution, together with the evaluator that
+ * computed the value.  With a resolution of zero, only identical points
+ * match.  Not thread-safe; each objective function has its own cache.
+ *
+ * @author Burton Patkau
+ */
+public class EvaluationCache
+{
+	protected final int maxSize;
+	protected final double resolution;
+	// Number of low-order mantissa bits dropped from each coordinate.
+	protected final int ignoredBits;
+	protected final LinkedHashMap<Key, Double> entries;
+
+	/**
+	 * Create an empty cache.
+	 *
+	 * @param aMaxSize
+	 *            - maximum number of values to keep.
+	 * @param aResolution
+	 *            - relative difference below which two coordinate values
+	 *            are treated as equal; zero to match only identical points.
+	 */
+	public EvaluationCache(int aMaxSize, double aResolution)
+	{
+		this.maxSize = aMaxSize;
+		this.resolution = aResolution;
+		if (aResolution <= 0.0)
+		{
+			ignoredBits = 0;
+		}
+		else
+		{
+			int keptBits = (int) FastMath.ceil(-FastMath.log(2.0, aResolution));
+			ignoredBits = FastMath.max(0, FastMath.min(52, 52 - keptBits));
+		}
+		entries = new LinkedHashMap<Key, Double>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return an empty cache with the same size and resolution as this one.
+	 */
+	public EvaluationCache emptyCopy()
+	{
+		return new EvaluationCache(maxSize, resolution);
+	}
+
+	/**
+	 * Find the value cached for a point.
+	 *
+	 * @return cached value, or null if the point is not in the cache.
+	 */
+	public Double get(double[] point, EvaluatorInterface evaluator)
+	{
+		return entries.get(new Key(quantize(point), evaluator));
+	}
+
+	/**
+	 * Add a value to the cache, discarding the least recently used value if
+	 * the cache is full.
+	 */
+	public void put(double[] point, EvaluatorInterface evaluator, double value)
+	{
+		entries.put(new Key(quantize(point), evaluator), value);
+	}
+
+	public void clear()
+	{
+		entries.clear();
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public double getResolution()
+	{
+		return resolution;
+	}
+
+	/**
+	 * Round each coordinate to the cache resolution, by rounding its
+	 * mantissa to the nearest multiple of 2^ignoredBits.
+	 */
+	protected long[] quantize(double[] point)
+	{
+		long[] bits = new long[point.length];
+		for (int i = 0; i < point.length; ++i)
+		{
+			// Adding 0.0 turns -0.0 into 0.0.
+			long value = Double.doubleToLongBits(point[i] + 0.0);
+			if (ignoredBits > 0)
+			{
+				value = (value + (1L << (ignoredBits - 1)))
+						& ~((1L << ignoredBits) - 1);
+			}
+			bits[i] = value;
+		}
+		return bits;
+	}
+
+	protected static final class Key
+	{
+		private final long[] bits;
+		private final EvaluatorInterface evaluator;
+		private final int hash;
+
+		Key(long[] aBits, EvaluatorInterface aEvaluator)
+		{
+			this.bits = aBits;
+			this.evaluator = aEvaluator;
+			this.hash = 31 * Arrays.hashCode(aBits)
+					+ System.identityHashCode(aEvaluator);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return evaluator == other.evaluator
+					&& Arrays.equals(bits, other.bits);
+		}
+	}
+}
@@ -57,6 +57,15 @@ public class HoleGroupPositionObjectiveFunction extends BaseObjectiveFunction
 		setConstraints();
 	}
 
+	@Override
+	protected BaseObjectiveFunction copy(InstrumentCalculator aCalculator)
+	{
+		HoleGroupPositionObjectiveFunction copy = (HoleGroupPositionObjectiveFunction) super
+				.copy(aCalculator);
+		copy.boreLengthAdjuster = boreLengthAdjuster.copy(copy);
+		return copy;
+	}
+
 	public void setHoleGroups(int[][] groups) throws Exception
 	{
 		// Allows the constructor to have a null holeGroup parameter.
@@ -65,6 +65,15 @@ public class HolePositionObjectiveFunction extends BaseObjectiveFunction impleme
 		setConstraints();
 	}
 
+	@Override
+	protected BaseObjectiveFunction copy(InstrumentCalculator aCalculator)
+	{
+		HolePositionObjectiveFunction copy = (HolePositionObjectiveFunction) super
+				.copy(aCalculator);
+		copy.boreLengthAdjuster = boreLengthAdjuster.copy(copy);
+		return copy;
+	}
+
 	/**
 	 * @return The position of the farthest bore point.
 	 */
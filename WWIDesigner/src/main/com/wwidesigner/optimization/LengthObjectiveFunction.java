@@ -61,6 +61,15 @@ public class LengthObjectiveFunction extends BaseObjectiveFunction
 		setConstraints();
 	}
 
+	@Override
+	protected BaseObjectiveFunction copy(InstrumentCalculator aCalculator)
+	{
+		LengthObjectiveFunction copy = (LengthObjectiveFunction) super
+				.copy(aCalculator);
+		copy.boreLengthAdjuster = boreLengthAdjuster.copy(copy);
+		return copy;
+	}
+
 	protected void setConstraints()
 	{
 		constraints.addConstraint(new Constraint(CONSTR_CAT, "Bore length",
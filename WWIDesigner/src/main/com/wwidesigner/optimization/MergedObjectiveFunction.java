@@ -32,6 +32,19 @@ public abstract class MergedObjectiveFunction extends BaseObjectiveFunction
 		super(aCalculator, tuning, aEvaluator);
 	}
 
+	@Override
+	protected BaseObjectiveFunction copy(InstrumentCalculator aCalculator)
+	{
+		MergedObjectiveFunction copy = (MergedObjectiveFunction) super
+				.copy(aCalculator);
+		copy.components = new BaseObjectiveFunction[components.length];
+		for (int i = 0; i < components.length; ++i)
+		{
+			copy.components[i] = components[i].copy(aCalculator);
+		}
+		return copy;
+	}
+
 	/**
 	 * Function to calculate the dimensions of the merged class, and pull any
 	 * specific bounds from the components. Derived classes must call this
@@ -19,9 +19,20 @@
  */
 package com.wwidesigner.optimization;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.math3.exception.TooManyEvaluationsException;
 import org.apache.commons.math3.exception.ZeroException;
@@ -49,6 +60,7 @@ import org.apache.commons.math3.random.MersenneTwister;
 import com.wwidesigner.math.DIRECTCOptimizer;
 import com.wwidesigner.math.DIRECTOptimizer;
 import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.modelling.ModelProfiler;
 import com.wwidesigner.optimization.multistart.AbstractRangeProcessor;
 import com.wwidesigner.optimization.multistart.RandomRangeProcessor;
 import com.wwidesigner.util.BoreProfileOptimizationException;
@@ -57,17 +69,54 @@ import com.wwidesigner.util.OperationCancelledException;
 public class ObjectiveFunctionOptimizer
 {
 	// Statistics saved from the most recent call to optimizeObjectiveFunction
+	// on each thread, so that concurrent optimizations do not interfere.
+	protected static class Statistics
+	{
+		double initialNorm; // Initial value of objective function.
+		double finalNorm; // Final value of objective function.
+	}
 
-	protected static double initialNorm; // Initial value of objective function.
-	protected static double finalNorm; // Final value of objective function.
+	protected static final ThreadLocal<Statistics> statistics
+			= new ThreadLocal<Statistics>()
+	{
+		@Override
+		protected Statistics initialValue()
+		{
+			return new Statistics();
+		}
+	};
 	protected static final boolean DEBUG_MODE = false;
 
-	// Number of evaluations in a single multi-start run.
-	private static int singleRunEvaluations;
+	// Number of threads used to run the starts of a multi-start optimization.
+	// With 1 thread, the starts run one after another on the calling thread.
+	private static int multiStartThreads = 1;
+
+	// Number of threads used to evaluate the sample points of each DIRECT
+	// iteration. With 1 thread, points are evaluated on the calling thread.
+	private static int directThreads = 1;
+
+	/**
+	 * Add a listener that receives progress events from every optimization.
+	 * Initially, OptimizationProgress.CONSOLE_LISTENER is registered, to print
+	 * summary messages on System.out; remove it to run silently.
+	 */
+	public static void addProgressListener(
+			OptimizationProgressListener listener)
+	{
+		OptimizationProgress.addGlobalListener(listener);
+	}
+
+	public static void removeProgressListener(
+			OptimizationProgressListener listener)
+	{
+		OptimizationProgress.removeGlobalListener(listener);
+	}
 
 	/**
-	 * Print a vector of error values during optimization.
+	 * Report a vector of error values during optimization.
 	 * 
+	 * @param objective
+	 *            - objective function whose listeners receive the report
 	 * @param description
 	 *            - describes what the error values apply to
 	 * @param errorNorm
@@ -75,35 +124,37 @@ public class ObjectiveFunctionOptimizer
 	 * @param errorVector
 	 *            - error values at specific tuning points
 	 */
-	protected static void printErrors(String description, double errorNorm,
-			double[] errorVector)
+	protected static void reportErrors(BaseObjectiveFunction objective,
+			String description, double errorNorm, double[] errorVector)
 	{
 		boolean firstPass = true;
-		System.out.print(description);
-		System.out.print(errorNorm);
+		StringBuilder text = new StringBuilder(description);
+		text.append(errorNorm);
 		if (DEBUG_MODE)
 		{
-			System.out.print(" from [");
+			text.append(" from [");
 			for (double err : errorVector)
 			{
 				if (!firstPass)
 				{
-					System.out.print(",  ");
+					text.append(",  ");
 				}
 				else
 				{
 					firstPass = false;
 				}
-				System.out.print(err);
+				text.append(err);
 			}
-			System.out.print("]");
+			text.append("]");
 		}
-		System.out.println(".");
+		text.append(".");
+		objective.reportProgressMessage(text.toString());
 	}
 
 	/**
 	 * Use a specified optimizer type to optimize a specified objective
-	 * function.
+	 * function.  If ModelProfiler is enabled, report the model profile of
+	 * the optimization when it finishes.
 	 * 
 	 * @param objective
 	 *            - objective function to optimize
@@ -114,11 +165,15 @@ public class ObjectiveFunctionOptimizer
 			BaseObjectiveFunction objective,
 			BaseObjectiveFunction.OptimizerType optimizerType)
 	{
-		System.out.print("\nSystem has ");
-		System.out.print(objective.getNrDimensions());
-		System.out.print(" optimization variables and ");
-		System.out.print(objective.getNrNotes());
-		System.out.print(" target notes.");
+		objective.getProgress().start();
+		if (ModelProfiler.isEnabled())
+		{
+			ModelProfiler.reset();
+		}
+		objective.setProgressStage(OptimizationProgressEvent.Stage.SETUP, 0);
+		objective.reportProgressMessage("\nSystem has "
+				+ objective.getNrDimensions() + " optimization variables and "
+				+ objective.getNrNotes() + " target notes.");
 
 		if (objective.getNrDimensions() == 0)
 		{
@@ -126,12 +181,12 @@ public class ObjectiveFunctionOptimizer
 		}
 
 		long startTime = System.currentTimeMillis();
+		Statistics stats = statistics.get();
 		double[] startPoint = objective.getInitialPoint();
 		double[] errorVector = objective.getErrorVector(startPoint);
-		initialNorm = objective.calcNorm(errorVector);
-		System.out.println();
-		printErrors("Initial error: ", initialNorm, errorVector);
-		finalNorm = initialNorm;
+		stats.initialNorm = objective.calcNorm(errorVector);
+		reportErrors(objective, "Initial error: ", stats.initialNorm, errorVector);
+		stats.finalNorm = stats.initialNorm;
 
 		try
 		{
@@ -141,13 +196,17 @@ public class ObjectiveFunctionOptimizer
 				// DIRECT/BOBYQA run.
 				PointValuePair outcome;
 				MultivariateOptimizer optimizer = new DIRECTCOptimizer(6.0e-6);
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.DIRECT, 0);
 				outcome = runDirect(optimizer, objective, startPoint);
-				System.out.println(
+				objective.reportProgressMessage(
 						"After global optimizer, error: " + outcome.getValue());
 
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.BOBYQA, 0);
 				outcome = runBobyqa(objective, outcome.getPoint());
-				System.out
-						.println("Refined start, error: " + outcome.getValue());
+				objective.reportProgressMessage(
+						"Refined start, error: " + outcome.getValue());
 
 				outcome = optimizeMultiStart(objective, outcome.getPoint());
 				if (outcome == null)
@@ -164,6 +223,8 @@ public class ObjectiveFunctionOptimizer
 					.equals(BaseObjectiveFunction.OptimizerType.BrentOptimizer))
 			{
 				// Univariate optimization.
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.BRENT, 0);
 				UnivariatePointValuePair outcome = runBrent(objective,
 						startPoint);
 				double[] geometry = new double[1];
@@ -174,6 +235,8 @@ public class ObjectiveFunctionOptimizer
 					BaseObjectiveFunction.OptimizerType.PowellOptimizer))
 			{
 				// Multivariate optimization, without bounds.
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.POWELL, 0);
 				PointValuePair outcome = runPowell(objective, startPoint);
 				objective.setGeometryPoint(outcome.getPoint());
 			}
@@ -181,6 +244,8 @@ public class ObjectiveFunctionOptimizer
 					BaseObjectiveFunction.OptimizerType.SimplexOptimizer))
 			{
 				// Multivariate optimization, without bounds.
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.SIMPLEX, 0);
 				PointValuePair outcome = runSimplex(objective, startPoint);
 				objective.setGeometryPoint(outcome.getPoint());
 			}
@@ -188,6 +253,8 @@ public class ObjectiveFunctionOptimizer
 					.equals(BaseObjectiveFunction.OptimizerType.CMAESOptimizer))
 			{
 				// Multivariate optimization, with bounds.
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.CMAES, 0);
 				PointValuePair outcome = runCmaes(objective, startPoint);
 				objective.setGeometryPoint(outcome.getPoint());
 			}
@@ -197,21 +264,27 @@ public class ObjectiveFunctionOptimizer
 				// Multivariate DIRECT optimization, with bounds.
 				// Convergence threshold about 3^-15.
 				MultivariateOptimizer optimizer = new DIRECTCOptimizer(7.0e-8);
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.DIRECT, 0);
 				PointValuePair outcome = runDirect(optimizer, objective,
 						startPoint);
 
-				System.out.println("After " + objective.getNumberOfEvaluations()
+				objective.reportProgressMessage("After "
+						+ objective.getNumberOfEvaluations()
 						+ " evaluations, global optimizer found optimum "
 						+ outcome.getValue());
 
 				// Use BOBYQA to refine global optimum found.
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.BOBYQA, 0);
 				PointValuePair outcome2 = runBobyqa(objective,
 						outcome.getPoint());
 				if (outcome.getValue() < outcome2.getValue())
 				{
 					// Don't use second-stage optimum if it isn't better.
-					System.out.println("Second-stage optimizer found optimum "
-							+ outcome2.getValue());
+					objective.reportProgressMessage(
+							"Second-stage optimizer found optimum "
+									+ outcome2.getValue());
 					objective.setGeometryPoint(outcome.getPoint());
 				}
 				else
@@ -222,51 +295,63 @@ public class ObjectiveFunctionOptimizer
 			else
 			{
 				// Multivariate BOBYQA optimization, with bounds.
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.BOBYQA, 0);
 				PointValuePair outcome = runBobyqa(objective, startPoint);
 				objective.setGeometryPoint(outcome.getPoint());
 			}
 		}
 		catch (TooManyEvaluationsException e)
 		{
-			System.out.println("Exception: " + e.getMessage());
+			objective.reportProgressMessage("Exception: " + e.getMessage());
 		}
 		catch (OperationCancelledException e)
 		{
 			if (objective.isMultiStart())
 			{
-				System.out.println("\nOptimization cancelled.\n");
+				objective.reportProgressMessage("\nOptimization cancelled.\n");
 				return false;
 			}
-			System.out.println(
+			objective.reportProgressMessage(
 					"\nOptimization cancelled.\nPartially-optimized result returned.\n");
 		}
 		catch (BoreProfileOptimizationException e)
 		{
-			System.out.println("\nOptimization aborted.\n");
+			objective.reportProgressMessage("\nOptimization aborted.\n");
 			throw (e);
 		}
 		catch (Exception e)
 		{
-			System.out.println("Exception: " + e.getMessage());
+			objective.reportProgressMessage("Exception: " + e.getMessage());
 			e.printStackTrace();
 			return false;
 		}
 
-		System.out.print("Performed ");
-		System.out.print(objective.getNumberOfTunings());
-		System.out.print(" tuning calculations in ");
-		System.out.print(objective.getNumberOfEvaluations());
-		System.out.println(" error norm evaluations.");
+		objective.reportProgressMessage("Performed "
+				+ objective.getNumberOfTunings() + " tuning calculations in "
+				+ objective.getNumberOfEvaluations()
+				+ " error norm evaluations.");
+		if (objective.getEvaluationCache() != null)
+		{
+			objective.reportProgressMessage("Evaluation cache: "
+					+ objective.getNumberOfCacheHits() + " hits, "
+					+ objective.getNumberOfCacheMisses() + " misses.");
+		}
 		errorVector = objective.getErrorVector(objective.getInitialPoint());
-		finalNorm = objective.calcNorm(errorVector);
-		printErrors("Final error:  ", finalNorm, errorVector);
-		System.out.print("Residual error ratio: ");
-		System.out.println(finalNorm / initialNorm);
+		stats.finalNorm = objective.calcNorm(errorVector);
+		reportErrors(objective, "Final error:  ", stats.finalNorm, errorVector);
+		objective.reportProgressMessage("Residual error ratio: "
+				+ (stats.finalNorm / stats.initialNorm));
 		long elapsedTime = System.currentTimeMillis() - startTime;
 		double elapsedSeconds = 0.001 * (double) elapsedTime;
-		System.out.print("Elapsed time: ");
-		System.out.printf("%3.1f", elapsedSeconds);
-		System.out.println(" seconds.");
+		objective.reportProgressMessage("Elapsed time: "
+				+ String.format("%3.1f", elapsedSeconds) + " seconds.");
+		if (ModelProfiler.isEnabled())
+		{
+			objective.reportProgressMessage(
+					ModelProfiler.snapshot().toString());
+		}
+		objective.getProgress().finished(stats.finalNorm);
 
 		return true;
 	} // optimizeObjectiveFunction
@@ -279,6 +364,8 @@ public class ObjectiveFunctionOptimizer
 	 * objective.isRunTwoStageOptimization (if set true), doing the 30 starts
 	 * with the first stage evaluator, and then doing a final run with the
 	 * original evaluator - starting with the best result from the 30 starts.
+	 * If getMultiStartThreads() is greater than 1, the starts run in
+	 * parallel, each thread using its own copy of the objective function.
 	 * 
 	 * @param objective
 	 *            - objective function to optimize
@@ -312,20 +399,32 @@ public class ObjectiveFunctionOptimizer
 		{
 			EvaluatorInterface firstStageEvaluator = objective
 					.getFirstStageEvaluator();
-			System.out.println("Evaluator: "
+			objective.reportProgressMessage("Evaluator: "
 					+ firstStageEvaluator.getClass().getSimpleName());
 			objective.setEvaluator(firstStageEvaluator);
 		}
 
-		for (int startNr = 0; startNr < nrStarts; ++startNr)
+		if (multiStartThreads > 1 && nrStarts > 1)
+		{
+			doParallelStarts(objective, startPoint, rangeProcessor, optima);
+		}
+		else
 		{
-			if (totalEvaluations < maxEvaluations)
+			for (int startNr = 0; startNr < nrStarts; ++startNr)
 			{
-				System.out.print("Start " + (startNr + 1) + ": ");
-				optima[startNr] = doSingleStart(objective, startPoint,
-						maxEvaluations - totalEvaluations, nextStart);
-				nextStart = rangeProcessor.nextVector();
-				totalEvaluations += singleRunEvaluations;
+				if (totalEvaluations < maxEvaluations)
+				{
+					int priorEvaluations = objective.getNumberOfEvaluations();
+					objective.setProgressStage(
+							OptimizationProgressEvent.Stage.MULTI_START,
+							startNr + 1);
+					optima[startNr] = doSingleStart(objective, startPoint,
+							maxEvaluations - totalEvaluations, nextStart,
+							"Start " + (startNr + 1) + ": ");
+					nextStart = rangeProcessor.nextVector();
+					totalEvaluations += objective.getNumberOfEvaluations()
+							- priorEvaluations;
+				}
 			}
 		}
 
@@ -334,27 +433,181 @@ public class ObjectiveFunctionOptimizer
 		if (optima[0] != null)
 		{
 			// Return the found point given the best objective function value.
-			System.out.println("Best optimum: " + optima[0].getValue());
+			objective.reportProgressMessage(
+					"Best optimum: " + optima[0].getValue());
 			if (objective.isRunTwoStageOptimization())
 			{
-				System.out.println("Final run with evaluator: "
+				objective.reportProgressMessage("Final run with evaluator: "
 						+ originalEvaluator.getClass().getSimpleName());
 				objective.setEvaluator(originalEvaluator);
+				objective.setProgressStage(
+						OptimizationProgressEvent.Stage.BOBYQA, 0);
 				optima[0] = doSingleStart(objective, startPoint,
 						objective.getMaxEvaluations() / 30,
-						optima[0].getPoint());
+						optima[0].getPoint(), "");
 			}
 		}
 
 		return optima[0];
 	}
 
+	/**
+	 * Run the starts of a multi-start optimization on a pool of
+	 * multiStartThreads threads. Each thread works on its own copy of the
+	 * objective function, and the copies share a single evaluation budget of
+	 * objective.getMaxEvaluations(). Start points are drawn from the range
+	 * processor in the same sequence as for a sequential run, and the optimum
+	 * from each start is stored by start number, so the best result does not
+	 * depend on the order in which the starts finish.
+	 * 
+	 * @param objective
+	 *            - objective function to optimize
+	 * @param startPoint
+	 *            - starting geometry, restored if the optimization is
+	 *            cancelled
+	 * @param rangeProcessor
+	 *            - source of start points after the first
+	 * @param optima
+	 *            - on return, optimum found from each start, or null if none
+	 *            found
+	 */
+	protected static void doParallelStarts(
+			final BaseObjectiveFunction objective, final double[] startPoint,
+			AbstractRangeProcessor rangeProcessor,
+			final PointValuePair[] optima)
+	{
+		int nrStarts = optima.length;
+		final double[][] starts = new double[nrStarts][];
+		starts[0] = startPoint.clone();
+		for (int startNr = 1; startNr < nrStarts; ++startNr)
+		{
+			starts[startNr] = rangeProcessor.nextVector();
+		}
+
+		int nrThreads = Math.min(multiStartThreads, nrStarts);
+		final AtomicInteger budget = new AtomicInteger(
+				objective.getMaxEvaluations());
+		final List<BaseObjectiveFunction> copies = new ArrayList<BaseObjectiveFunction>(
+				nrThreads);
+		final BlockingQueue<BaseObjectiveFunction> idleCopies = new ArrayBlockingQueue<BaseObjectiveFunction>(
+				nrThreads);
+		for (int i = 0; i < nrThreads; ++i)
+		{
+			BaseObjectiveFunction copy = objective.copy();
+			copy.sharedEvaluationBudget = budget;
+			copies.add(copy);
+			idleCopies.add(copy);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+		List<Future<PointValuePair>> results = new ArrayList<Future<PointValuePair>>(
+				nrStarts);
+		boolean cancelled = false;
+		try
+		{
+			for (int startNr = 0; startNr < nrStarts; ++startNr)
+			{
+				final int thisStart = startNr;
+				results.add(executor.submit(new Callable<PointValuePair>()
+				{
+					public PointValuePair call() throws Exception
+					{
+						if (budget.get() <= 0)
+						{
+							return null;
+						}
+						BaseObjectiveFunction copy = idleCopies.take();
+						try
+						{
+							copy.setProgressStage(
+									OptimizationProgressEvent.Stage.MULTI_START,
+									thisStart + 1);
+							return doSingleStart(copy, startPoint,
+									Math.max(budget.get(), 1),
+									starts[thisStart],
+									"Start " + (thisStart + 1) + ": ");
+						}
+						finally
+						{
+							idleCopies.put(copy);
+						}
+					}
+				}));
+			}
+			for (int startNr = 0; startNr < nrStarts; ++startNr)
+			{
+				optima[startNr] = results.get(startNr).get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof OperationCancelledException)
+			{
+				cancelled = true;
+				// Leave the cancel flag set until all copies have stopped.
+				objective.setCancel(true);
+				throw new OperationCancelledException(cause.getMessage());
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		catch (InterruptedException e)
+		{
+			cancelled = true;
+			objective.setCancel(true);
+			Thread.currentThread().interrupt();
+			throw new OperationCancelledException("Operation interrupted.");
+		}
+		finally
+		{
+			executor.shutdown();
+			try
+			{
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			if (cancelled)
+			{
+				objective.setCancel(false);
+				objective.setGeometryPoint(startPoint);
+			}
+			for (BaseObjectiveFunction copy : copies)
+			{
+				objective.addStatistics(copy);
+			}
+		}
+	}
+
+	/**
+	 * Run a single start of a multi-start optimization, and report a one-line
+	 * summary of the outcome.
+	 * 
+	 * @param objective
+	 *            - objective function to optimize
+	 * @param startPoint
+	 *            - starting geometry, restored if the optimization is
+	 *            cancelled
+	 * @param maxEvaluations
+	 *            - limit on evaluations for this start
+	 * @param nextStart
+	 *            - start point for this start
+	 * @param label
+	 *            - prefix for the summary line
+	 * @return optimum found, or {@code null} if no optimum found
+	 */
 	protected static PointValuePair doSingleStart(
 			BaseObjectiveFunction objective, double[] startPoint,
-			int maxEvaluations, double[] nextStart)
+			int maxEvaluations, double[] nextStart, String label)
 	{
-		singleRunEvaluations = 0;
 		PointValuePair result = null;
+		String outcome = "";
 		try
 		{
 			int numVariables = objective.getNrDimensions();
@@ -369,39 +622,39 @@ public class ObjectiveFunctionOptimizer
 						stoppingTrustRegion);
 				result = runBobyqa(optimizer, objective, nextStart,
 						maxEvaluations);
-				singleRunEvaluations = optimizer.getEvaluations();
 			}
 			else
 			// Use Brent
 			{
 				BrentOptimizer optimizer = new BrentOptimizer(1.e-6, 1.e-14);
-				UnivariatePointValuePair outcome = runBrent(optimizer,
+				UnivariatePointValuePair univariate = runBrent(optimizer,
 						objective, startPoint);
-				result = new PointValuePair(new double[] { outcome.getPoint() },
-						outcome.getValue());
-				singleRunEvaluations = optimizer.getEvaluations();
+				result = new PointValuePair(
+						new double[] { univariate.getPoint() },
+						univariate.getValue());
 			}
 			double value = result.getValue();
 			if (value == Double.POSITIVE_INFINITY)
 			{
-				System.out.print("no valid solution found");
+				outcome = "no valid solution found";
 			}
 			else
 			{
-				System.out.print("optimum " + result.getValue());
+				outcome = "optimum " + result.getValue();
 			}
 		}
 		catch (TooManyEvaluationsException e)
 		{
-			System.out.println("Exception: " + e.getMessage());
+			outcome = "Exception: " + e.getMessage();
 		}
 		// Thrown by BOBYQA for no apparent reason: a bug?
 		catch (NoSuchElementException e)
 		{
-			System.out.println("no valid solution found");
+			outcome = "no valid solution found";
 		}
 		catch (OperationCancelledException e)
 		{
+			outcome = "cancelled";
 			// Restore starting point.
 			objective.setGeometryPoint(startPoint);
 			// Re-throw the exception to give up the whole multi-start
@@ -410,12 +663,15 @@ public class ObjectiveFunctionOptimizer
 		}
 		catch (Exception e)
 		{
-			System.out.println("Exception: " + e.getMessage());
+			outcome = "Exception: " + e.getMessage();
 			// e.printStackTrace();
 		}
 		finally
 		{
-			System.out.println(" at start point " + Arrays.toString(nextStart));
+			// Report the whole line at once, so that lines from starts
+			// running in parallel are not interleaved.
+			objective.reportProgressMessage(label + outcome
+					+ " at start point " + Arrays.toString(nextStart));
 		}
 
 		return result;
@@ -453,19 +709,79 @@ public class ObjectiveFunctionOptimizer
 		});
 	}
 
+	/**
+	 * @return number of threads used to run the starts of a multi-start
+	 *         optimization.
+	 */
+	public static int getMultiStartThreads()
+	{
+		return multiStartThreads;
+	}
+
+	/**
+	 * Set the number of threads used to run the starts of a multi-start
+	 * optimization. The default, 1, runs the starts one after another.
+	 * 
+	 * @param nrThreads
+	 *            - number of threads; if less than 1, use one thread for
+	 *            each available processor.
+	 */
+	public static void setMultiStartThreads(int nrThreads)
+	{
+		if (nrThreads < 1)
+		{
+			nrThreads = Runtime.getRuntime().availableProcessors();
+		}
+		multiStartThreads = nrThreads;
+	}
+
+	/**
+	 * @return number of threads used to evaluate the sample points of each
+	 *         DIRECT iteration.
+	 */
+	public static int getDirectThreads()
+	{
+		return directThreads;
+	}
+
+	/**
+	 * Set the number of threads used to evaluate the sample points of each
+	 * DIRECT iteration. The default, 1, evaluates them one after another.
+	 * The optimum found does not depend on the number of threads.
+	 * 
+	 * @param nrThreads
+	 *            - number of threads; if less than 1, use one thread for
+	 *            each available processor.
+	 */
+	public static void setDirectThreads(int nrThreads)
+	{
+		if (nrThreads < 1)
+		{
+			nrThreads = Runtime.getRuntime().availableProcessors();
+		}
+		directThreads = nrThreads;
+	}
+
+	/**
+	 * @return initial norm from the most recent optimization on this thread.
+	 */
 	public static double getInitialNorm()
 	{
-		return initialNorm;
+		return statistics.get().initialNorm;
 	}
 
+	/**
+	 * @return final norm from the most recent optimization on this thread.
+	 */
 	public static double getFinalNorm()
 	{
-		return finalNorm;
+		return statistics.get().finalNorm;
 	}
 
 	public static double getResidualErrorRatio()
 	{
-		return finalNorm / initialNorm;
+		Statistics stats = statistics.get();
+		return stats.finalNorm / stats.initialNorm;
 	}
 
 	protected static UnivariatePointValuePair runBrent(BrentOptimizer optimizer,
@@ -573,7 +889,8 @@ public class ObjectiveFunctionOptimizer
 		ConvergenceChecker<PointValuePair> convergenceChecker = new SimpleValueChecker(
 				1.e-6, 1.e-14);
 		MultivariateOptimizer optimizer = new CMAESOptimizer(
-				objective.getMaxEvaluations(), 0.0001 * initialNorm, true, 0, 0,
+				objective.getMaxEvaluations(),
+				0.0001 * statistics.get().initialNorm, true, 0, 0,
 				new MersenneTwister(), false, convergenceChecker);
 
 		return optimizer.optimize(GoalType.MINIMIZE,
@@ -605,14 +922,34 @@ public class ObjectiveFunctionOptimizer
 		// optimizations. Value here should be suitable for
 		// CentsDeviationEvaluator,
 		// and adequate for most other evaluators.
-		outcome = optimizer.optimize(GoalType.MINIMIZE,
-				new ObjectiveFunction(objective),
-				new MaxEval(2 * objective.getMaxEvaluations()),
-				MaxIter.unlimited(), new InitialGuess(startPoint),
-				new DIRECTOptimizer.TargetFunctionValue(0.001),
-				new SimpleBounds(objective.getLowerBounds(),
-						objective.getUpperBounds()));
-		objective.setEvaluator(originalEvaluator);
+		BaseObjectiveFunction[] copies = new BaseObjectiveFunction[0];
+		if (directThreads > 1 && optimizer instanceof DIRECTOptimizer)
+		{
+			copies = new BaseObjectiveFunction[directThreads - 1];
+			for (int i = 0; i < copies.length; ++i)
+			{
+				copies[i] = objective.copy();
+			}
+		}
+		try
+		{
+			outcome = optimizer.optimize(GoalType.MINIMIZE,
+					new ObjectiveFunction(objective),
+					new MaxEval(2 * objective.getMaxEvaluations()),
+					MaxIter.unlimited(), new InitialGuess(startPoint),
+					new DIRECTOptimizer.TargetFunctionValue(0.001),
+					new DIRECTOptimizer.WorkerFunctions(copies),
+					new SimpleBounds(objective.getLowerBounds(),
+							objective.getUpperBounds()));
+		}
+		finally
+		{
+			for (BaseObjectiveFunction copy : copies)
+			{
+				objective.addStatistics(copy);
+			}
+			objective.setEvaluator(originalEvaluator);
+		}
 
 		return outcome;
 	}
@@ -0,0 +1,515 @@
+/**
+ * Run batches of optimizations without the GUI.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+
+/**
+ * Runs optimization jobs on a fixed pool of worker threads, without the
+ * study models of the GUI.  Each job can be cancelled, and can have a time
+ * limit, after which its optimization is cancelled.  If an output directory
+ * is set, the engine writes each job's optimized instrument to
+ * &lt;job name&gt;.xml, and its metrics to &lt;job name&gt;-metrics.txt.
+ *
+ * Optimizations print summary messages on System.out, through
+ * OptimizationProgress.CONSOLE_LISTENER, so the output of concurrent jobs is
+ * interleaved.  To follow one job, pass an OptimizationProgressListener to
+ * submit(), or add one to its Task.  When a job's time limit expires, its
+ * listeners receive a MESSAGE event from the timer thread.
+ *
+ * @author Burton Patkau
+ */
+public class OptimizationEngine
+{
+	protected final ExecutorService workers;
+	// Cancels jobs whose time limit expires.  Its thread is a daemon that
+	// stops when idle, so the timer never needs to be shut down.
+	protected final ScheduledThreadPoolExecutor timer;
+	// Tasks queued or running.  Each task removes itself when it finishes,
+	// so the engine keeps no finished jobs or their listeners.
+	protected final Set<Task> tasks = new LinkedHashSet<Task>();
+	protected volatile File outputDirectory = null;
+
+	/**
+	 * Create an engine.
+	 *
+	 * @param nrThreads
+	 *            - number of jobs to run at once; less than 1 to use all
+	 *            available processors.
+	 */
+	public OptimizationEngine(int nrThreads)
+	{
+		if (nrThreads < 1)
+		{
+			nrThreads = Runtime.getRuntime().availableProcessors();
+		}
+		workers = Executors.newFixedThreadPool(nrThreads);
+		timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "OptimizationEngine timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.setKeepAliveTime(1, TimeUnit.SECONDS);
+		timer.allowCoreThreadTimeOut(true);
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	public File getOutputDirectory()
+	{
+		return outputDirectory;
+	}
+
+	/**
+	 * Set the directory for the output files of jobs that have not yet
+	 * finished.
+	 *
+	 * @param aOutputDirectory
+	 *            - output directory, created if necessary; null to write no
+	 *            files.
+	 */
+	public void setOutputDirectory(File aOutputDirectory)
+	{
+		this.outputDirectory = aOutputDirectory;
+	}
+
+	/**
+	 * Queue a job to run when a worker thread is free.
+	 */
+	public Task submit(OptimizationJob job)
+	{
+		return submit(job, null);
+	}
+
+	/**
+	 * Queue a job, with a listener that receives all of the job's progress
+	 * events.  A listener added to the Task after submit() returns may miss
+	 * events from a job that starts at once.
+	 *
+	 * @param listener
+	 *            - listener for the job's progress events, or null.
+	 */
+	public Task submit(OptimizationJob job,
+			OptimizationProgressListener listener)
+	{
+		Task task = new Task(job);
+		if (listener != null)
+		{
+			task.addProgressListener(listener);
+		}
+		synchronized (tasks)
+		{
+			tasks.add(task);
+		}
+		try
+		{
+			workers.execute(task.future);
+		}
+		catch (RejectedExecutionException e)
+		{
+			task.forget();
+			throw e;
+		}
+		return task;
+	}
+
+	/**
+	 * Queue a list of jobs.
+	 *
+	 * @return the tasks for the jobs, in the same order.
+	 */
+	public List<Task> submitAll(List<OptimizationJob> jobs)
+	{
+		List<Task> newTasks = new ArrayList<Task>(jobs.size());
+		for (OptimizationJob job : jobs)
+		{
+			newTasks.add(submit(job));
+		}
+		return newTasks;
+	}
+
+	/**
+	 * Accept no more jobs, but let queued and running jobs finish.
+	 */
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**
+	 * Accept no more jobs, and cancel queued and running jobs.
+	 */
+	public void shutdownNow()
+	{
+		synchronized (tasks)
+		{
+			for (Task task : tasks)
+			{
+				task.cancel();
+			}
+		}
+		shutdown();
+	}
+
+	/**
+	 * Wait for all jobs to finish after a shutdown request.
+	 *
+	 * @return true if all jobs finished, false if the wait timed out.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException
+	{
+		return workers.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * A submitted job, which can be cancelled, and which delivers the
+	 * job's result when it finishes.
+	 */
+	public class Task implements Callable<OptimizationResult>
+	{
+		protected final OptimizationJob job;
+		protected final FutureTask<OptimizationResult> future;
+		// Objective function of a running optimization, or null.
+		protected BaseObjectiveFunction objective = null;
+		protected boolean cancelled = false;
+		protected boolean timedOut = false;
+		protected boolean finished = false;
+		protected final List<OptimizationProgressListener> progressListeners
+			= new CopyOnWriteArrayList<OptimizationProgressListener>();
+
+		protected Task(OptimizationJob aJob)
+		{
+			this.job = aJob;
+			this.future = new FutureTask<OptimizationResult>(this)
+			{
+				@Override
+				protected void done()
+				{
+					forget();
+				}
+			};
+		}
+
+		/**
+		 * Remove this task from the engine's tasks.
+		 */
+		protected void forget()
+		{
+			synchronized (tasks)
+			{
+				tasks.remove(this);
+			}
+		}
+
+		public OptimizationJob getJob()
+		{
+			return job;
+		}
+
+		/**
+		 * Add a listener for progress events from this job's optimization.
+		 * A listener added while the job is running receives the events
+		 * that follow.
+		 */
+		public void addProgressListener(OptimizationProgressListener listener)
+		{
+			progressListeners.add(listener);
+		}
+
+		public void removeProgressListener(
+				OptimizationProgressListener listener)
+		{
+			progressListeners.remove(listener);
+		}
+
+		/**
+		 * Cancel the job.  A queued job finishes as soon as it starts; a
+		 * running optimization stops at its next evaluation, and may deliver
+		 * a partially-optimized instrument.
+		 */
+		public synchronized void cancel()
+		{
+			if (!finished)
+			{
+				cancelled = true;
+				if (objective != null)
+				{
+					objective.setCancel(true);
+				}
+			}
+		}
+
+		/**
+		 * Stop a running optimization when its time limit expires, and
+		 * report the time-out to the job's listeners.  Called on the timer
+		 * thread.
+		 */
+		protected void timeOut()
+		{
+			BaseObjectiveFunction stopped;
+			synchronized (this)
+			{
+				if (objective == null)
+				{
+					return;
+				}
+				timedOut = true;
+				objective.setCancel(true);
+				stopped = objective;
+			}
+			stopped.reportProgressMessage(job.getName()
+					+ ": time limit of " + job.getTimeout()
+					+ " s reached, stopping optimization.");
+		}
+
+		/**
+		 * Record the objective function of an optimization that is about to
+		 * start.
+		 *
+		 * @return false if the job has already been cancelled.
+		 */
+		protected synchronized boolean start(BaseObjectiveFunction aObjective)
+		{
+			if (cancelled)
+			{
+				return false;
+			}
+			objective = aObjective;
+			return true;
+		}
+
+		protected synchronized void finish()
+		{
+			objective = null;
+			finished = true;
+		}
+
+		protected synchronized OptimizationResult.Status getStoppedStatus()
+		{
+			if (timedOut)
+			{
+				return OptimizationResult.Status.TIMED_OUT;
+			}
+			if (cancelled)
+			{
+				return OptimizationResult.Status.CANCELLED;
+			}
+			return null;
+		}
+
+		public boolean isDone()
+		{
+			return future.isDone();
+		}
+
+		/**
+		 * Wait for the job to finish.
+		 *
+		 * @return the job's result.
+		 */
+		public OptimizationResult getResult() throws InterruptedException
+		{
+			try
+			{
+				return future.get();
+			}
+			catch (ExecutionException e)
+			{
+				// call() catches all exceptions.
+				OptimizationResult result = new OptimizationResult(
+						job.getName());
+				result.errorMessage = e.getCause().toString();
+				return result;
+			}
+		}
+
+		/**
+		 * Run the job on a worker thread.
+		 */
+		@Override
+		public OptimizationResult call()
+		{
+			OptimizationResult result = new OptimizationResult(job.getName());
+			long startTime = System.currentTimeMillis();
+			ScheduledFuture<?> timeLimit = null;
+			try
+			{
+				BaseObjectiveFunction aObjective = job
+						.createObjectiveFunction();
+				aObjective.addProgressListener(
+						new OptimizationProgressListener()
+				{
+					@Override
+					public void progressUpdated(
+							OptimizationProgressEvent event)
+					{
+						for (OptimizationProgressListener listener : progressListeners)
+						{
+							listener.progressUpdated(event);
+						}
+					}
+				});
+				BaseObjectiveFunction.OptimizerType optimizerType = job
+						.getOptimizerType();
+				if (optimizerType == null)
+				{
+					optimizerType = aObjective.getOptimizerType();
+				}
+				result.objectiveFunctionName = aObjective.getClass().getName();
+				result.optimizerType = optimizerType;
+				result.nrDimensions = aObjective.getNrDimensions();
+				if (!aObjective.isOptimizerMatch(optimizerType))
+				{
+					throw new IllegalArgumentException(
+							"Cannot run multi-start optimization with "
+									+ optimizerType);
+				}
+
+				if (start(aObjective))
+				{
+					if (job.getTimeout() > 0.0)
+					{
+						timeLimit = timer.schedule(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								timeOut();
+							}
+						}, (long) (1000.0 * job.getTimeout()),
+								TimeUnit.MILLISECONDS);
+					}
+					boolean optimized = ObjectiveFunctionOptimizer
+							.optimizeObjectiveFunction(aObjective,
+									optimizerType);
+					finish();
+					result.initialNorm = ObjectiveFunctionOptimizer
+							.getInitialNorm();
+					result.finalNorm = ObjectiveFunctionOptimizer
+							.getFinalNorm();
+					result.nrEvaluations = aObjective.getNumberOfEvaluations();
+					result.nrTunings = aObjective.getNumberOfTunings();
+					if (optimized)
+					{
+						Instrument instrument = aObjective.getInstrument();
+						// Convert back to the input unit-of-measure values
+						instrument.convertToLengthType();
+						result.instrument = instrument;
+						result.status = OptimizationResult.Status.SUCCEEDED;
+					}
+				}
+				OptimizationResult.Status stoppedStatus = getStoppedStatus();
+				if (stoppedStatus != null)
+				{
+					result.status = stoppedStatus;
+				}
+			}
+			catch (Exception e)
+			{
+				finish();
+				OptimizationResult.Status stoppedStatus = getStoppedStatus();
+				if (stoppedStatus == null)
+				{
+					stoppedStatus = OptimizationResult.Status.FAILED;
+				}
+				result.status = stoppedStatus;
+				result.errorMessage = e.getMessage() == null ? e.toString()
+						: e.getMessage();
+			}
+			finally
+			{
+				if (timeLimit != null)
+				{
+					timeLimit.cancel(false);
+				}
+				result.elapsedMillis = System.currentTimeMillis() - startTime;
+			}
+
+			File directory = outputDirectory;
+			if (directory != null)
+			{
+				try
+				{
+					writeOutput(directory, result);
+				}
+				catch (Exception e)
+				{
+					result.status = OptimizationResult.Status.FAILED;
+					result.errorMessage = "Cannot write output: "
+							+ e.getMessage();
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Write the optimized instrument, if any, and the metrics of a job.
+	 */
+	protected void writeOutput(File directory, OptimizationResult result)
+			throws Exception
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create " + directory.getPath());
+		}
+		if (result.getInstrument() != null)
+		{
+			GeometryBindFactory.getInstance().marshalToXml(
+					result.getInstrument(),
+					new File(directory, result.getJobName() + ".xml"));
+		}
+		Writer writer = new FileWriter(new File(directory,
+				result.getJobName() + "-metrics.txt"));
+		try
+		{
+			result.writeMetrics(writer);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
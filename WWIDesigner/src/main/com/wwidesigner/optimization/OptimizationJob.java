@@ -0,0 +1,318 @@
+/**
+ * Description of one optimization to run with an OptimizationEngine.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.note.TuningInterface;
+import com.wwidesigner.optimization.BoreLengthAdjustmentInterface.BoreLengthAdjustmentType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * The inputs to one optimization: instrument, target tuning, constraints,
+ * objective function, optimizer and physical parameters.  The objective
+ * function is named by its class, as in the objectiveFunctionName of a
+ * constraints file, and is constructed with the job's calculator, tuning
+ * and evaluator, plus the hole groups of the constraints and a bore length
+ * adjustment type where its constructor requires them.
+ *
+ * The optimization modifies the job's instrument, so each job needs its own
+ * Instrument object.
+ *
+ * @author Burton Patkau
+ */
+public class OptimizationJob
+{
+	protected final String name;
+	protected final Instrument instrument;
+	protected final Tuning tuning;
+	protected final Constraints constraints;
+	protected final String objectiveFunctionName;
+	// Optimizer to use, or null for the objective function's default.
+	protected final BaseObjectiveFunction.OptimizerType optimizerType;
+	protected final PhysicalParameters params;
+	protected final InstrumentCalculator calculator;
+
+	// Evaluator to use, or null for a CentDeviationEvaluator.
+	protected EvaluatorInterface evaluator = null;
+	protected BoreLengthAdjustmentType lengthAdjustmentType
+			= BoreLengthAdjustmentType.PRESERVE_TAPER;
+	// Maximum run time in seconds, or 0 for no limit.
+	protected double timeout = 0.0;
+
+	/**
+	 * Describe an optimization.
+	 *
+	 * @param aName
+	 *            - name of the job, used to name its output files.
+	 * @param aInstrument
+	 *            - instrument to optimize; modified by the optimization.
+	 * @param aTuning
+	 *            - target tuning.
+	 * @param aConstraints
+	 *            - bounds, and hole groups if the objective function uses
+	 *            them.
+	 * @param aObjectiveFunctionName
+	 *            - class name of the objective function, either fully
+	 *            qualified or in com.wwidesigner.optimization; null to use
+	 *            the objective function named in the constraints.
+	 * @param aOptimizerType
+	 *            - optimizer to use; null to use the objective function's
+	 *            default.
+	 * @param aParams
+	 *            - physical parameters for the calculator.
+	 * @param aCalculator
+	 *            - calculator compatible with the instrument, for the sole
+	 *            use of this job.
+	 */
+	public OptimizationJob(String aName, Instrument aInstrument,
+			Tuning aTuning, Constraints aConstraints,
+			String aObjectiveFunctionName,
+			BaseObjectiveFunction.OptimizerType aOptimizerType,
+			PhysicalParameters aParams, InstrumentCalculator aCalculator)
+	{
+		this.name = aName;
+		this.instrument = aInstrument;
+		this.tuning = aTuning;
+		this.constraints = aConstraints;
+		if (aObjectiveFunctionName == null && aConstraints != null)
+		{
+			this.objectiveFunctionName = aConstraints
+					.getObjectiveFunctionName();
+		}
+		else
+		{
+			this.objectiveFunctionName = aObjectiveFunctionName;
+		}
+		this.optimizerType = aOptimizerType;
+		this.params = aParams;
+		this.calculator = aCalculator;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public Instrument getInstrument()
+	{
+		return instrument;
+	}
+
+	public Tuning getTuning()
+	{
+		return tuning;
+	}
+
+	public Constraints getConstraints()
+	{
+		return constraints;
+	}
+
+	public String getObjectiveFunctionName()
+	{
+		return objectiveFunctionName;
+	}
+
+	public BaseObjectiveFunction.OptimizerType getOptimizerType()
+	{
+		return optimizerType;
+	}
+
+	public PhysicalParameters getParams()
+	{
+		return params;
+	}
+
+	public InstrumentCalculator getCalculator()
+	{
+		return calculator;
+	}
+
+	public EvaluatorInterface getEvaluator()
+	{
+		return evaluator;
+	}
+
+	/**
+	 * Set the evaluator for the objective function.
+	 *
+	 * @param aEvaluator
+	 *            - an evaluator using this job's calculator, or null for a
+	 *            CentDeviationEvaluator.
+	 */
+	public void setEvaluator(EvaluatorInterface aEvaluator)
+	{
+		this.evaluator = aEvaluator;
+	}
+
+	public BoreLengthAdjustmentType getLengthAdjustmentType()
+	{
+		return lengthAdjustmentType;
+	}
+
+	/**
+	 * Set the bore length adjustment for objective functions whose
+	 * constructor takes one.
+	 */
+	public void setLengthAdjustmentType(
+			BoreLengthAdjustmentType aLengthAdjustmentType)
+	{
+		this.lengthAdjustmentType = aLengthAdjustmentType;
+	}
+
+	public double getTimeout()
+	{
+		return timeout;
+	}
+
+	/**
+	 * Set a time limit for the optimization.  When it expires, the
+	 * optimization is cancelled, as from the Cancel button in the GUI.
+	 *
+	 * @param aTimeout
+	 *            - maximum run time in seconds, or 0 for no limit.
+	 */
+	public void setTimeout(double aTimeout)
+	{
+		this.timeout = aTimeout;
+	}
+
+	/**
+	 * Prepare the calculator, and construct the objective function with
+	 * bounds from the constraints.
+	 *
+	 * @throws Exception
+	 *             if the instrument does not suit the calculator, or the
+	 *             objective function cannot be constructed.
+	 */
+	public BaseObjectiveFunction createObjectiveFunction() throws Exception
+	{
+		if (objectiveFunctionName == null)
+		{
+			throw new IllegalArgumentException(
+					"No objective function specified for " + name);
+		}
+		if (!calculator.isCompatible(instrument))
+		{
+			throw new IllegalArgumentException("The instrument for " + name
+					+ " is not compatible with "
+					+ calculator.getClass().getSimpleName());
+		}
+		instrument.checkValidity();
+		calculator.setPhysicalParameters(params);
+		calculator.setInstrument(instrument);
+		tuning.checkValidity();
+
+		String className = objectiveFunctionName;
+		if (className.indexOf('.') < 0)
+		{
+			className = BaseObjectiveFunction.class.getPackage().getName()
+					+ "." + className;
+		}
+		Class<? extends BaseObjectiveFunction> objectiveClass = Class
+				.forName(className).asSubclass(BaseObjectiveFunction.class);
+
+		BaseObjectiveFunction objective;
+		int[][] holeGroups = null;
+		if (constraints != null)
+		{
+			holeGroups = constraints.getHoleGroupsArray();
+		}
+		try
+		{
+			if (holeGroups != null)
+			{
+				objective = newObjective(objectiveClass, new Class<?>[] {
+						int[][].class, BoreLengthAdjustmentType.class },
+						holeGroups, lengthAdjustmentType);
+			}
+			else
+			{
+				objective = newObjective(objectiveClass,
+						new Class<?>[] { BoreLengthAdjustmentType.class },
+						lengthAdjustmentType);
+				if (objective == null)
+				{
+					objective = newObjective(objectiveClass, new Class<?>[0]);
+				}
+			}
+		}
+		catch (InvocationTargetException e)
+		{
+			if (e.getCause() instanceof Exception)
+			{
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+		if (objective == null)
+		{
+			throw new NoSuchMethodException(objectiveClass.getSimpleName()
+					+ " has no suitable constructor"
+					+ (holeGroups == null ? "." : " for hole groups."));
+		}
+
+		if (constraints != null)
+		{
+			objective.setConstraintsBounds(constraints);
+		}
+		return objective;
+	}
+
+	/**
+	 * Construct an objective function, if its class has a constructor taking
+	 * a calculator, tuning and evaluator, followed by specified types.
+	 *
+	 * @return the objective function, or null if there is no such
+	 *         constructor.
+	 */
+	protected BaseObjectiveFunction newObjective(
+			Class<? extends BaseObjectiveFunction> objectiveClass,
+			Class<?>[] extraTypes, Object... extraArgs) throws Exception
+	{
+		Class<?>[] types = new Class<?>[3 + extraTypes.length];
+		types[0] = InstrumentCalculator.class;
+		types[1] = TuningInterface.class;
+		types[2] = EvaluatorInterface.class;
+		System.arraycopy(extraTypes, 0, types, 3, extraTypes.length);
+		Constructor<? extends BaseObjectiveFunction> constructor;
+		try
+		{
+			constructor = objectiveClass.getConstructor(types);
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+		Object[] args = new Object[3 + extraArgs.length];
+		args[0] = calculator;
+		args[1] = tuning;
+		args[2] = evaluator == null ? new CentDeviationEvaluator(calculator)
+				: evaluator;
+		System.arraycopy(extraArgs, 0, args, 3, extraArgs.length);
+		return constructor.newInstance(args);
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Collects and distributes progress reports from an optimization.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wwidesigner.optimization.OptimizationProgressEvent.Kind;
+import com.wwidesigner.optimization.OptimizationProgressEvent.Stage;
+
+/**
+ * Progress of one optimization, shared by an objective function and all the
+ * copies it makes to evaluate points in parallel.
+ *
+ * Every evaluation is counted, but PROGRESS events are issued at most once
+ * per reporting interval: the evaluating thread that first notices the
+ * interval has passed issues the event, and the others carry on without
+ * waiting. STAGE and MESSAGE events are issued as they occur.
+ *
+ * Events go to the listeners of this object, then to the global listeners,
+ * which receive events from every optimization. Initially, the only global
+ * listener is CONSOLE_LISTENER, which prints MESSAGE events on System.out.
+ *
+ * @author Burton Patkau
+ */
+public class OptimizationProgress
+{
+	public static final long DEFAULT_INTERVAL_MILLIS = 250L;
+
+	/**
+	 * Listener that prints the text of MESSAGE events on System.out, as
+	 * optimizations have always done.
+	 */
+	public static final OptimizationProgressListener CONSOLE_LISTENER
+		= new OptimizationProgressListener()
+	{
+		@Override
+		public void progressUpdated(OptimizationProgressEvent event)
+		{
+			if (event.getKind() == Kind.MESSAGE)
+			{
+				System.out.println(event.getMessage());
+			}
+		}
+	};
+
+	protected static final List<OptimizationProgressListener> globalListeners
+		= new CopyOnWriteArrayList<OptimizationProgressListener>();
+	static
+	{
+		globalListeners.add(CONSOLE_LISTENER);
+	}
+
+	protected final List<OptimizationProgressListener> listeners
+		= new CopyOnWriteArrayList<OptimizationProgressListener>();
+	protected volatile long intervalNanos = DEFAULT_INTERVAL_MILLIS * 1000000L;
+
+	// State of the current optimization.
+	protected final AtomicInteger evaluations = new AtomicInteger();
+	protected final AtomicLong nextReportTime = new AtomicLong();
+	protected volatile long startTime = System.nanoTime();
+	protected volatile double bestNorm = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Add a listener that receives events from every optimization.
+	 */
+	public static void addGlobalListener(OptimizationProgressListener listener)
+	{
+		globalListeners.add(listener);
+	}
+
+	public static void removeGlobalListener(
+			OptimizationProgressListener listener)
+	{
+		globalListeners.remove(listener);
+	}
+
+	/**
+	 * Add a listener that receives events from this optimization only.
+	 */
+	public void addListener(OptimizationProgressListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(OptimizationProgressListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Set the minimum time between PROGRESS events.
+	 *
+	 * @param millis
+	 *            - interval in milliseconds; 0 to report every evaluation.
+	 */
+	public void setReportInterval(long millis)
+	{
+		intervalNanos = Math.max(millis, 0L) * 1000000L;
+	}
+
+	/**
+	 * Clear the evaluation count, best norm and timer, at the start of an
+	 * optimization.
+	 */
+	public void start()
+	{
+		evaluations.set(0);
+		bestNorm = Double.POSITIVE_INFINITY;
+		startTime = System.nanoTime();
+		nextReportTime.set(startTime + intervalNanos);
+	}
+
+	public int getEvaluations()
+	{
+		return evaluations.get();
+	}
+
+	public double getBestNorm()
+	{
+		return bestNorm;
+	}
+
+	/**
+	 * Record one evaluation of the objective function, and issue a PROGRESS
+	 * event if the reporting interval has passed. Safe to call from several
+	 * threads at once.
+	 *
+	 * @param stage
+	 *            - stage of the optimization doing the evaluation
+	 * @param startNr
+	 *            - multi-start number, or 0
+	 * @param point
+	 *            - geometry point evaluated
+	 * @param norm
+	 *            - error norm at point
+	 */
+	public void evaluated(Stage stage, int startNr, double[] point,
+			double norm)
+	{
+		int count = evaluations.incrementAndGet();
+		if (norm < bestNorm)
+		{
+			synchronized (this)
+			{
+				if (norm < bestNorm)
+				{
+					bestNorm = norm;
+				}
+			}
+		}
+		long now = System.nanoTime();
+		long next = nextReportTime.get();
+		if (now - next >= 0
+				&& nextReportTime.compareAndSet(next, now + intervalNanos)
+				&& hasListeners())
+		{
+			fire(newEvent(Kind.PROGRESS, stage, startNr, count, bestNorm,
+					point, now, null));
+		}
+	}
+
+	/**
+	 * Issue a STAGE event, announcing the start of a new stage.
+	 */
+	public void stageStarted(Stage stage, int startNr)
+	{
+		fire(newEvent(Kind.STAGE, stage, startNr, evaluations.get(),
+				bestNorm, null, System.nanoTime(), null));
+	}
+
+	/**
+	 * Issue a STAGE event for the end of the optimization.
+	 *
+	 * @param finalNorm
+	 *            - error norm of the optimized geometry
+	 */
+	public void finished(double finalNorm)
+	{
+		fire(newEvent(Kind.STAGE, Stage.FINISHED, 0, evaluations.get(),
+				finalNorm, null, System.nanoTime(), null));
+	}
+
+	/**
+	 * Issue a MESSAGE event.
+	 */
+	public void message(Stage stage, int startNr, String text)
+	{
+		fire(newEvent(Kind.MESSAGE, stage, startNr, evaluations.get(),
+				bestNorm, null, System.nanoTime(), text));
+	}
+
+	protected boolean hasListeners()
+	{
+		return !listeners.isEmpty() || !globalListeners.isEmpty();
+	}
+
+	protected OptimizationProgressEvent newEvent(Kind kind, Stage stage,
+			int startNr, int count, double norm, double[] point, long now,
+			String text)
+	{
+		long elapsed = now - startTime;
+		double rate = 0.0;
+		if (elapsed > 0)
+		{
+			rate = count * 1.0e9 / elapsed;
+		}
+		return new OptimizationProgressEvent(kind, stage, startNr, count,
+				norm, point, rate, elapsed / 1000000L, text);
+	}
+
+	protected void fire(OptimizationProgressEvent event)
+	{
+		for (OptimizationProgressListener listener : listeners)
+		{
+			listener.progressUpdated(event);
+		}
+		for (OptimizationProgressListener listener : globalListeners)
+		{
+			listener.progressUpdated(event);
+		}
+	}
+}
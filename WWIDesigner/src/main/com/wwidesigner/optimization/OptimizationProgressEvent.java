@@ -0,0 +1,180 @@
+/**
+ * Progress report from a running optimization.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the state of an optimization, delivered to
+ * OptimizationProgressListener objects by an OptimizationProgress.
+ *
+ * @author Burton Patkau
+ */
+public class OptimizationProgressEvent
+{
+	public enum Kind
+	{
+		/** Optimization has entered a new stage. */
+		STAGE,
+		/** Periodic report of evaluations done and best norm so far. */
+		PROGRESS,
+		/** Text summarizing an outcome, formerly printed on System.out. */
+		MESSAGE
+	}
+
+	public enum Stage
+	{
+		/** Calculating the initial error norm. */
+		SETUP,
+		/** DIRECT global optimizer. */
+		DIRECT,
+		/** BOBYQA optimizer, on its own or refining a global optimum. */
+		BOBYQA,
+		/** One start of a multi-start optimization; see getStartNr(). */
+		MULTI_START,
+		/** Brent univariate optimizer. */
+		BRENT,
+		/** Powell optimizer. */
+		POWELL,
+		/** Nelder-Mead simplex optimizer. */
+		SIMPLEX,
+		/** CMA-ES optimizer. */
+		CMAES,
+		/** Optimization is over; the norm is the final error norm. */
+		FINISHED
+	}
+
+	protected final Kind kind;
+	protected final Stage stage;
+	protected final int startNr;
+	protected final int evaluations;
+	protected final double bestNorm;
+	protected final double[] point;
+	protected final double evaluationsPerSecond;
+	protected final long elapsedMillis;
+	protected final String message;
+
+	/**
+	 * @param aKind
+	 *            - what the event reports
+	 * @param aStage
+	 *            - stage of the optimization the event comes from
+	 * @param aStartNr
+	 *            - 1-based start number within a multi-start optimization,
+	 *            or 0 outside of multi-start.
+	 * @param nrEvaluations
+	 *            - error norm evaluations done so far
+	 * @param aBestNorm
+	 *            - lowest error norm found so far
+	 * @param aPoint
+	 *            - geometry point most recently evaluated, or null; the
+	 *            event keeps its own copy.
+	 * @param rate
+	 *            - evaluations per second since the optimization started
+	 * @param elapsed
+	 *            - milliseconds since the optimization started
+	 * @param aMessage
+	 *            - text of a MESSAGE event, or null
+	 */
+	public OptimizationProgressEvent(Kind aKind, Stage aStage, int aStartNr,
+			int nrEvaluations, double aBestNorm, double[] aPoint, double rate,
+			long elapsed, String aMessage)
+	{
+		this.kind = aKind;
+		this.stage = aStage;
+		this.startNr = aStartNr;
+		this.evaluations = nrEvaluations;
+		this.bestNorm = aBestNorm;
+		this.point = aPoint == null ? null : aPoint.clone();
+		this.evaluationsPerSecond = rate;
+		this.elapsedMillis = elapsed;
+		this.message = aMessage;
+	}
+
+	public Kind getKind()
+	{
+		return kind;
+	}
+
+	public Stage getStage()
+	{
+		return stage;
+	}
+
+	public int getStartNr()
+	{
+		return startNr;
+	}
+
+	public int getEvaluations()
+	{
+		return evaluations;
+	}
+
+	public double getBestNorm()
+	{
+		return bestNorm;
+	}
+
+	/**
+	 * @return copy of the geometry point most recently evaluated, or null.
+	 */
+	public double[] getPoint()
+	{
+		return point == null ? null : point.clone();
+	}
+
+	public double getEvaluationsPerSecond()
+	{
+		return evaluationsPerSecond;
+	}
+
+	public long getElapsedMillis()
+	{
+		return elapsedMillis;
+	}
+
+	public String getMessage()
+	{
+		return message;
+	}
+
+	@Override
+	public String toString()
+	{
+		if (kind == Kind.MESSAGE)
+		{
+			return message;
+		}
+		StringBuilder text = new StringBuilder();
+		text.append(stage);
+		if (startNr > 0)
+		{
+			text.append(' ').append(startNr);
+		}
+		text.append(": ").append(evaluations).append(" evaluations, best ")
+				.append(bestNorm);
+		text.append(String.format(", %.1f evaluations/s", evaluationsPerSecond));
+		if (point != null)
+		{
+			text.append(", at ").append(Arrays.toString(point));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * Interface for receiving progress reports from an optimization.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+/**
+ * Receives OptimizationProgressEvent reports from a running optimization.
+ * Events are delivered on the optimization threads, possibly on several
+ * threads at once, so implementations must be thread-safe and must return
+ * promptly: hand the event off rather than doing slow work in
+ * progressUpdated.
+ */
+public interface OptimizationProgressListener
+{
+	void progressUpdated(OptimizationProgressEvent event);
+}
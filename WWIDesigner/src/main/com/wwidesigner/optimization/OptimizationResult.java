@@ -0,0 +1,179 @@
+/**
+ * Outcome and metrics of one optimization run by an OptimizationEngine.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.wwidesigner.geometry.Instrument;
+
+/**
+ * Metrics record for one optimization job: its status, the error norms
+ * before and after, the work done, and the optimized instrument.
+ *
+ * @author Burton Patkau
+ */
+public class OptimizationResult
+{
+	public enum Status
+	{
+		/** Optimization ran to completion. */
+		SUCCEEDED,
+		/** Optimization could not be set up, or failed. */
+		FAILED,
+		/** Job was cancelled; the instrument may be partially optimized. */
+		CANCELLED,
+		/** Time limit expired; the instrument may be partially optimized. */
+		TIMED_OUT
+	}
+
+	protected final String jobName;
+	protected Status status = Status.FAILED;
+	protected String objectiveFunctionName;
+	protected BaseObjectiveFunction.OptimizerType optimizerType;
+	protected int nrDimensions;
+	protected double initialNorm = Double.NaN;
+	protected double finalNorm = Double.NaN;
+	protected int nrEvaluations;
+	protected int nrTunings;
+	protected long elapsedMillis;
+	protected String errorMessage;
+	// Optimized instrument, in its original units, or null if optimization
+	// failed.
+	protected Instrument instrument;
+
+	public OptimizationResult(String aJobName)
+	{
+		this.jobName = aJobName;
+	}
+
+	public String getJobName()
+	{
+		return jobName;
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	public String getObjectiveFunctionName()
+	{
+		return objectiveFunctionName;
+	}
+
+	public BaseObjectiveFunction.OptimizerType getOptimizerType()
+	{
+		return optimizerType;
+	}
+
+	public int getNrDimensions()
+	{
+		return nrDimensions;
+	}
+
+	public double getInitialNorm()
+	{
+		return initialNorm;
+	}
+
+	public double getFinalNorm()
+	{
+		return finalNorm;
+	}
+
+	public double getResidualErrorRatio()
+	{
+		return finalNorm / initialNorm;
+	}
+
+	public int getNumberOfEvaluations()
+	{
+		return nrEvaluations;
+	}
+
+	public int getNumberOfTunings()
+	{
+		return nrTunings;
+	}
+
+	public long getElapsedMillis()
+	{
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return message from the exception that stopped the optimization, or
+	 *         null.
+	 */
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	/**
+	 * @return the optimized instrument, in its original units, or null if
+	 *         the optimization did not produce one.
+	 */
+	public Instrument getInstrument()
+	{
+		return instrument;
+	}
+
+	/**
+	 * Write the metrics as "name: value" lines.
+	 */
+	public void writeMetrics(Writer writer) throws IOException
+	{
+		writer.write("job: " + jobName + "\n");
+		writer.write("status: " + status + "\n");
+		writer.write("objectiveFunction: " + objectiveFunctionName + "\n");
+		writer.write("optimizer: " + optimizerType + "\n");
+		writer.write("dimensions: " + nrDimensions + "\n");
+		writer.write("initialNorm: " + initialNorm + "\n");
+		writer.write("finalNorm: " + finalNorm + "\n");
+		writer.write("residualErrorRatio: " + getResidualErrorRatio() + "\n");
+		writer.write("evaluations: " + nrEvaluations + "\n");
+		writer.write("tunings: " + nrTunings + "\n");
+		writer.write("elapsedMillis: " + elapsedMillis + "\n");
+		if (errorMessage != null)
+		{
+			writer.write("error: " + errorMessage.replace('\n', ' ') + "\n");
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(jobName).append(": ").append(status);
+		if (!Double.isNaN(finalNorm))
+		{
+			buffer.append(", residual error ratio ").append(
+					getResidualErrorRatio());
+		}
+		buffer.append(", ").append(nrEvaluations).append(" evaluations in ")
+				.append(elapsedMillis).append(" ms");
+		if (errorMessage != null)
+		{
+			buffer.append(", ").append(errorMessage);
+		}
+		return buffer.toString();
+	}
+}
@@ -28,7 +28,7 @@ import com.wwidesigner.modelling.EvaluatorInterface;
 import com.wwidesigner.modelling.InstrumentCalculator;
 import com.wwidesigner.note.TuningInterface;
 import com.wwidesigner.optimization.Constraint.ConstraintType;
-import com.wwidesigner.util.SortedPositionList;
+import com.wwidesigner.util.PositionIndex;
 
 /**
  * Optimization objective function for position of the flute stopper, the
@@ -114,7 +114,7 @@ public class StopperPositionObjectiveFunction extends BaseObjectiveFunction
 		}
 
 		Mouthpiece mouthpiece = calculator.getInstrument().getMouthpiece();
-		SortedPositionList<BorePoint> boreList = new SortedPositionList<BorePoint>(
+		PositionIndex<BorePoint> boreList = new PositionIndex<BorePoint>(
 				calculator.getInstrument().getBorePoint());
 		double newTopPosition = mouthpiece.getPosition() - point[0];
 		if (mouthpiece.getEmbouchureHole() != null)
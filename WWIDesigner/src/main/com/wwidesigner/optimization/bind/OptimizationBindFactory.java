@@ -13,7 +13,7 @@ public class OptimizationBindFactory extends BindFactory
 
 	}
 
-	public static BindFactory getInstance()
+	public static synchronized BindFactory getInstance()
 	{
 		if (instance == null)
 		{
@@ -0,0 +1,212 @@
+/**
+ * Immutable snapshot of the air properties used by the acoustic model.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.util;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * The properties of the air that the component calculators use, taken from
+ * a PhysicalParameters object when its properties are set.  PhysicalParameters
+ * issues a new AirState each time its properties change, and never changes an
+ * AirState it has issued, so calculators may hold on to one and share it
+ * between threads.  Copies of a PhysicalParameters get their own AirState;
+ * use hasSameAcoustics() to tell whether two give the same results.
+ *
+ * The wave-number terms are computed in the same order as the corresponding
+ * PhysicalParameters methods, so they give identical results.  Because all
+ * the components of an instrument are evaluated at the same wave number,
+ * the loss terms for the most recent wave number are remembered, and reused
+ * by the next component.
+ *
+ * @author Burton Patkau
+ */
+public final class AirState
+{
+	/**
+	 * Loss terms for one wave number.
+	 */
+	private static final class LossTerms
+	{
+		final double waveNumber;
+		final double sqrtWaveNumber;
+		// alphaConstant / sqrt(waveNumber).
+		final double lossFactor;
+
+		LossTerms(double aWaveNumber, double alphaConstant)
+		{
+			waveNumber = aWaveNumber;
+			sqrtWaveNumber = FastMath.sqrt(aWaveNumber);
+			lossFactor = alphaConstant / sqrtWaveNumber;
+		}
+	}
+
+	private final double temperature;
+	private final double rho;
+	private final double speedOfSound;
+	// rho * c, the numerator of the characteristic impedance.
+	private final double rhoC;
+	private final double alphaConstant;
+	private final double epsilonConstant;
+	private final double waveNumber1;
+
+	// Loss terms for the most recent wave number.  Replaced, never modified,
+	// so a thread that reads a stale value merely recomputes it.
+	private volatile LossTerms lastLoss;
+
+	AirState(double aTemperature, double aRho, double aSpeedOfSound,
+			double anAlphaConstant, double anEpsilonConstant,
+			double aWaveNumber1)
+	{
+		temperature = aTemperature;
+		rho = aRho;
+		speedOfSound = aSpeedOfSound;
+		rhoC = aRho * aSpeedOfSound;
+		alphaConstant = anAlphaConstant;
+		epsilonConstant = anEpsilonConstant;
+		waveNumber1 = aWaveNumber1;
+		lastLoss = new LossTerms(1.0, anAlphaConstant);
+	}
+
+	/**
+	 * Create a copy of another AirState, with its own memory of recent
+	 * loss terms, for use on a different thread.
+	 */
+	AirState(AirState other)
+	{
+		this(other.temperature, other.rho, other.speedOfSound,
+				other.alphaConstant, other.epsilonConstant, other.waveNumber1);
+	}
+
+	/**
+	 * @return true if this AirState gives the same acoustic results
+	 *         as another.
+	 */
+	public boolean hasSameAcoustics(AirState other)
+	{
+		return other == this
+				|| (other != null && other.rho == rho
+						&& other.speedOfSound == speedOfSound
+						&& other.alphaConstant == alphaConstant);
+	}
+
+	/**
+	 * @return temperature, in Celsius
+	 */
+	public double getTemperature()
+	{
+		return temperature;
+	}
+
+	/**
+	 * @return the air density, in kg/m^3
+	 */
+	public double getRho()
+	{
+		return rho;
+	}
+
+	/**
+	 * @return the speed of sound, in m/s.
+	 */
+	public double getSpeedOfSound()
+	{
+		return speedOfSound;
+	}
+
+	/**
+	 * @return rho * c, in kg/(m^2.s); the characteristic impedance of a
+	 *         bore is this divided by its cross-sectional area.
+	 */
+	public double getRhoC()
+	{
+		return rhoC;
+	}
+
+	public double getAlphaConstant()
+	{
+		return alphaConstant;
+	}
+
+	public double getEpsilonConstant()
+	{
+		return epsilonConstant;
+	}
+
+	/**
+	 * Calculate the wave number, in radians/meter, for a frequency in Hz.
+	 */
+	public double calcWaveNumber(double freq)
+	{
+		return freq * waveNumber1;
+	}
+
+	/**
+	 * Calculate the frequency, in Hz, for a wave number in radians/meter.
+	 */
+	public double calcFrequency(double waveNumber)
+	{
+		return waveNumber / waveNumber1;
+	}
+
+	/**
+	 * Calculate the wave impedance, in kg/(m^4.s), of a bore of nominal
+	 * radius r.
+	 */
+	public double calcZ0(double radius)
+	{
+		return rhoC / (Math.PI * radius * radius);
+	}
+
+	/**
+	 * Calculate the wave impedance, in kg/(m^4.s), of a bore with a given
+	 * cross-sectional area, Math.PI * radius * radius.
+	 */
+	public double calcZ0FromArea(double area)
+	{
+		return rhoC / area;
+	}
+
+	/**
+	 * @return sqrt(waveNumber)
+	 */
+	public double getSqrtWaveNumber(double waveNumber)
+	{
+		return lossTerms(waveNumber).sqrtWaveNumber;
+	}
+
+	/**
+	 * @return alphaConstant / sqrt(waveNumber), the wall loss term
+	 *         that is divided by the radius to give epsilon.
+	 */
+	public double getLossFactor(double waveNumber)
+	{
+		return lossTerms(waveNumber).lossFactor;
+	}
+
+	private LossTerms lossTerms(double waveNumber)
+	{
+		LossTerms terms = lastLoss;
+		if (terms.waveNumber != waveNumber)
+		{
+			terms = new LossTerms(waveNumber, alphaConstant);
+			lastLoss = terms;
+		}
+		return terms;
+	}
+}
@@ -20,18 +20,26 @@ package com.wwidesigner.util;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.Writer;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
@@ -41,6 +49,12 @@ import org.dozer.DozerBeanMapperSingletonWrapper;
 import org.dozer.Mapper;
 
 /**
+ * Base class for the singleton factories that read and write the XML files
+ * of one bind package.  The JAXB context and the compiled schema are created
+ * once, on first use, and kept for the life of the factory.  Marshallers and
+ * unmarshallers are not thread-safe, so each call borrows one from a pool,
+ * which lets several threads load or save files at the same time.
+ * 
  * @author kort
  * 
  */
@@ -63,8 +77,33 @@ public abstract class BindFactory
 
 	protected String packagePath;
 	protected String schema;
-	private static BufferedReader reader;
-	private Writer writer;
+
+	private volatile JAXBContext context;
+	private volatile Schema compiledSchema;
+	private volatile boolean schemaLoaded = false;
+	private final Queue<Unmarshaller> unmarshallers
+			= new ConcurrentLinkedQueue<Unmarshaller>();
+	private final Queue<Unmarshaller> nonValidatingUnmarshallers
+			= new ConcurrentLinkedQueue<Unmarshaller>();
+	private final Queue<Marshaller> marshallers
+			= new ConcurrentLinkedQueue<Marshaller>();
+	private static volatile Mapper mapper;
+
+	// StAX factories are not guaranteed to be thread-safe.
+	private static final ThreadLocal<XMLInputFactory> inputFactory
+			= new ThreadLocal<XMLInputFactory>()
+	{
+		@Override
+		protected XMLInputFactory initialValue()
+		{
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(
+					XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+					Boolean.FALSE);
+			return factory;
+		}
+	};
 
 	public BindFactory()
 	{
@@ -100,15 +139,19 @@ public abstract class BindFactory
 	public Object unmarshalXml(String xmlString, boolean toDomainObject)
 			throws Exception
 	{
-		JAXBContext jc = JAXBContext.newInstance(packagePath);
-		Unmarshaller unmarshaller = jc.createUnmarshaller();
-
-		// Do validation
-		unmarshaller.setSchema(getSchema());
-
-		StreamSource strmSource = new StreamSource(new StringReader(xmlString));
-		Object bindObject = ((JAXBElement<?>) unmarshaller
-				.unmarshal(strmSource)).getValue();
+		Unmarshaller unmarshaller = borrowUnmarshaller(true);
+		Object bindObject;
+		try
+		{
+			StreamSource strmSource = new StreamSource(new StringReader(
+					xmlString));
+			bindObject = ((JAXBElement<?>) unmarshaller.unmarshal(strmSource))
+					.getValue();
+		}
+		finally
+		{
+			returnUnmarshaller(unmarshaller, true);
+		}
 
 		if (!toDomainObject)
 		{
@@ -126,6 +169,86 @@ public abstract class BindFactory
 		return unmarshalXml(xmlString, toDomainObject);
 	}
 
+	/**
+	 * Read an XML file as a stream, without first reading it into a String.
+	 * 
+	 * @param inputFile
+	 * @param toDomainObject
+	 *            - if true, return the domain object; if false, the bind
+	 *            object.
+	 * @param validate
+	 *            - if true, validate the XML against the schema.
+	 */
+	public Object unmarshalXml(File inputFile, boolean toDomainObject,
+			boolean validate) throws Exception
+	{
+		InputStream stream = new FileInputStream(inputFile);
+		try
+		{
+			XMLStreamReader reader = createStreamReader(stream);
+			try
+			{
+				return unmarshalXml(reader, toDomainObject, validate);
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Unmarshal the element at the current position of a StAX reader.
+	 * 
+	 * @param reader
+	 *            - positioned at the start of the document, or at the start
+	 *            of the root element.
+	 * @param toDomainObject
+	 *            - if true, return the domain object; if false, the bind
+	 *            object.
+	 * @param validate
+	 *            - if true, validate the XML against the schema.
+	 */
+	public Object unmarshalXml(XMLStreamReader reader, boolean toDomainObject,
+			boolean validate) throws Exception
+	{
+		Unmarshaller unmarshaller = borrowUnmarshaller(validate);
+		Object bindObject;
+		try
+		{
+			bindObject = unmarshaller.unmarshal(reader);
+		}
+		finally
+		{
+			returnUnmarshaller(unmarshaller, validate);
+		}
+		if (bindObject instanceof JAXBElement)
+		{
+			bindObject = ((JAXBElement<?>) bindObject).getValue();
+		}
+
+		if (!toDomainObject)
+		{
+			return bindObject;
+		}
+
+		return mapObject(bindObject, bindToDomainMap);
+	}
+
+	/**
+	 * Create a StAX reader for an XML stream.  DTDs and external entities are
+	 * not processed.
+	 */
+	public static XMLStreamReader createStreamReader(InputStream stream)
+			throws XMLStreamException
+	{
+		return inputFactory.get().createXMLStreamReader(stream);
+	}
+
 	public void marshalToXml(Object input, String outputXmlName)
 			throws Exception
 	{
@@ -140,18 +263,104 @@ public abstract class BindFactory
 		{
 			mappedInput = input;
 		}
-		JAXBContext context = JAXBContext.newInstance(mappedInput.getClass());
-		Marshaller marshaller = context.createMarshaller();
-		marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-		marshaller.setSchema(getSchema());
-		marshaller.marshal(createElement(mappedInput), aWriter);
-
+		Marshaller marshaller = borrowMarshaller();
+		try
+		{
+			marshaller.marshal(createElement(mappedInput), aWriter);
+		}
+		finally
+		{
+			marshallers.offer(marshaller);
+		}
 	}
 
 	public void marshalToXml(Object input, File outputXml) throws Exception
 	{
-		writer = new FileWriter(outputXml);
-		marshalToXml(input, writer);
+		Writer writer = new FileWriter(outputXml);
+		try
+		{
+			marshalToXml(input, writer);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return the JAXB context for this factory's bind package, creating it
+	 *         on first use.
+	 */
+	protected JAXBContext getContext() throws JAXBException
+	{
+		JAXBContext jc = context;
+		if (jc == null)
+		{
+			synchronized (this)
+			{
+				jc = context;
+				if (jc == null)
+				{
+					jc = JAXBContext.newInstance(packagePath);
+					context = jc;
+				}
+			}
+		}
+		return jc;
+	}
+
+	/**
+	 * Take an unmarshaller from the pool, or create one if the pool is empty.
+	 * The caller must return it with returnUnmarshaller when done.
+	 * 
+	 * @param validate
+	 *            - if true, the unmarshaller validates against the schema.
+	 */
+	private Unmarshaller borrowUnmarshaller(boolean validate)
+			throws JAXBException
+	{
+		Queue<Unmarshaller> pool = validate ? unmarshallers
+				: nonValidatingUnmarshallers;
+		Unmarshaller unmarshaller = pool.poll();
+		if (unmarshaller == null)
+		{
+			unmarshaller = getContext().createUnmarshaller();
+			if (validate)
+			{
+				unmarshaller.setSchema(getSchema());
+			}
+		}
+		return unmarshaller;
+	}
+
+	private void returnUnmarshaller(Unmarshaller unmarshaller,
+			boolean validate)
+	{
+		if (validate)
+		{
+			unmarshallers.offer(unmarshaller);
+		}
+		else
+		{
+			nonValidatingUnmarshallers.offer(unmarshaller);
+		}
+	}
+
+	/**
+	 * Take a validating, formatting marshaller from the pool, or create one
+	 * if the pool is empty.  The caller must return it to the pool when done.
+	 */
+	private Marshaller borrowMarshaller() throws JAXBException
+	{
+		Marshaller marshaller = marshallers.poll();
+		if (marshaller == null)
+		{
+			marshaller = getContext().createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT,
+					Boolean.TRUE);
+			marshaller.setSchema(getSchema());
+		}
+		return marshaller;
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
@@ -165,24 +374,42 @@ public abstract class BindFactory
 			return null;
 		}
 
-		Mapper mapper = DozerBeanMapperSingletonWrapper.getInstance();
+		if (mapper == null)
+		{
+			mapper = DozerBeanMapperSingletonWrapper.getInstance();
+		}
 		Object destination = mapper.map(source, destinationClass);
 
 		return destination;
 	}
 
+	/**
+	 * @return the compiled schema for this factory's XML files, compiling it
+	 *         on first use, or null if the schema cannot be loaded.
+	 */
 	private Schema getSchema()
 	{
-		try
+		if (!schemaLoaded)
 		{
-			SchemaFactory sf = SchemaFactory
-					.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-			return sf.newSchema(getFileFromName(schema));
-		}
-		catch (Exception ex)
-		{
-			return null;
+			synchronized (this)
+			{
+				if (!schemaLoaded)
+				{
+					try
+					{
+						SchemaFactory sf = SchemaFactory
+								.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+						compiledSchema = sf.newSchema(getFileFromName(schema));
+					}
+					catch (Exception ex)
+					{
+						compiledSchema = null;
+					}
+					schemaLoaded = true;
+				}
+			}
 		}
+		return compiledSchema;
 	}
 
 	public static String getPathFromName(String name)
@@ -235,14 +462,20 @@ public abstract class BindFactory
 
 	public static String readFile(File inputFile) throws Exception
 	{
-		reader = new BufferedReader(new FileReader(inputFile));
+		BufferedReader reader = new BufferedReader(new FileReader(inputFile));
 		String str;
 		StringBuilder strBuilder = new StringBuilder();
-		while ((str = reader.readLine()) != null)
+		try
+		{
+			while ((str = reader.readLine()) != null)
+			{
+				strBuilder.append(str).append('\n');
+			}
+		}
+		finally
 		{
-			strBuilder.append(str + "\n");
+			reader.close();
 		}
-		reader.close();
 
 		return strBuilder.toString();
 	}
@@ -0,0 +1,429 @@
+/**
+ * Load instrument, tuning and constraints files in bulk.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamReader;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.note.bind.NoteBindFactory;
+import com.wwidesigner.optimization.Constraints;
+import com.wwidesigner.optimization.bind.OptimizationBindFactory;
+
+/**
+ * Loads a collection of XML files, such as a library of instruments and
+ * tunings, into domain objects.  Each file is streamed through a StAX
+ * reader, and the bind factory is chosen from the namespace of its root
+ * element, so the caller need not know what each file contains.  Files are
+ * loaded in parallel, schema validation is optional, and a file that
+ * cannot be loaded is reported in its result rather than stopping the
+ * batch.
+ *
+ * @author Burton Patkau
+ */
+public class BulkLoader
+{
+	public static final String INSTRUMENT_NAMESPACE = "http://www.wwidesigner.com/Instrument";
+	public static final String TUNING_NAMESPACE = "http://www.wwidesigner.com/Tuning";
+	public static final String CONSTRAINTS_NAMESPACE = "http://www.wwidesigner.com/Constraints";
+
+	// Number of threads to load files; values less than 1 use all
+	// available processors.
+	protected int nrThreads = 0;
+	protected boolean validate = true;
+	protected String suffix = ".xml";
+
+	/**
+	 * Outcome of loading one file: either the domain object, or the
+	 * exception that prevented loading it.
+	 */
+	public static class Result
+	{
+		protected final File file;
+		protected final Object object;
+		protected final Exception error;
+
+		public Result(File aFile, Object aObject, Exception aError)
+		{
+			this.file = aFile;
+			this.object = aObject;
+			this.error = aError;
+		}
+
+		public File getFile()
+		{
+			return file;
+		}
+
+		/**
+		 * @return the domain object loaded, or null if loading failed.
+		 */
+		public Object getObject()
+		{
+			return object;
+		}
+
+		/**
+		 * @return the exception that prevented loading, or null if loading
+		 *         succeeded.
+		 */
+		public Exception getError()
+		{
+			return error;
+		}
+
+		public boolean isSuccess()
+		{
+			return error == null;
+		}
+
+		/**
+		 * @return the instrument loaded, or null if the file did not hold a
+		 *         valid instrument.
+		 */
+		public Instrument getInstrument()
+		{
+			if (object instanceof Instrument)
+			{
+				return (Instrument) object;
+			}
+			return null;
+		}
+
+		/**
+		 * @return the tuning loaded, or null if the file did not hold a
+		 *         valid tuning.
+		 */
+		public Tuning getTuning()
+		{
+			if (object instanceof Tuning)
+			{
+				return (Tuning) object;
+			}
+			return null;
+		}
+
+		/**
+		 * @return the constraints loaded, or null if the file did not hold
+		 *         valid constraints.
+		 */
+		public Constraints getConstraints()
+		{
+			if (object instanceof Constraints)
+			{
+				return (Constraints) object;
+			}
+			return null;
+		}
+
+		@Override
+		public String toString()
+		{
+			if (error != null)
+			{
+				return file.getPath() + ": " + error.toString();
+			}
+			return file.getPath() + ": "
+					+ object.getClass().getSimpleName();
+		}
+	}
+
+	public int getNrThreads()
+	{
+		return nrThreads;
+	}
+
+	/**
+	 * Set the number of threads used to load files.
+	 *
+	 * @param aNrThreads
+	 *            - number of threads; less than 1 to use all available
+	 *            processors.
+	 */
+	public void setNrThreads(int aNrThreads)
+	{
+		this.nrThreads = aNrThreads;
+	}
+
+	public boolean isValidate()
+	{
+		return validate;
+	}
+
+	/**
+	 * Specify whether files are validated against their schema.  Skipping
+	 * validation is faster, but errors in a file may go undetected.
+	 */
+	public void setValidate(boolean aValidate)
+	{
+		this.validate = aValidate;
+	}
+
+	public String getSuffix()
+	{
+		return suffix;
+	}
+
+	/**
+	 * Set the file name suffix of the files to load from a directory tree.
+	 *
+	 * @param aSuffix
+	 *            - suffix, compared without regard to case; null or empty
+	 *            to load all files.
+	 */
+	public void setSuffix(String aSuffix)
+	{
+		this.suffix = aSuffix;
+	}
+
+	/**
+	 * Load all files with the selected suffix in a directory tree.
+	 *
+	 * @param root
+	 *            - a directory, or a single file.
+	 * @return one result per file, in order of path name.
+	 */
+	public List<Result> load(File root) throws FileNotFoundException
+	{
+		if (!root.exists())
+		{
+			throw new FileNotFoundException(root.getPath() + " not found.");
+		}
+		List<File> files = new ArrayList<File>();
+		findFiles(root, files);
+		return load(files);
+	}
+
+	/**
+	 * Load a list of files.
+	 *
+	 * @return one result per file, in the order of the list.
+	 */
+	public List<Result> load(List<File> files)
+	{
+		int threads = nrThreads;
+		if (threads < 1)
+		{
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		threads = Math.max(1, Math.min(threads, files.size()));
+		if (threads == 1)
+		{
+			List<Result> results = new ArrayList<Result>(files.size());
+			for (File file : files)
+			{
+				results.add(loadFile(file));
+			}
+			return results;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<Result>> futures = new ArrayList<Future<Result>>(
+					files.size());
+			for (final File file : files)
+			{
+				futures.add(executor.submit(new Callable<Result>()
+				{
+					@Override
+					public Result call()
+					{
+						return loadFile(file);
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<Result>(files.size());
+			for (int i = 0; i < files.size(); ++i)
+			{
+				Result result;
+				try
+				{
+					result = futures.get(i).get();
+				}
+				catch (ExecutionException e)
+				{
+					result = new Result(files.get(i), null, new Exception(
+							e.getCause()));
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new OperationCancelledException(
+							"Loading interrupted.");
+				}
+				results.add(result);
+			}
+			return results;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Load a single file, choosing the bind factory from the namespace of
+	 * its root element.
+	 *
+	 * @return the result of loading the file; never throws an exception.
+	 */
+	public Result loadFile(File file)
+	{
+		try
+		{
+			InputStream stream = new FileInputStream(file);
+			try
+			{
+				XMLStreamReader reader = BindFactory.createStreamReader(stream);
+				try
+				{
+					reader.nextTag();
+					String rootName = reader.getLocalName();
+					BindFactory factory = getBindFactory(reader
+							.getNamespaceURI());
+					if (factory == null)
+					{
+						throw new Exception("Unrecognized root element <"
+								+ rootName + "> in namespace "
+								+ reader.getNamespaceURI());
+					}
+					Object object = factory.unmarshalXml(reader, true,
+							validate);
+					if (object == null)
+					{
+						throw new Exception("No domain object for <"
+								+ rootName + ">");
+					}
+					prepare(object);
+					return new Result(file, object, null);
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+			finally
+			{
+				stream.close();
+			}
+		}
+		catch (Exception e)
+		{
+			return new Result(file, null, e);
+		}
+	}
+
+	/**
+	 * @return the bind factory for XML files in a specified namespace, or
+	 *         null if the namespace is not recognized.
+	 */
+	public static BindFactory getBindFactory(String namespace)
+	{
+		if (INSTRUMENT_NAMESPACE.equals(namespace))
+		{
+			return GeometryBindFactory.getInstance();
+		}
+		if (TUNING_NAMESPACE.equals(namespace))
+		{
+			return NoteBindFactory.getInstance();
+		}
+		if (CONSTRAINTS_NAMESPACE.equals(namespace))
+		{
+			return OptimizationBindFactory.getInstance();
+		}
+		return null;
+	}
+
+	/**
+	 * Complete the set-up of a newly loaded domain object, as the study
+	 * models do when they read a file.
+	 */
+	protected void prepare(Object object)
+	{
+		if (object instanceof Instrument)
+		{
+			((Instrument) object).updateComponents();
+		}
+		else if (object instanceof Constraints)
+		{
+			((Constraints) object).setConstraintParent();
+		}
+	}
+
+	/**
+	 * Add the files in a directory tree that have the selected suffix to a
+	 * list, in order of path name.
+	 */
+	protected void findFiles(File root, List<File> files)
+	{
+		if (!root.isDirectory())
+		{
+			files.add(root);
+			return;
+		}
+		File[] entries = root.listFiles();
+		if (entries == null)
+		{
+			return;
+		}
+		Arrays.sort(entries);
+		List<File> subdirectories = new ArrayList<File>();
+		for (File entry : entries)
+		{
+			if (entry.isDirectory())
+			{
+				subdirectories.add(entry);
+			}
+			else if (hasSuffix(entry))
+			{
+				files.add(entry);
+			}
+		}
+		for (File subdirectory : subdirectories)
+		{
+			findFiles(subdirectory, files);
+		}
+	}
+
+	protected boolean hasSuffix(File file)
+	{
+		if (suffix == null || suffix.isEmpty())
+		{
+			return true;
+		}
+		String name = file.getName();
+		return name.regionMatches(true, name.length() - suffix.length(),
+				suffix, 0, suffix.length());
+	}
+}
@@ -70,6 +70,10 @@ public class PhysicalParameters
 	// Wave number, k, at 1 Hz: 2*pi/c, in radians per metre.
 	private double mWaveNumber1;
 
+	// Immutable snapshot of the properties above, replaced whenever
+	// they change.
+	private volatile AirState mAirState;
+
 	private static final double R    = 8.314472d;		// Universal gas constant J/mol K.
 	private static final double Ma0  = 28.960745d;		// Standard molar mass of CO2-free dry air, kg/kmol.
 	private static final double Mco2 = 44.0100d;		// Standard molar mass of CO2.
@@ -107,6 +111,32 @@ public class PhysicalParameters
 		}
 		setProperties(celsius, pressure, relHumidity, xCO2);
 	}
+
+	/** Create a copy of an existing set of physical parameters,
+	 * without re-calculating the properties of the air.
+	 * @param params - physical parameters to copy
+	 */
+	public PhysicalParameters(PhysicalParameters params)
+	{
+		mTemperature = params.mTemperature;
+		mPressure = params.mPressure;
+		m_xv = params.m_xv;
+		m_xCO2 = params.m_xCO2;
+		mHumidity = params.mHumidity;
+		mRho = params.mRho;
+		mEta = params.mEta;
+		mSpecificHeat = params.mSpecificHeat;
+		mGamma = params.mGamma;
+		mKappa = params.mKappa;
+		mPrandtl = params.mPrandtl;
+		mSpeedOfSound = params.mSpeedOfSound;
+		mEpsilonConstant = params.mEpsilonConstant;
+		mAlphaConstant = params.mAlphaConstant;
+		mWaveNumber1 = params.mWaveNumber1;
+		// The copy gets its own snapshot, so that copies used on different
+		// threads do not share the snapshot's memory of recent wave numbers.
+		mAirState = new AirState(params.mAirState);
+	}
 		
 	/** Set the physical parameters of the air in the instrument,
 	 * from specified properties.
@@ -202,7 +232,19 @@ public class PhysicalParameters
 				* (1.0 + (mGamma - 1.0) / Math.sqrt(mPrandtl));
 
 		mWaveNumber1 = 2.0 * Math.PI / mSpeedOfSound;
+
+		mAirState = new AirState(mTemperature, mRho, mSpeedOfSound,
+				mAlphaConstant, mEpsilonConstant, mWaveNumber1);
 	} // setProperties
+
+	/**
+	 * @return immutable snapshot of the current properties of the air.
+	 * A new snapshot is issued each time setProperties() is called.
+	 */
+	public AirState getAirState()
+	{
+		return mAirState;
+	}
 	
 	/**
 	 * Compute the actual air pressure, in kPa, at specified elevation,
@@ -291,6 +333,16 @@ public class PhysicalParameters
 		// Wave impedance of a bore, nominal radius r.
 	}
 
+	/**
+	 * Calculate the wave impedance, in kg/(m^4.s), of a bore with a given
+	 * cross-sectional area, Math.PI * radius * radius.  Gives the same result
+	 * as calcZ0(radius), for callers that have the area precomputed.
+	 */
+	public double calcZ0FromArea(double area)
+	{
+		return mRho * mSpeedOfSound / area;
+	}
+
 	public String toString()
 	{
 		StringBuffer buf = new StringBuffer();
@@ -0,0 +1,275 @@
+/**
+ * Array-backed list of positioned elements, sorted by bore position.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import com.wwidesigner.geometry.PositionInterface;
+
+/**
+ * A list of BorePoints, Holes or other positioned elements, sorted by
+ * increasing bore position.  The list is sorted once, when it is built;
+ * elements with equal positions keep their original order.
+ *
+ * The positions are held in an array parallel to the elements, so that
+ * headSize() can find the elements before a given position by binary
+ * search.  They are read when an element is added; if the position of an
+ * element changes, call refreshPosition() to keep the list consistent.
+ *
+ * Besides the read-only List methods, the list supports the operations
+ * Instrument needs to build its components: adding an element in position
+ * order, and removing an element.  Both are cheap near the start of
+ * the list.  As in LinkedList, getFirst(), getLast() and removeFirst() throw
+ * NoSuchElementException on an empty list; the optimizers treat this as an
+ * invalid geometry.
+ *
+ * @author Burton Patkau
+ */
+public class PositionIndex<T extends PositionInterface> extends AbstractList<T>
+		implements RandomAccess
+{
+	/**
+	 * Orders elements by increasing bore position.
+	 */
+	public static final Comparator<PositionInterface> POSITION_ORDER = new Comparator<PositionInterface>()
+	{
+		@Override
+		public int compare(PositionInterface first, PositionInterface second)
+		{
+			double firstPosition = first.getBorePosition();
+			double secondPosition = second.getBorePosition();
+			if (firstPosition < secondPosition)
+			{
+				return -1;
+			}
+			if (firstPosition > secondPosition)
+			{
+				return 1;
+			}
+			return 0;
+		}
+	};
+
+	// Elements in use are elements[start] through elements[end - 1].
+	protected PositionInterface[] elements;
+	protected double[] positions;
+	protected int start;
+	protected int end;
+
+	/**
+	 * Create a list of the supplied elements, sorted by position.
+	 */
+	public PositionIndex(Collection<? extends T> collection)
+	{
+		int nrElements = (collection == null ? 0 : collection.size());
+		// Leave room to add a few elements without re-allocating.
+		elements = new PositionInterface[nrElements + 4];
+		positions = new double[elements.length];
+		start = 0;
+		end = 0;
+		if (collection != null)
+		{
+			for (T element : collection)
+			{
+				elements[end++] = element;
+			}
+		}
+		Arrays.sort(elements, 0, end, POSITION_ORDER);
+		for (int i = 0; i < end; ++i)
+		{
+			positions[i] = elements[i].getBorePosition();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index)
+	{
+		if (index < 0 || index >= end - start)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + (end - start));
+		}
+		return (T) elements[start + index];
+	}
+
+	@Override
+	public int size()
+	{
+		return end - start;
+	}
+
+	public T getFirst()
+	{
+		if (end == start)
+		{
+			throw new NoSuchElementException();
+		}
+		return get(0);
+	}
+
+	public T getLast()
+	{
+		if (end == start)
+		{
+			throw new NoSuchElementException();
+		}
+		return get(end - start - 1);
+	}
+
+	/**
+	 * @return position of an element, as of when it was added or
+	 *         refreshed.
+	 */
+	public double getPosition(int index)
+	{
+		get(index);
+		return positions[start + index];
+	}
+
+	/**
+	 * @return number of elements at the start of the list with a position
+	 *         less than maxExclusivePosition.
+	 */
+	public int headSize(double maxExclusivePosition)
+	{
+		// Binary search for the first position >= maxExclusivePosition.
+		int low = start;
+		int high = end;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (positions[mid] < maxExclusivePosition)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low - start;
+	}
+
+	/**
+	 * Add an element in position order, after any elements with the same
+	 * position.
+	 */
+	@Override
+	public boolean add(T element)
+	{
+		double position = element.getBorePosition();
+		// Binary search for the first position > position.
+		int low = start;
+		int high = end;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (positions[mid] <= position)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		int insertAt = low;
+		if (start > 0)
+		{
+			// Shift the elements before the insertion point towards the
+			// front, into space left by removeFirst().
+			System.arraycopy(elements, start, elements, start - 1, insertAt
+					- start);
+			System.arraycopy(positions, start, positions, start - 1, insertAt
+					- start);
+			--start;
+			--insertAt;
+		}
+		else
+		{
+			if (end == elements.length)
+			{
+				int newLength = 2 * elements.length + 1;
+				elements = Arrays.copyOf(elements, newLength);
+				positions = Arrays.copyOf(positions, newLength);
+			}
+			System.arraycopy(elements, insertAt, elements, insertAt + 1, end
+					- insertAt);
+			System.arraycopy(positions, insertAt, positions, insertAt + 1, end
+					- insertAt);
+			++end;
+		}
+		elements[insertAt] = element;
+		positions[insertAt] = position;
+		++modCount;
+		return true;
+	}
+
+	/**
+	 * Remove and return the first element.
+	 */
+	public T removeFirst()
+	{
+		T first = getFirst();
+		elements[start] = null;
+		++start;
+		++modCount;
+		return first;
+	}
+
+	/**
+	 * Remove a specified element, identified by reference.
+	 * @return true if the element was in the list.
+	 */
+	@Override
+	public boolean remove(Object element)
+	{
+		for (int i = start; i < end; ++i)
+		{
+			if (elements[i] == element)
+			{
+				// Close the gap by shifting the elements before it.
+				System.arraycopy(elements, start, elements, start + 1, i
+						- start);
+				System.arraycopy(positions, start, positions, start + 1, i
+						- start);
+				elements[start] = null;
+				++start;
+				++modCount;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Re-read the position of an element, after the element has been moved.
+	 * The element must not move past its neighbours.
+	 */
+	public void refreshPosition(int index)
+	{
+		positions[start + index] = get(index).getBorePosition();
+	}
+}
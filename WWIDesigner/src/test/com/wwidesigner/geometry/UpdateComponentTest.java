@@ -3,6 +3,9 @@
  */
 package com.wwidesigner.geometry;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -165,6 +168,166 @@ public class UpdateComponentTest
 		}
 	}
 
+	/**
+	 * Changing dimensions without changing the order of positions updates
+	 * the existing components, with the same results as a rebuild.
+	 */
+	@Test
+	public final void testInPlaceUpdate()
+	{
+		try
+		{
+			inputInstrumentXML = "com/wwidesigner/optimization/example/6HoleNAF1.xml";
+			Instrument instrument = getInstrumentFromXml();
+			instrument.convertToMetres();
+			instrument.updateComponents();
+			List<ComponentInterface> components = instrument.components;
+			int firstVersion = instrument.getGeometryVersion();
+
+			// Nothing changed: no component has a new version.
+			instrument.updateComponents();
+			assertSame("Components rebuilt", components, instrument.components);
+			for (int i = 0; i < components.size(); ++i)
+			{
+				assertEquals("Component " + i + " version", firstVersion,
+						instrument.getComponentVersion(i));
+			}
+
+			// Move and resize holes, and reshape the bore.
+			for (Hole hole : instrument.getHole())
+			{
+				hole.setBorePosition(hole.getBorePosition() + 0.001);
+				hole.setDiameter(hole.getDiameter() * 1.05);
+			}
+			BorePoint lastPoint = instrument.getBorePoint().get(
+					instrument.getBorePoint().size() - 1);
+			lastPoint.setBorePosition(lastPoint.getBorePosition() + 0.002);
+			lastPoint.setBoreDiameter(lastPoint.getBoreDiameter() * 0.98);
+			instrument.updateComponents();
+			assertSame("Components rebuilt", components, instrument.components);
+			assertSameComponents(instrument);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Changing the order of positions rebuilds the components.
+	 */
+	@Test
+	public final void testRebuildOnReorder()
+	{
+		try
+		{
+			inputInstrumentXML = "com/wwidesigner/optimization/example/6HoleNAF1.xml";
+			Instrument instrument = getInstrumentFromXml();
+			instrument.convertToMetres();
+			instrument.updateComponents();
+			List<ComponentInterface> components = instrument.components;
+
+			// Swap the positions of two holes.
+			Hole hole0 = instrument.getHole().get(0);
+			Hole hole1 = instrument.getHole().get(1);
+			double position = hole0.getBorePosition();
+			hole0.setBorePosition(hole1.getBorePosition());
+			hole1.setBorePosition(position);
+			instrument.updateComponents();
+			assertNotSame("Components not rebuilt", components,
+					instrument.components);
+			assertSameComponents(instrument);
+
+			// Add a bore point.
+			components = instrument.components;
+			BorePoint newPoint = new BorePoint();
+			newPoint.setBorePosition(0.5 * (hole0.getBorePosition()
+					+ hole1.getBorePosition()));
+			newPoint.setBoreDiameter(hole0.getBoreDiameter());
+			instrument.addBorePoint(newPoint);
+			instrument.updateComponents();
+			assertNotSame("Components not rebuilt", components,
+					instrument.components);
+			assertSameComponents(instrument);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Compare the components of an instrument with those of a copy whose
+	 * components are rebuilt from scratch.
+	 */
+	private static void assertSameComponents(Instrument instrument)
+	{
+		Instrument copy = new Instrument(instrument);
+		copy.rebuildComponents();
+		assertEquals("Number of components", copy.components.size(),
+				instrument.components.size());
+		for (int i = 0; i < copy.components.size(); ++i)
+		{
+			ComponentInterface expected = copy.components.get(i);
+			ComponentInterface actual = instrument.components.get(i);
+			assertEquals("Component " + i, expected.getClass(),
+					actual.getClass());
+			if (expected instanceof BoreSection)
+			{
+				assertSameSection("Section " + i, (BoreSection) expected,
+						(BoreSection) actual);
+			}
+			else if (expected instanceof Hole)
+			{
+				Hole expectedHole = (Hole) expected;
+				Hole actualHole = (Hole) actual;
+				assertEquals("Hole " + i + " position",
+						expectedHole.getBorePosition(),
+						actualHole.getBorePosition(), 0.0);
+				assertEquals("Hole " + i + " diameter",
+						expectedHole.getDiameter(), actualHole.getDiameter(),
+						0.0);
+				assertEquals("Hole " + i + " bore diameter",
+						expectedHole.getBoreDiameter(),
+						actualHole.getBoreDiameter(), 0.0);
+			}
+		}
+		List<BoreSection> expectedHeadspace = copy.getMouthpiece()
+				.getHeadspace();
+		List<BoreSection> actualHeadspace = instrument.getMouthpiece()
+				.getHeadspace();
+		assertEquals("Headspace sections", expectedHeadspace.size(),
+				actualHeadspace.size());
+		for (int i = 0; i < expectedHeadspace.size(); ++i)
+		{
+			assertSameSection("Headspace " + i, expectedHeadspace.get(i),
+					actualHeadspace.get(i));
+		}
+		assertEquals("Mouthpiece bore diameter",
+				copy.getMouthpiece().getBoreDiameter(),
+				instrument.getMouthpiece().getBoreDiameter(), 0.0);
+		assertEquals("Termination position",
+				copy.getTermination().getBorePosition(),
+				instrument.getTermination().getBorePosition(), 0.0);
+		assertEquals("Termination bore diameter",
+				copy.getTermination().getBoreDiameter(),
+				instrument.getTermination().getBoreDiameter(), 0.0);
+	}
+
+	private static void assertSameSection(String name, BoreSection expected,
+			BoreSection actual)
+	{
+		assertEquals(name + " length", expected.getLength(),
+				actual.getLength(), 0.0);
+		assertEquals(name + " left radius", expected.getLeftRadius(),
+				actual.getLeftRadius(), 0.0);
+		assertEquals(name + " right radius", expected.getRightRadius(),
+				actual.getRightRadius(), 0.0);
+		assertEquals(name + " right position",
+				expected.getRightBorePosition(),
+				actual.getRightBorePosition(), 0.0);
+	}
+
 	protected Instrument getInstrumentFromXml() throws Exception
 	{
 		BindFactory geometryBindFactory = GeometryBindFactory.getInstance();
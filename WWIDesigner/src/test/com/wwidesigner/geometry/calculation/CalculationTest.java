@@ -10,6 +10,7 @@ import org.apache.commons.math3.complex.Complex;
 import org.junit.Test;
 
 import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.geometry.Hole;
 import com.wwidesigner.math.StateVector;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.Constants.TemperatureType;
@@ -120,4 +121,59 @@ public class CalculationTest
 		}
 	}
 
+	@Test
+	public final void testCachedCoefficients()
+	{
+		try
+		{
+			PhysicalParameters parameters = new PhysicalParameters(25.,
+					TemperatureType.C);
+			HoleCalculator holeCalc = new DefaultHoleCalculator();
+			BoreSectionCalculator boreCalc = new SimpleBoreSectionCalculator();
+			Hole hole = new Hole(0.1, 0.008, 0.004);
+			hole.setBoreDiameter(2.0 * BaseRadius);
+			BoreSection bore = new BoreSection(BaseLength, BaseRadius, 0.75 * BaseRadius);
+			TransferMatrix result = new TransferMatrix();
+
+			// Coefficients cached at one frequency must give the same
+			// results as a fresh calculation at other frequencies.
+			for (int i = 0; i < 4; ++i)
+			{
+				double waveNumber = parameters.calcWaveNumber((i + 1) * BaseFrequency);
+				for (boolean isOpen : new boolean[] { true, false })
+				{
+					Hole freshHole = new Hole(0.1, hole.getDiameter(), hole.getHeight());
+					freshHole.setBoreDiameter(hole.getBoreDiameter());
+					assertMatrixEquals(holeCalc.calcTransferMatrix(freshHole, isOpen, waveNumber, parameters),
+							holeCalc.calcTransferMatrix(hole, isOpen, waveNumber, parameters, result));
+				}
+				assertMatrixEquals(Tube.calcConeMatrix(waveNumber, BaseLength, BaseRadius, 0.75 * BaseRadius, parameters),
+						boreCalc.calcTransferMatrix(bore, waveNumber, parameters, result));
+			}
+
+			// Changing the geometry must discard the cached coefficients.
+			double waveNumber = parameters.calcWaveNumber(BaseFrequency);
+			hole.setDiameter(0.006);
+			Hole freshHole = new Hole(0.1, 0.006, 0.004);
+			freshHole.setBoreDiameter(2.0 * BaseRadius);
+			assertMatrixEquals(holeCalc.calcTransferMatrix(freshHole, true, waveNumber, parameters),
+					holeCalc.calcTransferMatrix(hole, true, waveNumber, parameters, result));
+			bore.setLength(0.5 * BaseLength);
+			assertMatrixEquals(Tube.calcConeMatrix(waveNumber, 0.5 * BaseLength, BaseRadius, 0.75 * BaseRadius, parameters),
+					boreCalc.calcTransferMatrix(bore, waveNumber, parameters, result));
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	protected static void assertMatrixEquals(TransferMatrix expected, TransferMatrix actual)
+	{
+		assertEquals("PP incorrect", expected.getPP(), actual.getPP());
+		assertEquals("PU incorrect", expected.getPU(), actual.getPU());
+		assertEquals("UP incorrect", expected.getUP(), actual.getUP());
+		assertEquals("UU incorrect", expected.getUU(), actual.getUU());
+	}
+
 }
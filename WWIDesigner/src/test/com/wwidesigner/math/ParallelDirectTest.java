@@ -0,0 +1,97 @@
+/**
+ * Test parallel evaluation of DIRECT sample points.
+ */
+package com.wwidesigner.math;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.optim.InitialGuess;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.MaxIter;
+import org.apache.commons.math3.optim.PointValuePair;
+import org.apache.commons.math3.optim.SimpleBounds;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wwidesigner.math.StandardOptimizerTest.HartmanFunction;
+import com.wwidesigner.math.StandardOptimizerTest.OptimizerTestFunction;
+
+/**
+ * Check that each DIRECT variant finds exactly the same optimum, with the
+ * same number of evaluations, whether or not the sample points are
+ * evaluated on several threads.
+ */
+public class ParallelDirectTest
+{
+	public static final double CONVERGENCE_THRESHOLD = 0.005;
+	public static final int NR_WORKERS = 3;
+
+	@Test
+	public final void testDIRECT()
+	{
+		compare(new DIRECTOptimizer(CONVERGENCE_THRESHOLD),
+				new DIRECTOptimizer(CONVERGENCE_THRESHOLD));
+	}
+
+	@Test
+	public final void testDIRECT1()
+	{
+		compare(new DIRECT1Optimizer(CONVERGENCE_THRESHOLD),
+				new DIRECT1Optimizer(CONVERGENCE_THRESHOLD));
+	}
+
+	@Test
+	public final void testDIRECTC()
+	{
+		compare(new DIRECTCOptimizer(CONVERGENCE_THRESHOLD),
+				new DIRECTCOptimizer(CONVERGENCE_THRESHOLD));
+	}
+
+	@Test
+	public final void testDIRECT_L()
+	{
+		compare(new DIRECT_L_Optimizer(CONVERGENCE_THRESHOLD),
+				new DIRECT_L_Optimizer(CONVERGENCE_THRESHOLD));
+	}
+
+	protected static void compare(DIRECTOptimizer sequential,
+			DIRECTOptimizer parallel)
+	{
+		PointValuePair expected = optimize(sequential, 0);
+		PointValuePair outcome = optimize(parallel, NR_WORKERS);
+		Assert.assertArrayEquals("Optimum differs", expected.getPoint(),
+				outcome.getPoint(), 0.0);
+		Assert.assertEquals("Optimum value differs", expected.getValue(),
+				outcome.getValue(), 0.0);
+		Assert.assertEquals("Number of evaluations differs",
+				sequential.getEvaluations(), parallel.getEvaluations());
+		Assert.assertEquals("Number of iterations differs",
+				sequential.getIterations(), parallel.getIterations());
+	}
+
+	protected static PointValuePair optimize(DIRECTOptimizer optimizer,
+			int nrWorkers)
+	{
+		double lowerBound[] = new double[6];
+		double upperBound[] = new double[6];
+		Arrays.fill(lowerBound, 0.0);
+		Arrays.fill(upperBound, 1.0);
+		OptimizerTestFunction objective = new HartmanFunction(lowerBound,
+				upperBound);
+		MultivariateFunction[] workers = new MultivariateFunction[nrWorkers];
+		for (int i = 0; i < nrWorkers; ++i)
+		{
+			workers[i] = new HartmanFunction(lowerBound, upperBound);
+		}
+		return optimizer.optimize(GoalType.MINIMIZE,
+				new ObjectiveFunction(objective),
+				new MaxEval(StandardOptimizerTest.MAX_EVALUATIONS),
+				MaxIter.unlimited(),
+				new InitialGuess(objective.getStartPoint()),
+				new DIRECTOptimizer.WorkerFunctions(workers),
+				new SimpleBounds(lowerBound, upperBound));
+	}
+}
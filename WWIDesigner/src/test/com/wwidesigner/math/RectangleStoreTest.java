@@ -0,0 +1,134 @@
+/**
+ * Unit tests for the DIRECT rectangle store.
+ *
+ * Copyright (C) 2016, Burton Patkau, Edward Kort, Antoine Lefebvre.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.wwidesigner.math;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that RectangleStore keeps levels in order of diameter,
+ * and ranks the rectangles within each level by function value
+ * and serial number, as rectangles are added and re-keyed.
+ */
+public class RectangleStoreTest
+{
+	protected static final double TOL = 0.05;
+
+	@Test
+	public final void testLevelOrdering()
+	{
+		Random random = new Random(12345);
+		RectangleStore store = new RectangleStore(2);
+		double[] centre = new double[2];
+		double[] width = { 1.0, 1.0 };
+		double[] diameters = { 0.5, 0.125, 0.25, 0.0625 };
+		int serial = 0;
+
+		for (int i = 0; i < 1000; ++i)
+		{
+			centre[0] = i;
+			// Use few distinct values, to exercise ties.
+			double f = random.nextInt(20);
+			store.add(centre, width, f,
+					diameters[random.nextInt(diameters.length)], ++serial, TOL);
+		}
+		for (int i = 0; i < 500; ++i)
+		{
+			int rect = random.nextInt(store.size());
+			store.rekey(rect, diameters[random.nextInt(diameters.length)],
+					++serial, TOL);
+		}
+
+		Assert.assertEquals("Number of levels", diameters.length,
+				store.getNrLevels());
+		int total = 0;
+		double lastDiameter = 0.0;
+		for (int k = 0; k < store.getNrLevels(); ++k)
+		{
+			int lvl = store.getLevel(k);
+			Assert.assertTrue("Levels out of order",
+					store.getLevelDiameter(lvl) > lastDiameter);
+			lastDiameter = store.getLevelDiameter(lvl);
+
+			// Find the expected first rectangle by brute force.
+			int expected = -1;
+			int nrEqual = 0;
+			for (int rect = 0; rect < store.size(); ++rect)
+			{
+				if (store.getDiameter(rect) != lastDiameter)
+				{
+					continue;
+				}
+				++total;
+				if (expected < 0 || store.getFValue(rect) < store.getFValue(expected)
+						|| (store.getFValue(rect) == store.getFValue(expected)
+							&& store.getSerial(rect) < store.getSerial(expected)))
+				{
+					expected = rect;
+				}
+			}
+			for (int rect = 0; rect < store.size(); ++rect)
+			{
+				if (store.getDiameter(rect) == lastDiameter
+						&& store.getFValue(rect) == store.getFValue(expected))
+				{
+					++nrEqual;
+				}
+			}
+			Assert.assertEquals("First rectangle", expected,
+					store.getLevelFirst(lvl));
+
+			int[] minima = new int[store.getLevelSize(lvl)];
+			int nrMinima = store.getLevelMinima(lvl, minima);
+			Assert.assertEquals("Number of minima", nrEqual, nrMinima);
+			Assert.assertEquals("First minimum", expected, minima[0]);
+			for (int i = 1; i < nrMinima; ++i)
+			{
+				Assert.assertTrue("Minima out of order",
+						store.getSerial(minima[i - 1]) < store.getSerial(minima[i]));
+			}
+		}
+		Assert.assertEquals("Rectangles in levels", store.size(), total);
+	}
+
+	@Test
+	public final void testPotential()
+	{
+		RectangleStore store = new RectangleStore(3);
+		double[] centre = { 0.0, 0.0, 0.0 };
+		double[] width = { 1.0, 1.0 / 3.0, 1.0 };
+		int first = store.add(centre, width, 1.0, 0.5, 1, TOL);
+		int second = store.add(centre, width, 2.0, 0.5, 2, TOL);
+
+		Assert.assertFalse(store.hasPotential(first));
+		Assert.assertEquals(0.0, store.getPotential(first, 1), 0.0);
+		store.initPotential(first, first);
+		store.setPotential(first, 1, 3.0);
+		store.initPotential(second, first);
+		Assert.assertEquals(3.0, store.getPotential(second, 1), 0.0);
+
+		Assert.assertEquals("Long sides", 2, store.getLongCount(first));
+		Assert.assertEquals("First long side", 0, store.getLongIdx(first));
+		Assert.assertFalse(store.isLongSide(first, 1, TOL));
+		Assert.assertTrue(store.isLongSide(first, 2, TOL));
+	}
+}
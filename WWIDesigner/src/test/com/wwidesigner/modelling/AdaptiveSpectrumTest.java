@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Tests that an adaptively-sampled impedance spectrum finds the same minima
+ * and maxima as a uniform sweep, locates them accurately, and calculates
+ * impedance at far fewer frequencies.
+ */
+public class AdaptiveSpectrumTest
+{
+	private static int NFREQ = 2000;
+	private static double DELTA_F = 1.0e-3;
+
+	protected static double absImag(InstrumentCalculator calculator,
+			Fingering fingering, double freq)
+	{
+		return Math.abs(calculator.calcZ(freq, fingering).getImaginary());
+	}
+
+	/**
+	 * Check that each frequency in a list is a local minimum (or maximum)
+	 * of |Im(Z)| to within DELTA_F.
+	 */
+	protected static void checkExtrema(String message,
+			InstrumentCalculator calculator, Fingering fingering,
+			List<Double> extrema, boolean isMinimum)
+	{
+		for (double freq : extrema)
+		{
+			double y = absImag(calculator, fingering, freq);
+			double yBelow = absImag(calculator, fingering, freq - DELTA_F);
+			double yAbove = absImag(calculator, fingering, freq + DELTA_F);
+			if (isMinimum)
+			{
+				assertTrue(message + " at " + freq, y <= yBelow && y <= yAbove);
+			}
+			else
+			{
+				assertTrue(message + " at " + freq, y >= yBelow && y >= yAbove);
+			}
+		}
+	}
+
+	@Test
+	public void testImpedanceExtrema()
+	{
+		boolean wasEnabled = ModelProfiler.isEnabled();
+		try
+		{
+			InstrumentTuner tuner = SampleTuners.nafTuner();
+			InstrumentCalculator calculator = tuner.getCalculator();
+			ModelProfiler.setEnabled(true);
+			for (Fingering fingering : tuner.getTuning().getFingering())
+			{
+				String name = fingering.getNote().getName();
+				double target = fingering.getNote().getFrequency();
+				double freqStart = 0.5 * target;
+				double freqEnd = 2.0 * target;
+
+				// Extrema from a uniform sweep.
+				double freqStep = (freqEnd - freqStart) / (NFREQ - 1);
+				double[] freqs = new double[NFREQ];
+				double[] zRe = new double[NFREQ];
+				double[] zIm = new double[NFREQ];
+				for (int i = 0; i < NFREQ; ++i)
+				{
+					freqs[i] = freqStart + i * freqStep;
+				}
+				calculator.calcZ(freqs, fingering, zRe, zIm);
+				List<Double> uniformMinima = new ArrayList<Double>();
+				List<Double> uniformMaxima = new ArrayList<Double>();
+				for (int i = 1; i < NFREQ - 1; ++i)
+				{
+					double prev = Math.abs(zIm[i - 1]);
+					double y = Math.abs(zIm[i]);
+					double next = Math.abs(zIm[i + 1]);
+					if (y < prev && y < next)
+					{
+						uniformMinima.add(freqs[i]);
+					}
+					if (y > prev && y > next)
+					{
+						uniformMaxima.add(freqs[i]);
+					}
+				}
+
+				ModelProfiler.reset();
+				ImpedanceSpectrum spectrum = new ImpedanceSpectrum();
+				spectrum.calcImpedance(tuner.getInstrument(), calculator,
+						freqStart, freqEnd, NFREQ, fingering, null);
+				long calls = ModelProfiler.snapshot().getCalcZCalls();
+
+				assertEquals(name + " minima", uniformMinima.size(), spectrum
+						.getMinima().size());
+				assertEquals(name + " maxima", uniformMaxima.size(), spectrum
+						.getMaxima().size());
+				for (int i = 0; i < uniformMinima.size(); ++i)
+				{
+					assertEquals(name + " minimum", uniformMinima.get(i),
+							spectrum.getMinima().get(i), freqStep);
+				}
+				checkExtrema(name + " minimum", calculator, fingering,
+						spectrum.getMinima(), true);
+				checkExtrema(name + " maximum", calculator, fingering,
+						spectrum.getMaxima(), false);
+				assertTrue(name + " samples", spectrum.getSpectrum().size() <= NFREQ);
+				assertTrue(name + " impedance calculations: " + calls,
+						calls <= NFREQ / 5);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ModelProfiler.setEnabled(wasEnabled);
+		}
+	}
+}
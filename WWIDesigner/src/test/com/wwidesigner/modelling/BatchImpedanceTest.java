@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Check that the batched calcZ gives exactly the same impedances as calling
+ * calcZ one frequency at a time.
+ */
+public class BatchImpedanceTest
+{
+	@Test
+	public void testBatchMatchesSingle()
+	{
+		try
+		{
+			SimpleInstrumentTuner tuner = SampleTuners.nafTuner();
+			InstrumentCalculator calculator = tuner.getCalculator();
+
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			int nrFreqs = 500;
+			double[] freqs = new double[nrFreqs];
+			double[] zRe = new double[nrFreqs];
+			double[] zIm = new double[nrFreqs];
+			for (Fingering fingering : fingerings)
+			{
+				double freq = fingering.getNote().getFrequency();
+				for (int i = 0; i < nrFreqs; ++i)
+				{
+					freqs[i] = freq * (0.5 + 3.0 * i / nrFreqs);
+				}
+				calculator.calcZ(freqs, fingering, zRe, zIm);
+				for (int i = 0; i < nrFreqs; ++i)
+				{
+					Complex z = calculator.calcZ(freqs[i], fingering);
+					assertEquals("Real part differs", z.getReal(), zRe[i],
+							0.0);
+					assertEquals("Imaginary part differs", z.getImaginary(),
+							zIm[i], 0.0);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Check that a copy of an instrument calculator gives the same results as
+ * the original, and is independent of the original.
+ */
+public class CalculatorCopyTest
+{
+	@Test
+	public void testCalculatorCopy()
+	{
+		try
+		{
+			SimpleInstrumentTuner tuner = SampleTuners.nafTuner();
+			InstrumentCalculator original = tuner.getCalculator();
+			InstrumentCalculator copy = original.copy();
+
+			assertNotSame("Instrument not copied", original.getInstrument(),
+					copy.getInstrument());
+			assertNotSame("Parameters not copied",
+					original.getPhysicalParameters(),
+					copy.getPhysicalParameters());
+
+			Tuning tuning = tuner.getTuning();
+			List<Fingering> fingerings = tuning.getFingering();
+			Complex[] originalZ = new Complex[fingerings.size()];
+			for (int i = 0; i < fingerings.size(); ++i)
+			{
+				Fingering fingering = fingerings.get(i);
+				originalZ[i] = original.calcZ(fingering);
+				Complex copyZ = copy.calcZ(fingering);
+				assertEquals("Real part differs", originalZ[i].getReal(),
+						copyZ.getReal(), 0.0);
+				assertEquals("Imaginary part differs",
+						originalZ[i].getImaginary(), copyZ.getImaginary(),
+						0.0);
+			}
+
+			// Changing the copy must not change the original.
+			Instrument copyInstrument = copy.getInstrument();
+			for (Hole hole : copyInstrument.getHole())
+			{
+				hole.setDiameter(0.5 * hole.getDiameter());
+			}
+			copyInstrument.updateComponents();
+			copy.getPhysicalParameters().setProperties(10.0, 101.325, 45.0,
+					0.000390);
+			for (int i = 0; i < fingerings.size(); ++i)
+			{
+				Complex originalZ2 = original.calcZ(fingerings.get(i));
+				assertEquals("Original changed", originalZ[i].getReal(),
+						originalZ2.getReal(), 0.0);
+				assertEquals("Original changed", originalZ[i].getImaginary(),
+						originalZ2.getImaginary(), 0.0);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import org.apache.commons.math3.complex.Complex;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * NAFCalculator that counts its impedance calculations, with or without
+ * the derivative, for tests of how many calculations a search takes.
+ */
+public class CountingCalculator extends NAFCalculator
+{
+	protected int count = 0;
+
+	@Override
+	public Complex calcZ(double freq, Fingering fingering)
+	{
+		++count;
+		return super.calcZ(freq, fingering);
+	}
+
+	@Override
+	public Complex calcZ(double freq, Fingering fingering, double[] dZdf)
+	{
+		++count;
+		return super.calcZ(freq, fingering, dZdf);
+	}
+
+	public int getCount()
+	{
+		return count;
+	}
+
+	public void resetCount()
+	{
+		count = 0;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Check the derivative of impedance with respect to frequency against
+ * central differences of calcZ, and check that the Newton solver in
+ * PlayingRange finds the same resonances as the Brent solver.
+ */
+public class ImpedanceDerivativeTest
+{
+	@Test
+	public void testNafDerivative()
+	{
+		try
+		{
+			InstrumentTuner tuner = SampleTuners.nafTuner();
+			checkDerivative(tuner);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testWhistleDerivative()
+	{
+		try
+		{
+			InstrumentTuner tuner = SampleTuners.taborTuner();
+			checkDerivative(tuner);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNewtonMatchesBrent()
+	{
+		try
+		{
+			CountingCalculator calculator = new CountingCalculator();
+			InstrumentTuner tuner = SampleTuners.loadNaf(new SimpleInstrumentTuner(),
+					calculator);
+
+			int newtonCount = 0;
+			int brentCount = 0;
+			for (Fingering fingering : tuner.getTuning().getFingering())
+			{
+				double target = fingering.getNote().getFrequency();
+				PlayingRange range = new PlayingRange(calculator, fingering);
+				calculator.resetCount();
+				double newton = range.findXZero(target);
+				newtonCount += calculator.getCount();
+				range.setUseNewton(false);
+				calculator.resetCount();
+				double brent = range.findXZero(target);
+				brentCount += calculator.getCount();
+				assertEquals("Roots differ", brent, newton, 1.0e-5);
+			}
+			assertTrue("Newton did not reduce calculations: " + newtonCount
+					+ " vs " + brentCount, newtonCount < brentCount);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	protected static void checkDerivative(InstrumentTuner tuner)
+	{
+		InstrumentCalculator calculator = tuner.getCalculator();
+		List<Fingering> fingerings = tuner.getTuning().getFingering();
+		double[] dZdf = new double[2];
+		for (Fingering fingering : fingerings)
+		{
+			double nominal = fingering.getNote().getFrequency();
+			for (double freq = 0.9 * nominal; freq < 1.1 * nominal;
+					freq += 0.05 * nominal)
+			{
+				Complex z = calculator.calcZ(freq, fingering);
+				Complex zWithDerivative = calculator.calcZ(freq, fingering,
+						dZdf);
+				assertEquals("Impedance differs", z.getReal(),
+						zWithDerivative.getReal(), 1.0e-9 * z.abs());
+				assertEquals("Impedance differs", z.getImaginary(),
+						zWithDerivative.getImaginary(), 1.0e-9 * z.abs());
+
+				double step = 1.0e-6 * freq;
+				Complex zAbove = calculator.calcZ(freq + step, fingering);
+				Complex zBelow = calculator.calcZ(freq - step, fingering);
+				double dRe = (zAbove.getReal() - zBelow.getReal()) / (2 * step);
+				double dIm = (zAbove.getImaginary() - zBelow.getImaginary())
+						/ (2 * step);
+				double tolerance = 1.0e-5 * Math.hypot(dRe, dIm);
+				assertEquals("d/df Re(Z) differs at " + freq, dRe, dZdf[0],
+						tolerance);
+				assertEquals("d/df Im(Z) differs at " + freq, dIm, dZdf[1],
+						tolerance);
+			}
+		}
+	}
+}
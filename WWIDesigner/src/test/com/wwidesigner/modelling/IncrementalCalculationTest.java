@@ -0,0 +1,406 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.geometry.Termination;
+import com.wwidesigner.geometry.calculation.DefaultHoleCalculator;
+import com.wwidesigner.geometry.calculation.SimpleBoreSectionCalculator;
+import com.wwidesigner.geometry.calculation.SimpleFippleMouthpieceCalculator;
+import com.wwidesigner.geometry.calculation.UnflangedEndCalculator;
+import com.wwidesigner.math.StateVector;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Check that incremental calculation, which reuses the transfer matrices of
+ * components that have not changed, gives exactly the same impedances as a
+ * full calculation as the geometry changes.
+ */
+public class IncrementalCalculationTest
+{
+	@Test
+	public void testIncrementalMatchesFull()
+	{
+		try
+		{
+			SimpleInstrumentTuner tuner = SampleTuners.nafTuner();
+			DefaultInstrumentCalculator incremental = (DefaultInstrumentCalculator) tuner
+					.getCalculator();
+			DefaultInstrumentCalculator full = (DefaultInstrumentCalculator) incremental
+					.copy();
+			full.setIncrementalCalculation(false);
+			assertTrue(incremental.isIncrementalCalculation());
+			assertFalse(full.isIncrementalCalculation());
+
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			compare(incremental, full, fingerings);
+
+			// Change one hole near the top, then one near the bottom,
+			// then the bore and termination.
+			changeHole(incremental.getInstrument(), 0, 1.05);
+			changeHole(full.getInstrument(), 0, 1.05);
+			compare(incremental, full, fingerings);
+			changeHole(incremental.getInstrument(), 5, 0.95);
+			changeHole(full.getInstrument(), 5, 0.95);
+			compare(incremental, full, fingerings);
+			changeBore(incremental.getInstrument());
+			changeBore(full.getInstrument());
+			compare(incremental, full, fingerings);
+
+			// An unchanged geometry must be served from the cache.
+			long hits = incremental.getChainCache().getHits();
+			compare(incremental, full, fingerings);
+			assertTrue("No cache hits",
+					incremental.getChainCache().getHits() > hits);
+
+			// Changing physical parameters must not use stale matrices.
+			incremental.getPhysicalParameters().setProperties(10.0, 101.325,
+					45.0, 0.000390);
+			full.getPhysicalParameters().setProperties(10.0, 101.325, 45.0,
+					0.000390);
+			compare(incremental, full, fingerings);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Changes made directly to a hole or the termination, without a call to
+	 * updateComponents(), must not use stale matrices.
+	 */
+	@Test
+	public void testChangesWithoutUpdate()
+	{
+		try
+		{
+			SimpleInstrumentTuner tuner = SampleTuners.nafTuner();
+			DefaultInstrumentCalculator incremental = (DefaultInstrumentCalculator) tuner
+					.getCalculator();
+			DefaultInstrumentCalculator full = (DefaultInstrumentCalculator) incremental
+					.copy();
+			full.setIncrementalCalculation(false);
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			compare(incremental, full, fingerings);
+
+			Fingering fingering = fingerings.get(0);
+			Complex zBefore = incremental.calcZ(fingering);
+			for (Instrument instrument : new Instrument[] {
+					incremental.getInstrument(), full.getInstrument() })
+			{
+				Hole hole = instrument.getHole().get(2);
+				hole.setDiameter(1.1 * hole.getDiameter());
+				hole.setHeight(0.9 * hole.getHeight());
+			}
+			assertFalse("Hole change ignored",
+					zBefore.equals(incremental.calcZ(fingering)));
+			compare(incremental, full, fingerings);
+
+			for (Instrument instrument : new Instrument[] {
+					incremental.getInstrument(), full.getInstrument() })
+			{
+				Termination termination = instrument.getTermination();
+				termination.setFlangeDiameter(1.5 * termination
+						.getFlangeDiameter());
+			}
+			compare(incremental, full, fingerings);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Changing the settings of the hole calculator, as the hole parameter
+	 * objective functions do, must not use stale hole matrices.
+	 */
+	@Test
+	public void testHoleCalculatorSettings()
+	{
+		try
+		{
+			SimpleInstrumentTuner tuner = SampleTuners.nafTuner();
+			DefaultInstrumentCalculator incremental = (DefaultInstrumentCalculator) tuner
+					.getCalculator();
+			DefaultInstrumentCalculator full = (DefaultInstrumentCalculator) incremental
+					.copy();
+			full.setIncrementalCalculation(false);
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			compare(incremental, full, fingerings);
+
+			Fingering fingering = fingerings.get(0);
+			Complex zBefore = incremental.calcZ(fingering);
+			((DefaultHoleCalculator) incremental.getHoleCalculator())
+					.setHoleSizeMult(0.8);
+			((DefaultHoleCalculator) full.getHoleCalculator())
+					.setHoleSizeMult(0.8);
+			assertFalse("Hole size multiplier ignored",
+					zBefore.equals(incremental.calcZ(fingering)));
+			compare(incremental, full, fingerings);
+
+			zBefore = incremental.calcZ(fingering);
+			((DefaultHoleCalculator) incremental.getHoleCalculator())
+					.setFingerAdjustment(0.02);
+			((DefaultHoleCalculator) full.getHoleCalculator())
+					.setFingerAdjustment(0.02);
+			assertFalse("Finger adjustment ignored",
+					zBefore.equals(incremental.calcZ(fingering)));
+			compare(incremental, full, fingerings);
+
+			// A replacement hole calculator must not use stale matrices.
+			incremental.setHoleCalculator(new DefaultHoleCalculator());
+			full.setHoleCalculator(new DefaultHoleCalculator());
+			compare(incremental, full, fingerings);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Fingerings at the same frequency share bore section matrices and
+	 * the headspace state, which must follow changes to the headspace.
+	 */
+	@Test
+	public void testSharedAcrossFingerings()
+	{
+		try
+		{
+			InstrumentTuner tuner = SampleTuners
+					.loadTabor(new SimpleInstrumentTuner());
+			DefaultInstrumentCalculator incremental = (DefaultInstrumentCalculator) tuner
+					.getCalculator();
+			DefaultInstrumentCalculator full = (DefaultInstrumentCalculator) incremental
+					.copy();
+			full.setIncrementalCalculation(false);
+
+			// Move the mouthpiece down the bore, to give it a headspace.
+			moveMouthpiece(incremental.getInstrument());
+			moveMouthpiece(full.getInstrument());
+			assertFalse("No headspace", incremental.getInstrument()
+					.getMouthpiece().getHeadspace().isEmpty());
+
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			double freq = fingerings.get(0).getNote().getFrequency();
+			long hits = incremental.getFrequencyCache().getHits();
+			compareAtFrequency(incremental, full, fingerings, freq);
+			assertEquals("Frequency cache hits", fingerings.size() - 1,
+					incremental.getFrequencyCache().getHits() - hits);
+
+			// Widen the headspace.
+			BorePoint top = incremental.getInstrument().getBorePoint().get(0);
+			top.setBoreDiameter(1.1 * top.getBoreDiameter());
+			incremental.getInstrument().updateComponents();
+			top = full.getInstrument().getBorePoint().get(0);
+			top.setBoreDiameter(1.1 * top.getBoreDiameter());
+			full.getInstrument().updateComponents();
+			compareAtFrequency(incremental, full, fingerings, freq);
+			compare(incremental, full, fingerings);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Bore section, termination and headspace values are shared across
+	 * fingerings, and must follow changes to the settings of their
+	 * calculators.
+	 */
+	@Test
+	public void testSharedCalculatorSettings()
+	{
+		try
+		{
+			InstrumentTuner tuner = SampleTuners
+					.loadTabor(new SimpleInstrumentTuner());
+			DefaultInstrumentCalculator incremental = (DefaultInstrumentCalculator) tuner
+					.getCalculator();
+			incremental.setBoreSectionCalculator(new ScaledBoreSectionCalculator());
+			incremental.setTerminationCalculator(new ScaledEndCalculator());
+			incremental.setMouthpieceCalculator(new ScaledMouthpieceCalculator());
+			DefaultInstrumentCalculator full = (DefaultInstrumentCalculator) incremental
+					.copy();
+			full.setIncrementalCalculation(false);
+			moveMouthpiece(incremental.getInstrument());
+			moveMouthpiece(full.getInstrument());
+
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			double freq = fingerings.get(0).getNote().getFrequency();
+			compareAtFrequency(incremental, full, fingerings, freq);
+
+			((ScaledBoreSectionCalculator) incremental.boreSectionCalculator)
+					.setScale(1.01);
+			((ScaledBoreSectionCalculator) full.boreSectionCalculator)
+					.setScale(1.01);
+			compareAtFrequency(incremental, full, fingerings, freq);
+
+			((ScaledEndCalculator) incremental.terminationCalculator)
+					.setScale(1.01);
+			((ScaledEndCalculator) full.terminationCalculator).setScale(1.01);
+			compareAtFrequency(incremental, full, fingerings, freq);
+
+			((ScaledMouthpieceCalculator) incremental.mouthpieceCalculator)
+					.setScale(1.01);
+			((ScaledMouthpieceCalculator) full.mouthpieceCalculator)
+					.setScale(1.01);
+			compareAtFrequency(incremental, full, fingerings, freq);
+			compare(incremental, full, fingerings);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Bore section calculator with an adjustable scale on the wave number.
+	 */
+	protected static class ScaledBoreSectionCalculator extends
+			SimpleBoreSectionCalculator
+	{
+		protected double scale = 1.0;
+
+		public void setScale(double aScale)
+		{
+			scale = aScale;
+			settingsChanged();
+		}
+
+		@Override
+		public TransferMatrix calcTransferMatrix(BoreSection section,
+				double waveNumber, PhysicalParameters params,
+				TransferMatrix result)
+		{
+			return super.calcTransferMatrix(section, scale * waveNumber,
+					params, result);
+		}
+	}
+
+	/**
+	 * Termination calculator with an adjustable scale on the wave number.
+	 */
+	protected static class ScaledEndCalculator extends UnflangedEndCalculator
+	{
+		protected double scale = 1.0;
+
+		public void setScale(double aScale)
+		{
+			scale = aScale;
+			settingsChanged();
+		}
+
+		@Override
+		public StateVector calcStateVector(Termination termination,
+				boolean isOpen, double waveNumber, PhysicalParameters params,
+				StateVector result)
+		{
+			return super.calcStateVector(termination, isOpen, scale
+					* waveNumber, params, result);
+		}
+	}
+
+	/**
+	 * Fipple mouthpiece calculator with an adjustable scale on the wave
+	 * number in the headspace.
+	 */
+	protected static class ScaledMouthpieceCalculator extends
+			SimpleFippleMouthpieceCalculator
+	{
+		protected double scale = 1.0;
+
+		public void setScale(double aScale)
+		{
+			scale = aScale;
+			settingsChanged();
+		}
+
+		@Override
+		public StateVector calcHeadspaceState(Mouthpiece mouthpiece,
+				double waveNumber, PhysicalParameters parameters,
+				StateVector result)
+		{
+			return super.calcHeadspaceState(mouthpiece, scale * waveNumber,
+					parameters, result);
+		}
+	}
+
+	protected static void moveMouthpiece(Instrument instrument)
+	{
+		double top = instrument.getBorePoint().get(0).getBorePosition();
+		double next = instrument.getBorePoint().get(1).getBorePosition();
+		instrument.getMouthpiece().setBorePosition(top + 0.2 * (next - top));
+		instrument.updateComponents();
+	}
+
+	protected static void changeHole(Instrument instrument, int holeNr,
+			double factor)
+	{
+		Hole hole = instrument.getHole().get(holeNr);
+		hole.setDiameter(factor * hole.getDiameter());
+		instrument.updateComponents();
+	}
+
+	protected static void changeBore(Instrument instrument)
+	{
+		int lastPoint = instrument.getBorePoint().size() - 1;
+		instrument.getBorePoint().get(lastPoint).setBoreDiameter(
+				1.1 * instrument.getBorePoint().get(lastPoint)
+						.getBoreDiameter());
+		instrument.updateComponents();
+	}
+
+	protected static void compareAtFrequency(InstrumentCalculator incremental,
+			InstrumentCalculator full, List<Fingering> fingerings, double freq)
+	{
+		for (Fingering fingering : fingerings)
+		{
+			Complex zIncremental = incremental.calcZ(freq, fingering);
+			Complex zFull = full.calcZ(freq, fingering);
+			assertEquals("Real part differs", zFull.getReal(),
+					zIncremental.getReal(), 0.0);
+			assertEquals("Imaginary part differs", zFull.getImaginary(),
+					zIncremental.getImaginary(), 0.0);
+		}
+	}
+
+	protected static void compare(InstrumentCalculator incremental,
+			InstrumentCalculator full, List<Fingering> fingerings)
+	{
+		for (Fingering fingering : fingerings)
+		{
+			double freq = fingering.getNote().getFrequency();
+			for (double ratio : new double[] { 1.0, 2.0, 3.0 })
+			{
+				Complex zIncremental = incremental.calcZ(ratio * freq,
+						fingering);
+				Complex zFull = full.calcZ(ratio * freq, fingering);
+				assertEquals("Real part differs", zFull.getReal(),
+						zIncremental.getReal(), 0.0);
+				assertEquals("Imaginary part differs", zFull.getImaginary(),
+						zIncremental.getImaginary(), 0.0);
+			}
+		}
+	}
+}
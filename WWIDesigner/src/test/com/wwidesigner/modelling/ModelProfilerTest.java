@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.calculation.DefaultHoleCalculator;
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Tests that ModelProfiler counts the work of the acoustic model when
+ * enabled, attributes impedance calculations to bracket searches and
+ * root solving, merges the counts of several threads, and counts nothing
+ * when disabled.
+ */
+public class ModelProfilerTest
+{
+	protected void findRanges(InstrumentCalculator calculator,
+			SimpleInstrumentTuner tuner)
+	{
+		for (Fingering fingering : tuner.getTuning().getFingering())
+		{
+			PlayingRange range = new PlayingRange(calculator, fingering);
+			double fmax = range.tryFindXZero(fingering.getNote().getFrequency());
+			range.tryFindFmin(fmax);
+		}
+	}
+
+	@Test
+	public void testCounts()
+	{
+		boolean wasEnabled = ModelProfiler.isEnabled();
+		try
+		{
+			NAFCalculator calculator = new NAFCalculator();
+			SimpleInstrumentTuner tuner = SampleTuners.loadNaf(
+					new SimpleInstrumentTuner(), calculator);
+			int nrFingerings = tuner.getTuning().getFingering().size();
+
+			ModelProfiler.setEnabled(true);
+			ModelProfiler.reset();
+			findRanges(calculator, tuner);
+			ModelProfiler.Counters counters = ModelProfiler.snapshot();
+
+			assertTrue("No impedance calculations",
+					counters.getCalcZCalls() > 0);
+			long phaseTotal = 0;
+			for (ModelProfiler.Phase phase : ModelProfiler.Phase.values())
+			{
+				phaseTotal += counters.getPhaseCalcZ(phase);
+			}
+			assertEquals("Phases do not add up", counters.getCalcZCalls(),
+					phaseTotal);
+			assertEquals("Bracket searches", nrFingerings,
+					counters.getPhaseEntries(ModelProfiler.Phase.BRACKET));
+			assertEquals("Root solutions", nrFingerings,
+					counters.getPhaseEntries(ModelProfiler.Phase.SOLVER));
+			assertTrue("No bracket steps", counters
+					.getPhaseCalcZ(ModelProfiler.Phase.BRACKET) > 0);
+			assertTrue("No solver iterations", counters
+					.getPhaseCalcZ(ModelProfiler.Phase.SOLVER) > 0);
+			assertTrue("No hole matrices",
+					counters.getMatrices(DefaultHoleCalculator.class) > 0);
+			assertEquals("Unexpected missing ranges", 0,
+					counters.getNoPlayingRange());
+			assertTrue("Hole calculator not reported", counters.toString()
+					.contains(DefaultHoleCalculator.class.getSimpleName()));
+
+			// Nothing is counted while profiling is off.
+			ModelProfiler.setEnabled(false);
+			ModelProfiler.reset();
+			findRanges(calculator, tuner);
+			assertEquals("Counted while disabled", 0,
+					ModelProfiler.snapshot().getCalcZCalls());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ModelProfiler.setEnabled(wasEnabled);
+		}
+	}
+
+	@Test
+	public void testNoPlayingRangeMergedAcrossThreads()
+	{
+		boolean wasEnabled = ModelProfiler.isEnabled();
+		try
+		{
+			final InstrumentCalculator calculator = new PlayingRangeTest.NoResonanceCalculator();
+			final SimpleInstrumentTuner tuner = SampleTuners.loadNaf(
+					new SimpleInstrumentTuner(), calculator);
+			final Fingering fingering = tuner.getTuning().getFingering().get(0);
+
+			ModelProfiler.setEnabled(true);
+			ModelProfiler.reset();
+			Thread[] threads = new Thread[3];
+			for (int i = 0; i < threads.length; ++i)
+			{
+				threads[i] = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						PlayingRange range = new PlayingRange(calculator,
+								fingering);
+						range.tryFindXZero(fingering.getNote().getFrequency());
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread thread : threads)
+			{
+				thread.join();
+			}
+			ModelProfiler.Counters counters = ModelProfiler.snapshot();
+			assertEquals("Missing ranges", threads.length,
+					counters.getNoPlayingRange(fingering.getNote().getName()));
+			assertEquals("Bracket searches", threads.length,
+					counters.getPhaseEntries(ModelProfiler.Phase.BRACKET));
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ModelProfiler.setEnabled(wasEnabled);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.modelling.PlayingRange.NoPlayingRange;
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Tests that the tryFind methods of PlayingRange agree with the
+ * corresponding find methods, and report a missing playing range
+ * with NaN or null rather than an exception, and that an evaluator
+ * scores a fingering whose prediction fails with the default deviation.
+ */
+public class PlayingRangeTest
+{
+	/**
+	 * NAFCalculator with a positive reactance at every frequency,
+	 * so that it has no playing ranges.
+	 */
+	protected static class NoResonanceCalculator extends NAFCalculator
+	{
+		@Override
+		public Complex calcZ(double freq, Fingering fingering)
+		{
+			return new Complex(1.0, 1.0);
+		}
+
+		@Override
+		public Complex calcZ(double freq, Fingering fingering, double[] dZdf)
+		{
+			dZdf[0] = 0.0;
+			dZdf[1] = 0.0;
+			return calcZ(freq, fingering);
+		}
+	}
+
+	/**
+	 * NAFCalculator that fails with a runtime exception for one fingering,
+	 * as the model might on a degenerate trial geometry.
+	 */
+	protected static class FailingCalculator extends NAFCalculator
+	{
+		protected Fingering failingFingering;
+
+		@Override
+		public Complex calcZ(double freq, Fingering fingering)
+		{
+			if (fingering == failingFingering)
+			{
+				throw new IllegalStateException("Degenerate geometry");
+			}
+			return super.calcZ(freq, fingering);
+		}
+
+		@Override
+		public Complex calcZ(double freq, Fingering fingering, double[] dZdf)
+		{
+			if (fingering == failingFingering)
+			{
+				throw new IllegalStateException("Degenerate geometry");
+			}
+			return super.calcZ(freq, fingering, dZdf);
+		}
+	}
+
+	@Test
+	public void testTryFindMatchesFind()
+	{
+		try
+		{
+			NAFCalculator calculator = new NAFCalculator();
+			SimpleInstrumentTuner tuner = SampleTuners.loadNaf(new SimpleInstrumentTuner(),
+					calculator);
+
+			for (Fingering fingering : tuner.getTuning().getFingering())
+			{
+				double target = fingering.getNote().getFrequency();
+				PlayingRange range = new PlayingRange(calculator, fingering);
+				double fmax = range.findXZero(target);
+				assertEquals("fmax differs", fmax, range.tryFindXZero(target),
+						0.0);
+				assertEquals("fmin differs", range.findFmin(fmax),
+						range.tryFindFmin(fmax), 0.0);
+				assertEquals("fnom differs", range.findX(target, -1.0),
+						range.tryFindX(target, -1.0), 0.0);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNoPlayingRange()
+	{
+		try
+		{
+			NoResonanceCalculator calculator = new NoResonanceCalculator();
+			SimpleInstrumentTuner tuner = SampleTuners.loadNaf(new SimpleInstrumentTuner(),
+					calculator);
+
+			Fingering fingering = tuner.getTuning().getFingering().get(0);
+			double target = fingering.getNote().getFrequency();
+			PlayingRange range = new PlayingRange(calculator, fingering);
+			assertTrue("Expected NaN fmax",
+					Double.isNaN(range.tryFindXZero(target)));
+			assertNull("Expected no root",
+					range.tryFindXZero(target, null));
+			assertTrue("Expected NaN fmin",
+					Double.isNaN(range.tryFindFmin(Double.NaN)));
+			assertNull("Expected no prediction",
+					tuner.predictedFrequency(fingering));
+			try
+			{
+				range.findXZero(target);
+				fail("Expected NoPlayingRange");
+			}
+			catch (NoPlayingRange e)
+			{
+				// Expected.
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testFailedPrediction()
+	{
+		try
+		{
+			FailingCalculator calculator = new FailingCalculator();
+			SimpleInstrumentTuner tuner = SampleTuners.loadNaf(new SimpleInstrumentTuner(),
+					calculator);
+
+			List<Fingering> fingerings = tuner.getTuning().getFingering();
+			calculator.failingFingering = fingerings.get(0);
+			assertNull("Expected no prediction",
+					tuner.tryPredictedFrequency(fingerings.get(0)));
+			assertNull("Expected no predicted note",
+					tuner.tryPredictedNote(fingerings.get(0)));
+
+			// The failed fingering gets the default deviation, and the
+			// others are still evaluated.
+			CentDeviationEvaluator evaluator = new CentDeviationEvaluator(
+					calculator);
+			double[] errors = evaluator.calculateErrorVector(fingerings);
+			assertEquals("Number of errors", fingerings.size(), errors.length);
+			assertEquals("Failed fingering", 1200.0, errors[0], 0.0);
+			for (int i = 1; i < errors.length; ++i)
+			{
+				assertTrue("Deviation of fingering " + i + ": " + errors[i],
+						Math.abs(errors[i]) < 100.0);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Sample instruments and tunings from the test examples, loaded into
+ * tuners for tests of the acoustic model.
+ */
+public class SampleTuners
+{
+	public static final String NAF_INSTRUMENT = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	public static final String NAF_TUNING = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+	public static final String TABOR_INSTRUMENT = "com/wwidesigner/modelling/example/TaborPipe.xml";
+	public static final String TABOR_TUNING = "com/wwidesigner/modelling/example/A4-TaborPipe.xml";
+
+	/**
+	 * Load the cherry D minor NAF and its tuning into a tuner, at 72 F.
+	 *
+	 * @param tuner
+	 *            - tuner to load.
+	 * @param calculator
+	 *            - calculator for the tuner, normally a NAFCalculator.
+	 * @return the tuner.
+	 */
+	public static <T extends InstrumentTuner> T loadNaf(T tuner,
+			InstrumentCalculator calculator) throws Exception
+	{
+		tuner.setInstrument(NAF_INSTRUMENT, true);
+		tuner.setTuning(NAF_TUNING, true);
+		tuner.setParams(new PhysicalParameters(72.0, TemperatureType.F));
+		tuner.setCalculator(calculator);
+		return tuner;
+	}
+
+	/**
+	 * @return a SimpleInstrumentTuner for the cherry D minor NAF, with a
+	 *         NAFCalculator.
+	 */
+	public static SimpleInstrumentTuner nafTuner() throws Exception
+	{
+		return loadNaf(new SimpleInstrumentTuner(), new NAFCalculator());
+	}
+
+	/**
+	 * Load the Tabor pipe and its A4 tuning into a tuner, at 27 C and 98.4
+	 * kPa, with a WhistleCalculator.
+	 *
+	 * @param tuner
+	 *            - tuner to load.
+	 * @return the tuner.
+	 */
+	public static <T extends InstrumentTuner> T loadTabor(T tuner)
+			throws Exception
+	{
+		tuner.setInstrument(TABOR_INSTRUMENT, true);
+		tuner.setTuning(TABOR_TUNING, true);
+		tuner.setParams(new PhysicalParameters(27.0, TemperatureType.C, 98.4,
+				100, 0.04));
+		tuner.setCalculator(new WhistleCalculator());
+		return tuner;
+	}
+
+	/**
+	 * @return a LinearVInstrumentTuner for the Tabor pipe, with a
+	 *         WhistleCalculator.
+	 */
+	public static LinearVInstrumentTuner taborTuner() throws Exception
+	{
+		return loadTabor(new LinearVInstrumentTuner(4));
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+
+/**
+ * Tests that a TuningAnalysis gives the same results on several threads as
+ * on one, that its impedance, gain and Q values match direct calculation,
+ * and that the tuning reports render from it without further impedance
+ * calculations.
+ */
+public class TuningAnalysisTest
+{
+	protected TuningAnalysis analyze(InstrumentTuner tuner, int nrThreads)
+	{
+		int oldThreads = TuningAnalysis.getAnalysisThreads();
+		try
+		{
+			TuningAnalysis.setAnalysisThreads(nrThreads);
+			return tuner.analyzeTuning();
+		}
+		finally
+		{
+			TuningAnalysis.setAnalysisThreads(oldThreads);
+		}
+	}
+
+	protected static void assertSameValue(String message, Double expected,
+			Double actual)
+	{
+		if (expected == null)
+		{
+			assertEquals(message, null, actual);
+		}
+		else
+		{
+			assertNotNull(message, actual);
+			assertEquals(message, expected, actual, 0.0);
+		}
+	}
+
+	protected static void assertSameZ(String message, Complex expected,
+			Complex actual)
+	{
+		assertEquals(message, expected.getReal(), actual.getReal(), 0.0);
+		assertEquals(message, expected.getImaginary(), actual.getImaginary(),
+				0.0);
+	}
+
+	/**
+	 * Compare an analysis on several threads with one on a single thread,
+	 * and with values calculated directly.
+	 */
+	protected void checkAnalysis(InstrumentTuner sequentialTuner,
+			InstrumentTuner parallelTuner)
+	{
+		TuningAnalysis sequential = analyze(sequentialTuner, 1);
+		TuningAnalysis parallel = analyze(parallelTuner, 4);
+		InstrumentCalculator calculator = sequentialTuner.getCalculator();
+		assertEquals("Note count", sequential.getNrNotes(),
+				parallel.getNrNotes());
+		for (int i = 0; i < sequential.getNrNotes(); ++i)
+		{
+			Fingering target = sequential.getNote(i).getTarget();
+			Note seqNote = sequential.getNote(i).getPredicted().getNote();
+			Note parNote = parallel.getNote(i).getPredicted().getNote();
+			String name = target.getNote().getName();
+			assertSameValue(name + " frequency", seqNote.getFrequency(),
+					parNote.getFrequency());
+			assertSameValue(name + " fmin", seqNote.getFrequencyMin(),
+					parNote.getFrequencyMin());
+			assertSameValue(name + " fmax", seqNote.getFrequencyMax(),
+					parNote.getFrequencyMax());
+			assertSameValue(name + " gain", sequential.getNote(i).getGain(),
+					parallel.getNote(i).getGain());
+			assertSameValue(name + " Q", sequential.getNote(i).getQ(),
+					parallel.getNote(i).getQ());
+
+			double targetFreq = target.getNote().getFrequency();
+			Complex zTarget = calculator.calcZ(targetFreq, target);
+			assertSameZ(name + " Z at target", zTarget,
+					sequential.calcZ(i, targetFreq));
+			assertSameZ(name + " Z at target", zTarget,
+					parallel.calcZ(i, targetFreq));
+
+			if (seqNote.getFrequency() != null)
+			{
+				double freq = seqNote.getFrequency();
+				double freqPlus = freq * (1 + TuningAnalysis.DELTA_F);
+				Complex z = calculator.calcZ(freq, target);
+				Complex zPlus = calculator.calcZ(freqPlus, target);
+				assertEquals(name + " gain", calculator.calcGain(freq, z),
+						parallel.getNote(i).getGain(), 0.0);
+				assertEquals(name + " Q",
+						TuningAnalysis.calcQ(freq, z, freqPlus, zPlus),
+						parallel.getNote(i).getQ(), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelNaf()
+	{
+		try
+		{
+			checkAnalysis(SampleTuners.nafTuner(), SampleTuners.nafTuner());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testParallelPlayingRanges()
+	{
+		try
+		{
+			checkAnalysis(SampleTuners.taborTuner(), SampleTuners.taborTuner());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Successive analyses run on the same thread pool, without adding
+	 * threads once it is large enough.
+	 */
+	@Test
+	public void testSharedExecutor()
+	{
+		int oldThreads = TuningAnalysis.getAnalysisThreads();
+		try
+		{
+			TuningAnalysis.setAnalysisThreads(4);
+			InstrumentTuner tuner = SampleTuners.nafTuner();
+			tuner.analyzeTuning();
+			ThreadPoolExecutor executor = TuningAnalysis.getAnalysisExecutor(3);
+			int poolSize = executor.getMaximumPoolSize();
+			for (int i = 0; i < 3; ++i)
+			{
+				tuner.analyzeTuning();
+				tuner.getPredictedTuning();
+			}
+			assertSame("Thread pool", executor,
+					TuningAnalysis.getAnalysisExecutor(3));
+			assertEquals("Thread pool size", poolSize,
+					executor.getMaximumPoolSize());
+			assertTrue("Threads created",
+					executor.getLargestPoolSize() <= poolSize);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			TuningAnalysis.setAnalysisThreads(oldThreads);
+		}
+	}
+
+	@Test
+	public void testReportsReuseAnalysis()
+	{
+		boolean wasEnabled = ModelProfiler.isEnabled();
+		try
+		{
+			InstrumentTuner tuner = SampleTuners.taborTuner();
+			TuningAnalysis analysis = analyze(tuner, 1);
+
+			ModelProfiler.setEnabled(true);
+			ModelProfiler.reset();
+			new TuningComparisonTable("Tuning").buildTable(analysis);
+			new SupplementaryInfoTable("Supplementary").buildTable(analysis,
+					false);
+			new SupplementaryInfoTable("Supplementary").buildTable(analysis,
+					true);
+			assertEquals("Impedance recalculated", 0, ModelProfiler
+					.snapshot().getCalcZCalls());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ModelProfiler.setEnabled(wasEnabled);
+		}
+	}
+}
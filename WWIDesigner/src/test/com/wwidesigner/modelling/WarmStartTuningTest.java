@@ -0,0 +1,92 @@
+/**
+ * 
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests that SimpleInstrumentTuner predicts the same frequencies when it
+ * starts each search from the previous prediction, with at most three
+ * impedance calculations per search, about 40% fewer than searches from
+ * the target frequency.
+ */
+public class WarmStartTuningTest
+{
+	protected static SimpleInstrumentTuner createTuner(
+			CountingCalculator calculator, boolean warmStart) throws Exception
+	{
+		SimpleInstrumentTuner tuner = SampleTuners.loadNaf(new SimpleInstrumentTuner(),
+				calculator);
+		tuner.setWarmStart(warmStart);
+		return tuner;
+	}
+
+	@Test
+	public void testWarmStart()
+	{
+		try
+		{
+			CountingCalculator coldCalculator = new CountingCalculator();
+			CountingCalculator warmCalculator = new CountingCalculator();
+			SimpleInstrumentTuner coldTuner = createTuner(coldCalculator, false);
+			SimpleInstrumentTuner warmTuner = createTuner(warmCalculator, true);
+			List<Fingering> fingerings = coldTuner.getTuning().getFingering();
+			int coldFirstCount = 0;
+			int warmFirstCount = 0;
+
+			// Small changes in temperature move every resonance slightly,
+			// as small changes in geometry do during optimization.
+			for (int step = 0; step < 20; ++step)
+			{
+				PhysicalParameters params = new PhysicalParameters(
+						72.0 + 0.05 * step, TemperatureType.F);
+				coldTuner.setParams(params);
+				warmTuner.setParams(params);
+				for (int i = 0; i < fingerings.size(); ++i)
+				{
+					Double cold = coldTuner.predictedFrequency(fingerings.get(i));
+					Double warm = warmTuner.predictedFrequency(
+							warmTuner.getTuning().getFingering().get(i));
+					assertNotNull("No cold prediction", cold);
+					assertNotNull("No warm prediction", warm);
+					assertEquals("Predictions differ", cold, warm, 1.0e-5);
+				}
+				if (step == 0)
+				{
+					coldFirstCount = coldCalculator.getCount();
+					warmFirstCount = warmCalculator.getCount();
+				}
+			}
+			assertEquals("First search not the full search",
+					coldFirstCount, warmFirstCount);
+			// Later searches take two Newton steps from the previous root,
+			// plus one calculation at the target to confirm that the full
+			// search would choose the same root.
+			int warmLaterCount = warmCalculator.getCount() - warmFirstCount;
+			int coldLaterCount = coldCalculator.getCount() - coldFirstCount;
+			int nrSearches = 19 * fingerings.size();
+			assertTrue("Warm start took " + warmLaterCount + " calculations for "
+					+ nrSearches + " searches",
+					warmLaterCount <= 3 * nrSearches);
+			assertTrue("Warm start did not reduce calculations: "
+					+ warmLaterCount + " vs " + coldLaterCount,
+					3 * warmLaterCount < 2 * coldLaterCount);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+}
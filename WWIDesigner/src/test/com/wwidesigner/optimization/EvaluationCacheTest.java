@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.FmaxEvaluator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Check that the evaluation cache returns the values it was given, and only
+ * for matching points and evaluators.
+ */
+public class EvaluationCacheTest extends AbstractOptimizationTest
+{
+	@Test
+	public final void testCachedValues() throws Exception
+	{
+		setupObjective();
+		double[] point = objective.getGeometryPoint();
+		double expected = objective.value(point);
+
+		objective.setEvaluationCache(100, 0.0);
+		assertEquals("Value differs", expected, objective.value(point), 0.0);
+		assertEquals("Misses", 1, objective.getNumberOfCacheMisses());
+		int tunings = objective.getNumberOfTunings();
+		assertEquals("Cached value differs", expected,
+				objective.value(point.clone()), 0.0);
+		assertEquals("Hits", 1, objective.getNumberOfCacheHits());
+		assertEquals("Tunings done for a cached value", tunings,
+				objective.getNumberOfTunings());
+
+		// A slightly different point is a different point.
+		double[] nearPoint = point.clone();
+		nearPoint[0] *= 1.0 + 1.0e-12;
+		objective.value(nearPoint);
+		assertEquals("Hits", 1, objective.getNumberOfCacheHits());
+
+		// A different evaluator gives different values.
+		objective.setEvaluator(new FmaxEvaluator(calculator));
+		objective.value(point);
+		assertEquals("Hits", 1, objective.getNumberOfCacheHits());
+		assertEquals("Misses", 3, objective.getNumberOfCacheMisses());
+	}
+
+	@Test
+	public final void testResolution() throws Exception
+	{
+		setupObjective();
+		objective.setEvaluationCache(100, 1.0e-9);
+		double[] point = objective.getGeometryPoint();
+		double expected = objective.value(point);
+		double[] nearPoint = point.clone();
+		nearPoint[0] *= 1.0 + 1.0e-12;
+		assertEquals("Value differs", expected, objective.value(nearPoint),
+				0.0);
+		assertEquals("Hits", 1, objective.getNumberOfCacheHits());
+		double[] farPoint = point.clone();
+		farPoint[0] *= 1.0 + 1.0e-6;
+		objective.value(farPoint);
+		assertEquals("Hits", 1, objective.getNumberOfCacheHits());
+	}
+
+	@Test
+	public final void testLeastRecentlyUsed() throws Exception
+	{
+		setupObjective();
+		EvaluationCache cache = new EvaluationCache(2, 0.0);
+		double[][] points = { { 1.0, 2.0 }, { 1.0, 3.0 }, { 1.0, 4.0 } };
+		cache.put(points[0], evaluator, 10.0);
+		cache.put(points[1], evaluator, 11.0);
+		assertNotNull(cache.get(points[0], evaluator));
+		cache.put(points[2], evaluator, 12.0);
+		assertEquals(2, cache.size());
+		assertEquals(10.0, cache.get(points[0], evaluator), 0.0);
+		assertNull("Least recently used value kept",
+				cache.get(points[1], evaluator));
+		assertEquals(12.0, cache.get(points[2], evaluator), 0.0);
+		assertEquals("Negative zero differs from zero", 13.0,
+				putAndGet(cache, new double[] { 0.0, 1.0 },
+						new double[] { -0.0, 1.0 }), 0.0);
+	}
+
+	protected Double putAndGet(EvaluationCache cache, double[] putPoint,
+			double[] getPoint)
+	{
+		cache.put(putPoint, evaluator, 13.0);
+		return cache.get(getPoint, evaluator);
+	}
+
+	protected void setupObjective() throws Exception
+	{
+		setInputInstrumentXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1.xml");
+		setInputTuningXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		evaluator = new CentDeviationEvaluator(calculator);
+		objective = new HoleSizeObjectiveFunction(calculator, tuning,
+				evaluator);
+	}
+}
@@ -0,0 +1,263 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.PositionInterface;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.note.bind.NoteBindFactory;
+import com.wwidesigner.optimization.BoreLengthAdjustmentInterface.BoreLengthAdjustmentType;
+import com.wwidesigner.util.BindFactory;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests for running optimizations with OptimizationEngine.
+ */
+public class OptimizationEngineTest
+{
+	private static String instrumentFile = "com/wwidesigner/optimization/example/NoHoleNAF1.xml";
+	private static String tuningFile = "com/wwidesigner/optimization/example/NoHoleNAF1Tuning.xml";
+
+	/**
+	 * Create a job to optimize the bore length of a no-hole NAF, as in
+	 * NafOptimizationTest.
+	 */
+	protected OptimizationJob createJob(String name, String objectiveName)
+			throws Exception
+	{
+		Instrument instrument = (Instrument) GeometryBindFactory.getInstance()
+				.unmarshalXml(instrumentFile, true, true);
+		instrument.updateComponents();
+		Tuning tuning = (Tuning) NoteBindFactory.getInstance().unmarshalXml(
+				tuningFile, true, true);
+		PhysicalParameters params = new PhysicalParameters(22.22,
+				TemperatureType.C);
+		InstrumentCalculator calculator = new NAFCalculator();
+		calculator.setPhysicalParameters(params);
+		calculator.setInstrument(instrument);
+
+		// Build constraints with the bounds used in NafOptimizationTest.
+		BaseObjectiveFunction template = new HoleFromTopObjectiveFunction(
+				calculator, tuning, new ReactanceEvaluator(calculator),
+				BoreLengthAdjustmentType.PRESERVE_TAPER);
+		template.setLowerBounds(new double[] { 0.25 });
+		template.setUpperBounds(new double[] { 0.4 });
+		Constraints constraints = template.getConstraints();
+
+		OptimizationJob job = new OptimizationJob(name, instrument, tuning,
+				constraints, objectiveName, null, params, calculator);
+		job.setEvaluator(new ReactanceEvaluator(calculator));
+		return job;
+	}
+
+	protected static double getBoreLength(Instrument instrument)
+	{
+		List<BorePoint> borePoints = instrument.getBorePoint();
+		PositionInterface[] sortedPoints = Instrument.sortList(borePoints);
+		return sortedPoints[sortedPoints.length - 1].getBorePosition();
+	}
+
+	@Test
+	public void testConcurrentJobs()
+	{
+		File outputDirectory = new File(System.getProperty("java.io.tmpdir"),
+				"OptimizationEngineTest");
+		OptimizationEngine engine = new OptimizationEngine(2);
+		try
+		{
+			engine.setOutputDirectory(outputDirectory);
+			List<OptimizationJob> jobs = new ArrayList<OptimizationJob>();
+			for (int i = 0; i < 3; ++i)
+			{
+				jobs.add(createJob("NoHole" + i, null));
+			}
+			jobs.add(createJob("Unknown", "NoSuchObjectiveFunction"));
+			List<OptimizationEngine.Task> tasks = engine.submitAll(jobs);
+			engine.shutdown();
+			assertTrue("Jobs did not finish",
+					engine.awaitTermination(120, TimeUnit.SECONDS));
+			assertTrue("Finished tasks kept", engine.tasks.isEmpty());
+
+			OptimizationResult first = tasks.get(0).getResult();
+			for (int i = 0; i < 3; ++i)
+			{
+				OptimizationResult result = tasks.get(i).getResult();
+				assertEquals(result.toString(),
+						OptimizationResult.Status.SUCCEEDED,
+						result.getStatus());
+				assertEquals("Bore length incorrect", 11.97,
+						getBoreLength(result.getInstrument()), 0.1);
+				assertEquals("Initial norms differ", first.getInitialNorm(),
+						result.getInitialNorm(), 0.0);
+				assertTrue("Instrument file missing", new File(
+						outputDirectory, "NoHole" + i + ".xml").isFile());
+				assertTrue("Metrics file missing", new File(outputDirectory,
+						"NoHole" + i + "-metrics.txt").isFile());
+			}
+			Instrument written = (Instrument) GeometryBindFactory
+					.getInstance().unmarshalXml(
+							new File(outputDirectory, "NoHole0.xml"), true);
+			assertEquals("Written bore length incorrect", 11.97,
+					getBoreLength(written), 0.1);
+
+			OptimizationResult failed = tasks.get(3).getResult();
+			assertEquals("Unknown objective function",
+					OptimizationResult.Status.FAILED, failed.getStatus());
+			assertNotNull("Error message", failed.getErrorMessage());
+			assertNull("Failed instrument", failed.getInstrument());
+			assertTrue("Metrics file missing", new File(outputDirectory,
+					"Unknown-metrics.txt").isFile());
+			String metrics = BindFactory.readFile(new File(outputDirectory,
+					"Unknown-metrics.txt"));
+			assertTrue("Metrics status", metrics.contains("status: FAILED"));
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			engine.shutdownNow();
+			File[] files = outputDirectory.listFiles();
+			if (files != null)
+			{
+				for (File file : files)
+				{
+					file.delete();
+				}
+			}
+			outputDirectory.delete();
+		}
+	}
+
+	/**
+	 * Progress listener that holds a job at its first stage until a latch
+	 * is released.  If the latch is not released within HOLD_SECONDS, the
+	 * listener fails, which fails the job rather than hanging the test.
+	 */
+	protected static class HoldingListener implements
+			OptimizationProgressListener
+	{
+		protected static final long HOLD_SECONDS = 60;
+
+		private final CountDownLatch release;
+
+		public HoldingListener(CountDownLatch release)
+		{
+			this.release = release;
+		}
+
+		@Override
+		public void progressUpdated(OptimizationProgressEvent event)
+		{
+			if (event.getKind() == OptimizationProgressEvent.Kind.STAGE)
+			{
+				try
+				{
+					if (!release.await(HOLD_SECONDS, TimeUnit.SECONDS))
+					{
+						fail("Job held for " + HOLD_SECONDS
+								+ " s without release");
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCancellation()
+	{
+		OptimizationEngine engine = new OptimizationEngine(1);
+		try
+		{
+			OptimizationJob runningJob = createJob("Running", null);
+			OptimizationJob queuedJob = createJob("Queued", null);
+			OptimizationJob timedJob = createJob("Timed", null);
+			timedJob.setTimeout(1.0e-6);
+
+			// Hold the running job, which keeps the only worker busy, until
+			// the queued job has been cancelled and the timed job submitted.
+			final CountDownLatch queuedCancelled = new CountDownLatch(1);
+			OptimizationEngine.Task running = engine.submit(runningJob,
+					new HoldingListener(queuedCancelled));
+			OptimizationEngine.Task queued = engine.submit(queuedJob);
+			queued.cancel();
+
+			// Hold the timed job at its first stage until its time limit
+			// has taken effect, so it cannot finish first.  The time-out
+			// is reported on the timer thread.  The timed job cannot start
+			// before the running job is released, so timedTask is set by
+			// then.
+			final CountDownLatch timeLimitReached = new CountDownLatch(1);
+			final AtomicReference<OptimizationEngine.Task> timedTask = new AtomicReference<OptimizationEngine.Task>();
+			OptimizationEngine.Task timed = engine.submit(timedJob,
+					new HoldingListener(timeLimitReached)
+					{
+						@Override
+						public void progressUpdated(
+								OptimizationProgressEvent event)
+						{
+							if (event.getKind() == OptimizationProgressEvent.Kind.MESSAGE
+									&& timedTask.get().getStoppedStatus() == OptimizationResult.Status.TIMED_OUT)
+							{
+								timeLimitReached.countDown();
+							}
+							super.progressUpdated(event);
+						}
+					});
+			timedTask.set(timed);
+			queuedCancelled.countDown();
+			engine.shutdown();
+			assertTrue("Jobs did not finish", engine.awaitTermination(
+					3 * HoldingListener.HOLD_SECONDS, TimeUnit.SECONDS));
+			assertTrue("Finished tasks kept", engine.tasks.isEmpty());
+
+			OptimizationResult runningResult = running.getResult();
+			assertEquals(runningResult.toString(),
+					OptimizationResult.Status.SUCCEEDED,
+					runningResult.getStatus());
+			OptimizationResult queuedResult = queued.getResult();
+			assertEquals(queuedResult.toString(),
+					OptimizationResult.Status.CANCELLED,
+					queuedResult.getStatus());
+			OptimizationResult timedResult = timed.getResult();
+			assertEquals(timedResult.toString(),
+					OptimizationResult.Status.TIMED_OUT,
+					timedResult.getStatus());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			engine.shutdownNow();
+		}
+	}
+}
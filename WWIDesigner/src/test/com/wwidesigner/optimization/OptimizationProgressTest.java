@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.optimization.OptimizationProgressEvent.Kind;
+import com.wwidesigner.optimization.OptimizationProgressEvent.Stage;
+import com.wwidesigner.optimization.multistart.GridRangeProcessor;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Check the progress events issued by ObjectiveFunctionOptimizer: stage
+ * changes, rate-limited evaluation reports, and summary messages.
+ */
+public class OptimizationProgressTest extends AbstractOptimizationTest
+{
+	protected static final int NR_STARTS = 4;
+
+	protected static class EventCollector
+			implements OptimizationProgressListener
+	{
+		List<OptimizationProgressEvent> events = Collections
+				.synchronizedList(new ArrayList<OptimizationProgressEvent>());
+
+		@Override
+		public void progressUpdated(OptimizationProgressEvent event)
+		{
+			events.add(event);
+		}
+
+		int count(Kind kind)
+		{
+			int count = 0;
+			synchronized (events)
+			{
+				for (OptimizationProgressEvent event : events)
+				{
+					if (event.getKind() == kind)
+					{
+						++count;
+					}
+				}
+			}
+			return count;
+		}
+	}
+
+	@Test
+	public final void testEveryEvaluationReported()
+	{
+		try
+		{
+			setupObjective();
+			EventCollector collector = new EventCollector();
+			objective.addProgressListener(collector);
+			objective.getProgress().setReportInterval(0);
+			ObjectiveFunctionOptimizer.optimizeObjectiveFunction(objective,
+					BaseObjectiveFunction.OptimizerType.BOBYQAOptimizer);
+
+			int nrEvaluations = objective.getNumberOfEvaluations();
+			assertTrue("No evaluations", nrEvaluations > 0);
+			assertEquals("Evaluations counted", nrEvaluations,
+					objective.getProgress().getEvaluations());
+			assertEquals("Progress events", nrEvaluations,
+					collector.count(Kind.PROGRESS));
+			assertTrue("No messages", collector.count(Kind.MESSAGE) > 0);
+
+			OptimizationProgressEvent first = collector.events.get(0);
+			assertEquals("First stage", Stage.SETUP, first.getStage());
+			OptimizationProgressEvent last = collector.events
+					.get(collector.events.size() - 1);
+			assertEquals("Last event", Kind.STAGE, last.getKind());
+			assertEquals("Last stage", Stage.FINISHED, last.getStage());
+			assertEquals("Final norm", ObjectiveFunctionOptimizer.getFinalNorm(),
+					last.getBestNorm(), 0.0);
+
+			double bestNorm = Double.POSITIVE_INFINITY;
+			int lastCount = 0;
+			for (OptimizationProgressEvent event : collector.events)
+			{
+				if (event.getKind() == Kind.PROGRESS)
+				{
+					assertEquals("Stage", Stage.BOBYQA, event.getStage());
+					assertEquals("Point dimensions",
+							objective.getNrDimensions(),
+							event.getPoint().length);
+					assertTrue("Best norm increased",
+							event.getBestNorm() <= bestNorm);
+					assertEquals("Evaluation count", lastCount + 1,
+							event.getEvaluations());
+					bestNorm = event.getBestNorm();
+					lastCount = event.getEvaluations();
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testRateLimited()
+	{
+		try
+		{
+			setupObjective();
+			EventCollector collector = new EventCollector();
+			objective.addProgressListener(collector);
+			objective.getProgress().setReportInterval(3600000L);
+			ObjectiveFunctionOptimizer.optimizeObjectiveFunction(objective,
+					BaseObjectiveFunction.OptimizerType.BOBYQAOptimizer);
+
+			assertTrue("No evaluations",
+					objective.getProgress().getEvaluations() > 0);
+			assertEquals("Progress events", 0, collector.count(Kind.PROGRESS));
+			assertTrue("No stage events", collector.count(Kind.STAGE) > 0);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testParallelStartsReported()
+	{
+		int savedThreads = ObjectiveFunctionOptimizer.getMultiStartThreads();
+		try
+		{
+			ObjectiveFunctionOptimizer.setMultiStartThreads(2);
+			setupObjective();
+			objective.setRangeProcessor(new GridRangeProcessor(lowerBound,
+					upperBound, null, NR_STARTS));
+			EventCollector collector = new EventCollector();
+			objective.addProgressListener(collector);
+			ObjectiveFunctionOptimizer.optimizeMultiStart(objective,
+					objective.getInitialPoint());
+
+			// Copies report through the original's progress object.
+			assertEquals("Evaluations counted",
+					objective.getNumberOfEvaluations(),
+					objective.getProgress().getEvaluations());
+			boolean[] started = new boolean[NR_STARTS + 1];
+			for (OptimizationProgressEvent event : collector.events)
+			{
+				if (event.getKind() == Kind.STAGE
+						&& event.getStage() == Stage.MULTI_START)
+				{
+					started[event.getStartNr()] = true;
+				}
+			}
+			for (int startNr = 1; startNr <= NR_STARTS; ++startNr)
+			{
+				assertTrue("Start " + startNr + " not reported",
+						started[startNr]);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ObjectiveFunctionOptimizer.setMultiStartThreads(savedThreads);
+		}
+	}
+
+	protected void setupObjective() throws Exception
+	{
+		setInputInstrumentXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1.xml");
+		setInputTuningXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		setLowerBound(new double[] { 0.004, 0.004, 0.004, 0.004, 0.004,
+				0.004 });
+		setUpperBound(new double[] { 0.012, 0.012, 0.012, 0.012, 0.012,
+				0.012 });
+		evaluator = new CentDeviationEvaluator(calculator,
+				new SimpleInstrumentTuner());
+		objective = new HoleSizeObjectiveFunction(calculator, tuning,
+				evaluator);
+		objective.setLowerBounds(lowerBound);
+		objective.setUpperBounds(upperBound);
+	}
+}
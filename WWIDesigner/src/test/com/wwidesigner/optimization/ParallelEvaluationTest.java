@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.modelling.FmaxEvaluator;
+import com.wwidesigner.modelling.LinearVInstrumentTuner;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Check that an objective function that spreads its fingering targets over
+ * several threads gives the same error vector as a sequential evaluation,
+ * and follows changes to the state it shares with its worker threads.
+ */
+public class ParallelEvaluationTest extends AbstractOptimizationTest
+{
+	@Test
+	public final void testCentDeviationEvaluator()
+	{
+		try
+		{
+			setupNaf();
+			checkParallelMatchesSequential(new CentDeviationEvaluator(
+					calculator));
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testFmaxEvaluator()
+	{
+		try
+		{
+			setupNaf();
+			// The LinearV tuner depends on the full list of targets.
+			checkParallelMatchesSequential(new FmaxEvaluator(calculator,
+					new LinearVInstrumentTuner()));
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Change the physical parameters, and geometry that is not optimized,
+	 * after the worker threads have been used.
+	 */
+	@Test
+	public final void testSharedStateChanges()
+	{
+		try
+		{
+			setupNaf();
+			objective = new HoleSizeObjectiveFunction(calculator, tuning,
+					new CentDeviationEvaluator(calculator));
+			double[] point = objective.getGeometryPoint();
+			objective.setEvaluationThreads(3);
+			double[] before = objective.getErrorVector(point);
+
+			calculator.getPhysicalParameters().setProperties(30.0, 101.325,
+					45.0, 0.00039);
+			double[] parallel = objective.getErrorVector(point);
+			objective.setEvaluationThreads(1);
+			double[] sequential = objective.getErrorVector(point);
+			assertFalse("Parameters had no effect",
+					Arrays.equals(before, sequential));
+			assertVectorEquals(sequential, parallel);
+
+			before = sequential;
+			for (Hole hole : calculator.getInstrument().getHole())
+			{
+				hole.setHeight(1.2 * hole.getHeight());
+			}
+			calculator.getInstrument().updateComponents();
+			objective.setEvaluationThreads(3);
+			parallel = objective.getErrorVector(point);
+			objective.setEvaluationThreads(1);
+			sequential = objective.getErrorVector(point);
+			assertFalse("Hole heights had no effect",
+					Arrays.equals(before, sequential));
+			assertVectorEquals(sequential, parallel);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	protected void setupNaf() throws Exception
+	{
+		setInputInstrumentXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1.xml");
+		setInputTuningXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+	}
+
+	protected void checkParallelMatchesSequential(EvaluatorInterface aEvaluator)
+	{
+		objective = new HoleSizeObjectiveFunction(calculator, tuning,
+				aEvaluator);
+		double[] point = objective.getGeometryPoint();
+		double[] otherPoint = point.clone();
+		for (int i = 0; i < otherPoint.length; ++i)
+		{
+			otherPoint[i] *= 1.05;
+		}
+
+		double[] sequential = objective.getErrorVector(point);
+		double[] otherSequential = objective.getErrorVector(otherPoint);
+		for (int nrThreads = 2; nrThreads <= 4; ++nrThreads)
+		{
+			objective.setEvaluationThreads(nrThreads);
+			assertVectorEquals(sequential, objective.getErrorVector(point));
+			assertVectorEquals(otherSequential,
+					objective.getErrorVector(otherPoint));
+			assertEquals("Norm differs", objective.calcNorm(sequential),
+					objective.value(point), 0.0);
+		}
+		objective.setEvaluationThreads(1);
+	}
+
+	protected static void assertVectorEquals(double[] expected,
+			double[] actual)
+	{
+		assertEquals("Lengths differ", expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertEquals("Error " + i + " differs", expected[i], actual[i],
+					0.0);
+		}
+	}
+}
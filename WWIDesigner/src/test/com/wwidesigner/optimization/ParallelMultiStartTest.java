@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import org.apache.commons.math3.optim.PointValuePair;
+import org.junit.Test;
+
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.optimization.multistart.GridRangeProcessor;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Check that a multi-start optimization run on several threads finds the same
+ * optimum as the same optimization run on a single thread.
+ */
+public class ParallelMultiStartTest extends AbstractOptimizationTest
+{
+	protected static final int NR_STARTS = 6;
+
+	@Test
+	public final void testParallelMatchesSequential()
+	{
+		int savedThreads = ObjectiveFunctionOptimizer.getMultiStartThreads();
+		try
+		{
+			ObjectiveFunctionOptimizer.setMultiStartThreads(1);
+			PointValuePair sequential = runMultiStart();
+			ObjectiveFunctionOptimizer.setMultiStartThreads(3);
+			PointValuePair parallel = runMultiStart();
+
+			assertNotNull("No sequential optimum", sequential);
+			assertNotNull("No parallel optimum", parallel);
+			assertEquals("Optimum value differs", sequential.getValue(),
+					parallel.getValue(), 1.0e-9);
+			double[] sequentialPoint = sequential.getPoint();
+			double[] parallelPoint = parallel.getPoint();
+			assertEquals("Dimensions differ", sequentialPoint.length,
+					parallelPoint.length);
+			for (int i = 0; i < sequentialPoint.length; ++i)
+			{
+				assertEquals("Optimum point differs", sequentialPoint[i],
+						parallelPoint[i], 1.0e-9);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ObjectiveFunctionOptimizer.setMultiStartThreads(savedThreads);
+		}
+	}
+
+	protected PointValuePair runMultiStart() throws Exception
+	{
+		setInputInstrumentXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1.xml");
+		setInputTuningXML(
+				"com/wwidesigner/optimization/example/6HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		setLowerBound(new double[] { 0.004, 0.004, 0.004, 0.004, 0.004,
+				0.004 });
+		setUpperBound(new double[] { 0.012, 0.012, 0.012, 0.012, 0.012,
+				0.012 });
+		evaluator = new CentDeviationEvaluator(calculator);
+		objective = new HoleSizeObjectiveFunction(calculator, tuning,
+				evaluator);
+		objective.setLowerBounds(lowerBound);
+		objective.setUpperBounds(upperBound);
+		objective.setRangeProcessor(new GridRangeProcessor(lowerBound,
+				upperBound, null, NR_STARTS));
+
+		return ObjectiveFunctionOptimizer.optimizeMultiStart(objective,
+				objective.getInitialPoint());
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package com.wwidesigner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.note.bind.NoteBindFactory;
+
+/**
+ * Check that the bind factories give the same results when several threads
+ * load and save files at the same time, and that they still validate input.
+ */
+public class BindFactoryTest
+{
+	private static String instrumentFile_NAF = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	private static String tuningFile_NAF = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+
+	private static String roundTrip(BindFactory factory, File inputFile)
+			throws Exception
+	{
+		Object domainObject = factory.unmarshalXml(inputFile, true);
+		StringWriter writer = new StringWriter();
+		factory.marshalToXml(domainObject, writer);
+		return writer.toString();
+	}
+
+	@Test
+	public void testConcurrentRoundTrip()
+	{
+		final BindFactory geometryFactory = GeometryBindFactory.getInstance();
+		final BindFactory noteFactory = NoteBindFactory.getInstance();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			final File instrumentFile = BindFactory
+					.getFileFromName(instrumentFile_NAF);
+			final File tuningFile = BindFactory.getFileFromName(tuningFile_NAF);
+			String expectedInstrument = roundTrip(geometryFactory,
+					instrumentFile);
+			String expectedTuning = roundTrip(noteFactory, tuningFile);
+
+			List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+			for (int i = 0; i < 40; ++i)
+			{
+				results.add(executor.submit(new Callable<String[]>()
+				{
+					@Override
+					public String[] call() throws Exception
+					{
+						return new String[] {
+								roundTrip(geometryFactory, instrumentFile),
+								roundTrip(noteFactory, tuningFile) };
+					}
+				}));
+			}
+			for (Future<String[]> result : results)
+			{
+				assertEquals("Instrument differs", expectedInstrument,
+						result.get()[0]);
+				assertEquals("Tuning differs", expectedTuning, result.get()[1]);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testValidation()
+	{
+		try
+		{
+			File tuningFile = BindFactory.getFileFromName(tuningFile_NAF);
+			Object tuning = NoteBindFactory.getInstance().unmarshalXml(
+					tuningFile, true);
+			assertEquals("Tuning class", Tuning.class, tuning.getClass());
+			File instrumentFile = BindFactory
+					.getFileFromName(instrumentFile_NAF);
+			Object instrument = GeometryBindFactory.getInstance()
+					.unmarshalXml(instrumentFile, true);
+			assertEquals("Instrument class", Instrument.class,
+					instrument.getClass());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		try
+		{
+			File tuningFile = BindFactory.getFileFromName(tuningFile_NAF);
+			GeometryBindFactory.getInstance().unmarshalXml(tuningFile, true);
+			fail("Geometry factory accepted a tuning file");
+		}
+		catch (Exception e)
+		{
+			// Expected: the instrument schema rejects a tuning file.
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ *
+ */
+package com.wwidesigner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.note.bind.NoteBindFactory;
+
+/**
+ * Tests for loading a directory of XML files with BulkLoader.
+ */
+public class BulkLoaderTest
+{
+	private static String exampleFile = "com/wwidesigner/optimization/example/BP7.xml";
+	private static String tuningFile = "com/wwidesigner/optimization/example/BP7-tuning.xml";
+	private static String constraintsFile = "com/wwidesigner/optimization/example/7-hole_broad-constraints.xml";
+
+	private static String toXml(BindFactory factory, Object domainObject)
+			throws Exception
+	{
+		StringWriter writer = new StringWriter();
+		factory.marshalToXml(domainObject, writer);
+		return writer.toString();
+	}
+
+	@Test
+	public void testLoadDirectory()
+	{
+		try
+		{
+			File directory = BindFactory.getFileFromName(exampleFile)
+					.getParentFile();
+			BulkLoader loader = new BulkLoader();
+			loader.setNrThreads(4);
+			List<BulkLoader.Result> results = loader.load(directory);
+			assertEquals("Number of files", directory.list().length,
+					results.size());
+			for (int i = 0; i < results.size(); ++i)
+			{
+				BulkLoader.Result result = results.get(i);
+				assertTrue(result.toString(), result.isSuccess());
+				if (i > 0)
+				{
+					assertTrue("Files out of order", results.get(i - 1)
+							.getFile().compareTo(result.getFile()) < 0);
+				}
+			}
+
+			// Objects must match those loaded one at a time.
+			BindFactory geometryFactory = GeometryBindFactory.getInstance();
+			BindFactory noteFactory = NoteBindFactory.getInstance();
+			File instrumentFile = BindFactory.getFileFromName(exampleFile);
+			File tuningInput = BindFactory.getFileFromName(tuningFile);
+			File constraintsInput = BindFactory
+					.getFileFromName(constraintsFile);
+			int found = 0;
+			for (BulkLoader.Result result : results)
+			{
+				if (result.getFile().equals(instrumentFile))
+				{
+					assertNotNull("Instrument", result.getInstrument());
+					assertNull("Tuning", result.getTuning());
+					assertEquals("Instrument differs", toXml(
+							geometryFactory, geometryFactory.unmarshalXml(
+									instrumentFile, true)), toXml(
+							geometryFactory, result.getInstrument()));
+					++found;
+				}
+				else if (result.getFile().equals(tuningInput))
+				{
+					assertNotNull("Tuning", result.getTuning());
+					assertEquals("Tuning differs",
+							toXml(noteFactory, noteFactory.unmarshalXml(
+									tuningInput, true)),
+							toXml(noteFactory, result.getTuning()));
+					++found;
+				}
+				else if (result.getFile().equals(constraintsInput))
+				{
+					assertNotNull("Constraints", result.getConstraints());
+					++found;
+				}
+			}
+			assertEquals("Example files found", 3, found);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testValidationOptional()
+	{
+		try
+		{
+			File instrumentFile = BindFactory.getFileFromName(exampleFile);
+			BindFactory geometryFactory = GeometryBindFactory.getInstance();
+			String expected = toXml(geometryFactory,
+					geometryFactory.unmarshalXml(instrumentFile, true));
+			BulkLoader loader = new BulkLoader();
+			loader.setValidate(false);
+			BulkLoader.Result result = loader.loadFile(instrumentFile);
+			assertTrue(result.toString(), result.isSuccess());
+			assertEquals("Unvalidated instrument differs", expected,
+					toXml(geometryFactory, result.getInstrument()));
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testErrorsDoNotAbort()
+	{
+		File badFile = null;
+		File unknownFile = null;
+		try
+		{
+			badFile = File.createTempFile("BulkLoaderTest", ".xml");
+			Writer writer = new FileWriter(badFile);
+			writer.write("<?xml version=\"1.0\"?>\n"
+					+ "<ns2:instrument xmlns:ns2=\"http://www.wwidesigner.com/Instrument\">\n"
+					+ "<name>Truncated");
+			writer.close();
+			unknownFile = File.createTempFile("BulkLoaderTest", ".xml");
+			writer = new FileWriter(unknownFile);
+			writer.write("<?xml version=\"1.0\"?>\n<other/>\n");
+			writer.close();
+
+			List<File> files = new ArrayList<File>();
+			files.add(badFile);
+			files.add(BindFactory.getFileFromName(exampleFile));
+			files.add(unknownFile);
+			files.add(BindFactory.getFileFromName(tuningFile));
+			BulkLoader loader = new BulkLoader();
+			loader.setNrThreads(2);
+			List<BulkLoader.Result> results = loader.load(files);
+			assertEquals("Number of results", 4, results.size());
+			assertFalse("Truncated file loaded", results.get(0).isSuccess());
+			assertNotNull("Truncated file error", results.get(0).getError());
+			assertNotNull("Instrument", results.get(1).getInstrument());
+			assertFalse("Unknown file loaded", results.get(2).isSuccess());
+			assertNotNull("Tuning", results.get(3).getTuning());
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			if (badFile != null)
+			{
+				badFile.delete();
+			}
+			if (unknownFile != null)
+			{
+				unknownFile.delete();
+			}
+		}
+	}
+}
@@ -4,6 +4,8 @@
 package com.wwidesigner.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -95,4 +97,48 @@ public class PhysicalParametersTest
         assertEquals( 3.647e6, phyPar.calcZ0( 0.006 ), 1e3 );
     }
 
+    /**
+     * Test method for
+     * {@link com.wwidesigner.util.PhysicalParameters#getAirState()}.
+     */
+    @Test
+    public void testAirState()
+    {
+        PhysicalParameters phyPar = new PhysicalParameters( 20.0,
+                                                            TemperatureType.C );
+        AirState air = phyPar.getAirState();
+        double radius = 0.006;
+        double waveNumber = phyPar.calcWaveNumber( 440.0 );
+
+        // The snapshot gives exactly the same results as the parameters.
+        assertEquals( phyPar.calcZ0( radius ), air.calcZ0( radius ), 0.0 );
+        assertEquals( phyPar.calcZ0FromArea( 1.0e-4 ),
+                      air.calcZ0FromArea( 1.0e-4 ), 0.0 );
+        assertEquals( waveNumber, air.calcWaveNumber( 440.0 ), 0.0 );
+        assertEquals( 440.0, air.calcFrequency( waveNumber ), 1.0e-9 );
+        assertEquals( phyPar.getEpsilon( waveNumber, radius ),
+                      air.getAlphaConstant()
+                      / ( radius * air.getSqrtWaveNumber( waveNumber ) ), 0.0 );
+        // Repeated lookups, alternating wave numbers, give the same values.
+        double lossFactor = air.getLossFactor( waveNumber );
+        assertEquals( phyPar.getAlphaConstant() / Math.sqrt( waveNumber ),
+                      lossFactor, 0.0 );
+        assertEquals( Math.sqrt( 2.0 * waveNumber ),
+                      air.getSqrtWaveNumber( 2.0 * waveNumber ), 0.0 );
+        assertEquals( lossFactor, air.getLossFactor( waveNumber ), 0.0 );
+
+        // Changing the parameters issues a new snapshot, and leaves the
+        // old one alone.
+        double oldZ0 = air.calcZ0( radius );
+        phyPar.setProperties( 30.0, 101.325, 45.0, 0.000390 );
+        assertTrue( phyPar.getAirState() != air );
+        assertEquals( oldZ0, air.calcZ0( radius ), 0.0 );
+        assertFalse( air.hasSameAcoustics( phyPar.getAirState() ) );
+
+        // A copy gets its own snapshot, with the same acoustics.
+        PhysicalParameters copy = new PhysicalParameters( phyPar );
+        assertTrue( copy.getAirState() != phyPar.getAirState() );
+        assertTrue( copy.getAirState().hasSameAcoustics( phyPar.getAirState() ) );
+    }
+
 }
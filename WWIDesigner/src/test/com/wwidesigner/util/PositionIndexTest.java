@@ -0,0 +1,113 @@
+package com.wwidesigner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.BorePoint;
+
+/**
+ * Tests of the sorted, array-backed PositionIndex.
+ */
+public class PositionIndexTest
+{
+	protected static BorePoint point(double position)
+	{
+		BorePoint point = new BorePoint();
+		point.setBorePosition(position);
+		point.setBoreDiameter(0.01);
+		return point;
+	}
+
+	protected static List<BorePoint> points(double... positions)
+	{
+		List<BorePoint> points = new ArrayList<BorePoint>();
+		for (double position : positions)
+		{
+			points.add(point(position));
+		}
+		return points;
+	}
+
+	protected static void assertPositions(double[] expected,
+			PositionIndex<BorePoint> index)
+	{
+		assertEquals("Size", expected.length, index.size());
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertEquals("Element " + i, expected[i],
+					index.get(i).getBorePosition(), 0.0);
+			assertEquals("Position " + i, expected[i], index.getPosition(i),
+					0.0);
+		}
+	}
+
+	@Test
+	public void testSorted()
+	{
+		List<BorePoint> points = points(0.3, 0.1, 0.2, 0.1);
+		PositionIndex<BorePoint> index = new PositionIndex<BorePoint>(points);
+		assertPositions(new double[] { 0.1, 0.1, 0.2, 0.3 }, index);
+		// Equal positions keep their original order.
+		assertSame(points.get(1), index.get(0));
+		assertSame(points.get(3), index.get(1));
+		assertSame(points.get(0), index.getLast());
+	}
+
+	@Test
+	public void testHeadSize()
+	{
+		PositionIndex<BorePoint> index = new PositionIndex<BorePoint>(points(
+				0.1, 0.2, 0.2, 0.3));
+		assertEquals(0, index.headSize(0.1));
+		assertEquals(1, index.headSize(0.15));
+		assertEquals(1, index.headSize(0.2));
+		assertEquals(3, index.headSize(0.25));
+		assertEquals(4, index.headSize(1.0));
+		index.removeFirst();
+		assertEquals(0, index.headSize(0.2));
+		assertEquals(2, index.headSize(0.25));
+	}
+
+	@Test
+	public void testAddAndRemove()
+	{
+		PositionIndex<BorePoint> index = new PositionIndex<BorePoint>(points(
+				0.1, 0.4));
+		// Add into space at the end, then past the initial capacity.
+		for (int i = 0; i < 10; ++i)
+		{
+			index.add(point(0.2));
+		}
+		assertEquals(12, index.size());
+		assertEquals(0.4, index.getLast().getBorePosition(), 0.0);
+
+		index = new PositionIndex<BorePoint>(points(0.1, 0.2, 0.4));
+		BorePoint first = index.removeFirst();
+		assertEquals(0.1, first.getBorePosition(), 0.0);
+		// Add into space left at the front.
+		BorePoint added = point(0.3);
+		index.add(added);
+		assertPositions(new double[] { 0.2, 0.3, 0.4 }, index);
+		assertSame(added, index.get(1));
+		// A new element follows elements with the same position.
+		added = point(0.2);
+		index.add(added);
+		assertPositions(new double[] { 0.2, 0.2, 0.3, 0.4 }, index);
+		assertSame(added, index.get(1));
+
+		// Remove an element other than the first.
+		BorePoint second = index.get(1);
+		assertEquals(true, index.remove(second));
+		assertEquals(false, index.remove(second));
+		assertPositions(new double[] { 0.2, 0.3, 0.4 }, index);
+
+		index.get(0).setBorePosition(0.25);
+		index.refreshPosition(0);
+		assertEquals(0.25, index.getPosition(0), 0.0);
+	}
+}